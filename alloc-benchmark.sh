@@ -0,0 +1,24 @@
+#!/bin/bash
+#
+# Allocation benchmark for sounding reads. Reads soundings for random points from a
+# local data file, first with a new sounding each time and then reusing one, and
+# reports bytes allocated on the heap per sounding.
+#
+# Usage: ./alloc-benchmark.sh DATA_FILE [ITERATIONS]
+#
+# Build first with "mvn clean compile package".
+
+set -e
+
+if [ -z "$1" ]; then
+    echo "Usage: $0 DATA_FILE [ITERATIONS]"
+    exit 1
+fi
+
+JAR=$(ls target/SkewTVSP-*-jar-with-dependencies.jar 2>/dev/null | head -n 1)
+if [ -z "$JAR" ]; then
+    echo "No jar found in target, run mvn clean compile package first"
+    exit 1
+fi
+
+java -cp "$JAR" com.averydonovan.skewtvsp.utils.SoundingAllocationBenchmark "$@"
@@ -0,0 +1,94 @@
+#!/bin/bash
+#
+# Load test for server mode. Starts the server on a local data file, sends a mix of
+# sounding, PNG, and SVG requests for random points, and reports latency percentiles.
+#
+# Usage: ./server-loadtest.sh DATA_FILE [REQUESTS] [CONCURRENCY]
+#
+# Build first with "mvn clean compile package". Points are picked between LON_MIN and
+# LON_MAX and between LAT_MIN and LAT_MAX, which default to the continental US and can
+# be set in the environment, as can PORT.
+
+set -e
+
+if [ -z "$1" ]; then
+    echo "Usage: $0 DATA_FILE [REQUESTS] [CONCURRENCY]"
+    exit 1
+fi
+
+DATA_FILE="$1"
+REQUESTS="${2:-500}"
+CONCURRENCY="${3:-16}"
+PORT="${PORT:-18080}"
+LON_MIN="${LON_MIN:--120}"
+LON_MAX="${LON_MAX:--75}"
+LAT_MIN="${LAT_MIN:-30}"
+LAT_MAX="${LAT_MAX:-48}"
+
+JAR=$(ls target/SkewTVSP-*-jar-with-dependencies.jar 2>/dev/null | head -n 1)
+if [ -z "$JAR" ]; then
+    echo "No jar found in target, run mvn clean compile package first"
+    exit 1
+fi
+
+WORK_DIR=$(mktemp -d)
+trap 'kill $SERVER_PID 2>/dev/null; rm -rf "$WORK_DIR"' EXIT
+
+echo "Starting server on port $PORT..."
+java -cp "$JAR" com.averydonovan.skewtvsp.RunApp --server --port "$PORT" "$DATA_FILE" \
+    > "$WORK_DIR/server.log" 2>&1 &
+SERVER_PID=$!
+
+for attempt in $(seq 1 120); do
+    if curl -s -o /dev/null "http://localhost:$PORT/files"; then
+        break
+    fi
+    if ! kill -0 $SERVER_PID 2>/dev/null; then
+        echo "Server failed to start:"
+        cat "$WORK_DIR/server.log"
+        exit 1
+    fi
+    sleep 0.5
+done
+
+echo "Generating $REQUESTS requests..."
+awk -v n="$REQUESTS" -v port="$PORT" -v lonMin="$LON_MIN" -v lonMax="$LON_MAX" \
+    -v latMin="$LAT_MIN" -v latMax="$LAT_MAX" 'BEGIN {
+        srand();
+        for (i = 0; i < n; i++) {
+            lon = lonMin + rand() * (lonMax - lonMin);
+            lat = latMin + rand() * (latMax - latMin);
+            kind = i % 4;
+            if (kind < 2) {
+                path = "sounding?";
+            } else if (kind == 2) {
+                path = "plot?format=png&";
+            } else {
+                path = "plot?format=svg&";
+            }
+            printf "http://localhost:%s/%slon=%.4f&lat=%.4f\n", port, path, lon, lat;
+        }
+    }' > "$WORK_DIR/urls.txt"
+
+echo "Running with concurrency $CONCURRENCY..."
+START=$(date +%s.%N)
+xargs -P "$CONCURRENCY" -n 1 curl -s -o /dev/null -w "%{http_code} %{time_total}\n" \
+    < "$WORK_DIR/urls.txt" > "$WORK_DIR/results.txt"
+END=$(date +%s.%N)
+
+awk '{ print $2 }' "$WORK_DIR/results.txt" | sort -n > "$WORK_DIR/times.txt"
+awk -v start="$START" -v end="$END" '
+    { codes[$1]++; total++ }
+    END {
+        printf "Requests: %d in %.2f s (%.1f req/s)\n", total, end - start,
+            total / (end - start);
+        for (code in codes) {
+            printf "  HTTP %s: %d\n", code, codes[code];
+        }
+    }' "$WORK_DIR/results.txt"
+awk '{ t[NR] = $1 }
+    END {
+        printf "Latency (ms): p50 %.0f  p95 %.0f  p99 %.0f  max %.0f\n",
+            t[int(NR * 0.50) + 1] * 1000, t[int(NR * 0.95) + 1] * 1000,
+            t[int(NR * 0.99) + 1] * 1000, t[NR] * 1000;
+    }' "$WORK_DIR/times.txt"
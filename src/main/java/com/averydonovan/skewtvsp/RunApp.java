@@ -25,9 +25,16 @@
  */
 package com.averydonovan.skewtvsp;
 
+import com.averydonovan.skewtvsp.server.SoundingServer;
+import java.util.Arrays;
+
 public class RunApp {
 
     public static void main(String[] args) {
-        SkewTVSP.main(args);
+        if (Arrays.asList(args).contains("--server")) {
+            SoundingServer.main(args);
+        } else {
+            SkewTVSP.main(args);
+        }
     }
 }
@@ -26,6 +26,7 @@
 package com.averydonovan.skewtvsp;
 
 import com.averydonovan.skewtvsp.controllers.STVSPController;
+import com.averydonovan.skewtvsp.utils.WarmUp;
 
 import javafx.application.Application;
 import javafx.scene.Scene;
@@ -59,6 +60,8 @@ public class SkewTVSP extends Application {
         primaryStage.titleProperty().bind(STVSPController.windowTitle);
         primaryStage.setScene(scene);
         primaryStage.show();
+
+        LOG.info("Window interactive {} ms after launch", WarmUp.getMillisSinceLaunch());
     }
 
     public static void main(String args[]) {
@@ -67,6 +70,9 @@ public class SkewTVSP extends Application {
                     "Skew-T Virtual Sounding Plotter");
         }
 
+        // Load data file readers and compile calculations while the window opens
+        WarmUp.start();
+
         launch(args);
     }
 }
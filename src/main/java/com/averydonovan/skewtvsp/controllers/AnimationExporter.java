@@ -0,0 +1,338 @@
+/*
+ * Copyright (c) 2024, Avery Donovan
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.averydonovan.skewtvsp.controllers;
+
+import com.averydonovan.skewtvsp.utils.AnimatedPngWriter;
+import com.averydonovan.skewtvsp.utils.DataReadScheduler;
+import com.averydonovan.skewtvsp.utils.Metrics;
+import com.averydonovan.skewtvsp.utils.ModelRunDataset;
+import com.averydonovan.skewtvsp.utils.Sounding;
+import com.averydonovan.skewtvsp.utils.StreamingPngWriter;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntConsumer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Exports the sounding at one point through every forecast hour of a run as an
+ * animation, either an animated PNG or a numbered sequence of PNG frames.
+ *
+ * <p>
+ * Frames go through a pipeline of stages, each with its own threads, so that every stage
+ * is busy at once: soundings are read from the run's files as batch reads on the shared
+ * {@link DataReadScheduler}, the traces, axes and labels are recorded, they are rendered
+ * over a copy of the grid (rendered once, as it is the same for every frame), and the
+ * frame is compressed. Only frames are written in order. The number of frames in the
+ * pipeline at once is bounded by the skewtvsp.animation.framesInFlight system property,
+ * which keeps memory use the same however many files a run has.
+ *
+ * @author Avery Donovan
+ */
+public class AnimationExporter {
+
+    private static final Logger LOG =
+            LoggerFactory.getLogger(AnimationExporter.class.getName());
+
+    private static final int NUM_CPUS = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * Most frames read, rendered or compressed but not yet written at once.
+     */
+    private static final int FRAMES_IN_FLIGHT = Math.max(2,
+            Integer.getInteger("skewtvsp.animation.framesInFlight", 2 * NUM_CPUS));
+
+    private static final Metrics.Histogram frameTimer =
+            Metrics.timer("animation.frame");
+
+    private final ModelRunDataset run;
+    private final int coordX;
+    private final int coordY;
+    private final int dpi;
+    private final double scale;
+    private final int width;
+    private final int height;
+
+    private int frameMillis = 500;
+    private IntConsumer onFrameWritten = null;
+
+    /**
+     * Create new exporter for the sounding at a point in a forecast run.
+     *
+     * @param run forecast run
+     * @param coordX x-coordinate in data grid
+     * @param coordY y-coordinate in data grid
+     * @param dpi resolution of frames in dots per inch, 100 being 900x1200 pixels
+     */
+    public AnimationExporter(ModelRunDataset run, int coordX, int coordY, int dpi) {
+        this.run = run;
+        this.coordX = coordX;
+        this.coordY = coordY;
+        this.dpi = dpi;
+        scale = (double) dpi / SkewTPlot.PLOT_BASE_DPI;
+        width = (int) Math.round(SkewTPlot.getPlotWidth(1) * scale);
+        height = (int) Math.round(SkewTPlot.getPlotHeight(1) * scale);
+    }
+
+    /**
+     * Set how long each frame of an animated PNG is shown for. Default is 500 ms.
+     *
+     * @param frameMillis time to show each frame in ms
+     */
+    public void setFrameMillis(int frameMillis) {
+        this.frameMillis = frameMillis;
+    }
+
+    /**
+     * Set what to call as each frame is written, such as to show progress. Called on
+     * the exporting thread with the number of frames written so far.
+     *
+     * @param onFrameWritten called after each frame is written
+     */
+    public void setOnFrameWritten(IntConsumer onFrameWritten) {
+        this.onFrameWritten = onFrameWritten;
+    }
+
+    /**
+     * Returns number of frames an export will have, one per file in run.
+     *
+     * @return number of frames
+     */
+    public int getNumFrames() {
+        return run.getNumTimes();
+    }
+
+    /**
+     * Write animation as an animated PNG that loops forever. Each frame after the first
+     * only holds the part of the plot that changed.
+     *
+     * @param out stream to write to, closed when done
+     *
+     * @throws IOException unable to read a data file or write image
+     * @throws InterruptedException interrupted while exporting
+     */
+    public void writeAnimatedPng(OutputStream out)
+            throws IOException, InterruptedException {
+        try (AnimatedPngWriter apng =
+                new AnimatedPngWriter(out, width, height, getNumFrames(), 0)) {
+            runPipeline((index, pixels, previous) -> AnimatedPngWriter.encodeFrame(pixels,
+                    previous, width, height),
+                    (index, frame) -> apng.writeFrame(frame, frameMillis));
+        }
+    }
+
+    /**
+     * Write animation as a sequence of PNG files numbered from 000 in time order, such
+     * as for making a video. Frames are compressed and written in parallel.
+     *
+     * @param directory directory to write files to
+     * @param baseName start of each file's name, followed by _000.png, _001.png and so on
+     *
+     * @return files written, in time order
+     *
+     * @throws IOException unable to read a data file or write images
+     * @throws InterruptedException interrupted while exporting
+     */
+    public List<File> writeFrames(File directory, String baseName)
+            throws IOException, InterruptedException {
+        File[] files = new File[getNumFrames()];
+        for (int index = 0; index < files.length; index++) {
+            files[index] =
+                    new File(directory, String.format("%s_%03d.png", baseName, index));
+        }
+
+        runPipeline((index, pixels, previous) -> {
+            OutputStream out =
+                    new BufferedOutputStream(new FileOutputStream(files[index]));
+            try (StreamingPngWriter png =
+                    new StreamingPngWriter(out, width, height, dpi)) {
+                png.writeRows(pixels, 0, width, height);
+            }
+            return files[index];
+        }, (index, file) -> {
+            // Already written when compressed
+        });
+
+        return List.of(files);
+    }
+
+    /**
+     * Turns a rendered frame into what is written out.
+     */
+    private interface FrameEncoder<T> {
+
+        T encode(int index, int[] pixels, int[] previous) throws IOException;
+    }
+
+    /**
+     * Writes encoded frames out, in order.
+     */
+    private interface FrameWriter<T> {
+
+        void write(int index, T encoded) throws IOException;
+    }
+
+    /**
+     * Send every frame through the read, record, render and encode stages, writing
+     * encoded frames in order as they come out the other end.
+     */
+    private <T> void runPipeline(FrameEncoder<T> encoder, FrameWriter<T> writer)
+            throws IOException, InterruptedException {
+        long startNanos = System.nanoTime();
+        int numFrames = getNumFrames();
+        int numThreads = Math.max(1, NUM_CPUS / 2);
+        ExecutorService recordPool = newStagePool("record", numThreads);
+        ExecutorService renderPool = newStagePool("render", numThreads);
+        ExecutorService encodePool = newStagePool("encode", numThreads);
+
+        int[] grid = renderGrid();
+        ArrayDeque<CompletableFuture<T>> inFlight = new ArrayDeque<>();
+        CompletableFuture<int[]> previousRender = CompletableFuture.completedFuture(null);
+        int numWritten = 0;
+
+        try {
+            for (int index = 0; index < numFrames; index++) {
+                if (inFlight.size() >= FRAMES_IN_FLIGHT) {
+                    writer.write(numWritten, join(inFlight.poll()));
+                    frameWritten(++numWritten);
+                }
+
+                int timeIndex = index;
+                long frameStartNanos = System.nanoTime();
+                CompletableFuture<Sounding> read = DataReadScheduler.getShared()
+                        .submitAndWait(DataReadScheduler.Priority.BATCH,
+                                () -> run.getSounding(timeIndex, coordX, coordY));
+                CompletableFuture<int[]> rendered = read
+                        .thenApplyAsync(sounding -> SkewTPlot.recordOverGrid(sounding,
+                                scale), recordPool)
+                        .thenApplyAsync(overGrid -> render(grid, overGrid), renderPool);
+                CompletableFuture<T> encoded = rendered.thenCombineAsync(previousRender,
+                        (pixels, previous) -> {
+                            try {
+                                T result = encoder.encode(timeIndex, pixels, previous);
+                                frameTimer.recordSince(frameStartNanos);
+                                return result;
+                            } catch (IOException ex) {
+                                throw new UncheckedIOException(ex);
+                            }
+                        }, encodePool);
+
+                inFlight.add(encoded);
+                previousRender = rendered;
+            }
+
+            while (!inFlight.isEmpty()) {
+                writer.write(numWritten, join(inFlight.poll()));
+                frameWritten(++numWritten);
+            }
+        } finally {
+            inFlight.forEach(future -> future.cancel(false));
+            recordPool.shutdownNow();
+            renderPool.shutdownNow();
+            encodePool.shutdownNow();
+        }
+
+        LOG.debug("Exported {} frames of {} in {} ms", numFrames, run.getRunName(),
+                (System.nanoTime() - startNanos) / 1000000);
+    }
+
+    /**
+     * Render the part of the plot that is the same for every frame.
+     */
+    private int[] renderGrid() {
+        BufferedImage image =
+                new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        AwtPlotGraphics awt = new AwtPlotGraphics(image);
+        SkewTPlot.recordGrid(scale).replay(awt);
+        awt.dispose();
+        return ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+    }
+
+    /**
+     * Render a frame over a copy of the grid.
+     */
+    private int[] render(int[] grid, DisplayList overGrid) {
+        BufferedImage image =
+                new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+        System.arraycopy(grid, 0, pixels, 0, pixels.length);
+
+        AwtPlotGraphics awt = new AwtPlotGraphics(image);
+        overGrid.replay(awt);
+        awt.dispose();
+        return pixels;
+    }
+
+    private void frameWritten(int numWritten) {
+        if (onFrameWritten != null) {
+            onFrameWritten.accept(numWritten);
+        }
+    }
+
+    /**
+     * Wait for a frame to make it through the pipeline, passing on whatever went wrong
+     * along the way.
+     */
+    private static <T> T join(CompletableFuture<T> future) throws IOException {
+        try {
+            return future.join();
+        } catch (CompletionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof UncheckedIOException) {
+                throw ((UncheckedIOException) cause).getCause();
+            }
+            throw ex;
+        }
+    }
+
+    /**
+     * Create threads for one stage of the pipeline.
+     */
+    private static ExecutorService newStagePool(String stage, int numThreads) {
+        AtomicInteger count = new AtomicInteger();
+        return Executors.newFixedThreadPool(numThreads, task -> {
+            Thread thread = new Thread(task,
+                    "skewtvsp-animation-" + stage + "-" + count.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+}
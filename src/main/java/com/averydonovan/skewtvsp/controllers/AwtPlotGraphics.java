@@ -0,0 +1,231 @@
+/*
+ * Copyright (c) 2024, Avery Donovan
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.averydonovan.skewtvsp.controllers;
+
+import java.awt.AlphaComposite;
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Composite;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Line2D;
+import java.awt.geom.Path2D;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+
+/**
+ * Draws to an AWT image in memory. Does not need a display or the JavaFX toolkit, so it
+ * can be used on any thread, including in headless server mode.
+ *
+ * @author Avery Donovan
+ */
+public class AwtPlotGraphics implements PlotGraphics {
+
+    private final Graphics2D g2d;
+
+    private Color fill = Color.BLACK;
+    private Color stroke = Color.BLACK;
+    private float lineWidth = 1;
+    private float[] lineDashes = null;
+    private TextAlign textAlign = TextAlign.LEFT;
+    private TextBaseline textBaseline = TextBaseline.BASELINE;
+
+    /**
+     * Create new instance drawing to an image.
+     *
+     * @param image image to draw to
+     */
+    public AwtPlotGraphics(BufferedImage image) {
+        this(image.createGraphics());
+    }
+
+    /**
+     * Create new instance drawing with an existing Graphics2D.
+     *
+     * @param g2d Graphics2D to draw with
+     */
+    public AwtPlotGraphics(Graphics2D g2d) {
+        this.g2d = g2d;
+        g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
+                RenderingHints.VALUE_ANTIALIAS_ON);
+        g2d.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING,
+                RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+        g2d.setRenderingHint(RenderingHints.KEY_STROKE_CONTROL,
+                RenderingHints.VALUE_STROKE_PURE);
+        g2d.setFont(new Font(Font.SANS_SERIF, Font.PLAIN, 12));
+        updateStroke();
+    }
+
+    /**
+     * Release resources held by the underlying Graphics2D. Nothing can be drawn
+     * afterwards.
+     */
+    public void dispose() {
+        g2d.dispose();
+    }
+
+    @Override
+    public void setFill(int rgb) {
+        fill = new Color(rgb);
+    }
+
+    @Override
+    public void setStroke(int rgb) {
+        stroke = new Color(rgb);
+    }
+
+    @Override
+    public void setLineWidth(double width) {
+        lineWidth = (float) width;
+        updateStroke();
+    }
+
+    @Override
+    public void setLineDashes(double... dashes) {
+        if (dashes == null || dashes.length == 0) {
+            lineDashes = null;
+        } else {
+            lineDashes = new float[dashes.length];
+            for (int index = 0; index < dashes.length; index++) {
+                lineDashes[index] = (float) dashes[index];
+            }
+        }
+        updateStroke();
+    }
+
+    @Override
+    public void setFont(double size, boolean bold, boolean italic) {
+        int style = (bold ? Font.BOLD : Font.PLAIN) | (italic ? Font.ITALIC : Font.PLAIN);
+        g2d.setFont(new Font(Font.SANS_SERIF, style, 1).deriveFont((float) size));
+    }
+
+    @Override
+    public void setTextAlign(TextAlign align) {
+        textAlign = align;
+    }
+
+    @Override
+    public void setTextBaseline(TextBaseline baseline) {
+        textBaseline = baseline;
+    }
+
+    @Override
+    public void clearRect(double x, double y, double width, double height) {
+        Composite composite = g2d.getComposite();
+        g2d.setComposite(AlphaComposite.Clear);
+        g2d.fill(new Rectangle2D.Double(x, y, width, height));
+        g2d.setComposite(composite);
+    }
+
+    @Override
+    public void fillRect(double x, double y, double width, double height) {
+        g2d.setColor(fill);
+        g2d.fill(new Rectangle2D.Double(x, y, width, height));
+    }
+
+    @Override
+    public void strokeLine(double x1, double y1, double x2, double y2) {
+        g2d.setColor(stroke);
+        g2d.draw(new Line2D.Double(x1, y1, x2, y2));
+    }
+
+    @Override
+    public void strokePolyline(double[] xPoints, double[] yPoints, int numPoints) {
+        if (numPoints < 2) {
+            return;
+        }
+        Path2D.Double path = new Path2D.Double(Path2D.WIND_NON_ZERO, numPoints);
+        path.moveTo(xPoints[0], yPoints[0]);
+        for (int index = 1; index < numPoints; index++) {
+            path.lineTo(xPoints[index], yPoints[index]);
+        }
+        g2d.setColor(stroke);
+        g2d.draw(path);
+    }
+
+    @Override
+    public void fillPolygon(double[] xPoints, double[] yPoints, int numPoints) {
+        if (numPoints < 3) {
+            return;
+        }
+        Path2D.Double path = new Path2D.Double(Path2D.WIND_NON_ZERO, numPoints);
+        path.moveTo(xPoints[0], yPoints[0]);
+        for (int index = 1; index < numPoints; index++) {
+            path.lineTo(xPoints[index], yPoints[index]);
+        }
+        path.closePath();
+        g2d.setColor(fill);
+        g2d.fill(path);
+    }
+
+    @Override
+    public void fillText(String text, double x, double y) {
+        FontMetrics metrics = g2d.getFontMetrics();
+
+        double drawX = x;
+        switch (textAlign) {
+            case CENTER:
+                drawX -= metrics.stringWidth(text) / 2.0;
+                break;
+            case RIGHT:
+                drawX -= metrics.stringWidth(text);
+                break;
+            default:
+                break;
+        }
+
+        double drawY = y;
+        switch (textBaseline) {
+            case TOP:
+                drawY += metrics.getAscent();
+                break;
+            case CENTER:
+                drawY += (metrics.getAscent() - metrics.getDescent()) / 2.0;
+                break;
+            default:
+                break;
+        }
+
+        g2d.setColor(fill);
+        g2d.drawString(text, (float) drawX, (float) drawY);
+    }
+
+    @Override
+    public void fillTextRotated(String text, double x, double y, double degrees) {
+        AffineTransform transform = g2d.getTransform();
+        g2d.rotate(Math.toRadians(degrees), x, y);
+        fillText(text, x, y);
+        g2d.setTransform(transform);
+    }
+
+    private void updateStroke() {
+        g2d.setStroke(new BasicStroke(lineWidth, BasicStroke.CAP_SQUARE,
+                BasicStroke.JOIN_MITER, 10.0f, lineDashes, 0.0f));
+    }
+}
@@ -0,0 +1,550 @@
+/*
+ * Copyright (c) 2024, Avery Donovan
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.averydonovan.skewtvsp.controllers;
+
+import com.averydonovan.skewtvsp.controllers.PlotGraphics.TextAlign;
+import com.averydonovan.skewtvsp.controllers.PlotGraphics.TextBaseline;
+import com.averydonovan.skewtvsp.utils.CrossSection;
+import com.averydonovan.skewtvsp.utils.Metrics;
+import java.io.IOException;
+import java.io.OutputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Draws a vertical cross-section: isotherms, equivalent potential temperature (theta-e)
+ * and shading of moist air by dew point depression, on a panel of distance along the
+ * path against log pressure, with the terrain along the path filled in. Uses the same
+ * {@link PlotGraphics} drawing as {@link SkewTPlot}, so it can be drawn on screen,
+ * recorded, or rendered headless to PNG or SVG.
+ *
+ * <p>
+ * Contours are traced cell by cell with marching squares, treating values as varying
+ * linearly along each edge of a cell between two samples and two levels.
+ *
+ * @author Avery Donovan
+ */
+public class CrossSectionPlot {
+
+    private static final Logger LOG =
+            LoggerFactory.getLogger(CrossSectionPlot.class.getName());
+
+    private static final Metrics.Histogram renderTimer =
+            Metrics.timer("crosssection.render");
+    private static final Metrics.Histogram exportTimer =
+            Metrics.timer("crosssection.export");
+
+    private static final int HPA_TO_PA = 100;
+    private static final double C_TO_K = 273.15;
+
+    private static final int PLOT_BASE_WIDTH = 1200;
+    private static final int PLOT_BASE_HEIGHT = 900;
+    private static final int MAX_X_TICKS = 8;
+    private static final double PRES_TOP = 10000;
+    private static final double PRES_BOTTOM = 105000;
+    private static final int[] PRES_TICKS_HPA =
+        {1000, 925, 850, 700, 600, 500, 400, 300, 250, 200, 150, 100};
+
+    private static final double ISOTHERM_STEP = 5;
+    private static final double THETA_E_STEP = 4;
+
+    /**
+     * Dew point depressions (C) at or below which air is shaded, driest first, with the
+     * color of each.
+     */
+    private static final double[] MOIST_THRESHOLDS = {5, 2};
+    private static final int[] MOIST_COLORS = {0xCCEECC, 0x88CC88};
+
+    private static final int COLOR_BLACK = 0x000000;
+    private static final int COLOR_WHITE = 0xFFFFFF;
+    private static final int COLOR_GRAY = 0xC0C0C0;
+    private static final int COLOR_RED = 0xFF0000;
+    private static final int COLOR_BLUE = 0x0000FF;
+    private static final int COLOR_BROWN = 0x7F5F3F;
+
+    /**
+     * Graphics being drawn to.
+     */
+    private final PlotGraphics g;
+
+    /*
+     * Plotting area setup variables.
+     */
+    private final double scale;
+    private final double canvasWidth;
+    private final double canvasHeight;
+    private final double plotXOffset;
+    private final double plotXMax;
+    private final double plotYTop;
+    private final double plotYBottom;
+
+    /*
+     * Cross-section being plotted, and its length in km.
+     */
+    private CrossSection section;
+    private double distanceMax = 0;
+
+    /*
+     * Scratch space for the corners of one cell, in order around the cell.
+     */
+    private final double[] cellX = new double[4];
+    private final double[] cellY = new double[4];
+    private final double[] cellValues = new double[4];
+    private final double[] polyX = new double[8];
+    private final double[] polyY = new double[8];
+
+    /**
+     * Create new cross-section drawing to given graphics.
+     *
+     * @param g graphics to draw to
+     * @param scale factor to scale plot by, 1 being 1200x900 pixels
+     */
+    public CrossSectionPlot(PlotGraphics g, double scale) {
+        this.g = g;
+        this.scale = scale;
+
+        canvasWidth = PLOT_BASE_WIDTH * scale;
+        canvasHeight = PLOT_BASE_HEIGHT * scale;
+        plotXOffset = canvasWidth * 0.09;
+        plotXMax = canvasWidth * 0.96;
+        plotYTop = canvasHeight * 0.15;
+        plotYBottom = canvasHeight * 0.86;
+    }
+
+    /**
+     * Returns width of cross-section at a given resolution.
+     *
+     * @param dpi resolution in dots per inch, 100 being 1200x900 pixels
+     *
+     * @return width in pixels
+     */
+    public static int getPlotWidth(int dpi) {
+        return (int) Math.round(PLOT_BASE_WIDTH * getScale(dpi));
+    }
+
+    /**
+     * Returns height of cross-section at a given resolution.
+     *
+     * @param dpi resolution in dots per inch, 100 being 1200x900 pixels
+     *
+     * @return height in pixels
+     */
+    public static int getPlotHeight(int dpi) {
+        return (int) Math.round(PLOT_BASE_HEIGHT * getScale(dpi));
+    }
+
+    /**
+     * Returns scale of cross-section at a given resolution.
+     *
+     * @param dpi resolution in dots per inch
+     *
+     * @return factor to scale plot by
+     */
+    private static double getScale(int dpi) {
+        return (double) dpi / SkewTPlot.PLOT_BASE_DPI;
+    }
+
+    /**
+     * Record a cross-section into a display list, ready to be replayed onto any
+     * graphics. Can be called from any thread.
+     *
+     * @param section cross-section to plot
+     * @param scale factor to scale plot by, 1 being 1200x900 pixels
+     *
+     * @return recorded cross-section
+     */
+    public static DisplayList record(CrossSection section, double scale) {
+        DisplayList result = new DisplayList();
+        new CrossSectionPlot(result, scale).plot(section);
+        return result;
+    }
+
+    /**
+     * Write a cross-section as a PNG image. Like Skew-T exports, the image is rendered
+     * and written a strip of rows at a time. Can be called from any thread, and does not
+     * need a display.
+     *
+     * @param out stream to write PNG to, closed when done
+     * @param section cross-section to plot
+     * @param dpi resolution in dots per inch, 100 being 1200x900 pixels
+     *
+     * @throws IOException unable to write image
+     */
+    public static void writePng(OutputStream out, CrossSection section, int dpi)
+            throws IOException {
+        long startNanos = System.nanoTime();
+        DisplayList displayList = record(section, getScale(dpi));
+        displayList.writePng(out, getPlotWidth(dpi), getPlotHeight(dpi), dpi,
+                SkewTPlot.EXPORT_STRIP_HEIGHT);
+
+        long elapsedNanos = exportTimer.recordSince(startNanos);
+        LOG.debug("Exported cross-section of {} samples in {} ms",
+                section.getNumSamples(), elapsedNanos / 1000000);
+    }
+
+    /**
+     * Plot a cross-section.
+     *
+     * @param section cross-section to plot
+     */
+    public void plot(CrossSection section) {
+        long startNanos = System.nanoTime();
+        this.section = section;
+        distanceMax = section.getDistance(section.getNumSamples() - 1);
+
+        g.clearRect(0, 0, canvasWidth, canvasHeight);
+        g.setFill(COLOR_WHITE);
+        g.fillRect(0, 0, canvasWidth, canvasHeight);
+
+        drawTitle();
+        drawMoistShading();
+        drawGridLines();
+        drawContours(CrossSection::getThetaE, THETA_E_STEP, 0, COLOR_BLUE, false);
+        drawContours(CrossSection::getTemp, ISOTHERM_STEP, C_TO_K, COLOR_RED, true);
+        drawTerrain();
+        drawAxes();
+
+        renderTimer.recordSince(startNanos);
+    }
+
+    /**
+     * Draws labels for path, times, model, and what is plotted.
+     */
+    private void drawTitle() {
+        double[] endpoints = section.getEndpoints();
+
+        g.setFill(COLOR_BLACK);
+        g.setStroke(COLOR_BLACK);
+        g.setLineWidth(0);
+        g.setTextAlign(TextAlign.CENTER);
+        g.setTextBaseline(TextBaseline.CENTER);
+
+        g.setFont(22 * scale, false, false);
+        g.fillText(String.format("Cross-Section: %.4f, %.4f to %.4f, %.4f", endpoints[0],
+                endpoints[1], endpoints[2], endpoints[3]), canvasWidth / 2,
+                canvasHeight * 0.030);
+
+        g.setFont(17 * scale, false, false);
+        g.fillText("Analysis: " + section.getAnalysisTime().toString() + "   Valid: "
+                + section.getValidTime().toString(), canvasWidth / 2,
+                canvasHeight * 0.065);
+
+        g.setFont(13 * scale, false, true);
+        g.fillText("Source: " + section.getModelName(), canvasWidth / 2,
+                canvasHeight * 0.093);
+
+        g.setFont(13 * scale, false, false);
+        g.setTextAlign(TextAlign.LEFT);
+        double keyY = canvasHeight * 0.125;
+        g.setFill(COLOR_RED);
+        g.fillText("Isotherms every 5 C, 0 C bold", plotXOffset, keyY);
+        g.setFill(COLOR_BLUE);
+        g.fillText("Theta-e every 4 K", plotXOffset + 260 * scale, keyY);
+        g.setFill(COLOR_BLACK);
+        g.setTextAlign(TextAlign.RIGHT);
+        g.fillText("Dew point depression at most 5 C, 2 C", plotXMax - 60 * scale, keyY);
+        for (int index = 0; index < MOIST_COLORS.length; index++) {
+            g.setFill(MOIST_COLORS[index]);
+            g.fillRect(plotXMax - (50 - index * 25) * scale, keyY - 8 * scale,
+                    20 * scale, 16 * scale);
+        }
+    }
+
+    /**
+     * Shades air at or below each dew point depression threshold. Within each cell, the
+     * part below the threshold is the polygon of corners below it and the points where
+     * the threshold crosses the cell's edges.
+     */
+    private void drawMoistShading() {
+        for (int index = 0; index < MOIST_THRESHOLDS.length; index++) {
+            g.setFill(MOIST_COLORS[index]);
+            double threshold = MOIST_THRESHOLDS[index];
+            for (int sample = 0; sample < section.getNumSamples() - 1; sample++) {
+                for (int level = 0; level < section.getNumLevels() - 1; level++) {
+                    if (!loadCell(CrossSection::getDewpDep, sample, level)) {
+                        continue;
+                    }
+                    int numPoints = 0;
+                    for (int corner = 0; corner < 4; corner++) {
+                        int next = (corner + 1) % 4;
+                        boolean isBelow = cellValues[corner] <= threshold;
+                        if (isBelow) {
+                            polyX[numPoints] = cellX[corner];
+                            polyY[numPoints] = cellY[corner];
+                            numPoints++;
+                        }
+                        if (isBelow != (cellValues[next] <= threshold)) {
+                            double frac = (threshold - cellValues[corner])
+                                    / (cellValues[next] - cellValues[corner]);
+                            polyX[numPoints] =
+                                    cellX[corner] + frac * (cellX[next] - cellX[corner]);
+                            polyY[numPoints] =
+                                    cellY[corner] + frac * (cellY[next] - cellY[corner]);
+                            numPoints++;
+                        }
+                    }
+                    if (numPoints >= 3) {
+                        g.fillPolygon(polyX, polyY, numPoints);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Draws contours of a field every step, traced cell by cell with marching squares.
+     *
+     * @param field field to contour
+     * @param step spacing of contours
+     * @param zero value of the contour to emphasize, if emphasized
+     * @param color color of contours
+     * @param emphasizeZero true to draw the contour at zero thicker
+     */
+    private void drawContours(Field field, double step, double zero, int color,
+            boolean emphasizeZero) {
+        g.setStroke(color);
+        g.setLineDashes(null);
+        double[] crossX = new double[4];
+        double[] crossY = new double[4];
+
+        for (int sample = 0; sample < section.getNumSamples() - 1; sample++) {
+            for (int level = 0; level < section.getNumLevels() - 1; level++) {
+                if (!loadCell(field, sample, level)) {
+                    continue;
+                }
+                double cellMin = Math.min(Math.min(cellValues[0], cellValues[1]),
+                        Math.min(cellValues[2], cellValues[3]));
+                double cellMax = Math.max(Math.max(cellValues[0], cellValues[1]),
+                        Math.max(cellValues[2], cellValues[3]));
+                double first = Math.ceil((cellMin - zero) / step) * step + zero;
+
+                for (double contour = first; contour <= cellMax; contour += step) {
+                    int numCrossings = 0;
+                    for (int corner = 0; corner < 4; corner++) {
+                        int next = (corner + 1) % 4;
+                        if ((cellValues[corner] < contour)
+                                != (cellValues[next] < contour)) {
+                            double frac = (contour - cellValues[corner])
+                                    / (cellValues[next] - cellValues[corner]);
+                            crossX[numCrossings] =
+                                    cellX[corner] + frac * (cellX[next] - cellX[corner]);
+                            crossY[numCrossings] =
+                                    cellY[corner] + frac * (cellY[next] - cellY[corner]);
+                            numCrossings++;
+                        }
+                    }
+                    if (numCrossings < 2) {
+                        continue;
+                    }
+
+                    boolean isZero = emphasizeZero && Math.abs(contour - zero) < step / 2;
+                    g.setLineWidth((isZero ? 3 : 1.5) * scale);
+                    if (numCrossings == 2) {
+                        g.strokeLine(crossX[0], crossY[0], crossX[1], crossY[1]);
+                    } else {
+                        /*
+                         * Saddle: the mean of the corners decides which opposite
+                         * corners the contours cut off.
+                         */
+                        double center = (cellValues[0] + cellValues[1] + cellValues[2]
+                                + cellValues[3]) / 4;
+                        if ((center < contour) == (cellValues[0] < contour)) {
+                            g.strokeLine(crossX[0], crossY[0], crossX[1], crossY[1]);
+                            g.strokeLine(crossX[2], crossY[2], crossX[3], crossY[3]);
+                        } else {
+                            g.strokeLine(crossX[3], crossY[3], crossX[0], crossY[0]);
+                            g.strokeLine(crossX[1], crossY[1], crossX[2], crossY[2]);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Load the corners of the cell between two samples and two levels into the cell
+     * scratch space, in order around the cell.
+     *
+     * @param field field to load values of
+     * @param sample index of first sample of cell
+     * @param level index of first level of cell
+     *
+     * @return true if every corner has a value and the cell is within the plot
+     */
+    private boolean loadCell(Field field, int sample, int level) {
+        if (section.getPressure(level + 1) < PRES_TOP
+                || section.getPressure(level) > PRES_BOTTOM) {
+            return false;
+        }
+        for (int corner = 0; corner < 4; corner++) {
+            int cornerSample = sample + (corner == 1 || corner == 2 ? 1 : 0);
+            int cornerLevel = level + (corner >= 2 ? 1 : 0);
+            cellValues[corner] = field.get(section, cornerSample, cornerLevel);
+            if (!Double.isFinite(cellValues[corner])) {
+                return false;
+            }
+            cellX[corner] = getXFromDistance(section.getDistance(cornerSample));
+            cellY[corner] = getYFromPres(
+                    Math.max(PRES_TOP, section.getPressure(cornerLevel)));
+        }
+        return true;
+    }
+
+    /**
+     * Draws isobars at each pressure tick.
+     */
+    private void drawGridLines() {
+        g.setStroke(COLOR_GRAY);
+        g.setLineWidth(scale);
+        g.setLineDashes(null);
+        for (int presHPa : PRES_TICKS_HPA) {
+            double y = getYFromPres(presHPa * HPA_TO_PA);
+            g.strokeLine(plotXOffset, y, plotXMax, y);
+        }
+    }
+
+    /**
+     * Fills the ground below the surface pressure along the path.
+     */
+    private void drawTerrain() {
+        int numSamples = section.getNumSamples();
+        double[] xPoints = new double[numSamples + 2];
+        double[] yPoints = new double[numSamples + 2];
+        for (int sample = 0; sample < numSamples; sample++) {
+            double presSfc = section.getPresSfc(sample);
+            if (!Double.isFinite(presSfc)) {
+                presSfc = PRES_BOTTOM;
+            }
+            xPoints[sample] = getXFromDistance(section.getDistance(sample));
+            yPoints[sample] = getYFromPres(Math.max(PRES_TOP, Math.min(PRES_BOTTOM,
+                    presSfc)));
+        }
+        xPoints[numSamples] = plotXMax;
+        yPoints[numSamples] = plotYBottom;
+        xPoints[numSamples + 1] = plotXOffset;
+        yPoints[numSamples + 1] = plotYBottom;
+
+        g.setFill(COLOR_BROWN);
+        g.fillPolygon(xPoints, yPoints, numSamples + 2);
+    }
+
+    /**
+     * Draws frame, pressure and distance ticks, and the longitude and latitude of each
+     * end of the path.
+     */
+    private void drawAxes() {
+        g.setStroke(COLOR_BLACK);
+        g.setLineWidth(1.5 * scale);
+        g.setLineDashes(null);
+        g.strokePolyline(new double[] {plotXOffset, plotXMax, plotXMax, plotXOffset,
+            plotXOffset}, new double[] {plotYTop, plotYTop, plotYBottom, plotYBottom,
+            plotYTop}, 5);
+
+        g.setFill(COLOR_BLACK);
+        g.setFont(13 * scale, false, false);
+        g.setTextAlign(TextAlign.RIGHT);
+        g.setTextBaseline(TextBaseline.CENTER);
+        for (int presHPa : PRES_TICKS_HPA) {
+            double y = getYFromPres(presHPa * HPA_TO_PA);
+            g.strokeLine(plotXOffset - 5 * scale, y, plotXOffset, y);
+            g.fillText(Integer.toString(presHPa), plotXOffset - 8 * scale, y);
+        }
+        g.setFont(15 * scale, true, false);
+        g.fillTextRotated("Pressure (hPa)", canvasWidth * 0.03,
+                (plotYTop + plotYBottom) / 2, -90);
+
+        g.setFont(13 * scale, false, false);
+        g.setTextAlign(TextAlign.CENTER);
+        g.setTextBaseline(TextBaseline.TOP);
+        double step = getTickStep(distanceMax);
+        double distanceLast = distanceMax + step / 1e6;
+        for (double distance = 0; distance <= distanceLast; distance += step) {
+            double x = getXFromDistance(distance);
+            g.strokeLine(x, plotYBottom, x, plotYBottom + 5 * scale);
+            g.fillText(String.format("%.0f", distance), x, plotYBottom + 8 * scale);
+        }
+        g.setFont(15 * scale, true, false);
+        g.fillText("Distance (km)", (plotXOffset + plotXMax) / 2, canvasHeight * 0.935);
+
+        double[] endpoints = section.getEndpoints();
+        g.setFont(13 * scale, false, false);
+        g.setTextAlign(TextAlign.LEFT);
+        g.fillText(String.format("%.4f, %.4f", endpoints[0], endpoints[1]), plotXOffset,
+                canvasHeight * 0.935);
+        g.setTextAlign(TextAlign.RIGHT);
+        g.fillText(String.format("%.4f, %.4f", endpoints[2], endpoints[3]), plotXMax,
+                canvasHeight * 0.935);
+    }
+
+    /**
+     * Returns x-coordinate of a distance along the path.
+     */
+    private double getXFromDistance(double distance) {
+        if (distanceMax < 1e-9) {
+            return (plotXOffset + plotXMax) / 2;
+        }
+        return plotXOffset + distance / distanceMax * (plotXMax - plotXOffset);
+    }
+
+    /**
+     * Returns y-coordinate of a pressure, pressure decreasing logarithmically upwards.
+     */
+    private double getYFromPres(double pres) {
+        return plotYTop + Math.log(pres / PRES_TOP) / Math.log(PRES_BOTTOM / PRES_TOP)
+                * (plotYBottom - plotYTop);
+    }
+
+    /**
+     * Returns a step of 1, 2 or 5 times a power of ten giving no more than a few ticks
+     * over a range of distances.
+     */
+    private static double getTickStep(double range) {
+        if (range < 1e-9) {
+            return 1;
+        }
+        double rough = range / MAX_X_TICKS;
+        double magnitude = Math.pow(10, Math.floor(Math.log10(rough)));
+        double fraction = rough / magnitude;
+        if (fraction <= 1) {
+            return magnitude;
+        } else if (fraction <= 2) {
+            return 2 * magnitude;
+        } else if (fraction <= 5) {
+            return 5 * magnitude;
+        } else {
+            return 10 * magnitude;
+        }
+    }
+
+    /**
+     * A field of a cross-section, as a value at each sample and level.
+     */
+    @FunctionalInterface
+    private interface Field {
+
+        double get(CrossSection section, int sample, int level);
+    }
+}
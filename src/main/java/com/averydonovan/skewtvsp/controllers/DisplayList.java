@@ -0,0 +1,389 @@
+/*
+ * Copyright (c) 2024, Avery Donovan
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.averydonovan.skewtvsp.controllers;
+
+import com.averydonovan.skewtvsp.utils.StreamingPngWriter;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * Records drawing operations so that they can be replayed later on other graphics. All
+ * the work of computing what to draw, such as the points along every adiabat, is done
+ * while recording, which can happen on any thread. Replaying only issues the recorded
+ * operations, so it is quick enough to do on the JavaFX application thread.
+ *
+ * <p>
+ * Operations are kept in a compact form: an array of operation codes, an array of all
+ * their numeric arguments including polyline points, and an array of their text and
+ * other arguments. A display list is not safe to record into from more than one thread
+ * at a time, but once recorded it can be replayed from any thread.
+ *
+ * @author Avery Donovan
+ */
+public class DisplayList implements PlotGraphics {
+
+    /*
+     * Operation codes.
+     */
+    private static final byte OP_FILL = 0;
+    private static final byte OP_STROKE = 1;
+    private static final byte OP_LINE_WIDTH = 2;
+    private static final byte OP_LINE_DASHES = 3;
+    private static final byte OP_FONT = 4;
+    private static final byte OP_TEXT_ALIGN = 5;
+    private static final byte OP_TEXT_BASELINE = 6;
+    private static final byte OP_CLEAR_RECT = 7;
+    private static final byte OP_FILL_RECT = 8;
+    private static final byte OP_STROKE_LINE = 9;
+    private static final byte OP_STROKE_POLYLINE = 10;
+    private static final byte OP_FILL_TEXT = 11;
+    private static final byte OP_FILL_TEXT_ROTATED = 12;
+    private static final byte OP_FILL_POLYGON = 13;
+
+    private byte[] ops = new byte[64];
+    private int numOps = 0;
+    private double[] nums = new double[256];
+    private int numNums = 0;
+    private Object[] refs = new Object[16];
+    private int numRefs = 0;
+
+    /**
+     * Create new, empty display list.
+     */
+    public DisplayList() {
+        // Do nothing
+    }
+
+    /**
+     * Returns number of operations recorded.
+     *
+     * @return number of operations
+     */
+    public int size() {
+        return numOps;
+    }
+
+    /**
+     * Returns approximate memory used by recorded operations.
+     *
+     * @return size in bytes, not counting text
+     */
+    public long getSizeInBytes() {
+        return numOps + 8L * numNums + 8L * numRefs;
+    }
+
+    /**
+     * Add all operations of another display list after those already recorded.
+     *
+     * @param other display list to add
+     */
+    public void append(DisplayList other) {
+        ensureOps(other.numOps);
+        System.arraycopy(other.ops, 0, ops, numOps, other.numOps);
+        numOps += other.numOps;
+
+        ensureNums(other.numNums);
+        System.arraycopy(other.nums, 0, nums, numNums, other.numNums);
+        numNums += other.numNums;
+
+        ensureRefs(other.numRefs);
+        System.arraycopy(other.refs, 0, refs, numRefs, other.numRefs);
+        numRefs += other.numRefs;
+    }
+
+    /**
+     * Render recorded operations to a PNG image a strip of rows at a time, so that memory
+     * use depends on the width of the image and the strip height rather than on the size
+     * of the whole image. The operations must cover the whole image with an opaque
+     * background, as strips are not cleared between rows. Can be called from any thread.
+     *
+     * @param out stream to write PNG to, closed when done
+     * @param width width of image in pixels
+     * @param height height of image in pixels
+     * @param dpi resolution to record in the image
+     * @param stripHeight rows rendered at a time
+     *
+     * @throws IOException unable to write image
+     */
+    public void writePng(OutputStream out, int width, int height, int dpi,
+            int stripHeight) throws IOException {
+        stripHeight = Math.min(stripHeight, height);
+        BufferedImage strip =
+                new BufferedImage(width, stripHeight, BufferedImage.TYPE_INT_RGB);
+        int[] stripPixels = ((DataBufferInt) strip.getRaster().getDataBuffer()).getData();
+
+        try (StreamingPngWriter png = new StreamingPngWriter(out, width, height, dpi)) {
+            for (int top = 0; top < height; top += stripHeight) {
+                int numRows = Math.min(stripHeight, height - top);
+
+                Graphics2D g2d = strip.createGraphics();
+                g2d.translate(0, -top);
+                g2d.clip(new Rectangle(0, top, width, numRows));
+                AwtPlotGraphics awt = new AwtPlotGraphics(g2d);
+                replay(awt);
+                awt.dispose();
+
+                png.writeRows(stripPixels, 0, width, numRows);
+            }
+        }
+    }
+
+    /**
+     * Issue all recorded operations, in order, to other graphics.
+     *
+     * @param target graphics to draw to
+     */
+    public void replay(PlotGraphics target) {
+        int num = 0;
+        int ref = 0;
+        double[] xPoints = new double[0];
+        double[] yPoints = new double[0];
+
+        for (int op = 0; op < numOps; op++) {
+            switch (ops[op]) {
+                case OP_FILL:
+                    target.setFill((int) nums[num++]);
+                    break;
+                case OP_STROKE:
+                    target.setStroke((int) nums[num++]);
+                    break;
+                case OP_LINE_WIDTH:
+                    target.setLineWidth(nums[num++]);
+                    break;
+                case OP_LINE_DASHES:
+                    target.setLineDashes((double[]) refs[ref++]);
+                    break;
+                case OP_FONT: {
+                    int style = (int) nums[num + 1];
+                    target.setFont(nums[num], (style & 1) != 0, (style & 2) != 0);
+                    num += 2;
+                    break;
+                }
+                case OP_TEXT_ALIGN:
+                    target.setTextAlign((TextAlign) refs[ref++]);
+                    break;
+                case OP_TEXT_BASELINE:
+                    target.setTextBaseline((TextBaseline) refs[ref++]);
+                    break;
+                case OP_CLEAR_RECT:
+                    target.clearRect(nums[num], nums[num + 1], nums[num + 2],
+                            nums[num + 3]);
+                    num += 4;
+                    break;
+                case OP_FILL_RECT:
+                    target.fillRect(nums[num], nums[num + 1], nums[num + 2],
+                            nums[num + 3]);
+                    num += 4;
+                    break;
+                case OP_STROKE_LINE:
+                    target.strokeLine(nums[num], nums[num + 1], nums[num + 2],
+                            nums[num + 3]);
+                    num += 4;
+                    break;
+                case OP_STROKE_POLYLINE: {
+                    int numPoints = (int) nums[num++];
+                    if (xPoints.length < numPoints) {
+                        xPoints = new double[numPoints];
+                        yPoints = new double[numPoints];
+                    }
+                    System.arraycopy(nums, num, xPoints, 0, numPoints);
+                    System.arraycopy(nums, num + numPoints, yPoints, 0, numPoints);
+                    num += 2 * numPoints;
+                    target.strokePolyline(xPoints, yPoints, numPoints);
+                    break;
+                }
+                case OP_FILL_POLYGON: {
+                    int numPoints = (int) nums[num++];
+                    if (xPoints.length < numPoints) {
+                        xPoints = new double[numPoints];
+                        yPoints = new double[numPoints];
+                    }
+                    System.arraycopy(nums, num, xPoints, 0, numPoints);
+                    System.arraycopy(nums, num + numPoints, yPoints, 0, numPoints);
+                    num += 2 * numPoints;
+                    target.fillPolygon(xPoints, yPoints, numPoints);
+                    break;
+                }
+                case OP_FILL_TEXT:
+                    target.fillText((String) refs[ref++], nums[num], nums[num + 1]);
+                    num += 2;
+                    break;
+                case OP_FILL_TEXT_ROTATED:
+                    target.fillTextRotated((String) refs[ref++], nums[num], nums[num + 1],
+                            nums[num + 2]);
+                    num += 3;
+                    break;
+                default:
+                    throw new IllegalStateException("Unknown operation " + ops[op]);
+            }
+        }
+    }
+
+    @Override
+    public void setFill(int rgb) {
+        addOp(OP_FILL);
+        addNum(rgb);
+    }
+
+    @Override
+    public void setStroke(int rgb) {
+        addOp(OP_STROKE);
+        addNum(rgb);
+    }
+
+    @Override
+    public void setLineWidth(double width) {
+        addOp(OP_LINE_WIDTH);
+        addNum(width);
+    }
+
+    @Override
+    public void setLineDashes(double... dashes) {
+        addOp(OP_LINE_DASHES);
+        addRef(dashes == null ? null : dashes.clone());
+    }
+
+    @Override
+    public void setFont(double size, boolean bold, boolean italic) {
+        addOp(OP_FONT);
+        addNum(size);
+        addNum((bold ? 1 : 0) | (italic ? 2 : 0));
+    }
+
+    @Override
+    public void setTextAlign(TextAlign align) {
+        addOp(OP_TEXT_ALIGN);
+        addRef(align);
+    }
+
+    @Override
+    public void setTextBaseline(TextBaseline baseline) {
+        addOp(OP_TEXT_BASELINE);
+        addRef(baseline);
+    }
+
+    @Override
+    public void clearRect(double x, double y, double width, double height) {
+        addOp(OP_CLEAR_RECT);
+        addNums(x, y, width, height);
+    }
+
+    @Override
+    public void fillRect(double x, double y, double width, double height) {
+        addOp(OP_FILL_RECT);
+        addNums(x, y, width, height);
+    }
+
+    @Override
+    public void strokeLine(double x1, double y1, double x2, double y2) {
+        addOp(OP_STROKE_LINE);
+        addNums(x1, y1, x2, y2);
+    }
+
+    @Override
+    public void strokePolyline(double[] xPoints, double[] yPoints, int numPoints) {
+        addOp(OP_STROKE_POLYLINE);
+        addPoints(xPoints, yPoints, numPoints);
+    }
+
+    @Override
+    public void fillPolygon(double[] xPoints, double[] yPoints, int numPoints) {
+        addOp(OP_FILL_POLYGON);
+        addPoints(xPoints, yPoints, numPoints);
+    }
+
+    @Override
+    public void fillText(String text, double x, double y) {
+        addOp(OP_FILL_TEXT);
+        addRef(text);
+        addNum(x);
+        addNum(y);
+    }
+
+    @Override
+    public void fillTextRotated(String text, double x, double y, double degrees) {
+        addOp(OP_FILL_TEXT_ROTATED);
+        addRef(text);
+        addNum(x);
+        addNum(y);
+        addNum(degrees);
+    }
+
+    private void addPoints(double[] xPoints, double[] yPoints, int numPoints) {
+        ensureNums(1 + 2 * numPoints);
+        nums[numNums++] = numPoints;
+        System.arraycopy(xPoints, 0, nums, numNums, numPoints);
+        numNums += numPoints;
+        System.arraycopy(yPoints, 0, nums, numNums, numPoints);
+        numNums += numPoints;
+    }
+
+    private void addOp(byte op) {
+        ensureOps(1);
+        ops[numOps++] = op;
+    }
+
+    private void addNum(double value) {
+        ensureNums(1);
+        nums[numNums++] = value;
+    }
+
+    private void addNums(double first, double second, double third, double fourth) {
+        ensureNums(4);
+        nums[numNums++] = first;
+        nums[numNums++] = second;
+        nums[numNums++] = third;
+        nums[numNums++] = fourth;
+    }
+
+    private void addRef(Object value) {
+        ensureRefs(1);
+        refs[numRefs++] = value;
+    }
+
+    private void ensureOps(int extra) {
+        if (numOps + extra > ops.length) {
+            ops = Arrays.copyOf(ops, Math.max(ops.length * 2, numOps + extra));
+        }
+    }
+
+    private void ensureNums(int extra) {
+        if (numNums + extra > nums.length) {
+            nums = Arrays.copyOf(nums, Math.max(nums.length * 2, numNums + extra));
+        }
+    }
+
+    private void ensureRefs(int extra) {
+        if (numRefs + extra > refs.length) {
+            refs = Arrays.copyOf(refs, Math.max(refs.length * 2, numRefs + extra));
+        }
+    }
+}
@@ -0,0 +1,164 @@
+/*
+ * Copyright (c) 2024, Avery Donovan
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.averydonovan.skewtvsp.controllers;
+
+import javafx.geometry.VPos;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.paint.Color;
+import javafx.scene.text.Font;
+import javafx.scene.text.FontPosture;
+import javafx.scene.text.FontWeight;
+import javafx.scene.text.TextAlignment;
+import javafx.scene.transform.Rotate;
+
+/**
+ * Draws to a JavaFX canvas. Must only be used on the JavaFX application thread while
+ * the canvas is part of a scene.
+ *
+ * @author Avery Donovan
+ */
+public class FxPlotGraphics implements PlotGraphics {
+
+    private final GraphicsContext gc;
+
+    /**
+     * Create new instance drawing to a canvas.
+     *
+     * @param gc GraphicsContext of canvas to draw to
+     */
+    public FxPlotGraphics(GraphicsContext gc) {
+        this.gc = gc;
+    }
+
+    /**
+     * Returns GraphicsContext being drawn to.
+     *
+     * @return GraphicsContext
+     */
+    public GraphicsContext getGraphicsContext() {
+        return gc;
+    }
+
+    @Override
+    public void setFill(int rgb) {
+        gc.setFill(toColor(rgb));
+    }
+
+    @Override
+    public void setStroke(int rgb) {
+        gc.setStroke(toColor(rgb));
+    }
+
+    @Override
+    public void setLineWidth(double width) {
+        gc.setLineWidth(width);
+    }
+
+    @Override
+    public void setLineDashes(double... dashes) {
+        gc.setLineDashes(dashes);
+    }
+
+    @Override
+    public void setFont(double size, boolean bold, boolean italic) {
+        gc.setFont(Font.font("sans-serif", bold ? FontWeight.BOLD : FontWeight.NORMAL,
+                italic ? FontPosture.ITALIC : FontPosture.REGULAR, size));
+    }
+
+    @Override
+    public void setTextAlign(TextAlign align) {
+        switch (align) {
+            case LEFT:
+                gc.setTextAlign(TextAlignment.LEFT);
+                break;
+            case RIGHT:
+                gc.setTextAlign(TextAlignment.RIGHT);
+                break;
+            default:
+                gc.setTextAlign(TextAlignment.CENTER);
+                break;
+        }
+    }
+
+    @Override
+    public void setTextBaseline(TextBaseline baseline) {
+        switch (baseline) {
+            case TOP:
+                gc.setTextBaseline(VPos.TOP);
+                break;
+            case BASELINE:
+                gc.setTextBaseline(VPos.BASELINE);
+                break;
+            default:
+                gc.setTextBaseline(VPos.CENTER);
+                break;
+        }
+    }
+
+    @Override
+    public void clearRect(double x, double y, double width, double height) {
+        gc.clearRect(x, y, width, height);
+    }
+
+    @Override
+    public void fillRect(double x, double y, double width, double height) {
+        gc.fillRect(x, y, width, height);
+    }
+
+    @Override
+    public void strokeLine(double x1, double y1, double x2, double y2) {
+        gc.strokeLine(x1, y1, x2, y2);
+    }
+
+    @Override
+    public void strokePolyline(double[] xPoints, double[] yPoints, int numPoints) {
+        gc.strokePolyline(xPoints, yPoints, numPoints);
+    }
+
+    @Override
+    public void fillPolygon(double[] xPoints, double[] yPoints, int numPoints) {
+        gc.fillPolygon(xPoints, yPoints, numPoints);
+    }
+
+    @Override
+    public void fillText(String text, double x, double y) {
+        gc.fillText(text, x, y);
+    }
+
+    @Override
+    public void fillTextRotated(String text, double x, double y, double degrees) {
+        gc.save();
+        Rotate r = new Rotate(degrees, x, y);
+        gc.setTransform(r.getMxx(), r.getMyx(), r.getMxy(), r.getMyy(), r.getTx(),
+                r.getTy());
+        gc.fillText(text, x, y);
+        gc.restore();
+    }
+
+    private static Color toColor(int rgb) {
+        return Color.rgb((rgb >> 16) & 0xFF, (rgb >> 8) & 0xFF, rgb & 0xFF);
+    }
+}
@@ -0,0 +1,506 @@
+/*
+ * Copyright (c) 2024, Avery Donovan
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.averydonovan.skewtvsp.controllers;
+
+import com.averydonovan.skewtvsp.controllers.PlotGraphics.TextAlign;
+import com.averydonovan.skewtvsp.controllers.PlotGraphics.TextBaseline;
+import com.averydonovan.skewtvsp.utils.Metrics;
+import com.averydonovan.skewtvsp.utils.Sounding;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.Duration;
+import java.time.format.DateTimeFormatter;
+import java.util.Locale;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Draws a meteogram: surface fields and stability indices at one point through every
+ * forecast hour of a run, as a column of charts sharing a time axis. Uses the same
+ * {@link PlotGraphics} drawing as {@link SkewTPlot}, so it can be drawn on screen,
+ * recorded, or rendered headless to PNG or SVG.
+ *
+ * <p>
+ * Soundings for every forecast hour can be read in one call with
+ * {@link com.averydonovan.skewtvsp.utils.ModelRunDataset#getSoundings(int, int)
+ * ModelRunDataset.getSoundings}.
+ *
+ * @author Avery Donovan
+ */
+public class MeteogramPlot {
+
+    private static final Logger LOG =
+            LoggerFactory.getLogger(MeteogramPlot.class.getName());
+
+    private static final Metrics.Histogram renderTimer =
+            Metrics.timer("meteogram.render");
+    private static final Metrics.Histogram exportTimer =
+            Metrics.timer("meteogram.export");
+
+    private static final int HPA_TO_PA = 100;
+    private static final double C_TO_K = 273.15;
+
+    private static final int PLOT_BASE_WIDTH = 1200;
+    private static final int PLOT_BASE_HEIGHT = 1500;
+    private static final int NUM_PANELS = 6;
+    private static final int MAX_Y_TICKS = 5;
+    private static final int MAX_TIME_LABELS = 12;
+    private static final int[] TIME_LABEL_STEPS = {1, 2, 3, 6, 12, 24, 48, 96};
+
+    private static final int COLOR_BLACK = 0x000000;
+    private static final int COLOR_WHITE = 0xFFFFFF;
+    private static final int COLOR_GRAY = 0xC0C0C0;
+    private static final int COLOR_RED = 0xFF0000;
+    private static final int COLOR_BLUE = 0x0000FF;
+    private static final int COLOR_GREEN = 0x008000;
+    private static final int COLOR_TEAL = 0x008080;
+    private static final int COLOR_BROWN = 0x7F5F3F;
+
+    private static final DateTimeFormatter TIME_LABEL_FORMAT =
+            DateTimeFormatter.ofPattern("dd HH'Z'", Locale.US);
+
+    /**
+     * Graphics being drawn to.
+     */
+    private final PlotGraphics g;
+
+    /*
+     * Plotting area setup variables.
+     */
+    private final double scale;
+    private final double canvasWidth;
+    private final double canvasHeight;
+    private final double plotXOffset;
+    private final double plotXMax;
+    private final double plotYTop;
+    private final double panelHeight;
+    private final double panelGap;
+
+    /*
+     * Forecast hour of each sounding, and range of hours plotted.
+     */
+    private double[] hours = new double[0];
+    private double hourMin = 0;
+    private double hourMax = 0;
+
+    /**
+     * Create new meteogram drawing to given graphics.
+     *
+     * @param g graphics to draw to
+     * @param scale factor to scale plot by, 1 being 1200x1500 pixels
+     */
+    public MeteogramPlot(PlotGraphics g, double scale) {
+        this.g = g;
+        this.scale = scale;
+
+        canvasWidth = PLOT_BASE_WIDTH * scale;
+        canvasHeight = PLOT_BASE_HEIGHT * scale;
+        plotXOffset = canvasWidth * 0.10;
+        plotXMax = canvasWidth * 0.96;
+        plotYTop = canvasHeight * 0.10;
+        double plotYBottom = canvasHeight * 0.93;
+        panelGap = canvasHeight * 0.03;
+        panelHeight = (plotYBottom - plotYTop - (NUM_PANELS - 1) * panelGap) / NUM_PANELS;
+    }
+
+    /**
+     * Returns width of meteogram at a given resolution.
+     *
+     * @param dpi resolution in dots per inch, 100 being 1200x1500 pixels
+     *
+     * @return width in pixels
+     */
+    public static int getPlotWidth(int dpi) {
+        return (int) Math.round(PLOT_BASE_WIDTH * getScale(dpi));
+    }
+
+    /**
+     * Returns height of meteogram at a given resolution.
+     *
+     * @param dpi resolution in dots per inch, 100 being 1200x1500 pixels
+     *
+     * @return height in pixels
+     */
+    public static int getPlotHeight(int dpi) {
+        return (int) Math.round(PLOT_BASE_HEIGHT * getScale(dpi));
+    }
+
+    /**
+     * Returns scale of meteogram at a given resolution.
+     *
+     * @param dpi resolution in dots per inch
+     *
+     * @return factor to scale plot by
+     */
+    private static double getScale(int dpi) {
+        return (double) dpi / SkewTPlot.PLOT_BASE_DPI;
+    }
+
+    /**
+     * Record a meteogram into a display list, ready to be replayed onto any graphics.
+     * Can be called from any thread.
+     *
+     * @param soundings sounding at the same point for each forecast hour, earliest first
+     * @param scale factor to scale plot by, 1 being 1200x1500 pixels
+     *
+     * @return recorded meteogram
+     */
+    public static DisplayList record(Sounding[] soundings, double scale) {
+        DisplayList result = new DisplayList();
+        new MeteogramPlot(result, scale).plot(soundings);
+        return result;
+    }
+
+    /**
+     * Write a meteogram as a PNG image. Like Skew-T exports, the image is rendered and
+     * written a strip of rows at a time. Can be called from any thread, and does not
+     * need a display.
+     *
+     * @param out stream to write PNG to, closed when done
+     * @param soundings sounding at the same point for each forecast hour, earliest first
+     * @param dpi resolution in dots per inch, 100 being 1200x1500 pixels
+     *
+     * @throws IOException unable to write image
+     */
+    public static void writePng(OutputStream out, Sounding[] soundings, int dpi)
+            throws IOException {
+        long startNanos = System.nanoTime();
+        DisplayList displayList = record(soundings, getScale(dpi));
+        displayList.writePng(out, getPlotWidth(dpi), getPlotHeight(dpi), dpi,
+                SkewTPlot.EXPORT_STRIP_HEIGHT);
+
+        long elapsedNanos = exportTimer.recordSince(startNanos);
+        LOG.debug("Exported meteogram of {} times in {} ms", soundings.length,
+                elapsedNanos / 1000000);
+    }
+
+    /**
+     * Plot a meteogram.
+     *
+     * @param soundings sounding at the same point for each forecast hour, earliest first
+     */
+    public void plot(Sounding[] soundings) {
+        long startNanos = System.nanoTime();
+        int numTimes = soundings.length;
+
+        hours = new double[numTimes];
+        for (int index = 0; index < numTimes; index++) {
+            hours[index] = Duration.between(soundings[index].getAnalysisTime(),
+                    soundings[index].getValidTime()).toMinutes() / 60.0;
+        }
+        hourMin = numTimes == 0 ? 0 : hours[0];
+        hourMax = numTimes == 0 ? 0 : hours[numTimes - 1];
+
+        double[] temps = new double[numTimes];
+        double[] dewps = new double[numTimes];
+        double[] msls = new double[numTimes];
+        double[] capes = new double[numTimes];
+        double[] cins = new double[numTimes];
+        double[] lftxs = new double[numTimes];
+        double[] kIndices = new double[numTimes];
+        double[] totalTotals = new double[numTimes];
+        double[] sweats = new double[numTimes];
+        for (int index = 0; index < numTimes; index++) {
+            Sounding sounding = soundings[index];
+            temps[index] = sounding.getTemp2m() - C_TO_K;
+            dewps[index] = sounding.getDewp2m() - C_TO_K;
+            msls[index] = sounding.getMSL() / HPA_TO_PA;
+            capes[index] = sounding.getCAPE();
+            cins[index] = sounding.getCIN();
+            lftxs[index] = sounding.getLFTX();
+            kIndices[index] = sounding.getKIndex();
+            totalTotals[index] = sounding.getTotalTotals();
+            sweats[index] = sounding.getSWEAT();
+        }
+
+        g.clearRect(0, 0, canvasWidth, canvasHeight);
+        g.setFill(COLOR_WHITE);
+        g.fillRect(0, 0, canvasWidth, canvasHeight);
+
+        if (numTimes > 0) {
+            drawTitle(soundings[0]);
+        }
+
+        drawPanel(0, "Temperature and Dew Point 2m (C)", false,
+                new Series("Temperature", COLOR_BLACK, temps),
+                new Series("Dew Point", COLOR_RED, dewps));
+        drawPanel(1, "Mean Sea Level Pressure (hPa)", false,
+                new Series("MSL", COLOR_BLUE, msls));
+        drawPanel(2, "CAPE and CIN (J/kg)", true,
+                new Series("CAPE", COLOR_GREEN, capes),
+                new Series("CIN", COLOR_TEAL, cins));
+        drawPanel(3, "Lifted Index (C)", true,
+                new Series("Lifted Index", COLOR_BROWN, lftxs));
+        drawPanel(4, "K-Index and Total Totals", false,
+                new Series("K-Index", COLOR_BLACK, kIndices),
+                new Series("Total Totals", COLOR_BLUE, totalTotals));
+        drawPanel(5, "SWEAT", true,
+                new Series("SWEAT", COLOR_RED, sweats));
+
+        drawTimeLabels(soundings);
+
+        renderTimer.recordSince(startNanos);
+    }
+
+    /**
+     * Draws labels for location, analysis time and model.
+     */
+    private void drawTitle(Sounding sounding) {
+        g.setFill(COLOR_BLACK);
+        g.setStroke(COLOR_BLACK);
+        g.setLineWidth(0);
+        g.setTextAlign(TextAlign.CENTER);
+        g.setTextBaseline(TextBaseline.CENTER);
+
+        g.setFont(22 * scale, false, false);
+        g.fillText(String.format("Longitude, Latitude: %.6f, %.6f", sounding.getLon(),
+                sounding.getLat()), canvasWidth / 2, canvasHeight * 0.025);
+
+        g.setFont(17 * scale, false, false);
+        g.fillText("Analysis: " + sounding.getAnalysisTime().toString(), canvasWidth / 2,
+                canvasHeight * 0.048);
+
+        g.setFont(13 * scale, false, true);
+        g.fillText("Source: " + sounding.getModelName(), canvasWidth / 2,
+                canvasHeight * 0.068);
+    }
+
+    /**
+     * Draws one chart: its frame, value axis, time grid lines and series.
+     *
+     * @param panel position of chart, 0 being the top
+     * @param title title drawn above chart
+     * @param withZero true to always include zero on the value axis
+     * @param series values to plot
+     */
+    private void drawPanel(int panel, String title, boolean withZero, Series... series) {
+        double top = plotYTop + panel * (panelHeight + panelGap);
+        double bottom = top + panelHeight;
+
+        /*
+         * Fit value axis to finite values, rounded out to whole tick steps.
+         */
+        double valueMin = Double.POSITIVE_INFINITY;
+        double valueMax = Double.NEGATIVE_INFINITY;
+        for (Series each : series) {
+            for (double value : each.values) {
+                if (Double.isFinite(value)) {
+                    valueMin = Math.min(valueMin, value);
+                    valueMax = Math.max(valueMax, value);
+                }
+            }
+        }
+        if (valueMin > valueMax) {
+            valueMin = 0;
+            valueMax = 1;
+        }
+        if (withZero) {
+            valueMin = Math.min(valueMin, 0);
+            valueMax = Math.max(valueMax, 0);
+        }
+        if (valueMax - valueMin < 1e-9) {
+            valueMin -= 1;
+            valueMax += 1;
+        }
+        double step = getTickStep(valueMax - valueMin);
+        valueMin = Math.floor(valueMin / step) * step;
+        valueMax = Math.ceil(valueMax / step) * step;
+        double valueRange = valueMax - valueMin;
+
+        /*
+         * Grid lines at each forecast hour and each value tick.
+         */
+        g.setStroke(COLOR_GRAY);
+        g.setLineWidth(scale);
+        for (double hour : hours) {
+            double x = getXFromHour(hour);
+            g.strokeLine(x, top, x, bottom);
+        }
+
+        g.setFill(COLOR_BLACK);
+        g.setFont(13 * scale, false, false);
+        g.setTextAlign(TextAlign.RIGHT);
+        g.setTextBaseline(TextBaseline.CENTER);
+        for (double value = valueMin; value <= valueMax + step / 2; value += step) {
+            double y = bottom - (value - valueMin) / valueRange * panelHeight;
+            g.setStroke(COLOR_GRAY);
+            g.strokeLine(plotXOffset, y, plotXMax, y);
+            g.fillText(formatTick(value, step), plotXOffset - 6 * scale, y);
+        }
+
+        if (withZero && valueMin < 0 && valueMax > 0) {
+            double y = bottom - (0 - valueMin) / valueRange * panelHeight;
+            g.setStroke(COLOR_BLACK);
+            g.strokeLine(plotXOffset, y, plotXMax, y);
+        }
+
+        /*
+         * Frame, title and legend.
+         */
+        g.setStroke(COLOR_BLACK);
+        g.setLineWidth(1.5 * scale);
+        g.strokePolyline(new double[] {plotXOffset, plotXMax, plotXMax, plotXOffset,
+            plotXOffset}, new double[] {top, top, bottom, bottom, top}, 5);
+
+        g.setFont(15 * scale, true, false);
+        g.setTextAlign(TextAlign.LEFT);
+        g.setTextBaseline(TextBaseline.BASELINE);
+        g.fillText(title, plotXOffset, top - 8 * scale);
+
+        g.setFont(13 * scale, false, false);
+        g.setTextAlign(TextAlign.RIGHT);
+        double legendX = plotXMax;
+        for (int index = series.length - 1; index >= 0; index--) {
+            g.setFill(series[index].color);
+            g.fillText(series[index].label, legendX, top - 8 * scale);
+            legendX -= (series[index].label.length() * 8 + 20) * scale;
+        }
+
+        /*
+         * Series, as lines broken wherever a value is missing, with a marker at each
+         * forecast hour.
+         */
+        double markerSize = 5 * scale;
+        for (Series each : series) {
+            g.setStroke(each.color);
+            g.setFill(each.color);
+            g.setLineWidth(2 * scale);
+
+            double[] xPoints = new double[hours.length];
+            double[] yPoints = new double[hours.length];
+            int numPoints = 0;
+            for (int index = 0; index <= hours.length; index++) {
+                boolean isFinite = index < hours.length
+                        && index < each.values.length
+                        && Double.isFinite(each.values[index]);
+                if (isFinite) {
+                    double x = getXFromHour(hours[index]);
+                    double y = bottom - (each.values[index] - valueMin) / valueRange
+                            * panelHeight;
+                    xPoints[numPoints] = x;
+                    yPoints[numPoints] = y;
+                    numPoints++;
+                    g.fillRect(x - markerSize / 2, y - markerSize / 2, markerSize,
+                            markerSize);
+                } else {
+                    if (numPoints > 1) {
+                        g.strokePolyline(xPoints, yPoints, numPoints);
+                    }
+                    numPoints = 0;
+                }
+            }
+        }
+    }
+
+    /**
+     * Draws forecast hour and valid time under the bottom chart. When there are many
+     * forecast hours only every few hours are labelled, so that labels do not overlap.
+     */
+    private void drawTimeLabels(Sounding[] soundings) {
+        double bottom = plotYTop + NUM_PANELS * panelHeight + (NUM_PANELS - 1) * panelGap;
+        int labelStep = TIME_LABEL_STEPS[TIME_LABEL_STEPS.length - 1];
+        for (int step : TIME_LABEL_STEPS) {
+            if ((hourMax - hourMin) / step < MAX_TIME_LABELS) {
+                labelStep = step;
+                break;
+            }
+        }
+
+        g.setFill(COLOR_BLACK);
+        g.setStroke(COLOR_BLACK);
+        g.setLineWidth(1.5 * scale);
+        g.setFont(13 * scale, false, false);
+        g.setTextAlign(TextAlign.CENTER);
+        g.setTextBaseline(TextBaseline.TOP);
+
+        for (int index = 0; index < hours.length; index++) {
+            if (Math.round(hours[index]) % labelStep != 0) {
+                continue;
+            }
+            double x = getXFromHour(hours[index]);
+            g.strokeLine(x, bottom, x, bottom + 5 * scale);
+            g.fillText(String.format("+%.0f h", hours[index]), x, bottom + 8 * scale);
+            g.fillText(soundings[index].getValidTime().format(TIME_LABEL_FORMAT), x,
+                    bottom + 26 * scale);
+        }
+    }
+
+    /**
+     * Returns x-coordinate of a forecast hour.
+     */
+    private double getXFromHour(double hour) {
+        if (hourMax - hourMin < 1e-9) {
+            return (plotXOffset + plotXMax) / 2;
+        }
+        return plotXOffset
+                + (hour - hourMin) / (hourMax - hourMin) * (plotXMax - plotXOffset);
+    }
+
+    /**
+     * Returns a step of 1, 2 or 5 times a power of ten giving no more than a few ticks
+     * over a range of values.
+     */
+    private static double getTickStep(double range) {
+        double rough = range / MAX_Y_TICKS;
+        double magnitude = Math.pow(10, Math.floor(Math.log10(rough)));
+        double fraction = rough / magnitude;
+        if (fraction <= 1) {
+            return magnitude;
+        } else if (fraction <= 2) {
+            return 2 * magnitude;
+        } else if (fraction <= 5) {
+            return 5 * magnitude;
+        } else {
+            return 10 * magnitude;
+        }
+    }
+
+    /**
+     * Formats a tick value with only as many decimal places as the step needs.
+     */
+    private static String formatTick(double value, double step) {
+        int decimals = Math.max(0, (int) Math.ceil(-Math.log10(step) - 1e-9));
+        // Avoid labelling a tick that should be zero as -0
+        double rounded = Math.abs(value) < step / 1e6 ? 0 : value;
+        return String.format("%." + decimals + "f", rounded);
+    }
+
+    /**
+     * A named line of values, one per forecast hour.
+     */
+    private static final class Series {
+
+        private final String label;
+        private final int color;
+        private final double[] values;
+
+        private Series(String label, int color, double[] values) {
+            this.label = label;
+            this.color = color;
+            this.values = values;
+        }
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright (c) 2024, Avery Donovan
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.averydonovan.skewtvsp.controllers;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.nio.IntBuffer;
+import java.util.function.Consumer;
+import javafx.scene.image.Image;
+import javafx.scene.image.PixelBuffer;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.WritableImage;
+
+/**
+ * Offscreen image drawn with {@link AwtPlotGraphics} and shown in the window without
+ * copying. The pixels of the AWT image and of the JavaFX image are the same array,
+ * shared through a {@link PixelBuffer}.
+ *
+ * <p>
+ * A view that isn't being shown yet can be drawn on any thread, straight into the
+ * shared pixels. Once drawn, {@link #markUpdated()} is called on the JavaFX application
+ * thread before the image is shown. To change a drawing that is on screen, draw into
+ * another view and swap the two, so JavaFX never shows a half-drawn image.
+ *
+ * @author Avery Donovan
+ */
+public class PixelBufferView {
+
+    private final int width;
+    private final int height;
+
+    /**
+     * Image drawn to, sharing its pixels with the PixelBuffer.
+     */
+    private final BufferedImage image;
+    private final PixelBuffer<IntBuffer> pixelBuffer;
+    private final WritableImage fxImage;
+
+    /**
+     * Create new, transparent image.
+     *
+     * @param width width in pixels
+     * @param height height in pixels
+     */
+    public PixelBufferView(int width, int height) {
+        this.width = width;
+        this.height = height;
+
+        // JavaFX only accepts premultiplied ARGB for shared int pixels
+        image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB_PRE);
+        int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+        pixelBuffer = new PixelBuffer<>(width, height, IntBuffer.wrap(pixels),
+                PixelFormat.getIntArgbPreInstance());
+        fxImage = new WritableImage(pixelBuffer);
+    }
+
+    /**
+     * Returns width of image.
+     *
+     * @return width in pixels
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * Returns height of image.
+     *
+     * @return height in pixels
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Check whether image is a given size.
+     *
+     * @param width width in pixels
+     * @param height height in pixels
+     *
+     * @return true if image is that size
+     */
+    public boolean isSize(int width, int height) {
+        return this.width == width && this.height == height;
+    }
+
+    /**
+     * Returns image to show on screen, such as in an ImageView. The same image is
+     * returned every time and shows whatever has been drawn.
+     *
+     * @return JavaFX image sharing pixels with this view
+     */
+    public Image getImage() {
+        return fxImage;
+    }
+
+    /**
+     * Draw into the image. May be called on any thread while the image isn't shown;
+     * call {@link #markUpdated()} afterwards.
+     *
+     * @param drawing drawing to do
+     */
+    public void draw(Consumer<PlotGraphics> drawing) {
+        AwtPlotGraphics awt = new AwtPlotGraphics(image);
+        try {
+            drawing.accept(awt);
+        } finally {
+            awt.dispose();
+        }
+    }
+
+    /**
+     * Let JavaFX know the pixels have been drawn. Must be called on the JavaFX
+     * application thread.
+     */
+    public void markUpdated() {
+        pixelBuffer.updateBuffer(buffer -> null);
+    }
+}
@@ -0,0 +1,172 @@
+/*
+ * Copyright (c) 2024, Avery Donovan
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.averydonovan.skewtvsp.controllers;
+
+/**
+ * Drawing operations needed to render a Skew-T plot, so that the same plotting code can
+ * draw to a JavaFX canvas on screen, to an image in memory without a display, or to an
+ * SVG document. Colors are given as 0xRRGGBB values and fonts are always sans-serif.
+ *
+ * <p>
+ * Implementations keep drawing state, such as the current color and font, and are not
+ * safe to use from more than one thread at a time.
+ *
+ * @author Avery Donovan
+ */
+public interface PlotGraphics {
+
+    /**
+     * Horizontal alignment of text relative to its anchor point.
+     */
+    enum TextAlign {
+        LEFT, CENTER, RIGHT
+    }
+
+    /**
+     * Vertical alignment of text relative to its anchor point.
+     */
+    enum TextBaseline {
+        TOP, CENTER, BASELINE
+    }
+
+    /**
+     * Set color used to fill shapes and text.
+     *
+     * @param rgb color as 0xRRGGBB
+     */
+    void setFill(int rgb);
+
+    /**
+     * Set color used to draw lines.
+     *
+     * @param rgb color as 0xRRGGBB
+     */
+    void setStroke(int rgb);
+
+    /**
+     * Set width of lines.
+     *
+     * @param width line width in pixels
+     */
+    void setLineWidth(double width);
+
+    /**
+     * Set dash pattern of lines.
+     *
+     * @param dashes alternating lengths of dashes and gaps, or null for solid lines
+     */
+    void setLineDashes(double... dashes);
+
+    /**
+     * Set font used for text.
+     *
+     * @param size font size in pixels
+     * @param bold true for bold text
+     * @param italic true for italic text
+     */
+    void setFont(double size, boolean bold, boolean italic);
+
+    /**
+     * Set horizontal alignment of text.
+     *
+     * @param align alignment
+     */
+    void setTextAlign(TextAlign align);
+
+    /**
+     * Set vertical alignment of text.
+     *
+     * @param baseline alignment
+     */
+    void setTextBaseline(TextBaseline baseline);
+
+    /**
+     * Clear a rectangle to transparent.
+     *
+     * @param x left edge
+     * @param y top edge
+     * @param width width
+     * @param height height
+     */
+    void clearRect(double x, double y, double width, double height);
+
+    /**
+     * Fill a rectangle with the fill color.
+     *
+     * @param x left edge
+     * @param y top edge
+     * @param width width
+     * @param height height
+     */
+    void fillRect(double x, double y, double width, double height);
+
+    /**
+     * Draw a line with the stroke color.
+     *
+     * @param x1 x-coordinate of start
+     * @param y1 y-coordinate of start
+     * @param x2 x-coordinate of end
+     * @param y2 y-coordinate of end
+     */
+    void strokeLine(double x1, double y1, double x2, double y2);
+
+    /**
+     * Draw connected line segments with the stroke color.
+     *
+     * @param xPoints x-coordinates of points
+     * @param yPoints y-coordinates of points
+     * @param numPoints number of points to use
+     */
+    void strokePolyline(double[] xPoints, double[] yPoints, int numPoints);
+
+    /**
+     * Fill a closed polygon with the fill color.
+     *
+     * @param xPoints x-coordinates of corners
+     * @param yPoints y-coordinates of corners
+     * @param numPoints number of corners to use
+     */
+    void fillPolygon(double[] xPoints, double[] yPoints, int numPoints);
+
+    /**
+     * Draw text with the fill color.
+     *
+     * @param text text to draw
+     * @param x x-coordinate of anchor point
+     * @param y y-coordinate of anchor point
+     */
+    void fillText(String text, double x, double y);
+
+    /**
+     * Draw text with the fill color, rotated about its anchor point.
+     *
+     * @param text text to draw
+     * @param x x-coordinate of anchor point
+     * @param y y-coordinate of anchor point
+     * @param degrees rotation in degrees, clockwise on screen
+     */
+    void fillTextRotated(String text, double x, double y, double degrees);
+}
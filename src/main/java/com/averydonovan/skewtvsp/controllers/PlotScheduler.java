@@ -0,0 +1,209 @@
+/*
+ * Copyright (c) 2024, Avery Donovan
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.averydonovan.skewtvsp.controllers;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import javafx.concurrent.Task;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs work triggered from the user interface, such as opening files and reading data
+ * for plots, on a single background thread. Requests are grouped into lanes, and within
+ * a lane only the most recent request matters: submitting a new request cancels any
+ * earlier one that has not finished, and a request identical to the one already pending
+ * is dropped. Requests are held back for a short time before starting so that a burst
+ * of rapid requests only results in the last one being run.
+ *
+ * <p>
+ * Saving files is different, as every save a user asks for matters and a save can take
+ * far longer than a plot. Saves are submitted with {@link #submitSave(Task)} and run in
+ * the order submitted on a second background thread, so they never hold up plots. Only a
+ * few can wait at once.
+ *
+ * <p>
+ * Tasks should do their reading in {@link Task#call()} and apply their results in the
+ * {@link Task#setOnSucceeded(javafx.event.EventHandler) onSucceeded} handler, which
+ * runs on the JavaFX application thread and is never called for a superseded task.
+ *
+ * @author Avery Donovan
+ */
+public class PlotScheduler {
+
+    private static final Logger LOG =
+            LoggerFactory.getLogger(PlotScheduler.class.getName());
+
+    /**
+     * Default time to hold back requests, overridable with the
+     * skewtvsp.scheduler.coalesceMillis system property.
+     */
+    private static final long DEFAULT_COALESCE_MILLIS = 75;
+
+    /**
+     * Default number of saves that can wait behind the one running, overridable with the
+     * skewtvsp.scheduler.maxQueuedSaves system property.
+     */
+    private static final int DEFAULT_MAX_QUEUED_SAVES = 4;
+
+    private final ScheduledExecutorService executor;
+    private final ThreadPoolExecutor saveExecutor;
+    private final long coalesceMillis;
+
+    private final Map<String, Request> requestsByLane = new HashMap<>();
+
+    /**
+     * Create new scheduler with its own background thread.
+     */
+    public PlotScheduler() {
+        this(Long.getLong("skewtvsp.scheduler.coalesceMillis", DEFAULT_COALESCE_MILLIS));
+    }
+
+    /**
+     * Create new scheduler with its own background thread.
+     *
+     * @param coalesceMillis time to hold back each request in ms
+     */
+    public PlotScheduler(long coalesceMillis) {
+        this.coalesceMillis = coalesceMillis;
+        this.executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "skewtvsp-ui-worker");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        int maxQueuedSaves = Math.max(1, Integer.getInteger(
+                "skewtvsp.scheduler.maxQueuedSaves", DEFAULT_MAX_QUEUED_SAVES));
+        this.saveExecutor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(maxQueuedSaves), runnable -> {
+                    Thread thread = new Thread(runnable, "skewtvsp-save-worker");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+    }
+
+    /**
+     * Submit a task, superseding any unfinished task previously submitted to the same
+     * lane.
+     *
+     * @param lane group of requests in which only the latest matters, e.g. "plot"
+     * @param requestKey identifies what is being requested; a request with the same key
+     * as the unfinished request in the lane is dropped
+     * @param task task to run
+     *
+     * @return true if task was scheduled, false if it was dropped as a duplicate
+     */
+    public synchronized boolean submit(String lane, String requestKey, Task<?> task) {
+        Request previous = requestsByLane.get(lane);
+
+        if (previous != null && !previous.task.isDone()) {
+            if (previous.requestKey.equals(requestKey)) {
+                LOG.debug("Coalesced duplicate {} request {}", lane, requestKey);
+                return false;
+            }
+            LOG.debug("Superseding {} request {}", lane, previous.requestKey);
+            previous.cancel();
+        }
+
+        ScheduledFuture<?> future =
+                executor.schedule(task, coalesceMillis, TimeUnit.MILLISECONDS);
+        requestsByLane.put(lane, new Request(requestKey, task, future));
+
+        return true;
+    }
+
+    /**
+     * Cancel any unfinished task in a lane, such as when its result has been made
+     * out-of-date by something done directly on the JavaFX application thread.
+     *
+     * @param lane group of requests
+     */
+    public synchronized void cancel(String lane) {
+        Request previous = requestsByLane.remove(lane);
+
+        if (previous != null && !previous.task.isDone()) {
+            LOG.debug("Cancelling {} request {}", lane, previous.requestKey);
+            previous.cancel();
+        }
+    }
+
+    /**
+     * Submit a task that saves a file. Saves are never superseded or held back, and run
+     * one at a time in the order submitted.
+     *
+     * @param task task to run
+     *
+     * @return true if task was scheduled, false if too many saves are already waiting
+     */
+    public boolean submitSave(Task<?> task) {
+        try {
+            saveExecutor.execute(task);
+            return true;
+        } catch (RejectedExecutionException ex) {
+            LOG.debug("Too many saves waiting, rejected save");
+            return false;
+        }
+    }
+
+    /**
+     * Stop background threads. Tasks that have not started are discarded, and a save
+     * that is running is interrupted.
+     */
+    public void shutdown() {
+        executor.shutdownNow();
+        saveExecutor.shutdownNow();
+    }
+
+    /**
+     * A submitted task and the key it was submitted under.
+     */
+    private static final class Request {
+
+        private final String requestKey;
+        private final Task<?> task;
+        private final ScheduledFuture<?> future;
+
+        private Request(String requestKey, Task<?> task, ScheduledFuture<?> future) {
+            this.requestKey = requestKey;
+            this.task = task;
+            this.future = future;
+        }
+
+        private void cancel() {
+            // Never started tasks are simply dropped; running ones should check
+            // isCancelled() and will not have their results applied.
+            future.cancel(false);
+            task.cancel(false);
+        }
+    }
+}
@@ -25,15 +25,28 @@
  */
 package com.averydonovan.skewtvsp.controllers;
 
+import com.averydonovan.skewtvsp.utils.CrossSection;
+import com.averydonovan.skewtvsp.utils.DataReadScheduler;
+import com.averydonovan.skewtvsp.utils.EnsembleSounding;
+import com.averydonovan.skewtvsp.utils.ModelComparison;
 import com.averydonovan.skewtvsp.utils.ModelDataFile;
-import java.awt.image.RenderedImage;
+import com.averydonovan.skewtvsp.utils.ModelRunDataset;
+import com.averydonovan.skewtvsp.utils.Sounding;
+import com.averydonovan.skewtvsp.utils.WarmUp;
+import java.io.BufferedOutputStream;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import javafx.animation.PauseTransition;
+import javafx.application.Platform;
 import javafx.beans.property.*;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
@@ -47,6 +60,7 @@ import javafx.scene.Node;
 import javafx.scene.canvas.Canvas;
 import javafx.scene.control.*;
 import javafx.scene.control.Alert.AlertType;
+import javafx.scene.image.ImageView;
 import javafx.scene.input.KeyCombination;
 import javafx.scene.layout.AnchorPane;
 import javafx.scene.layout.GridPane;
@@ -54,8 +68,9 @@ import javafx.scene.layout.StackPane;
 import javafx.scene.layout.VBox;
 import javafx.stage.FileChooser;
 import javafx.stage.FileChooser.ExtensionFilter;
+import javafx.stage.Screen;
 import javafx.stage.Window;
-import javax.imageio.ImageIO;
+import javafx.util.Duration;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -69,16 +84,95 @@ public class STVSPController implements Initializable {
     private static final Logger LOG =
             LoggerFactory.getLogger(ModelDataFile.class.getName());
 
+    /**
+     * How long resizing must pause before the Skew-T is drawn again at the new size.
+     */
+    private static final int RESIZE_DEBOUNCE_MILLIS = 200;
+
+    /**
+     * Resolution plots are saved at, overridable with the skewtvsp.export.dpi system
+     * property. The default of 300 DPI gives a 2700x3600 pixel image.
+     */
+    private static final int EXPORT_DPI = Integer.getInteger("skewtvsp.export.dpi", 300);
+
+    /**
+     * Resolution animation frames are saved at, overridable with the
+     * skewtvsp.animation.dpi system property. The default of 100 DPI gives 900x1200
+     * pixel frames.
+     */
+    private static final int ANIMATION_DPI =
+            Integer.getInteger("skewtvsp.animation.dpi", 100);
+
+    private static final String TOO_MANY_SAVES_MESSAGE =
+            "Too many saves waiting, try again once one has finished";
+
     public String modelFileName = "rap_252_20160524_0000_000.grb2";
     public ModelDataFile modelDataFile = null;
 
+    /**
+     * Data files from other models plotted along with the open data file, empty when
+     * not comparing models.
+     */
+    private List<ModelDataFile> comparedDataFiles = List.of();
+
+    /**
+     * Data files of the other members of the open data file's ensemble run, empty when
+     * not showing ensemble spread.
+     */
+    private List<ModelDataFile> ensembleDataFiles = List.of();
+
+    /**
+     * Area soundings are averaged over: a radius in km, or a box as western, southern,
+     * eastern and northern edges in degrees. Null when plotting single grid points.
+     */
+    private double[] areaMeanBounds = null;
+
     public String currentWorkingDirectory = "";
 
+    /**
+     * Recently plotted soundings, so that revisiting a point shows instantly.
+     */
+    private final SoundingCache soundingCache = new SoundingCache();
+
+    /**
+     * Runs file opening and data reading in the background so that only the most recent
+     * request is acted upon, and saves files in the background in the order asked for.
+     */
+    private final PlotScheduler uiScheduler = new PlotScheduler();
+
+    /**
+     * Draws the Skew-T again at the size of the view once resizing has settled. Until
+     * then the existing drawing is stretched to fit.
+     */
+    private final PauseTransition resizeDebounce =
+            new PauseTransition(Duration.millis(RESIZE_DEBOUNCE_MILLIS));
+    /**
+     * Width in pixels the Skew-T was last asked to be drawn at.
+     */
+    private double requestedViewWidth = 0;
+    /**
+     * Image of the blank Skew-T shown in ivBlankSkewT, sharing its pixels without
+     * copying.
+     */
+    private PixelBufferView blankView = null;
+    /**
+     * Blank Skew-T shown before the current one, kept so it can be shown again without
+     * drawing it if the view goes back to that size.
+     */
+    private PixelBufferView spareBlankView = null;
+    /**
+     * Blank Skew-T being drawn in the background, not yet shown.
+     */
+    private PixelBufferView pendingBlankView = null;
+
     public static String applicationName = "";
 
     // Properties that are bound to GUI
     public static StringProperty windowTitle = new SimpleStringProperty(applicationName);
     public BooleanProperty isNoFileOpen = new SimpleBooleanProperty(true);
+    public BooleanProperty isNotComparing = new SimpleBooleanProperty(true);
+    public BooleanProperty isNoEnsemble = new SimpleBooleanProperty(true);
+    public BooleanProperty isNotAveraging = new SimpleBooleanProperty(true);
     public BooleanProperty isNoSkewTDrawn = new SimpleBooleanProperty(true);
 
     /*
@@ -100,6 +194,24 @@ public class STVSPController implements Initializable {
     @FXML
     private MenuItem menuFileSaveSkewT;
     @FXML
+    private MenuItem menuFileExportAnimation;
+    @FXML
+    private MenuItem menuFileSaveMeteogram;
+    @FXML
+    private MenuItem menuFileSaveCrossSection;
+    @FXML
+    private MenuItem menuFileCompareModels;
+    @FXML
+    private MenuItem menuFileStopComparing;
+    @FXML
+    private MenuItem menuFileShowEnsemble;
+    @FXML
+    private MenuItem menuFileHideEnsemble;
+    @FXML
+    private MenuItem menuFileAverageArea;
+    @FXML
+    private MenuItem menuFileSinglePoint;
+    @FXML
     private MenuItem menuFileExit;
     @FXML
     private MenuItem menuThreddsUcarRAP;
@@ -169,7 +281,7 @@ public class STVSPController implements Initializable {
     @FXML
     private Canvas canvasSkewT;
     @FXML
-    private Canvas canvasBlankSkewT;
+    private ImageView ivBlankSkewT;
     // Status bar
     @FXML
     private Label lblStatus;
@@ -206,6 +318,12 @@ public class STVSPController implements Initializable {
         }
 
         menuFileClose.disableProperty().bind(isNoFileOpen);
+        menuFileCompareModels.disableProperty().bind(isNoFileOpen);
+        menuFileStopComparing.disableProperty().bind(isNotComparing);
+        menuFileShowEnsemble.disableProperty().bind(isNoFileOpen);
+        menuFileHideEnsemble.disableProperty().bind(isNoEnsemble);
+        menuFileAverageArea.disableProperty().bind(isNoFileOpen);
+        menuFileSinglePoint.disableProperty().bind(isNotAveraging);
         // vbDataSelect.disableProperty().bind(isNoFileOpen);
 
         // Todo: need to bind these to separate variables
@@ -216,6 +334,9 @@ public class STVSPController implements Initializable {
 
         // These are useless when no Skew-T plot has been drawn
         menuFileSaveSkewT.disableProperty().bind(isNoSkewTDrawn);
+        menuFileExportAnimation.disableProperty().bind(isNoSkewTDrawn);
+        menuFileSaveMeteogram.disableProperty().bind(isNoSkewTDrawn);
+        menuFileSaveCrossSection.disableProperty().bind(isNoFileOpen);
         // tblData.disableProperty().bind(isNoSkewTDrawn);
 
         // cbChooseOption.setItems(optionList);
@@ -229,9 +350,15 @@ public class STVSPController implements Initializable {
          * opened.
          */
         canvasSkewT.visibleProperty().bind(isNoSkewTDrawn.not());
-        canvasBlankSkewT.visibleProperty().bind(isNoSkewTDrawn);
+        ivBlankSkewT.visibleProperty().bind(isNoSkewTDrawn);
 
-        SkewTPlot.drawBlankSkewT(canvasBlankSkewT.getGraphicsContext2D());
+        resizeDebounce.setOnFinished(event -> doRenderSkewTView());
+        canvasSkewT.widthProperty().addListener((b, o, n) -> doScaleSkewTView());
+        ivBlankSkewT.imageProperty().addListener((b, o, n) -> doScaleSkewTView());
+        isNoSkewTDrawn.addListener((b, o, n) -> doScaleSkewTView());
+
+        doDrawBlankSkewT().thenRun(() -> LOG.info("Blank Skew-T drawn {} ms after launch",
+                WarmUp.getMillisSinceLaunch()));
 
         spSkewTTab.widthProperty().addListener((b, o, n) -> doScaleSkewTView());
 
@@ -323,8 +450,7 @@ public class STVSPController implements Initializable {
                 tfLonFound.setText("0.0");
                 tfLatFound.setText("0.0");
 
-                lblAnalTime.setText(modelDataFile.getAnalysisTime().toString());
-                lblValidTime.setText(modelDataFile.getValidTime().toString());
+                doLoadFileMetadata();
             } else {
                 doUpdateStatus("Unable to open data file " + file.getName());
                 LOG.error("Unable to open data file {}", file.getName());
@@ -349,18 +475,53 @@ public class STVSPController implements Initializable {
         });
 
         if (file != null) {
+            // Other ensemble members belong to the file being replaced
+            doHideEnsemble(event);
+
             modelFileName = file.getAbsolutePath();
             currentWorkingDirectory = file.getParent();
             isNoSkewTDrawn.set(true);
 
-            lblStatus.textProperty().bind(taskOpenFile.messageProperty());
-            pbProgress.progressProperty().bind(taskOpenFile.progressProperty());
-            pbProgress.setVisible(true);
+            // Any plot still being read is for the previous file
+            uiScheduler.cancel("plot");
 
-            new Thread(taskOpenFile).start();
+            if (uiScheduler.submit("open", modelFileName, taskOpenFile)) {
+                lblStatus.textProperty().bind(taskOpenFile.messageProperty());
+                pbProgress.progressProperty().bind(taskOpenFile.progressProperty());
+                pbProgress.setVisible(true);
+            }
         }
     }
 
+    /**
+     * Load metadata of newly opened data file in the background and show analysis and
+     * valid times once loaded. Data files only load their metadata when first needed, so
+     * doing this straight after opening keeps the window responsive and means the first
+     * plot does not have to wait for it.
+     */
+    private void doLoadFileMetadata() {
+        ModelDataFile mdfInUse = modelDataFile;
+
+        lblAnalTime.setText("...");
+        lblValidTime.setText("...");
+
+        DataReadScheduler.getShared().submit(DataReadScheduler.Priority.PREFETCH, () -> {
+            mdfInUse.loadMetadata();
+            return null;
+        }).whenComplete((result, ex) -> Platform.runLater(() -> {
+            if (ex != null) {
+                LOG.error("Unable to load data file metadata\n{}",
+                        ex.getLocalizedMessage());
+                if (mdfInUse == modelDataFile) {
+                    doUpdateStatus("Unable to read data file metadata");
+                }
+            } else if (mdfInUse == modelDataFile) {
+                lblAnalTime.setText(mdfInUse.getAnalysisTime().toString());
+                lblValidTime.setText(mdfInUse.getValidTime().toString());
+            }
+        }));
+    }
+
     /**
      * Shows an URL entry box and opens selected URL.
      *
@@ -420,8 +581,7 @@ public class STVSPController implements Initializable {
                 tfLonFound.setText("0.0");
                 tfLatFound.setText("0.0");
 
-                lblAnalTime.setText(modelDataFile.getAnalysisTime().toString());
-                lblValidTime.setText(modelDataFile.getValidTime().toString());
+                doLoadFileMetadata();
             } else {
                 doUpdateStatus("Unable to open data file " + file.getName());
                 LOG.error("Unable to open data file {}", file.getName());
@@ -449,11 +609,14 @@ public class STVSPController implements Initializable {
             modelFileName = file.getAbsolutePath();
             isNoSkewTDrawn.set(true);
 
-            lblStatus.textProperty().bind(taskOpenFile.messageProperty());
-            pbProgress.progressProperty().bind(taskOpenFile.progressProperty());
-            pbProgress.setVisible(true);
+            // Any plot still being read is for the previous file
+            uiScheduler.cancel("plot");
 
-            new Thread(taskOpenFile).start();
+            if (uiScheduler.submit("open", modelFileName, taskOpenFile)) {
+                lblStatus.textProperty().bind(taskOpenFile.messageProperty());
+                pbProgress.progressProperty().bind(taskOpenFile.progressProperty());
+                pbProgress.setVisible(true);
+            }
         }
     }
 
@@ -532,6 +695,8 @@ public class STVSPController implements Initializable {
      */
     @FXML
     protected void doCloseFile(ActionEvent event) {
+        doStopComparing(event);
+        doHideEnsemble(event);
         try {
             modelDataFile.close();
             doResetWindowTitle();
@@ -545,6 +710,274 @@ public class STVSPController implements Initializable {
         }
     }
 
+    /**
+     * Shows a file selection dialog for data files from other models, such as NAM, HRRR
+     * and GFS files valid at the same time as the open RAP file, and overlays their
+     * soundings for the same point on the Skew-T. The files are opened at the same time
+     * in the background.
+     *
+     * @param event
+     */
+    @FXML
+    protected void doCompareModels(ActionEvent event) {
+        FileChooser chooser = new FileChooser();
+        chooser.setInitialDirectory(new File(currentWorkingDirectory));
+        ExtensionFilter fileExtsGRIB = new ExtensionFilter("GRIB files", "*.grb",
+                "*.grib", "*.grb2", "*.grib2", "*.pgrb2.*");
+        chooser.getExtensionFilters().addAll(fileExtsGRIB);
+        List<File> files = chooser.showOpenMultipleDialog(getMainStage());
+
+        if (files == null || files.isEmpty()) {
+            return;
+        }
+
+        List<String> fileNames = files.stream().map(File::getAbsolutePath).toList();
+
+        Task<List<ModelDataFile>> taskOpenFiles = new Task<List<ModelDataFile>>() {
+            @Override
+            public List<ModelDataFile> call() throws Exception {
+                updateProgress(ProgressBar.INDETERMINATE_PROGRESS, 100);
+                updateMessage("Opening " + fileNames.size() + " files to compare...");
+                return ModelComparison.openAll(fileNames);
+            }
+        };
+
+        taskOpenFiles.setOnSucceeded(taskEvent -> {
+            lblStatus.textProperty().unbind();
+            pbProgress.progressProperty().unbind();
+            pbProgress.setVisible(false);
+
+            // Comparing models and showing ensemble spread do not mix
+            doHideEnsemble(null);
+
+            ModelComparison.closeAll(comparedDataFiles);
+            comparedDataFiles = taskOpenFiles.getValue();
+            isNotComparing.set(false);
+            doUpdateStatus("Comparing with " + comparedDataFiles.size() + " data files");
+
+            // Replot the point already shown, now with the other models
+            if (!isNoSkewTDrawn.get()) {
+                doUpdateData();
+            }
+        });
+
+        taskOpenFiles.setOnFailed(taskEvent -> {
+            lblStatus.textProperty().unbind();
+            pbProgress.progressProperty().unbind();
+            pbProgress.setVisible(false);
+
+            Throwable ex = taskOpenFiles.getException();
+            LOG.error("{}\n{}", ex.getLocalizedMessage(), ex.toString());
+            doUpdateStatus("Unable to open data files to compare");
+            Alert alert = new Alert(AlertType.ERROR);
+            alert.setTitle("File Open Error");
+            alert.setHeaderText("Unable to open data files to compare");
+            alert.setContentText("File not found or invalid file format.");
+            alert.showAndWait();
+        });
+
+        if (uiScheduler.submit("compare", String.join("|", fileNames), taskOpenFiles)) {
+            lblStatus.textProperty().bind(taskOpenFiles.messageProperty());
+            pbProgress.progressProperty().bind(taskOpenFiles.progressProperty());
+            pbProgress.setVisible(true);
+        }
+    }
+
+    /**
+     * Closes data files being compared and goes back to plotting only the open data
+     * file.
+     *
+     * @param event
+     */
+    @FXML
+    protected void doStopComparing(ActionEvent event) {
+        if (comparedDataFiles.isEmpty()) {
+            return;
+        }
+
+        // A comparison still being read must not be drawn once files are closed
+        uiScheduler.cancel("plot");
+        ModelComparison.closeAll(comparedDataFiles);
+        comparedDataFiles = List.of();
+        isNotComparing.set(true);
+
+        if (!isNoSkewTDrawn.get() && !isNoFileOpen.get()) {
+            doUpdateData();
+        }
+    }
+
+    /**
+     * Opens the files of the other members of the open data file's ensemble run, such
+     * as gep01 to gep30 next to a GEFS gec00 file, and plots the spread of all the
+     * members as percentile bands around their median.
+     *
+     * @param event
+     */
+    @FXML
+    protected void doShowEnsemble(ActionEvent event) {
+        String openFile = new File(modelFileName).getAbsolutePath();
+        List<String> otherMembers = EnsembleSounding.findMemberFiles(modelFileName)
+                .stream()
+                .filter(name -> !new File(name).getAbsolutePath().equals(openFile))
+                .toList();
+
+        if (otherMembers.isEmpty()) {
+            Alert alert = new Alert(AlertType.ERROR);
+            alert.setTitle("Ensemble Error");
+            alert.setHeaderText("No other ensemble members found");
+            alert.setContentText("Ensemble member files, such as GEFS gec00 and gep01 to "
+                    + "gep30 files, must be in the same folder as the open file.");
+            alert.showAndWait();
+            return;
+        }
+
+        Task<List<ModelDataFile>> taskOpenMembers = new Task<List<ModelDataFile>>() {
+            @Override
+            public List<ModelDataFile> call() throws Exception {
+                updateProgress(ProgressBar.INDETERMINATE_PROGRESS, 100);
+                updateMessage("Opening " + otherMembers.size() + " ensemble members...");
+                return ModelComparison.openAll(otherMembers);
+            }
+        };
+
+        taskOpenMembers.setOnSucceeded(taskEvent -> {
+            lblStatus.textProperty().unbind();
+            pbProgress.progressProperty().unbind();
+            pbProgress.setVisible(false);
+
+            // Comparing models and showing ensemble spread do not mix
+            doStopComparing(null);
+
+            ModelComparison.closeAll(ensembleDataFiles);
+            ensembleDataFiles = taskOpenMembers.getValue();
+            isNoEnsemble.set(false);
+            doUpdateStatus("Showing spread of " + (ensembleDataFiles.size() + 1)
+                    + " ensemble members");
+
+            // Replot the point already shown, now with the other members
+            if (!isNoSkewTDrawn.get()) {
+                doUpdateData();
+            }
+        });
+
+        taskOpenMembers.setOnFailed(taskEvent -> {
+            lblStatus.textProperty().unbind();
+            pbProgress.progressProperty().unbind();
+            pbProgress.setVisible(false);
+
+            Throwable ex = taskOpenMembers.getException();
+            LOG.error("{}\n{}", ex.getLocalizedMessage(), ex.toString());
+            doUpdateStatus("Unable to open ensemble members");
+            Alert alert = new Alert(AlertType.ERROR);
+            alert.setTitle("File Open Error");
+            alert.setHeaderText("Unable to open ensemble members");
+            alert.setContentText("File not found or invalid file format.");
+            alert.showAndWait();
+        });
+
+        if (uiScheduler.submit("ensemble", modelFileName, taskOpenMembers)) {
+            lblStatus.textProperty().bind(taskOpenMembers.messageProperty());
+            pbProgress.progressProperty().bind(taskOpenMembers.progressProperty());
+            pbProgress.setVisible(true);
+        }
+    }
+
+    /**
+     * Closes the files of the other ensemble members and goes back to plotting only the
+     * open data file.
+     *
+     * @param event
+     */
+    @FXML
+    protected void doHideEnsemble(ActionEvent event) {
+        if (ensembleDataFiles.isEmpty()) {
+            return;
+        }
+
+        // Ensemble spread still being read must not be drawn once files are closed
+        uiScheduler.cancel("plot");
+        ModelComparison.closeAll(ensembleDataFiles);
+        ensembleDataFiles = List.of();
+        isNoEnsemble.set(true);
+
+        if (!isNoSkewTDrawn.get() && !isNoFileOpen.get()) {
+            doUpdateData();
+        }
+    }
+
+    /**
+     * Plots the mean sounding over an area around each point rather than the sounding at
+     * the nearest grid point. The area is entered as a radius in km, or as a box of
+     * longitudes and latitudes.
+     *
+     * @param event
+     */
+    @FXML
+    protected void doAverageArea(ActionEvent event) {
+        TextInputDialog areaInputDialog = new TextInputDialog("25");
+        areaInputDialog.setTitle("Average Over Area");
+        areaInputDialog.setHeaderText("Enter radius in km, or a box of longitudes and "
+                + "latitudes\nas west, south, east, north");
+        areaInputDialog.showAndWait();
+
+        if (areaInputDialog.getResult() == null) {
+            return;
+        }
+
+        String[] fields = areaInputDialog.getResult().trim().split("\\s*,\\s*|\\s+");
+        double[] bounds = new double[fields.length];
+        boolean isValid = fields.length == 1 || fields.length == 4;
+        for (int index = 0; isValid && index < fields.length; index++) {
+            try {
+                bounds[index] = Double.parseDouble(fields[index]);
+            } catch (NumberFormatException ex) {
+                isValid = false;
+            }
+        }
+        if (isValid && fields.length == 1) {
+            isValid = bounds[0] > 0;
+        } else if (isValid) {
+            // A west edge east of the east edge is a box crossing the dateline
+            isValid = bounds[0] != bounds[2] && bounds[1] < bounds[3]
+                    && Math.abs(bounds[0]) <= 180 && Math.abs(bounds[2]) <= 180;
+        }
+        if (!isValid) {
+            Alert alert = new Alert(AlertType.ERROR);
+            alert.setTitle("Average Over Area Error");
+            alert.setHeaderText("Invalid area");
+            alert.setContentText("Enter a radius greater than zero, or four numbers: "
+                    + "west, south, east, north.");
+            alert.showAndWait();
+            return;
+        }
+
+        areaMeanBounds = bounds;
+        isNotAveraging.set(false);
+
+        if (!isNoSkewTDrawn.get() && !isNoFileOpen.get()) {
+            doUpdateData();
+        }
+    }
+
+    /**
+     * Goes back to plotting the sounding at the nearest grid point to each point.
+     *
+     * @param event
+     */
+    @FXML
+    protected void doSinglePoint(ActionEvent event) {
+        if (areaMeanBounds == null) {
+            return;
+        }
+
+        areaMeanBounds = null;
+        isNotAveraging.set(true);
+
+        if (!isNoSkewTDrawn.get() && !isNoFileOpen.get()) {
+            doUpdateData();
+        }
+    }
+
     /**
      * Update displayed data based on user-entered longitude and latitude coordinates.
      *
@@ -698,18 +1131,36 @@ public class STVSPController implements Initializable {
 
         // Only try to save plot if a location and filename was chosen
         if (file != null) {
-            pbProgress.setVisible(true);
-
-            pbProgress.setProgress(0.1);
-            RenderedImage renderedImage = SkewTPlot.getHiResPlot();
-            pbProgress.setProgress(0.8);
+            Sounding[] soundings = SkewTPlot.getShownSoundings();
+            EnsembleSounding ensemble = SkewTPlot.getShownEnsemble();
+
+            // Rendered in strips in the background, as large exports take a while
+            Task<Void> taskSavePlot = new Task<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    writeFile(file, out -> {
+                        if (ensemble != null) {
+                            SkewTPlot.writePng(out, ensemble, EXPORT_DPI);
+                        } else if (soundings == null) {
+                            SkewTPlot.writePng(out, (Sounding) null, EXPORT_DPI);
+                        } else {
+                            SkewTPlot.writePng(out, soundings, EXPORT_DPI);
+                        }
+                    });
+                    return null;
+                }
+            };
 
-            try {
-                // Save the plot to the chosen PNG file
-                ImageIO.write(renderedImage, "png", file);
+            taskSavePlot.setOnSucceeded(e -> {
+                pbProgress.setVisible(false);
                 doUpdateStatus("Plot saved to file " + file.getName());
-            } catch (IOException ex) {
+            });
+
+            taskSavePlot.setOnFailed(e -> {
+                pbProgress.setVisible(false);
+
                 // Unable to save PNG so log the error...
+                Throwable ex = taskSavePlot.getException();
                 LOG.error("{}\n{}", ex.getLocalizedMessage(), ex.toString());
                 LOG.error("Unable to save PNG file!");
 
@@ -720,9 +1171,346 @@ public class STVSPController implements Initializable {
                 alert.setHeaderText("Unable to save PNG file");
                 alert.setContentText("File name not valid or path not writeable.");
                 alert.showAndWait();
+            });
+
+            if (uiScheduler.submitSave(taskSavePlot)) {
+                pbProgress.setProgress(ProgressBar.INDETERMINATE_PROGRESS);
+                pbProgress.setVisible(true);
+                doUpdateStatus("Saving plot...");
+            } else {
+                doUpdateStatus(TOO_MANY_SAVES_MESSAGE);
+            }
+        }
+    }
+
+    /**
+     * Export the plotted sounding through every forecast hour of the open file's run as
+     * an animated PNG or as a numbered sequence of PNG frames. The run is made up of the
+     * files next to the open file that differ from it only in forecast hour.
+     *
+     * @param event
+     */
+    @FXML
+    protected void doExportAnimation(ActionEvent event) {
+        Sounding sounding = SkewTPlot.getShownSounding();
+        ModelRunDataset run;
+        try {
+            run = ModelRunDataset.forMemberFile(modelFileName);
+        } catch (IOException ex) {
+            LOG.error("{}\n{}", ex.getLocalizedMessage(), ex.toString());
+            Alert alert = new Alert(AlertType.ERROR);
+            alert.setTitle("Animation Export Error");
+            alert.setHeaderText("Unable to find forecast run");
+            alert.setContentText("Forecast hour could not be told from the file name.");
+            alert.showAndWait();
+            return;
+        }
+
+        String initFileName = "skewt_animation_"
+                + lblAnalTime.getText().replaceAll("[^a-zA-Z0-9]", "") + "_"
+                + tfLonFound.getText() + "_" + tfLatFound.getText() + ".png";
+
+        FileChooser chooser = new FileChooser();
+        chooser.setInitialDirectory(new File(Paths.get("").toAbsolutePath().toString()));
+        chooser.setInitialFileName(initFileName);
+        ExtensionFilter fileExtsAPNG =
+                new ExtensionFilter("Animated PNG image", "*.png", "*.PNG");
+        ExtensionFilter fileExtsFrames =
+                new ExtensionFilter("Numbered PNG frames", "*.png", "*.PNG");
+        chooser.getExtensionFilters().addAll(fileExtsAPNG, fileExtsFrames);
+        File file = chooser.showSaveDialog(getMainStage());
+
+        if (file == null) {
+            closeRun(run);
+            return;
+        }
+        boolean asFrames = chooser.getSelectedExtensionFilter() == fileExtsFrames;
+
+        AnimationExporter exporter = new AnimationExporter(run, sounding.getCoordX(),
+                sounding.getCoordY(), ANIMATION_DPI);
+        int numFrames = exporter.getNumFrames();
+
+        Task<Void> taskExport = new Task<Void>() {
+            @Override
+            public Void call() throws Exception {
+                exporter.setOnFrameWritten(numWritten -> {
+                    updateProgress(numWritten, numFrames);
+                    updateMessage("Exported frame " + numWritten + " of " + numFrames);
+                });
+                try {
+                    if (asFrames) {
+                        String baseName = file.getName().replaceAll("(?i)\\.png$", "");
+                        exporter.writeFrames(file.getParentFile(), baseName);
+                    } else {
+                        writeFile(file, exporter::writeAnimatedPng);
+                    }
+                } finally {
+                    closeRun(run);
+                }
+                return null;
+            }
+        };
+
+        taskExport.setOnSucceeded(e -> {
+            lblStatus.textProperty().unbind();
+            pbProgress.progressProperty().unbind();
+            pbProgress.setVisible(false);
+            doUpdateStatus(numFrames + " frames exported to " + file.getName());
+        });
+
+        taskExport.setOnFailed(e -> {
+            lblStatus.textProperty().unbind();
+            pbProgress.progressProperty().unbind();
+            pbProgress.setVisible(false);
+
+            Throwable ex = taskExport.getException();
+            LOG.error("{}\n{}", ex.getLocalizedMessage(), ex.toString());
+            LOG.error("Unable to export animation!");
+
+            doUpdateStatus("Unable to export animation");
+            Alert alert = new Alert(AlertType.ERROR);
+            alert.setTitle("Animation Export Error");
+            alert.setHeaderText("Unable to export animation");
+            alert.setContentText(ex.getLocalizedMessage());
+            alert.showAndWait();
+        });
+
+        if (uiScheduler.submitSave(taskExport)) {
+            lblStatus.textProperty().bind(taskExport.messageProperty());
+            pbProgress.progressProperty().bind(taskExport.progressProperty());
+            pbProgress.setVisible(true);
+        } else {
+            closeRun(run);
+            doUpdateStatus(TOO_MANY_SAVES_MESSAGE);
+        }
+    }
+
+    /**
+     * Save a meteogram of surface fields and stability indices at the plotted point
+     * through every forecast hour of the open file's run to a PNG file.
+     *
+     * @param event
+     */
+    @FXML
+    protected void doSaveMeteogram(ActionEvent event) {
+        Sounding sounding = SkewTPlot.getShownSounding();
+        ModelRunDataset run;
+        try {
+            run = ModelRunDataset.forMemberFile(modelFileName);
+        } catch (IOException ex) {
+            LOG.error("{}\n{}", ex.getLocalizedMessage(), ex.toString());
+            Alert alert = new Alert(AlertType.ERROR);
+            alert.setTitle("Meteogram Save Error");
+            alert.setHeaderText("Unable to find forecast run");
+            alert.setContentText("Forecast hour could not be told from the file name.");
+            alert.showAndWait();
+            return;
+        }
+
+        String initFileName = "meteogram_"
+                + lblAnalTime.getText().replaceAll("[^a-zA-Z0-9]", "") + "_"
+                + tfLonFound.getText() + "_" + tfLatFound.getText() + ".png";
+
+        FileChooser chooser = new FileChooser();
+        chooser.setInitialDirectory(new File(Paths.get("").toAbsolutePath().toString()));
+        chooser.setInitialFileName(initFileName);
+        ExtensionFilter fileExtsPNG = new ExtensionFilter("PNG images", "*.png", "*.PNG");
+        chooser.getExtensionFilters().addAll(fileExtsPNG);
+        File file = chooser.showSaveDialog(getMainStage());
+
+        if (file == null) {
+            closeRun(run);
+            return;
+        }
+
+        Task<Void> taskSaveMeteogram = new Task<Void>() {
+            @Override
+            public Void call() throws Exception {
+                Sounding[] soundings;
+                try {
+                    soundings = run.getSoundings(sounding.getCoordX(),
+                            sounding.getCoordY());
+                } finally {
+                    closeRun(run);
+                }
+                writeFile(file,
+                        out -> MeteogramPlot.writePng(out, soundings, EXPORT_DPI));
+                return null;
             }
+        };
 
+        taskSaveMeteogram.setOnSucceeded(e -> {
             pbProgress.setVisible(false);
+            doUpdateStatus("Meteogram saved to file " + file.getName());
+        });
+
+        taskSaveMeteogram.setOnFailed(e -> {
+            pbProgress.setVisible(false);
+
+            Throwable ex = taskSaveMeteogram.getException();
+            LOG.error("{}\n{}", ex.getLocalizedMessage(), ex.toString());
+            LOG.error("Unable to save meteogram!");
+
+            doUpdateStatus("Unable to save meteogram to file");
+            Alert alert = new Alert(AlertType.ERROR);
+            alert.setTitle("Meteogram Save Error");
+            alert.setHeaderText("Unable to save meteogram");
+            alert.setContentText(ex.getLocalizedMessage());
+            alert.showAndWait();
+        });
+
+        if (uiScheduler.submitSave(taskSaveMeteogram)) {
+            pbProgress.setProgress(ProgressBar.INDETERMINATE_PROGRESS);
+            pbProgress.setVisible(true);
+            doUpdateStatus("Reading " + run.getNumTimes() + " forecast hours...");
+        } else {
+            closeRun(run);
+            doUpdateStatus(TOO_MANY_SAVES_MESSAGE);
+        }
+    }
+
+    /**
+     * Save a vertical cross-section along the great-circle path between two points,
+     * entered as longitudes and latitudes, to a PNG file.
+     *
+     * @param event
+     */
+    @FXML
+    protected void doSaveCrossSection(ActionEvent event) {
+        TextInputDialog pathInputDialog = new TextInputDialog(
+                tfLonFound.getText() + ", " + tfLatFound.getText() + ", ");
+        pathInputDialog.setTitle("Save Cross-Section");
+        pathInputDialog.setHeaderText("Enter longitude and latitude of start and end "
+                + "of path,\nas lon1, lat1, lon2, lat2");
+        pathInputDialog.showAndWait();
+
+        if (pathInputDialog.getResult() == null) {
+            return;
+        }
+
+        double[] endpoints = new double[4];
+        String[] fields = pathInputDialog.getResult().trim().split("\\s*,\\s*|\\s+");
+        boolean isValid = fields.length == 4;
+        for (int index = 0; isValid && index < 4; index++) {
+            try {
+                endpoints[index] = Double.parseDouble(fields[index]);
+            } catch (NumberFormatException ex) {
+                isValid = false;
+            }
+        }
+        if (!isValid || Math.abs(endpoints[1]) > 90 || Math.abs(endpoints[3]) > 90) {
+            Alert alert = new Alert(AlertType.ERROR);
+            alert.setTitle("Cross-Section Save Error");
+            alert.setHeaderText("Invalid path");
+            alert.setContentText("Enter four numbers: lon1, lat1, lon2, lat2.");
+            alert.showAndWait();
+            return;
+        }
+
+        String initFileName = "crosssection_"
+                + lblAnalTime.getText().replaceAll("[^a-zA-Z0-9]", "") + "_"
+                + String.join("_", fields) + ".png";
+
+        FileChooser chooser = new FileChooser();
+        chooser.setInitialDirectory(new File(Paths.get("").toAbsolutePath().toString()));
+        chooser.setInitialFileName(initFileName);
+        ExtensionFilter fileExtsPNG = new ExtensionFilter("PNG images", "*.png", "*.PNG");
+        chooser.getExtensionFilters().addAll(fileExtsPNG);
+        File file = chooser.showSaveDialog(getMainStage());
+
+        if (file == null) {
+            return;
+        }
+
+        ModelDataFile mdfInUse = modelDataFile;
+
+        Task<CrossSection> taskSaveCrossSection = new Task<CrossSection>() {
+            @Override
+            public CrossSection call() throws Exception {
+                CrossSection section = CrossSection.read(mdfInUse, endpoints[0],
+                        endpoints[1], endpoints[2], endpoints[3],
+                        CrossSection.DEFAULT_SAMPLES);
+                writeFile(file,
+                        out -> CrossSectionPlot.writePng(out, section, EXPORT_DPI));
+                return section;
+            }
+        };
+
+        taskSaveCrossSection.setOnSucceeded(e -> {
+            pbProgress.setVisible(false);
+            CrossSection section = taskSaveCrossSection.getValue();
+            if (section.isTrimmed()) {
+                double[] trimmedEnds = section.getEndpoints();
+                doUpdateStatus(String.format("Cross-section saved to file %s, trimmed to "
+                        + "%.4f, %.4f to %.4f, %.4f where path is inside data grid",
+                        file.getName(), trimmedEnds[0], trimmedEnds[1], trimmedEnds[2],
+                        trimmedEnds[3]));
+            } else {
+                doUpdateStatus("Cross-section saved to file " + file.getName());
+            }
+        });
+
+        taskSaveCrossSection.setOnFailed(e -> {
+            pbProgress.setVisible(false);
+
+            Throwable ex = taskSaveCrossSection.getException();
+            LOG.error("{}\n{}", ex.getLocalizedMessage(), ex.toString());
+            LOG.error("Unable to save cross-section!");
+
+            doUpdateStatus("Unable to save cross-section to file");
+            Alert alert = new Alert(AlertType.ERROR);
+            alert.setTitle("Cross-Section Save Error");
+            alert.setHeaderText("Unable to save cross-section");
+            alert.setContentText(ex.getLocalizedMessage());
+            alert.showAndWait();
+        });
+
+        if (uiScheduler.submitSave(taskSaveCrossSection)) {
+            pbProgress.setProgress(ProgressBar.INDETERMINATE_PROGRESS);
+            pbProgress.setVisible(true);
+            doUpdateStatus("Reading cross-section...");
+        } else {
+            doUpdateStatus(TOO_MANY_SAVES_MESSAGE);
+        }
+    }
+
+    /**
+     * Writes the contents of a file being saved.
+     */
+    private interface FileContents {
+
+        void write(OutputStream out) throws Exception;
+    }
+
+    /**
+     * Write a file being saved through a buffered stream. If writing fails part way the
+     * file is deleted, as closing a PNG writer still ends the image and would otherwise
+     * leave a truncated file that looks complete.
+     *
+     * @param file file to write
+     * @param contents writes contents of file
+     *
+     * @throws Exception unable to write file
+     */
+    private static void writeFile(File file, FileContents contents) throws Exception {
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(file))) {
+            contents.write(out);
+        } catch (Throwable ex) {
+            if (file.exists() && !file.delete()) {
+                LOG.error("Unable to delete partly written file {}", file.getName());
+            }
+            throw ex;
+        }
+    }
+
+    /**
+     * Close the files of a forecast run opened for exporting.
+     */
+    private void closeRun(ModelRunDataset run) {
+        try {
+            run.close();
+        } catch (IOException ex) {
+            LOG.error("{}\n{}", ex.getLocalizedMessage(), ex.toString());
         }
     }
 
@@ -734,6 +1522,7 @@ public class STVSPController implements Initializable {
     @FXML
     protected void doExit(ActionEvent event) {
         LOG.debug("Exiting application.");
+        uiScheduler.shutdown();
         if (isNoFileOpen.get() == false) {
             try {
                 modelDataFile.close();
@@ -756,7 +1545,8 @@ public class STVSPController implements Initializable {
     }
 
     /**
-     * Scale Skew-T AnchorPane when window width changes.
+     * Scale Skew-T view to fit when window width changes, and have the Skew-T drawn
+     * again at the new size once resizing settles.
      */
     public void doScaleSkewTView() {
         double scrollBarWidth = 14.0;
@@ -776,11 +1566,94 @@ public class STVSPController implements Initializable {
 
         viewWidth = spSkewTTab.getWidth() - scrollBarWidth - 1.0;
 
-        double scale = (viewWidth / apSkewTTab.getWidth());
+        // Plot and blank differ in size while one is being drawn again, so fit the one
+        // shown
+        double shownWidth = canvasSkewT.getWidth();
+        if (isNoSkewTDrawn.get() && ivBlankSkewT.getImage() != null) {
+            shownWidth = ivBlankSkewT.getImage().getWidth();
+        }
+        double scale = (viewWidth / shownWidth);
 
         apSkewTTab.setScaleX(scale);
         apSkewTTab.setScaleY(scale);
         spSkewTTab.setContent(new Group(apSkewTTab));
+
+        // Drawn in device pixels, so sharp on high-DPI screens without drawing more
+        double pixelWidth = Math.round(viewWidth * getOutputScale());
+        if (viewWidth > 0 && pixelWidth != requestedViewWidth) {
+            requestedViewWidth = pixelWidth;
+            resizeDebounce.playFromStart();
+        }
+    }
+
+    /**
+     * Draw the Skew-T again, and the blank Skew-T in the background, at the size last
+     * asked for by {@link #doScaleSkewTView()}.
+     */
+    private void doRenderSkewTView() {
+        SkewTPlot.setViewScale(requestedViewWidth / SkewTPlot.getPlotWidth(1));
+        LOG.debug("Drawing Skew-T view at {}x{}", SkewTPlot.getViewWidth(),
+                SkewTPlot.getViewHeight());
+
+        SkewTPlot.redrawSkewT();
+        doDrawBlankSkewT();
+    }
+
+    /**
+     * Draw the blank Skew-T at the current view size in the background, and show it once
+     * drawn. Nothing is drawn if it is already shown or being drawn at that size, or if
+     * the previous one shown was that size, in which case the two are swapped.
+     *
+     * @return future completed on the JavaFX application thread once shown
+     */
+    private CompletableFuture<Void> doDrawBlankSkewT() {
+        int width = (int) SkewTPlot.getViewWidth();
+        int height = (int) SkewTPlot.getViewHeight();
+        if (blankView != null && blankView.isSize(width, height)) {
+            pendingBlankView = null;
+            return CompletableFuture.completedFuture(null);
+        }
+        if (spareBlankView != null && spareBlankView.isSize(width, height)) {
+            pendingBlankView = null;
+            doShowBlankView(spareBlankView);
+            return CompletableFuture.completedFuture(null);
+        }
+        if (pendingBlankView != null && pendingBlankView.isSize(width, height)) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        PixelBufferView view = new PixelBufferView(width, height);
+        pendingBlankView = view;
+        return SkewTPlot.drawBlankSkewTAsync(view).thenRun(() -> {
+            // A later resize may have replaced this one while it was being drawn
+            if (view == pendingBlankView) {
+                pendingBlankView = null;
+                doShowBlankView(view);
+            }
+        });
+    }
+
+    /**
+     * Show a drawn blank Skew-T, keeping the one it replaces as the spare.
+     *
+     * @param view blank Skew-T to show
+     */
+    private void doShowBlankView(PixelBufferView view) {
+        spareBlankView = blankView;
+        blankView = view;
+        ivBlankSkewT.setImage(view.getImage());
+    }
+
+    /**
+     * Get ratio of device pixels to layout pixels of the screen the window is on.
+     *
+     * @return output scale, 1 on most screens and 2 on most high-DPI screens
+     */
+    private double getOutputScale() {
+        if (spSkewTTab.getScene() != null && spSkewTTab.getScene().getWindow() != null) {
+            return spSkewTTab.getScene().getWindow().getOutputScaleX();
+        }
+        return Screen.getPrimary().getOutputScaleX();
     }
 
     /**
@@ -800,35 +1673,249 @@ public class STVSPController implements Initializable {
         tfLonFound.setText(String.format("%.6f", foundLonLat[0]));
         tfLatFound.setText(String.format("%.6f", foundLonLat[1]));
 
-        Task<Void> taskUpdateTable = new Task<Void>() {
+        if (!comparedDataFiles.isEmpty()) {
+            doUpdateComparison(searchLon, searchLat);
+            return;
+        } else if (!ensembleDataFiles.isEmpty()) {
+            doUpdateEnsemble(searchLon, searchLat);
+            return;
+        }
+
+        /*
+         * An area mean depends on the area and, for a radius, on the exact point
+         * searched for rather than the grid point nearest it.
+         */
+        double[] areaInUse = areaMeanBounds;
+        String fileIdentity = modelDataFile.getFileIdentity();
+        if (areaInUse != null) {
+            fileIdentity += "|mean " + Arrays.toString(areaInUse) + " at " + searchLon
+                    + ", " + searchLat;
+        }
+        SoundingCache.Key cacheKey = new SoundingCache.Key(fileIdentity, coordX, coordY,
+                SkewTPlot.getRenderSettings());
+        SoundingCache.Entry cached = soundingCache.get(cacheKey);
+
+        if (cached != null) {
+            // A slower plot still being read must not replace this one when it finishes
+            uiScheduler.cancel("plot");
+            lblStatus.textProperty().unbind();
+            pbProgress.progressProperty().unbind();
+            pbProgress.setVisible(false);
+
+            SkewTPlot.drawRecordedSkewT(canvasSkewT.getGraphicsContext2D(),
+                    cached.getRecording());
+            isNoSkewTDrawn.set(false);
+            doUpdateStatus("Skew-T plotted from cache");
+            return;
+        }
+
+        /*
+         * The data is read and the plot is recorded in the background. Only replaying
+         * the recorded plot is done on the JavaFX application thread, so that the
+         * canvas is only ever drawn on from that thread.
+         */
+        ModelDataFile mdfInUse = modelDataFile;
+
+        Task<SkewTPlot.Recording> taskUpdateTable = new Task<SkewTPlot.Recording>() {
             @Override
-            public Void call() {
+            public SkewTPlot.Recording call() throws Exception {
                 updateProgress(0, 100);
+                updateMessage("Reading data...");
+
+                // Reads a user is waiting on go ahead of any prefetch or batch reads
+                Sounding sounding = DataReadScheduler.getShared()
+                        .submit(DataReadScheduler.Priority.INTERACTIVE, () -> {
+                            if (areaInUse == null) {
+                                return mdfInUse.getSounding(coordX, coordY);
+                            } else if (areaInUse.length == 1) {
+                                return mdfInUse.getAreaMeanSounding(searchLon,
+                                        searchLat, areaInUse[0]);
+                            } else {
+                                return mdfInUse.getAreaMeanSounding(areaInUse[0],
+                                        areaInUse[1], areaInUse[2], areaInUse[3]);
+                            }
+                        })
+                        .get();
 
                 updateProgress(80, 100);
                 updateMessage("Plotting Skew-T...");
 
-                SkewTPlot.plotSkewT(canvasSkewT.getGraphicsContext2D(), modelDataFile,
-                        coordX, coordY);
-                updateProgress(100, 100);
-
-                return null;
+                return SkewTPlot.recordSkewT(sounding);
             }
         };
 
         taskUpdateTable.setOnSucceeded(event -> {
+            SkewTPlot.Recording recording = taskUpdateTable.getValue();
+            SkewTPlot.drawRecordedSkewT(canvasSkewT.getGraphicsContext2D(), recording);
+
             lblStatus.textProperty().unbind();
             pbProgress.progressProperty().unbind();
             pbProgress.setVisible(false);
 
             isNoSkewTDrawn.set(false);
             doUpdateStatus("Data table updated and Skew-T plotted");
+
+            soundingCache.put(cacheKey, recording);
+        });
+
+        taskUpdateTable.setOnFailed(event -> {
+            lblStatus.textProperty().unbind();
+            pbProgress.progressProperty().unbind();
+            pbProgress.setVisible(false);
+
+            Throwable ex = taskUpdateTable.getException();
+            if (ex instanceof ExecutionException && ex.getCause() != null) {
+                ex = ex.getCause();
+            }
+            LOG.error("{}\n{}", ex.getLocalizedMessage(), ex.toString());
+            doUpdateStatus("Unable to read data: " + ex.getLocalizedMessage());
+        });
+
+        String requestKey = fileIdentity + "|" + coordX + "|" + coordY;
+
+        if (uiScheduler.submit("plot", requestKey, taskUpdateTable)) {
+            lblStatus.textProperty().bind(taskUpdateTable.messageProperty());
+            pbProgress.progressProperty().bind(taskUpdateTable.progressProperty());
+            pbProgress.setVisible(true);
+        }
+    }
+
+    /**
+     * Read the sounding nearest the searched point from the open data file and from each
+     * data file being compared, all at the same time, and plot them together. Files whose
+     * grid does not cover the point are left out. Comparisons are not cached, as the set
+     * of files compared can change.
+     *
+     * @param searchLon longitude searched for
+     * @param searchLat latitude searched for
+     */
+    private void doUpdateComparison(double searchLon, double searchLat) {
+        List<ModelDataFile> dataFiles = new ArrayList<>();
+        dataFiles.add(modelDataFile);
+        dataFiles.addAll(comparedDataFiles);
+
+        Task<SkewTPlot.Recording> taskCompare = new Task<SkewTPlot.Recording>() {
+            @Override
+            public SkewTPlot.Recording call() throws Exception {
+                updateProgress(0, 100);
+                updateMessage("Reading data from " + dataFiles.size() + " models...");
+
+                Sounding[] soundings = Arrays.stream(
+                        ModelComparison.readSoundings(dataFiles, searchLon, searchLat))
+                        .filter(Objects::nonNull).toArray(Sounding[]::new);
+                if (soundings.length == 0) {
+                    throw new IOException("Point is outside the grid of every model");
+                }
+
+                updateProgress(80, 100);
+                updateMessage("Plotting Skew-T...");
+
+                return SkewTPlot.recordSkewT(soundings);
+            }
+        };
+
+        taskCompare.setOnSucceeded(event -> {
+            SkewTPlot.drawRecordedSkewT(canvasSkewT.getGraphicsContext2D(),
+                    taskCompare.getValue());
+
+            lblStatus.textProperty().unbind();
+            pbProgress.progressProperty().unbind();
+            pbProgress.setVisible(false);
+
+            isNoSkewTDrawn.set(false);
+            int numShown = SkewTPlot.getShownSoundings().length;
+            String status = "Skew-T plotted comparing " + numShown + " models";
+            if (numShown < dataFiles.size()) {
+                status += ", " + (dataFiles.size() - numShown)
+                        + " not covering this point left out";
+            }
+            doUpdateStatus(status);
         });
 
-        lblStatus.textProperty().bind(taskUpdateTable.messageProperty());
-        pbProgress.progressProperty().bind(taskUpdateTable.progressProperty());
-        pbProgress.setVisible(true);
+        taskCompare.setOnFailed(event -> {
+            lblStatus.textProperty().unbind();
+            pbProgress.progressProperty().unbind();
+            pbProgress.setVisible(false);
+
+            Throwable ex = taskCompare.getException();
+            LOG.error("{}\n{}", ex.getLocalizedMessage(), ex.toString());
+            doUpdateStatus("Unable to read data to compare: " + ex.getLocalizedMessage());
+        });
 
-        new Thread(taskUpdateTable).start();
+        StringJoiner requestKey = new StringJoiner("|");
+        dataFiles.forEach(dataFile -> requestKey.add(dataFile.getFileIdentity()));
+        requestKey.add(Double.toString(searchLon)).add(Double.toString(searchLat));
+
+        if (uiScheduler.submit("plot", requestKey.toString(), taskCompare)) {
+            lblStatus.textProperty().bind(taskCompare.messageProperty());
+            pbProgress.progressProperty().bind(taskCompare.progressProperty());
+            pbProgress.setVisible(true);
+        }
+    }
+
+    /**
+     * Read the sounding at the searched point from every ensemble member at once and
+     * plot their spread. Like comparisons, ensemble plots are not cached.
+     *
+     * @param searchLon longitude searched for
+     * @param searchLat latitude searched for
+     */
+    private void doUpdateEnsemble(double searchLon, double searchLat) {
+        List<ModelDataFile> members = new ArrayList<>();
+        members.add(modelDataFile);
+        members.addAll(ensembleDataFiles);
+
+        Task<SkewTPlot.Recording> taskEnsemble = new Task<SkewTPlot.Recording>() {
+            @Override
+            public SkewTPlot.Recording call() throws Exception {
+                updateProgress(0, 100);
+                updateMessage("Reading data from " + members.size()
+                        + " ensemble members...");
+
+                EnsembleSounding ensemble =
+                        EnsembleSounding.read(members, searchLon, searchLat);
+                if (ensemble == null) {
+                    throw new IOException("Point is outside the ensemble's grid");
+                }
+
+                updateProgress(80, 100);
+                updateMessage("Plotting Skew-T...");
+
+                return SkewTPlot.recordSkewT(ensemble);
+            }
+        };
+
+        taskEnsemble.setOnSucceeded(event -> {
+            SkewTPlot.drawRecordedSkewT(canvasSkewT.getGraphicsContext2D(),
+                    taskEnsemble.getValue());
+
+            lblStatus.textProperty().unbind();
+            pbProgress.progressProperty().unbind();
+            pbProgress.setVisible(false);
+
+            isNoSkewTDrawn.set(false);
+            doUpdateStatus("Skew-T plotted showing spread of " + members.size()
+                    + " ensemble members");
+        });
+
+        taskEnsemble.setOnFailed(event -> {
+            lblStatus.textProperty().unbind();
+            pbProgress.progressProperty().unbind();
+            pbProgress.setVisible(false);
+
+            Throwable ex = taskEnsemble.getException();
+            LOG.error("{}\n{}", ex.getLocalizedMessage(), ex.toString());
+            doUpdateStatus("Unable to read ensemble members: "
+                    + ex.getLocalizedMessage());
+        });
+
+        String requestKey = "ensemble|" + modelDataFile.getFileIdentity() + "|"
+                + members.size() + "|" + searchLon + "|" + searchLat;
+
+        if (uiScheduler.submit("plot", requestKey, taskEnsemble)) {
+            lblStatus.textProperty().bind(taskEnsemble.messageProperty());
+            pbProgress.progressProperty().bind(taskEnsemble.progressProperty());
+            pbProgress.setVisible(true);
+        }
     }
 }
@@ -25,31 +25,36 @@
  */
 package com.averydonovan.skewtvsp.controllers;
 
+import com.averydonovan.skewtvsp.controllers.PlotGraphics.TextAlign;
+import com.averydonovan.skewtvsp.controllers.PlotGraphics.TextBaseline;
 import com.averydonovan.skewtvsp.utils.AtmosThermoMath;
+import com.averydonovan.skewtvsp.utils.EnsembleSounding;
+import com.averydonovan.skewtvsp.utils.Metrics;
 import com.averydonovan.skewtvsp.utils.ModelDataFile;
-import java.awt.image.RenderedImage;
+import com.averydonovan.skewtvsp.utils.Sounding;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+import java.util.function.DoubleFunction;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 import java.util.stream.Stream;
-import javafx.embed.swing.SwingFXUtils;
-import javafx.geometry.VPos;
-import javafx.scene.canvas.Canvas;
+import javafx.application.Platform;
 import javafx.scene.canvas.GraphicsContext;
-import javafx.scene.image.WritableImage;
-import javafx.scene.paint.Color;
-import javafx.scene.text.Font;
-import javafx.scene.text.FontPosture;
-import javafx.scene.text.FontWeight;
-import javafx.scene.text.TextAlignment;
-import javafx.scene.transform.Rotate;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
+ * Renders Skew-T diagrams. Each instance draws to its own {@link PlotGraphics}, so
+ * separate instances can render at the same time on different threads, such as when
+ * serving plots from server mode. The static methods draw the on-screen plot using a
+ * shared instance and must only be called on the JavaFX application thread, apart from
+ * {@link #record(Sounding, double)} and {@link #recordSkewT(Sounding)}, which do the
+ * work of plotting on any thread so that only a quick replay is left for the JavaFX
+ * application thread.
  *
  * @author Avery Donovan
  */
@@ -58,6 +63,19 @@ public class SkewTPlot {
     private static final Logger LOG =
             LoggerFactory.getLogger(ModelDataFile.class.getName());
 
+    /*
+     * Render metrics.
+     */
+    private static final Metrics.Histogram renderTimer = Metrics.timer("plot.render");
+    private static final Metrics.Histogram renderTracesTimer =
+            Metrics.timer("plot.renderTraces");
+    private static final Metrics.Histogram renderBlankTimer =
+            Metrics.timer("plot.renderBlank");
+    private static final Metrics.Histogram recordTimer = Metrics.timer("plot.record");
+    private static final Metrics.Histogram replayTimer = Metrics.timer("plot.replay");
+    private static final Metrics.Histogram stripExportTimer =
+            Metrics.timer("plot.export.strips");
+
     /*
      * Various useful constants.
      */
@@ -81,87 +99,157 @@ public class SkewTPlot {
     private static final double PRES_MAX_LOG = Math.log(PRES_MAX);
     private static final double PRES_LOG_RANGE = PRES_MAX_LOG - PRES_MIN_LOG;
 
-    private static final int PLOT_VIEW_WIDTH = 900 * 3;
-    private static final int PLOT_VIEW_HEIGHT = 1200 * 3;
-    private static final int PLOT_VIEW_SCALE = 3;
-    // private static final int PLOT_PRINT_SCALE = 3;
-    // private static final int PLOT_PRINT_WIDTH = PLOT_VIEW_WIDTH * PLOT_PRINT_SCALE;
-    // private static final int PLOT_PRINT_HEIGHT = PLOT_VIEW_HEIGHT * PLOT_PRINT_SCALE;
-
+    private static final int PLOT_BASE_WIDTH = 900;
+    private static final int PLOT_BASE_HEIGHT = 1200;
     /**
-     * ModelDataFile currently in use.
+     * Scale plots are exported at, giving 2700x3600 pixels.
      */
-    private static ModelDataFile mdfSkewTData = null;
+    private static final int PLOT_EXPORT_SCALE = 3;
     /**
-     * GraphicsContext currently in use.
+     * Resolution of plot at a scale of 1, making an exported plot 9x12 inches.
      */
-    private static GraphicsContext gcSkewTPlot = null;
-
-    /*
-     * XY-coordinates in data grid to use.
+    static final int PLOT_BASE_DPI = 100;
+    /**
+     * Rows of an exported image rendered at a time, overridable with the
+     * skewtvsp.export.stripHeight system property.
+     */
+    static final int EXPORT_STRIP_HEIGHT =
+            Math.max(1, Integer.getInteger("skewtvsp.export.stripHeight", 256));
+    /**
+     * Smallest scale the on-screen plot is drawn at, however small the window.
      */
-    private static int coordX = 0;
-    private static int coordY = 0;
+    private static final double PLOT_VIEW_MIN_SCALE = 0.25;
 
     /*
-     * Plotting area setup variables.
+     * Colors used in plot, as 0xRRGGBB.
      */
-    private static double plotXOffset = 0;
-    private static double plotYOffset = 0;
-    private static double plotXMax = 0;
-    private static double plotYMax = 0;
-    private static double plotXStep = 0;
-    private static double plotYStep = 0;
-    private static double plotAvgStep = 0;
-    private static double plotXRange = 0;
-    private static double plotYRange = 0;
-    private static double canvasWidth = 0;
-    private static double canvasHeight = 0;
+    private static final int COLOR_BLACK = 0x000000;
+    private static final int COLOR_WHITE = 0xFFFFFF;
+    private static final int COLOR_RED = 0xFF0000;
+    private static final int COLOR_BLUE = 0x0000FF;
+    private static final int COLOR_GREEN = 0x008000;
+    private static final int COLOR_TEAL = 0x008080;
+    private static final int COLOR_BROWN = 0x7F5F3F;
 
     /**
-     * Factor to scale plotted elements by so that they have the same relative size at
-     * higher resolutions.
+     * Colors of each model's traces when comparing models, chosen to stand apart from
+     * the colors of the grid lines.
      */
-    private static int scaleLineFactor = PLOT_VIEW_SCALE;
+    private static final int[] COMPARISON_COLORS = {
+        COLOR_BLACK, COLOR_RED, 0xC000C0, 0xFF8000, 0x0090FF, 0x606060
+    };
+
+    /*
+     * Colors of ensemble percentile bands, outer (10th to 90th) then inner (25th to
+     * 75th), light enough for grid lines to be read through.
+     */
+    private static final int[] ENSEMBLE_TEMP_COLORS = {0xDCDCDC, 0xB4B4B4};
+    private static final int[] ENSEMBLE_DEWP_COLORS = {0xFFD8D8, 0xFFA8A8};
 
     /**
      * Pressure levels to plot ticks and labels for.
      */
-    private static List<Integer> presLevels;
+    private static final List<Integer> presLevels =
+            IntStream.rangeClosed(PRES_MIN_HPA / 100, PRES_MAX_HPA / 100)
+                    .map(i -> i * 100 * HPA_TO_PA).boxed().collect(Collectors.toList());
     /**
      * Temperature steps to plot ticks and labels for.
      */
-    private static List<Double> tempSteps;
+    private static final List<Double> tempSteps =
+            IntStream.rangeClosed(TEMP_MIN_C / 10, TEMP_MAX_C / 10)
+                    .mapToDouble(i -> (i * 10) + C_TO_K).boxed().collect(Collectors.toList());
     /**
      * Mixing ratio lines to plot.
      */
-    private static List<Double> wLevels;
+    private static final List<Double> wLevels = Stream.of(0.1, 0.5, 1.0, 1.5, 2.0, 3.0,
+            4.0, 6.0, 8.0, 10.0, 12.0, 15.0, 20.0, 25.0, 30.0, 35.0, 40.0, 45.0)
+            .collect(Collectors.toList());
+    /**
+     * Temperatures 10 K apart, for skewed temperatures and dry adiabats.
+     */
+    private static final List<Double> tempsBy10 = IntStream
+            .rangeClosed((TEMP_MIN_C - (TEMP_MAX_C - TEMP_MIN_C)) / 10, TEMP_MAX_C / 10)
+            .mapToDouble(i -> (i * 10) + C_TO_K).boxed().collect(Collectors.toList());
+    /**
+     * Temperatures 5 K apart, for saturated adiabats.
+     */
+    private static final List<Double> tempsBy5 = IntStream
+            .rangeClosed((TEMP_MIN_C - (TEMP_MAX_C - TEMP_MIN_C)) / 5, TEMP_MAX_C / 5)
+            .mapToDouble(i -> (i * 5) + C_TO_K).boxed().collect(Collectors.toList());
 
     /**
-     * Sets up class fields for plot so that drawing and plotting methods will render at
-     * the proper size to the correct GraphicsContext. Must be called before calling any
-     * drawing or plotting method to avoid unpredictable behavior.
-     *
-     * @param gcSkewT GraphicsContext to use for plotting
-     * @param doClearPlot true if plotting area should be cleared, false if not
+     * GraphicsContext of on-screen plot.
      */
-    public static void initSkewT(GraphicsContext gcSkewT, boolean doClearPlot) {
-        gcSkewTPlot = gcSkewT;
+    private static GraphicsContext gcSkewTPlot = null;
+    /**
+     * Instance drawing the on-screen plot.
+     */
+    private static SkewTPlot viewPlot = null;
+    /**
+     * Scale the on-screen plot is drawn at, chosen to match the size of the view in
+     * device pixels.
+     */
+    private static volatile double viewScale = 1;
 
-        presLevels = IntStream.rangeClosed(PRES_MIN_HPA / 100, PRES_MAX_HPA / 100)
-                .map(i -> i * 100 * HPA_TO_PA).boxed().collect(Collectors.toList());
+    /**
+     * Graphics being drawn to.
+     */
+    private final PlotGraphics g;
+    /**
+     * Sounding currently in use.
+     */
+    private Sounding sounding = null;
+    /**
+     * Soundings being compared, or null if only one sounding is plotted. The first is
+     * also the sounding in use.
+     */
+    private Sounding[] compared = null;
+    /**
+     * Ensemble whose spread is plotted, or null if not plotting an ensemble. Its median
+     * is also the sounding in use.
+     */
+    private EnsembleSounding ensemble = null;
+    /*
+     * Screen coordinates of sounding levels, reused between plots.
+     */
+    private double[] xTempVals = new double[0];
+    private double[] xDewpVals = new double[0];
+    private double[] yVals = new double[0];
 
-        tempSteps = IntStream.rangeClosed(TEMP_MIN_C / 10, TEMP_MAX_C / 10)
-                .mapToDouble(i -> (i * 10) + C_TO_K).boxed().collect(Collectors.toList());
+    /*
+     * Plotting area setup variables.
+     */
+    private final double plotXOffset;
+    private final double plotYOffset;
+    private final double plotXMax;
+    private final double plotYMax;
+    private final double plotXStep;
+    private final double plotYStep;
+    private final double plotAvgStep;
+    private final double plotXRange;
+    private final double plotYRange;
+    private final double canvasWidth;
+    private final double canvasHeight;
 
-        wLevels = Stream.of(0.1, 0.5, 1.0, 1.5, 2.0, 3.0, 4.0, 6.0, 8.0, 10.0, 12.0, 15.0,
-                20.0, 25.0, 30.0, 35.0, 40.0, 45.0).collect(Collectors.toList());
+    /**
+     * Factor to scale plotted elements by so that they have the same relative size at
+     * higher resolutions.
+     */
+    private final double scaleLineFactor;
 
-        gcSkewTPlot.getCanvas().setHeight(PLOT_VIEW_HEIGHT);
-        gcSkewTPlot.getCanvas().setWidth(PLOT_VIEW_WIDTH);
+    /**
+     * Create new plot drawing to given graphics.
+     *
+     * @param g graphics to draw to
+     * @param scale factor to scale plot by, 1 being 900x1200 pixels, need not be a whole
+     *              number
+     */
+    public SkewTPlot(PlotGraphics g, double scale) {
+        this.g = g;
 
-        canvasWidth = PLOT_VIEW_WIDTH;
-        canvasHeight = PLOT_VIEW_HEIGHT;
+        scaleLineFactor = scale;
+        canvasWidth = PLOT_BASE_WIDTH * scale;
+        canvasHeight = PLOT_BASE_HEIGHT * scale;
         plotXOffset = canvasWidth * 0.15;
         plotYOffset = canvasHeight * 0.85;
         plotXMax = canvasWidth * 0.90;
@@ -172,9 +260,446 @@ public class SkewTPlot {
         plotXStep = plotXRange / PLOT_MAX_STEPS;
         plotYStep = plotYRange / PLOT_MAX_STEPS;
         plotAvgStep = (plotXStep + plotYStep) / 2;
+    }
+
+    /**
+     * Returns width of plot at a given scale.
+     *
+     * @param scale factor to scale plot by
+     *
+     * @return width in pixels
+     */
+    public static int getPlotWidth(int scale) {
+        return PLOT_BASE_WIDTH * scale;
+    }
+
+    /**
+     * Returns height of plot at a given scale.
+     *
+     * @param scale factor to scale plot by
+     *
+     * @return height in pixels
+     */
+    public static int getPlotHeight(int scale) {
+        return PLOT_BASE_HEIGHT * scale;
+    }
+
+    /**
+     * Plot a Skew-T diagram for a sounding.
+     *
+     * @param sounding sounding to plot
+     */
+    public void plot(Sounding sounding) {
+        long startNanos = System.nanoTime();
+        this.sounding = sounding;
+        this.compared = null;
+        this.ensemble = null;
+
+        PlotPhaseEvent phase = beginPhase();
+        g.clearRect(0, 0, canvasWidth, canvasHeight);
+        drawGridLines();
+        phase.finish("grid", scaleLineFactor);
+
+        phase = beginPhase();
+        plotTemps();
+        phase.finish("traces", scaleLineFactor);
+
+        phase = beginPhase();
+        drawAxes();
+        drawTicksAndLabels();
+        phase.finish("axes", scaleLineFactor);
+
+        phase = beginPhase();
+        drawLocationAndTime();
+        phase.finish("labels", scaleLineFactor);
+
+        phase = beginPhase();
+        drawWeatherIndices();
+        phase.finish("indices", scaleLineFactor);
+
+        renderTimer.recordSince(startNanos);
+    }
+
+    /**
+     * Plot the temperature and dew point traces of several soundings at about the same
+     * point, such as from different models, over one diagram. Each sounding's traces
+     * are drawn in a color of their own, with dew points dashed, and a key showing the
+     * source and valid time of each sounding takes the place of weather indices.
+     *
+     * @param soundings soundings to compare
+     */
+    public void plotComparison(Sounding[] soundings) {
+        long startNanos = System.nanoTime();
+        this.sounding = soundings[0];
+        this.compared = soundings;
+        this.ensemble = null;
+
+        PlotPhaseEvent phase = beginPhase();
+        g.clearRect(0, 0, canvasWidth, canvasHeight);
+        drawGridLines();
+        phase.finish("grid", scaleLineFactor);
+
+        phase = beginPhase();
+        for (int index = 0; index < soundings.length; index++) {
+            plotComparedTemps(index);
+        }
+        phase.finish("traces", scaleLineFactor);
+
+        phase = beginPhase();
+        drawAxes();
+        drawTicksAndLabels();
+        phase.finish("axes", scaleLineFactor);
+
+        phase = beginPhase();
+        drawComparisonKey();
+        phase.finish("labels", scaleLineFactor);
+
+        renderTimer.recordSince(startNanos);
+    }
+
+    /**
+     * Plot the spread of an ensemble: shaded bands between the 10th and 90th and between
+     * the 25th and 75th percentiles of temperature and dew point, with the median traces
+     * over them. Weather indices are shown as their median and 10th to 90th percentile
+     * range over all members.
+     *
+     * @param ensemble spread of ensemble members at one point
+     */
+    public void plotEnsemble(EnsembleSounding ensemble) {
+        long startNanos = System.nanoTime();
+        this.sounding = ensemble.getMedian();
+        this.compared = null;
+        this.ensemble = ensemble;
+
+        PlotPhaseEvent phase = beginPhase();
+        g.clearRect(0, 0, canvasWidth, canvasHeight);
+        drawBackground();
+        drawEnsembleBands();
+        drawAdiabatsAndIsobars();
+        phase.finish("grid", scaleLineFactor);
+
+        phase = beginPhase();
+        plotTemps();
+        phase.finish("traces", scaleLineFactor);
+
+        phase = beginPhase();
+        drawAxes();
+        drawTicksAndLabels();
+        phase.finish("axes", scaleLineFactor);
+
+        phase = beginPhase();
+        drawLocationAndTime();
+        phase.finish("labels", scaleLineFactor);
+
+        phase = beginPhase();
+        drawEnsembleIndices();
+        phase.finish("indices", scaleLineFactor);
+
+        renderTimer.recordSince(startNanos);
+    }
+
+    /**
+     * Plot only the temperature and dew point traces and the location and time labels of
+     * a sounding, leaving out weather indices. Meant to be drawn over a copy of a blank
+     * diagram rendered earlier with {@link #plotBlank()} at the same scale, as a cheap
+     * stand-in for a full plot.
+     *
+     * @param sounding sounding to plot
+     */
+    public void plotTraces(Sounding sounding) {
+        long startNanos = System.nanoTime();
+        this.sounding = sounding;
+        this.compared = null;
+        this.ensemble = null;
+
+        PlotPhaseEvent phase = beginPhase();
+        plotTemps();
+        phase.finish("traces", scaleLineFactor);
+
+        phase = beginPhase();
+        drawLocationAndTime();
+        phase.finish("labels", scaleLineFactor);
+
+        renderTracesTimer.recordSince(startNanos);
+    }
+
+    /**
+     * Draw a blank Skew-T diagram.
+     */
+    public void plotBlank() {
+        long startNanos = System.nanoTime();
+        this.sounding = null;
+        this.compared = null;
+        this.ensemble = null;
+
+        PlotPhaseEvent phase = beginPhase();
+        g.clearRect(0, 0, canvasWidth, canvasHeight);
+        drawGridLines();
+        phase.finish("grid", scaleLineFactor);
+
+        phase = beginPhase();
+        drawAxes();
+        drawTicksAndLabels();
+        phase.finish("axes", scaleLineFactor);
+
+        renderBlankTimer.recordSince(startNanos);
+    }
+
+    /**
+     * Record a Skew-T diagram into a display list, ready to be replayed onto any
+     * graphics. Each layer of the diagram, down to individual adiabats and mixing ratio
+     * lines, is computed and recorded in parallel, and the layers are then joined in
+     * drawing order. Can be called from any thread.
+     *
+     * @param sounding sounding to plot, or null for a blank diagram
+     * @param scale factor to scale plot by, 1 being 900x1200 pixels
+     *
+     * @return recorded diagram
+     */
+    public static DisplayList record(Sounding sounding, double scale) {
+        return record(sounding, scale, true, true);
+    }
+
+    /**
+     * Record a Skew-T diagram comparing several soundings, as drawn by
+     * {@link #plotComparison(Sounding[]) plotComparison}, into a display list. Layers
+     * are recorded in parallel as for {@link #record(Sounding, double) record}. Can be
+     * called from any thread.
+     *
+     * @param soundings soundings to compare; a single sounding is plotted as usual
+     * @param scale factor to scale plot by, 1 being 900x1200 pixels
+     *
+     * @return recorded diagram
+     */
+    public static DisplayList record(Sounding[] soundings, double scale) {
+        if (soundings.length == 1) {
+            return record(soundings[0], scale);
+        }
+        long startNanos = System.nanoTime();
+
+        List<Consumer<SkewTPlot>> layers = new ArrayList<>();
+        addGridLayers(layers);
+        for (int index = 0; index < soundings.length; index++) {
+            int traced = index;
+            layers.add(plot -> plot.plotComparedTemps(traced));
+        }
+        layers.add(SkewTPlot::drawAxes);
+        layers.add(SkewTPlot::drawTicksAndLabels);
+        layers.add(SkewTPlot::drawComparisonKey);
+
+        DisplayList result = new DisplayList();
+        result.clearRect(0, 0, PLOT_BASE_WIDTH * scale, PLOT_BASE_HEIGHT * scale);
+        for (DisplayList layerList : recordLayers(layers, plot -> {
+            plot.sounding = soundings[0];
+            plot.compared = soundings;
+        }, scale)) {
+            result.append(layerList);
+        }
+
+        recordTimer.recordSince(startNanos);
+        return result;
+    }
+
+    /**
+     * Record the spread of an ensemble, as drawn by
+     * {@link #plotEnsemble(EnsembleSounding) plotEnsemble}, into a display list. Layers
+     * are recorded in parallel as for {@link #record(Sounding, double) record}. Can be
+     * called from any thread.
+     *
+     * @param ensemble spread of ensemble members at one point
+     * @param scale factor to scale plot by, 1 being 900x1200 pixels
+     *
+     * @return recorded diagram
+     */
+    public static DisplayList record(EnsembleSounding ensemble, double scale) {
+        long startNanos = System.nanoTime();
+
+        List<Consumer<SkewTPlot>> layers = new ArrayList<>();
+        addGridLayers(layers);
+        // Bands go straight over the background so grid lines show through them
+        layers.add(1, SkewTPlot::drawEnsembleBands);
+        layers.add(SkewTPlot::plotTemps);
+        layers.add(SkewTPlot::drawAxes);
+        layers.add(SkewTPlot::drawTicksAndLabels);
+        layers.add(SkewTPlot::drawLocationAndTime);
+        layers.add(SkewTPlot::drawEnsembleIndices);
+
+        DisplayList result = new DisplayList();
+        result.clearRect(0, 0, PLOT_BASE_WIDTH * scale, PLOT_BASE_HEIGHT * scale);
+        for (DisplayList layerList : recordLayers(layers, plot -> {
+            plot.sounding = ensemble.getMedian();
+            plot.ensemble = ensemble;
+        }, scale)) {
+            result.append(layerList);
+        }
+
+        recordTimer.recordSince(startNanos);
+        return result;
+    }
+
+    /**
+     * Record only the parts of a Skew-T diagram that are the same for every sounding:
+     * the background, adiabats, mixing ratio lines, skewed temperatures and isobars.
+     * Meant for rendering once and then drawing {@link #recordOverGrid(Sounding,
+     * double) recordOverGrid} over for each of many soundings, such as the frames of
+     * an animation. Can be called from any thread.
+     *
+     * @param scale factor to scale plot by, 1 being 900x1200 pixels
+     *
+     * @return recorded grid
+     */
+    public static DisplayList recordGrid(double scale) {
+        return record(null, scale, true, false);
+    }
+
+    /**
+     * Record the parts of a Skew-T diagram drawn over the grid recorded by
+     * {@link #recordGrid(double) recordGrid}: traces, axes, labels and weather indices.
+     * Drawing the two one after the other gives the same diagram as
+     * {@link #record(Sounding, double) record}. Can be called from any thread.
+     *
+     * @param sounding sounding to plot
+     * @param scale factor to scale plot by, 1 being 900x1200 pixels
+     *
+     * @return recorded traces, axes and labels
+     */
+    public static DisplayList recordOverGrid(Sounding sounding, double scale) {
+        return record(sounding, scale, false, true);
+    }
+
+    /**
+     * Record the grid of a Skew-T diagram, what is drawn over it, or both.
+     */
+    private static DisplayList record(Sounding sounding, double scale, boolean withGrid,
+            boolean withOverGrid) {
+        long startNanos = System.nanoTime();
+
+        List<Consumer<SkewTPlot>> layers = new ArrayList<>();
+        if (withGrid) {
+            addGridLayers(layers);
+        }
+        if (withOverGrid) {
+            if (sounding != null) {
+                layers.add(SkewTPlot::plotTemps);
+            }
+            layers.add(SkewTPlot::drawAxes);
+            layers.add(SkewTPlot::drawTicksAndLabels);
+            if (sounding != null) {
+                layers.add(SkewTPlot::drawLocationAndTime);
+                layers.add(SkewTPlot::drawWeatherIndices);
+            }
+        }
+
+        DisplayList[] recorded =
+                recordLayers(layers, plot -> plot.sounding = sounding, scale);
+
+        DisplayList result = new DisplayList();
+        if (withGrid) {
+            result.clearRect(0, 0, PLOT_BASE_WIDTH * scale, PLOT_BASE_HEIGHT * scale);
+        }
+        for (DisplayList layerList : recorded) {
+            result.append(layerList);
+        }
+
+        recordTimer.recordSince(startNanos);
+        return result;
+    }
+
+    /**
+     * Add layers of the grid, which is the same for every sounding, down to individual
+     * adiabats and mixing ratio lines.
+     */
+    private static void addGridLayers(List<Consumer<SkewTPlot>> layers) {
+        layers.add(SkewTPlot::drawBackground);
+        tempsBy10.forEach(d -> layers.add(plot -> plot.drawDryAdiabat(d)));
+        tempsBy5.forEach(d -> layers.add(plot -> plot.drawSatAdiabat(d)));
+        wLevels.forEach(d -> layers.add(plot -> plot.drawMixRatios(d)));
+        layers.add(SkewTPlot::drawSkewTempsAndIsobars);
+    }
+
+    /**
+     * Record each layer into a display list of its own, in parallel. Each layer gets an
+     * instance of its own, set up with what is being plotted before it draws.
+     */
+    private static DisplayList[] recordLayers(List<Consumer<SkewTPlot>> layers,
+            Consumer<SkewTPlot> setup, double scale) {
+        return layers.parallelStream().map(layer -> {
+            DisplayList layerList = new DisplayList();
+            SkewTPlot plot = new SkewTPlot(layerList, scale);
+            setup.accept(plot);
+            layer.accept(plot);
+            return layerList;
+        }).toArray(DisplayList[]::new);
+    }
+
+    /**
+     * Begin flight recorder event for a phase of drawing. Costs next to nothing when
+     * no recording is running.
+     *
+     * @return event to finish once phase is drawn
+     */
+    private static PlotPhaseEvent beginPhase() {
+        PlotPhaseEvent phase = new PlotPhaseEvent();
+        phase.begin();
+        return phase;
+    }
+
+    /**
+     * Sets the scale the on-screen plot is drawn at. Takes effect the next time the
+     * on-screen plot is set up with {@link #initSkewT(GraphicsContext, boolean)}, such
+     * as when it is redrawn with {@link #redrawSkewT()}.
+     *
+     * @param scale factor to scale plot by, 1 being 900x1200 pixels; limited to between
+     *              0.25 and the export scale of 3
+     */
+    public static void setViewScale(double scale) {
+        viewScale = Math.max(PLOT_VIEW_MIN_SCALE, Math.min(PLOT_EXPORT_SCALE, scale));
+    }
+
+    /**
+     * Returns the scale the on-screen plot is drawn at.
+     *
+     * @return factor plot is scaled by, 1 being 900x1200 pixels
+     */
+    public static double getViewScale() {
+        return viewScale;
+    }
+
+    /**
+     * Returns width of on-screen plot in pixels at its current scale.
+     *
+     * @return width in pixels
+     */
+    public static double getViewWidth() {
+        return Math.round(PLOT_BASE_WIDTH * viewScale);
+    }
+
+    /**
+     * Returns height of on-screen plot in pixels at its current scale.
+     *
+     * @return height in pixels
+     */
+    public static double getViewHeight() {
+        return Math.round(PLOT_BASE_HEIGHT * viewScale);
+    }
+
+    /**
+     * Sets up the on-screen plot so that it will render at the proper size to the
+     * correct GraphicsContext. Must be called before drawing the on-screen plot.
+     *
+     * @param gcSkewT GraphicsContext to use for plotting
+     * @param doClearPlot true if plotting area should be cleared, false if not
+     */
+    public static void initSkewT(GraphicsContext gcSkewT, boolean doClearPlot) {
+        gcSkewTPlot = gcSkewT;
+
+        gcSkewTPlot.getCanvas().setHeight(getViewHeight());
+        gcSkewTPlot.getCanvas().setWidth(getViewWidth());
+
+        viewPlot = new SkewTPlot(new FxPlotGraphics(gcSkewT), viewScale);
 
         if (doClearPlot == true) {
-            gcSkewTPlot.clearRect(0, 0, canvasWidth, canvasHeight);
+            gcSkewTPlot.clearRect(0, 0, getViewWidth(), getViewHeight());
         }
     }
 
@@ -188,175 +713,540 @@ public class SkewTPlot {
      */
     public static void plotSkewT(GraphicsContext gcSkewT, ModelDataFile mdfInUse,
             int curX, int curY) {
+        plotSkewT(gcSkewT, mdfInUse.getSounding(curX, curY));
+    }
+
+    /**
+     * Plot a Skew-T diagram for an already-read sounding.
+     *
+     * @param gcSkewT GraphicsContext to use for plotting
+     * @param sounding sounding to plot
+     */
+    public static void plotSkewT(GraphicsContext gcSkewT, Sounding sounding) {
         initSkewT(gcSkewT, true);
 
-        mdfSkewTData = mdfInUse;
+        viewPlot.plot(sounding);
+    }
 
-        coordX = curX;
-        coordY = curY;
+    /**
+     * Plot a Skew-T diagram comparing several soundings.
+     *
+     * @param gcSkewT GraphicsContext to use for plotting
+     * @param soundings soundings to compare; a single sounding is plotted as usual
+     */
+    public static void plotSkewT(GraphicsContext gcSkewT, Sounding[] soundings) {
+        if (soundings.length == 1) {
+            plotSkewT(gcSkewT, soundings[0]);
+            return;
+        }
+        initSkewT(gcSkewT, true);
 
-        drawGridLines();
+        viewPlot.plotComparison(soundings);
+    }
 
-        plotTemps();
+    /**
+     * Plot the spread of an ensemble.
+     *
+     * @param gcSkewT GraphicsContext to use for plotting
+     * @param ensemble spread of ensemble members at one point
+     */
+    public static void plotSkewT(GraphicsContext gcSkewT, EnsembleSounding ensemble) {
+        initSkewT(gcSkewT, true);
 
-        drawAxes();
-        drawTicksAndLabels();
+        viewPlot.plotEnsemble(ensemble);
+    }
 
-        drawLocationAndTime();
-        drawWeatherIndices();
+    /**
+     * Record a Skew-T diagram for a sounding at the current view scale, ready to be
+     * shown with {@link #drawRecordedSkewT(GraphicsContext, Recording)}. All of the
+     * work of plotting is done here, in parallel, so this should be called from a
+     * background thread.
+     *
+     * @param sounding sounding to plot
+     *
+     * @return recorded plot
+     */
+    public static Recording recordSkewT(Sounding sounding) {
+        double scale = viewScale;
+        return new Recording(new Sounding[] {sounding}, null, scale,
+                record(sounding, scale));
     }
 
     /**
-     * Draw a blank Skew-T diagram.
+     * Record a Skew-T diagram comparing several soundings at the current view scale,
+     * ready to be shown with {@link #drawRecordedSkewT(GraphicsContext, Recording)}.
+     * Should be called from a background thread.
+     *
+     * @param soundings soundings to compare; a single sounding is plotted as usual
+     *
+     * @return recorded plot
+     */
+    public static Recording recordSkewT(Sounding[] soundings) {
+        double scale = viewScale;
+        return new Recording(soundings, null, scale, record(soundings, scale));
+    }
+
+    /**
+     * Record the spread of an ensemble at the current view scale, ready to be shown
+     * with {@link #drawRecordedSkewT(GraphicsContext, Recording)}. Should be called from
+     * a background thread.
+     *
+     * @param ensemble spread of ensemble members at one point
+     *
+     * @return recorded plot
+     */
+    public static Recording recordSkewT(EnsembleSounding ensemble) {
+        double scale = viewScale;
+        return new Recording(new Sounding[] {ensemble.getMedian()}, ensemble, scale,
+                record(ensemble, scale));
+    }
+
+    /**
+     * Show a Skew-T diagram recorded with {@link #recordSkewT(Sounding)}. Only replays
+     * the recorded drawing operations, so it takes little time on the JavaFX
+     * application thread. If the view has been resized since the plot was recorded it
+     * is plotted again at the new size instead.
      *
      * @param gcSkewT GraphicsContext to use for plotting
+     * @param recording recorded plot
      */
-    public static void drawBlankSkewT(GraphicsContext gcSkewT) {
+    public static void drawRecordedSkewT(GraphicsContext gcSkewT, Recording recording) {
+        if (recording.scale != viewScale && recording.ensemble != null) {
+            plotSkewT(gcSkewT, recording.ensemble);
+            return;
+        } else if (recording.scale != viewScale) {
+            plotSkewT(gcSkewT, recording.soundings);
+            return;
+        }
+
+        long startNanos = System.nanoTime();
         initSkewT(gcSkewT, true);
 
-        drawGridLines();
+        viewPlot.sounding = recording.soundings[0];
+        viewPlot.compared = recording.soundings.length > 1 ? recording.soundings : null;
+        viewPlot.ensemble = recording.ensemble;
+        recording.displayList.replay(viewPlot.g);
+        replayTimer.recordSince(startNanos);
+    }
 
-        drawAxes();
-        drawTicksAndLabels();
+    /**
+     * Plot the on-screen sounding again at the current view scale, such as after the
+     * view has been resized.
+     *
+     * @return true if a sounding was plotted, false if no sounding has been plotted yet
+     */
+    public static boolean redrawSkewT() {
+        if (viewPlot == null || viewPlot.sounding == null) {
+            return false;
+        }
+
+        if (viewPlot.ensemble != null) {
+            plotSkewT(gcSkewTPlot, viewPlot.ensemble);
+        } else {
+            plotSkewT(gcSkewTPlot, getShownSoundings());
+        }
+        return true;
     }
 
     /**
-     * Render currently drawn Skew-T plot in high-resolution. Useful for saving plot to a
-     * file or for printing.
+     * Returns a description of the settings that affect how a plot is rendered. Plots
+     * rendered with different settings should not be mistaken for each other when
+     * caching them.
      *
-     * @return high-resolution plot
+     * @return render settings
      */
-    public static RenderedImage getHiResPlot() {
-        // Save viewed GraphicsContext so it can be restored later
-        // GraphicsContext gcViewPlot = gcSkewTPlot;
+    public static String getRenderSettings() {
+        return (int) getViewWidth() + "x" + (int) getViewHeight() + "@" + viewScale;
+    }
 
-        /*
-         * Create a new Canvas at high-resolution to render plot to and then plot to it
-         * using the same ModelDataFile and XY-coordinates as the on-screen plot.
-         */
-        // Canvas canvasHiResPlot = new Canvas();
-        // scaleLineFactor = PLOT_PRINT_SCALE;
-        // canvasHiResPlot.setHeight(PLOT_PRINT_HEIGHT);
-        // canvasHiResPlot.setWidth(PLOT_PRINT_WIDTH);
-        // plotSkewT(canvasHiResPlot.getGraphicsContext2D(), mdfSkewTData, coordX,
-        // coordY);
-        // Create raster image to hold a snapshot of the Canvas.
-        WritableImage writableImage =
-                new WritableImage((int) PLOT_VIEW_WIDTH, (int) PLOT_VIEW_HEIGHT);
-
-        // Take snapshot of plot and save to writableImage
-        // canvasHiResPlot.snapshot(null, writableImage);
-        gcSkewTPlot.getCanvas().snapshot(null, writableImage);
-
-        // Restore original scale factor and GraphicsContext.
-        // scaleLineFactor = PLOT_VIEW_SCALE;
-        // initSkewT(gcViewPlot, false);
+    /**
+     * Draw a blank Skew-T diagram without holding up the JavaFX application thread. The
+     * diagram is drawn in the background into a view that isn't shown yet, so the window
+     * can be shown while the adiabats and mixing ratio lines are still being computed.
+     * The diagram is scaled to fill the width of the view image.
+     *
+     * @param view image to draw to, not yet shown
+     *
+     * @return future completed on the JavaFX application thread once the diagram is
+     *         ready to be shown
+     */
+    public static CompletableFuture<Void> drawBlankSkewTAsync(PixelBufferView view) {
+        double scale = (double) view.getWidth() / PLOT_BASE_WIDTH;
+
+        return CompletableFuture.runAsync(
+                () -> view.draw(g -> new SkewTPlot(g, scale).plotBlank()))
+                .handleAsync((drawn, ex) -> {
+                    if (ex != null) {
+                        LOG.error("{}\n{}", ex.getLocalizedMessage(), ex.toString());
+                        LOG.error("Unable to draw blank Skew-T in background, "
+                                + "drawing directly");
+                        view.draw(g -> new SkewTPlot(g, scale).plotBlank());
+                    }
+                    view.markUpdated();
+                    return null;
+                }, Platform::runLater);
+    }
 
-        /*
-         * Convert WriteableImage to RenderedImage and return it.
-         */
-        return SwingFXUtils.fromFXImage(writableImage, null);
+    /**
+     * Returns the sounding currently plotted on screen.
+     *
+     * @return sounding, or null if none plotted
+     */
+    public static Sounding getShownSounding() {
+        return viewPlot == null ? null : viewPlot.sounding;
+    }
+
+    /**
+     * Returns the ensemble whose spread is currently plotted on screen.
+     *
+     * @return ensemble, or null if not plotting an ensemble
+     */
+    public static EnsembleSounding getShownEnsemble() {
+        return viewPlot == null ? null : viewPlot.ensemble;
+    }
+
+    /**
+     * Returns the soundings currently plotted on screen, which is more than one when
+     * comparing models. The first is the same as {@link #getShownSounding()}.
+     *
+     * @return soundings, or null if none plotted
+     */
+    public static Sounding[] getShownSoundings() {
+        if (viewPlot == null || viewPlot.sounding == null) {
+            return null;
+        } else if (viewPlot.compared != null) {
+            return viewPlot.compared;
+        } else {
+            return new Sounding[] {viewPlot.sounding};
+        }
+    }
+
+    /**
+     * Write a Skew-T diagram as a PNG image at any resolution, such as for printing a
+     * poster. The plot is 9x12 inches, so 300 DPI gives the usual 2700x3600 pixels and
+     * 600 DPI gives 5400x7200. The diagram is recorded once and then rendered and
+     * written a strip of rows at a time, so memory use depends on the width of the
+     * image and the strip height rather than on the size of the whole image. Can be
+     * called from any thread.
+     *
+     * @param out stream to write PNG to, closed when done
+     * @param sounding sounding to plot, or null for a blank diagram
+     * @param dpi resolution in dots per inch
+     *
+     * @throws IOException unable to write image
+     */
+    public static void writePng(OutputStream out, Sounding sounding, int dpi)
+            throws IOException {
+        writePng(out, new Sounding[] {sounding}, dpi);
+    }
+
+    /**
+     * Write a Skew-T diagram comparing several soundings as a PNG image at any
+     * resolution, in the same way as {@link #writePng(OutputStream, Sounding, int)}.
+     *
+     * @param out stream to write PNG to, closed when done
+     * @param soundings soundings to compare; a single sounding is plotted as usual
+     * @param dpi resolution in dots per inch
+     *
+     * @throws IOException unable to write image
+     */
+    public static void writePng(OutputStream out, Sounding[] soundings, int dpi)
+            throws IOException {
+        writePng(out, dpi, scale -> record(soundings, scale));
+    }
+
+    /**
+     * Write the spread of an ensemble as a PNG image at any resolution, in the same way
+     * as {@link #writePng(OutputStream, Sounding, int)}.
+     *
+     * @param out stream to write PNG to, closed when done
+     * @param ensemble spread of ensemble members at one point
+     * @param dpi resolution in dots per inch
+     *
+     * @throws IOException unable to write image
+     */
+    public static void writePng(OutputStream out, EnsembleSounding ensemble, int dpi)
+            throws IOException {
+        writePng(out, dpi, scale -> record(ensemble, scale));
+    }
+
+    /**
+     * Record a diagram at the scale matching a resolution and write it as a PNG image a
+     * strip at a time.
+     */
+    private static void writePng(OutputStream out, int dpi,
+            DoubleFunction<DisplayList> recorder) throws IOException {
+        long startNanos = System.nanoTime();
+        double scale = (double) dpi / PLOT_BASE_DPI;
+        int width = (int) Math.round(PLOT_BASE_WIDTH * scale);
+        int height = (int) Math.round(PLOT_BASE_HEIGHT * scale);
+
+        DisplayList displayList = recorder.apply(scale);
+        displayList.writePng(out, width, height, dpi, EXPORT_STRIP_HEIGHT);
+
+        long elapsedNanos = stripExportTimer.recordSince(startNanos);
+        LOG.debug("Exported {}x{} plot in strips of {} rows in {} ms", width, height,
+                EXPORT_STRIP_HEIGHT, elapsedNanos / 1000000);
     }
 
     /**
      * Plot temperatures and dew points at various isobaric levels.
      */
-    private static void plotTemps() {
-        List<Double> dataTempVals = new ArrayList<>();
-        List<Double> dataDewpVals = new ArrayList<>();
-        List<Double> dataPresLevels = new ArrayList<>();
+    private void plotTemps() {
+        // Temperatures as thick black line, dew points as thick red line
+        plotTemps(sounding, COLOR_BLACK, COLOR_RED, false);
+    }
 
+    /**
+     * Plot temperatures and dew points of one of the soundings being compared, in a
+     * color of its own with dew points dashed.
+     *
+     * @param index position of sounding among those compared
+     */
+    private void plotComparedTemps(int index) {
+        int color = COMPARISON_COLORS[index % COMPARISON_COLORS.length];
+        plotTemps(compared[index], color, color, true);
+    }
+
+    /**
+     * Plot temperatures and dew points of a sounding at various isobaric levels.
+     *
+     * @param traced sounding to plot
+     * @param tempColor color of temperature line
+     * @param dewpColor color of dew point line
+     * @param dashDewps true to draw dew point line dashed
+     */
+    private void plotTemps(Sounding traced, int tempColor, int dewpColor,
+            boolean dashDewps) {
         /*
-         * Get pressure, temperature, and dew point for each available isobaric level.
-         */
-        /*
-         * for (int coordLvl = 0; coordLvl < 50; coordLvl++) { Double curLevel =
-         * mdfSkewTData.getLevelFromIndex(coordLvl); if (curLevel.intValue() >= 0) {
-         * dataPresLevels.add(curLevel); dataTempVals.add(mdfSkewTData.getTempIso(coordX,
-         * coordY, coordLvl)); dataDewpVals.add(mdfSkewTData.getDewpIso(coordX, coordY,
-         * coordLvl)); } }
+         * Sounding levels are already ordered from lowest to highest isobaric level with
+         * the surface (really, 2m) temperature and dew point included.
          */
-        double[][] dataAll = mdfSkewTData.getTempDewpAll(coordX, coordY);
+        double[] dataPresLevels = traced.getPressures();
+        double[] dataTempVals = traced.getTemps();
+        double[] dataDewpVals = traced.getDewps();
+
+        int numLevels = traced.getLevelCount();
 
-        for (int index = 0; index < dataAll[0].length; index++) {
-            dataPresLevels.add(dataAll[0][index]);
-            dataTempVals.add(dataAll[1][index]);
-            dataDewpVals.add(dataAll[2][index]);
+        if (yVals.length < numLevels) {
+            xTempVals = new double[numLevels];
+            xDewpVals = new double[numLevels];
+            yVals = new double[numLevels];
         }
 
-        /*
-         * Get surface pressure, add it to the list of isobaric levels, sort that list,
-         * and then get the index of the surface pressure from that list.
-         */
-        double presSurf = mdfSkewTData.getPresSfc(coordX, coordY);
-        dataPresLevels.add(presSurf);
-        Collections.sort(dataPresLevels);
-        int presSurfIndex = dataPresLevels.indexOf(presSurf);
+        for (int count = 0; count < numLevels; count++) {
+            yVals[count] = getYFromPres(dataPresLevels[count]);
+            xTempVals[count] = getXFromTempY(dataTempVals[count], yVals[count]);
+            xDewpVals[count] = getXFromTempY(dataDewpVals[count], yVals[count]);
+        }
 
-        /*
-         * Add surface (really, 2m) temperature and dew point to temperature and dew point
-         * lists at the appropriate place so that lists are ordered from lowest to highest
-         * isobaric level.
-         */
-        dataTempVals.add(presSurfIndex, mdfSkewTData.getTemp2m(coordX, coordY));
-        dataDewpVals.add(presSurfIndex, mdfSkewTData.getDewp2m(coordX, coordY));
-
-        List<Double> xTempValsList = new ArrayList<>();
-        List<Double> xDewpValsList = new ArrayList<>();
-        List<Double> yValsList = new ArrayList<>();
-
-        for (int count = 0; count < dataPresLevels.size(); count++) {
-            double[] resultsTemp =
-                    getXYFromTempPres(dataTempVals.get(count), dataPresLevels.get(count));
-            double[] resultsDewp =
-                    getXYFromTempPres(dataDewpVals.get(count), dataPresLevels.get(count));
-
-            xTempValsList.add(resultsTemp[0]);
-            xDewpValsList.add(resultsDewp[0]);
-            yValsList.add(resultsTemp[1]);
+        g.setFill(tempColor);
+        g.setStroke(tempColor);
+        g.setLineWidth(scaleLineFactor * 2);
+        g.strokePolyline(xTempVals, yVals, numLevels);
+
+        g.setFill(dewpColor);
+        g.setStroke(dewpColor);
+        g.setLineWidth(scaleLineFactor * 2);
+        if (dashDewps) {
+            g.setLineDashes(scaleLineFactor * 8.0, scaleLineFactor * 4.0);
         }
+        g.strokePolyline(xDewpVals, yVals, numLevels);
+        if (dashDewps) {
+            g.setLineDashes(null);
+        }
+    }
 
-        // Convert lists to arrays for use with JavaFX drawing methods.
-        double[] xTempVals =
-                xTempValsList.stream().parallel().mapToDouble(d -> d).toArray();
-        double[] xDewpVals =
-                xDewpValsList.stream().parallel().mapToDouble(d -> d).toArray();
-        double[] yVals = yValsList.stream().parallel().mapToDouble(d -> d).toArray();
+    /**
+     * Draws a title and a key giving the source, grid point and valid time of each
+     * sounding being compared, in the color of its traces.
+     */
+    private void drawComparisonKey() {
+        g.setFill(COLOR_BLACK);
+        g.setStroke(COLOR_BLACK);
+        g.setLineWidth(scaleLineFactor * 0);
 
-        /*
-         * Temperatures plotted as thick black line.
-         */
-        gcSkewTPlot.setFill(Color.BLACK);
-        gcSkewTPlot.setStroke(Color.BLACK);
-        gcSkewTPlot.setLineWidth(scaleLineFactor * 2);
-        gcSkewTPlot.strokePolyline(xTempVals, yVals, yVals.length);
+        g.setTextAlign(TextAlign.CENTER);
+        g.setTextBaseline(TextBaseline.CENTER);
+
+        double xAxisKey = canvasWidth / 2;
+
+        g.setFont(12 * plotAvgStep, false, false);
+        g.fillText("Model Comparison", xAxisKey, plotYMax / 10 * 4.5);
+
+        g.setFont(9 * plotAvgStep, false, false);
+        g.fillText(String.format("Near Longitude, Latitude: %.3f, %.3f",
+                sounding.getLon(), sounding.getLat()), xAxisKey, plotYMax / 10 * 7);
+
+        g.setFont(7 * plotAvgStep, false, true);
+        g.fillText("Temperatures solid, dew points dashed", xAxisKey,
+                plotYMax / 10 * 9);
 
         /*
-         * Dew points plotted as thick red line.
+         * One line of the key for each sounding, below the plot where weather indices
+         * are usually drawn.
          */
-        gcSkewTPlot.setFill(Color.RED);
-        gcSkewTPlot.setStroke(Color.RED);
-        gcSkewTPlot.setLineWidth(scaleLineFactor * 2);
-        gcSkewTPlot.strokePolyline(xDewpVals, yVals, yVals.length);
+        double keyTop = (canvasHeight - plotYOffset) / 20 * 9 + plotYOffset;
+        double keyBottom = (canvasHeight - plotYOffset) / 20 * 14 + plotYOffset;
+        double keyStep = (keyBottom - keyTop) / Math.max(compared.length - 1, 1);
+        keyStep = Math.min(keyStep, 12 * plotAvgStep);
+
+        g.setFont(7 * plotAvgStep, false, false);
+        for (int index = 0; index < compared.length; index++) {
+            Sounding keyed = compared[index];
+            g.setFill(COMPARISON_COLORS[index % COMPARISON_COLORS.length]);
+            g.fillText(String.format("%s  (%.3f, %.3f)  Valid: %s", keyed.getModelName(),
+                    keyed.getLon(), keyed.getLat(), keyed.getValidTime().toString()),
+                    xAxisKey, keyTop + index * keyStep);
+        }
+    }
+
+    /**
+     * Shade bands between percentiles of ensemble temperatures and dew points, widest
+     * first so that narrower bands are drawn over them.
+     */
+    private void drawEnsembleBands() {
+        double[] pressures = ensemble.getPressures();
+        int numLevels = pressures.length;
+        double[] xPoints = new double[2 * numLevels];
+        double[] yPoints = new double[2 * numLevels];
+        int numPercentiles = EnsembleSounding.PERCENTILES.length;
+
+        g.setLineWidth(scaleLineFactor * 0);
+        for (int band = 0; band < ENSEMBLE_TEMP_COLORS.length; band++) {
+            int lower = band;
+            int upper = numPercentiles - 1 - band;
+
+            g.setFill(ENSEMBLE_TEMP_COLORS[band]);
+            fillBand(pressures, ensemble.getTemps(lower), ensemble.getTemps(upper),
+                    xPoints, yPoints);
+
+            g.setFill(ENSEMBLE_DEWP_COLORS[band]);
+            fillBand(pressures, ensemble.getDewps(lower), ensemble.getDewps(upper),
+                    xPoints, yPoints);
+        }
+    }
+
+    /**
+     * Fill the area between two traces, up one and back down the other. Levels where
+     * either trace is missing are left out.
+     */
+    private void fillBand(double[] pressures, double[] lowerVals, double[] upperVals,
+            double[] xPoints, double[] yPoints) {
+        int numLevels = pressures.length;
+        int numPoints = 0;
+        for (int level = 0; level < numLevels; level++) {
+            if (Double.isNaN(lowerVals[level]) || Double.isNaN(upperVals[level])) {
+                continue;
+            }
+            yPoints[numPoints] = getYFromPres(pressures[level]);
+            xPoints[numPoints] = getXFromTempY(lowerVals[level], yPoints[numPoints]);
+            numPoints++;
+        }
+        int numLower = numPoints;
+        for (int point = numLower - 1; point >= 0; point--) {
+            yPoints[numPoints] = yPoints[point];
+            numPoints++;
+        }
+        for (int level = numLevels - 1, point = numLower; level >= 0; level--) {
+            if (Double.isNaN(lowerVals[level]) || Double.isNaN(upperVals[level])) {
+                continue;
+            }
+            xPoints[point++] = getXFromTempY(upperVals[level],
+                    getYFromPres(pressures[level]));
+        }
+        g.fillPolygon(xPoints, yPoints, numPoints);
+    }
+
+    /**
+     * Draws weather indices of an ensemble as the median followed by the 10th to 90th
+     * percentile range over all members.
+     */
+    private void drawEnsembleIndices() {
+        g.setFill(COLOR_BLACK);
+        g.setStroke(COLOR_BLACK);
+        g.setLineWidth(scaleLineFactor * 0);
+
+        g.setTextAlign(TextAlign.CENTER);
+        g.setTextBaseline(TextBaseline.CENTER);
+
+        double yAxisIndices1 = (canvasHeight - plotYOffset) / 20 * 9 + plotYOffset;
+        double yAxisIndices2 = (canvasHeight - plotYOffset) / 20 * 12 + plotYOffset;
+        double yAxisIndices3 = (canvasHeight - plotYOffset) / 20 * 14 + plotYOffset;
+        double yAxisIndices4 = (canvasHeight - plotYOffset) / 20 * 17 + plotYOffset;
+        double xAxisIndices = canvasWidth / 2;
+
+        String plotIndices1 = formatSpread("Temperature 2m", "%.1f C",
+                EnsembleSounding.Index.TEMP_2M, -C_TO_K, 1) + "   "
+                + formatSpread("Dew Point 2m", "%.1f C", EnsembleSounding.Index.DEWP_2M,
+                        -C_TO_K, 1)
+                + "   " + formatSpread("Pressure Sfc", "%.0f hPa",
+                        EnsembleSounding.Index.PRES_SFC, 0, HPA_TO_PA);
+        String plotIndices2 = formatSpread("MSL", "%.0f hPa",
+                EnsembleSounding.Index.MSL, 0, HPA_TO_PA) + "   "
+                + formatSpread("CAPE", "%.0f J/kg", EnsembleSounding.Index.CAPE, 0, 1)
+                + "   "
+                + formatSpread("CIN", "%.0f J/kg", EnsembleSounding.Index.CIN, 0, 1);
+        String plotIndices3 = formatSpread("Lifted Index", "%.1f",
+                EnsembleSounding.Index.LFTX, 0, 1) + "   "
+                + formatSpread("K-Index", "%.0f", EnsembleSounding.Index.K_INDEX, 0, 1)
+                + "   "
+                + formatSpread("Total Totals", "%.0f",
+                        EnsembleSounding.Index.TOTAL_TOTALS, 0, 1)
+                + "   "
+                + formatSpread("SWEAT", "%.0f", EnsembleSounding.Index.SWEAT, 0, 1);
+        String plotKey = String.format(
+                "Median of %d members, with 10th to 90th percentile range; "
+                        + "shading shows 10th to 90th and 25th to 75th percentiles",
+                ensemble.getNumMembers());
+
+        // Ranges make these lines longer than usual, so all are kept small
+        g.setFont(7 * plotAvgStep, false, false);
+
+        g.fillText(plotIndices1, xAxisIndices, yAxisIndices1);
+        g.fillText(plotIndices2, xAxisIndices, yAxisIndices2);
+        g.fillText(plotIndices3, xAxisIndices, yAxisIndices3);
+
+        g.setFont(6 * plotAvgStep, false, true);
+
+        g.fillText(plotKey, xAxisIndices, yAxisIndices4);
+    }
+
+    /**
+     * Format median and 10th to 90th percentile range of an ensemble weather index,
+     * such as "CAPE: 850 J/kg (120 to 1900)".
+     */
+    private String formatSpread(String label, String format, EnsembleSounding.Index index,
+            double offset, double divisor) {
+        int last = EnsembleSounding.PERCENTILES.length - 1;
+        String numFormat = format.substring(0, format.indexOf('f') + 1);
+        return label + ": "
+                + String.format(format, (ensemble.getIndexPercentile(index,
+                        EnsembleSounding.MEDIAN) + offset) / divisor)
+                + " (" + String.format(numFormat,
+                        (ensemble.getIndexPercentile(index, 0) + offset) / divisor)
+                + " to " + String.format(numFormat,
+                        (ensemble.getIndexPercentile(index, last) + offset) / divisor)
+                + ")";
     }
 
     /**
      * Draws labels for location, analysis time, and valid time.
      */
-    private static void drawLocationAndTime() {
+    private void drawLocationAndTime() {
         // All labels drawn in black
-        gcSkewTPlot.setFill(Color.BLACK);
-        gcSkewTPlot.setStroke(Color.BLACK);
+        g.setFill(COLOR_BLACK);
+        g.setStroke(COLOR_BLACK);
 
         /*
          * Draw location and time labels.
          */
-        gcSkewTPlot.setLineWidth(scaleLineFactor * 0);
+        g.setLineWidth(scaleLineFactor * 0);
 
-        gcSkewTPlot.setFont(Font.font("sans-serif", FontWeight.NORMAL, 12 * plotAvgStep));
+        g.setFont(12 * plotAvgStep, false, false);
 
-        gcSkewTPlot.setTextAlign(TextAlignment.CENTER);
-        gcSkewTPlot.setTextBaseline(VPos.CENTER);
+        g.setTextAlign(TextAlign.CENTER);
+        g.setTextBaseline(TextBaseline.CENTER);
 
         double yAxisLocation = plotYMax / 10 * 4.5;
         double yAxisTime = plotYMax / 10 * 7;
@@ -365,42 +1255,40 @@ public class SkewTPlot {
         double xAxisTime = canvasWidth / 2;
         double xAxisModelName = canvasWidth / 2;
 
-        double[] plotLonLat = mdfSkewTData.getLonLatFromXYCoords(coordX, coordY);
         String plotLocation = String.format("Longitude, Latitude: %.6f, %.6f",
-                plotLonLat[0], plotLonLat[1]);
+                sounding.getLon(), sounding.getLat());
 
-        gcSkewTPlot.fillText(plotLocation, xAxisLocation, yAxisLocation);
+        g.fillText(plotLocation, xAxisLocation, yAxisLocation);
 
-        gcSkewTPlot.setFont(Font.font("sans-serif", FontWeight.NORMAL, 9 * plotAvgStep));
+        g.setFont(9 * plotAvgStep, false, false);
 
-        String plotTime = "Analysis: " + mdfSkewTData.getAnalysisTime().toString() + "   "
-                + "Valid: " + mdfSkewTData.getValidTime().toString();
+        String plotTime = "Analysis: " + sounding.getAnalysisTime().toString() + "   "
+                + "Valid: " + sounding.getValidTime().toString();
 
-        gcSkewTPlot.fillText(plotTime, xAxisTime, yAxisTime);
+        g.fillText(plotTime, xAxisTime, yAxisTime);
 
-        gcSkewTPlot.setFont(Font.font("sans-serif", FontWeight.NORMAL, FontPosture.ITALIC,
-                7 * plotAvgStep));
+        g.setFont(7 * plotAvgStep, false, true);
 
-        String plotModelName = "Source: " + mdfSkewTData.getModelName();
+        String plotModelName = "Source: " + sounding.getModelName();
 
-        gcSkewTPlot.fillText(plotModelName, xAxisModelName, yAxisModelName);
+        g.fillText(plotModelName, xAxisModelName, yAxisModelName);
     }
 
     /**
      * Draws labels for location, analysis time, and valid time.
      */
-    private static void drawWeatherIndices() {
+    private void drawWeatherIndices() {
         // All labels drawn in black
-        gcSkewTPlot.setFill(Color.BLACK);
-        gcSkewTPlot.setStroke(Color.BLACK);
+        g.setFill(COLOR_BLACK);
+        g.setStroke(COLOR_BLACK);
 
         /*
          * Draw weather indices labels.
          */
-        gcSkewTPlot.setLineWidth(scaleLineFactor * 0);
+        g.setLineWidth(scaleLineFactor * 0);
 
-        gcSkewTPlot.setTextAlign(TextAlignment.CENTER);
-        gcSkewTPlot.setTextBaseline(VPos.CENTER);
+        g.setTextAlign(TextAlign.CENTER);
+        g.setTextBaseline(TextBaseline.CENTER);
 
         double yAxisIndices1 = (canvasHeight - plotYOffset) / 20 * 9 + plotYOffset;
         double yAxisIndices2 = (canvasHeight - plotYOffset) / 20 * 12 + plotYOffset;
@@ -408,83 +1296,83 @@ public class SkewTPlot {
         double xAxisIndices = canvasWidth / 2;
 
         String plotIndices1 = String.format("Temperature 2m: %.1f C",
-                mdfSkewTData.getTemp2m(coordX, coordY) - C_TO_K)
+                sounding.getTemp2m() - C_TO_K)
                 + "     "
                 + String.format("Dew Point 2m: %.1f C",
-                        mdfSkewTData.getDewp2m(coordX, coordY) - C_TO_K)
+                        sounding.getDewp2m() - C_TO_K)
                 + "     " + String.format("Pressure Sfc: %.0f hPa",
-                        mdfSkewTData.getPresSfc(coordX, coordY) / HPA_TO_PA);
+                        sounding.getPresSfc() / HPA_TO_PA);
         String plotIndices2 = String.format("LCL: %.0f hPa",
-                mdfSkewTData.getLCL(coordX, coordY)[0] / HPA_TO_PA)
+                sounding.getLCL()[0] / HPA_TO_PA)
                 + "     "
                 + String.format("MSL: %.0f hPa",
-                        mdfSkewTData.getMSL(coordX, coordY) / HPA_TO_PA)
+                        sounding.getMSL() / HPA_TO_PA)
                 + "     "
-                + String.format("CAPE: %.0f J/kg", mdfSkewTData.getCAPE(coordX, coordY))
+                + String.format("CAPE: %.0f J/kg", sounding.getCAPE())
                 + "     "
-                + String.format("CIN: %.0f J/kg", mdfSkewTData.getCIN(coordX, coordY));
+                + String.format("CIN: %.0f J/kg", sounding.getCIN());
         String plotIndices3 = String.format("Lifted Index: %.1f",
-                mdfSkewTData.getLFTX(coordX, coordY)) + "     "
-                + String.format("K-Index: %.0f", mdfSkewTData.getKIndex(coordX, coordY))
+                sounding.getLFTX()) + "     "
+                + String.format("K-Index: %.0f", sounding.getKIndex())
                 + "     "
                 + String.format("Total Totals: %.0f",
-                        mdfSkewTData.getTotalTotals(coordX, coordY))
+                        sounding.getTotalTotals())
                 + "     "
-                + String.format("SWEAT: %.0f", mdfSkewTData.getSWEAT(coordX, coordY));
+                + String.format("SWEAT: %.0f", sounding.getSWEAT());
 
-        gcSkewTPlot.setFont(Font.font("sans-serif", FontWeight.NORMAL, 8 * plotAvgStep));
+        g.setFont(8 * plotAvgStep, false, false);
 
-        gcSkewTPlot.fillText(plotIndices1, xAxisIndices, yAxisIndices1);
+        g.fillText(plotIndices1, xAxisIndices, yAxisIndices1);
 
-        gcSkewTPlot.setFont(Font.font("sans-serif", FontWeight.NORMAL, 7 * plotAvgStep));
+        g.setFont(7 * plotAvgStep, false, false);
 
-        gcSkewTPlot.fillText(plotIndices2, xAxisIndices, yAxisIndices2);
-        gcSkewTPlot.fillText(plotIndices3, xAxisIndices, yAxisIndices3);
+        g.fillText(plotIndices2, xAxisIndices, yAxisIndices2);
+        g.fillText(plotIndices3, xAxisIndices, yAxisIndices3);
     }
 
     /**
      * Draws ticks and labels on plot axes.
      */
-    private static void drawTicksAndLabels() {
+    private void drawTicksAndLabels() {
         // All ticks and labels drawn in black
-        gcSkewTPlot.setFill(Color.BLACK);
-        gcSkewTPlot.setStroke(Color.BLACK);
+        g.setFill(COLOR_BLACK);
+        g.setStroke(COLOR_BLACK);
 
         /*
          * Draw isobaric level and temperature tick marks and labels.
          */
-        gcSkewTPlot.setLineWidth(scaleLineFactor * 1.5);
+        g.setLineWidth(scaleLineFactor * 1.5);
 
         // Draw isobaric level ticks
-        presLevels.stream().mapToDouble(i -> getYFromPres(i)).forEach(d -> gcSkewTPlot
+        presLevels.stream().mapToDouble(i -> getYFromPres(i)).forEach(d -> g
                 .strokeLine(plotXOffset, d, plotXOffset - (3 * plotAvgStep), d));
 
         // Draw temperature ticks
         tempSteps.stream().mapToDouble(i -> getXFromTempY(i, getYFromPres(PRES_BASE)))
-                .forEach(d -> gcSkewTPlot.strokeLine(d, plotYOffset, d,
+                .forEach(d -> g.strokeLine(d, plotYOffset, d,
                         plotYOffset + (3 * plotAvgStep)));
 
         /*
          * Draw isobaric level and temperature labels.
          */
-        gcSkewTPlot.setLineWidth(scaleLineFactor * 0);
+        g.setLineWidth(scaleLineFactor * 0);
 
-        gcSkewTPlot.setFont(Font.font("sans-serif", FontWeight.NORMAL, 7 * plotAvgStep));
+        g.setFont(7 * plotAvgStep, false, false);
 
-        gcSkewTPlot.setTextAlign(TextAlignment.RIGHT);
-        gcSkewTPlot.setTextBaseline(VPos.CENTER);
+        g.setTextAlign(TextAlign.RIGHT);
+        g.setTextBaseline(TextBaseline.CENTER);
 
         // Draw isobaric level labels
         presLevels.stream().mapToDouble(i -> i)
-                .forEach(d -> gcSkewTPlot.fillText(String.format("%.0f", d / HPA_TO_PA),
+                .forEach(d -> g.fillText(String.format("%.0f", d / HPA_TO_PA),
                         plotXOffset - 4 * plotAvgStep, getYFromPres(d)));
 
-        gcSkewTPlot.setTextAlign(TextAlignment.CENTER);
-        gcSkewTPlot.setTextBaseline(VPos.TOP);
+        g.setTextAlign(TextAlign.CENTER);
+        g.setTextBaseline(TextBaseline.TOP);
 
         // Draw temperature labels
         tempSteps.stream().mapToDouble(i -> i)
-                .forEach(d -> gcSkewTPlot.fillText(String.format("%.0f", d - C_TO_K),
+                .forEach(d -> g.fillText(String.format("%.0f", d - C_TO_K),
                         getXFromTempY(d, getYFromPres(PRES_BASE)),
                         plotYOffset + 4 * plotAvgStep));
 
@@ -497,49 +1385,29 @@ public class SkewTPlot {
         double xAxisLabelX = (plotXRange / 2) + plotXOffset;
         double xAxisLabelY = (canvasHeight * 0.90) - axisLabelSize;
 
-        gcSkewTPlot.setTextBaseline(VPos.CENTER);
-        gcSkewTPlot.setFont(Font.font("sans-serif", FontWeight.NORMAL, axisLabelSize));
+        g.setTextBaseline(TextBaseline.CENTER);
+        g.setFont(axisLabelSize, false, false);
 
         // Draw Y-axis label
-        gcSkewTPlot.save();
-        Rotate r = new Rotate(-90, yAxisLabelX, yAxisLabelY);
-        gcSkewTPlot.setTransform(r.getMxx(), r.getMyx(), r.getMxy(), r.getMyy(),
-                r.getTx(), r.getTy());
-        gcSkewTPlot.fillText("Pressure (hPa)", yAxisLabelX, yAxisLabelY);
-        gcSkewTPlot.restore();
+        g.fillTextRotated("Pressure (hPa)", yAxisLabelX, yAxisLabelY, -90);
 
         // Draw X-axis label
-        gcSkewTPlot.fillText("Temperature (C)", xAxisLabelX, xAxisLabelY);
+        g.fillText("Temperature (C)", xAxisLabelX, xAxisLabelY);
     }
 
     /**
      * Draws the various grid lines on the plot, including isobaric levels, temperatures,
      * dry adiabats, saturated adiabats, and mixing ratio lines.
      */
-    private static void drawGridLines() {
-        /*
-         * Erase canvas before drawing.
-         */
-        gcSkewTPlot.setFill(Color.WHITE);
-        gcSkewTPlot.setStroke(Color.WHITE);
-        gcSkewTPlot.setLineWidth(scaleLineFactor * 0);
-        gcSkewTPlot.fillRect(0, 0, canvasWidth, canvasHeight);
-
-        /*
-         * Create lists of temperatures at a set interval for drawing grid lines.
-         */
-        // 10 K between steps, for skewed temperatures and dry adiabats
-        List<Double> tempsBy10 = IntStream
-                .rangeClosed((TEMP_MIN_C - (TEMP_MAX_C - TEMP_MIN_C)) / 10,
-                        TEMP_MAX_C / 10)
-                .parallel().mapToDouble(i -> (i * 10) + C_TO_K).boxed()
-                .collect(Collectors.toList());
-        // 5 K between steps, for saturated adiabats
-        List<Double> tempsBy5 = IntStream
-                .rangeClosed((TEMP_MIN_C - (TEMP_MAX_C - TEMP_MIN_C)) / 5, TEMP_MAX_C / 5)
-                .parallel().mapToDouble(i -> (i * 5) + C_TO_K).boxed()
-                .collect(Collectors.toList());
+    private void drawGridLines() {
+        drawBackground();
+        drawAdiabatsAndIsobars();
+    }
 
+    /**
+     * Draw grid lines over the background.
+     */
+    private void drawAdiabatsAndIsobars() {
         /*
          * Draw grid lines.
          */
@@ -550,7 +1418,23 @@ public class SkewTPlot {
         // Draw mixing ratio lines
         wLevels.forEach(d -> drawMixRatios(d));
 
-        // Draw skewed temperature and isobaric level lines
+        drawSkewTempsAndIsobars();
+    }
+
+    /**
+     * Erase canvas before drawing.
+     */
+    private void drawBackground() {
+        g.setFill(COLOR_WHITE);
+        g.setStroke(COLOR_WHITE);
+        g.setLineWidth(scaleLineFactor * 0);
+        g.fillRect(0, 0, canvasWidth, canvasHeight);
+    }
+
+    /**
+     * Draw skewed temperature and isobaric level lines.
+     */
+    private void drawSkewTempsAndIsobars() {
         tempsBy10.forEach(d -> drawSkewTemp(d));
         presLevels.forEach(i -> drawIsobar(i));
     }
@@ -558,32 +1442,32 @@ public class SkewTPlot {
     /**
      * Draws axes for the plot and erases any lines drawn outside of the plot area.
      */
-    private static void drawAxes() {
+    private void drawAxes() {
         /*
          * Clear areas outside of plot area to neaten up plot.
          */
-        gcSkewTPlot.setFill(Color.WHITE);
-        gcSkewTPlot.setStroke(Color.WHITE);
-        gcSkewTPlot.setLineWidth(scaleLineFactor * 0);
+        g.setFill(COLOR_WHITE);
+        g.setStroke(COLOR_WHITE);
+        g.setLineWidth(scaleLineFactor * 0);
         // Upper
-        gcSkewTPlot.fillRect(0, 0, canvasWidth, plotYMax - (scaleLineFactor / 2));
+        g.fillRect(0, 0, canvasWidth, plotYMax - Math.floor(scaleLineFactor / 2));
         // Lower
-        gcSkewTPlot.fillRect(0, plotYOffset, canvasWidth, plotYOffset - plotYMax);
+        g.fillRect(0, plotYOffset, canvasWidth, plotYOffset - plotYMax);
         // Left
-        gcSkewTPlot.fillRect(0, plotYMax - (scaleLineFactor / 2), plotXOffset,
+        g.fillRect(0, plotYMax - Math.floor(scaleLineFactor / 2), plotXOffset,
                 canvasHeight - plotYMax);
         // Right
-        gcSkewTPlot.fillRect(plotXMax, plotYMax - (scaleLineFactor / 2),
+        g.fillRect(plotXMax, plotYMax - Math.floor(scaleLineFactor / 2),
                 canvasWidth - plotXMax, canvasHeight - plotYMax);
 
         /*
          * Draw axes lines.
          */
-        gcSkewTPlot.setFill(Color.BLACK);
-        gcSkewTPlot.setStroke(Color.BLACK);
-        gcSkewTPlot.setLineWidth(scaleLineFactor * 1.5);
-        gcSkewTPlot.strokeLine(plotXOffset, plotYOffset, plotXOffset, plotYMax);
-        gcSkewTPlot.strokeLine(plotXOffset, plotYOffset, plotXMax, plotYOffset);
+        g.setFill(COLOR_BLACK);
+        g.setStroke(COLOR_BLACK);
+        g.setLineWidth(scaleLineFactor * 1.5);
+        g.strokeLine(plotXOffset, plotYOffset, plotXOffset, plotYMax);
+        g.strokeLine(plotXOffset, plotYOffset, plotXMax, plotYOffset);
     }
 
     /**
@@ -591,12 +1475,12 @@ public class SkewTPlot {
      *
      * @param isoLevel pressure in Pa
      */
-    private static void drawIsobar(int isoLevel) {
+    private void drawIsobar(int isoLevel) {
         double y = getYFromPres(isoLevel);
-        gcSkewTPlot.setFill(Color.BLUE);
-        gcSkewTPlot.setStroke(Color.BLUE);
-        gcSkewTPlot.setLineWidth(scaleLineFactor * 0.75);
-        gcSkewTPlot.strokeLine(plotXOffset, y, plotXMax, y);
+        g.setFill(COLOR_BLUE);
+        g.setStroke(COLOR_BLUE);
+        g.setLineWidth(scaleLineFactor * 0.75);
+        g.strokeLine(plotXOffset, y, plotXMax, y);
     }
 
     /**
@@ -604,15 +1488,15 @@ public class SkewTPlot {
      *
      * @param tempStep temperature in K
      */
-    private static void drawSkewTemp(double tempStep) {
+    private void drawSkewTemp(double tempStep) {
         double y1 = getYFromPres(PRES_MAX);
         double y2 = getYFromPres(PRES_MIN);
         double x1 = getXFromTempY(tempStep, y1);
         double x2 = getXFromTempY(tempStep, y2);
-        gcSkewTPlot.setFill(Color.BLACK);
-        gcSkewTPlot.setStroke(Color.BLACK);
-        gcSkewTPlot.setLineWidth(scaleLineFactor * 1.25);
-        gcSkewTPlot.strokeLine(x1, y1, x2, y2);
+        g.setFill(COLOR_BLACK);
+        g.setStroke(COLOR_BLACK);
+        g.setLineWidth(scaleLineFactor * 1.25);
+        g.strokeLine(x1, y1, x2, y2);
     }
 
     /**
@@ -620,7 +1504,7 @@ public class SkewTPlot {
      *
      * @param tempStep potential temperature in K
      */
-    private static void drawDryAdiabat(double tempStep) {
+    private void drawDryAdiabat(double tempStep) {
         double y1 = getYFromPres(22000);
         double y2 = getYFromPres(20000);
         double x1 = getXFromTempY(AtmosThermoMath.calcTempFromPot(tempStep, 22000), y1);
@@ -650,25 +1534,20 @@ public class SkewTPlot {
         /*
          * Draw dry adiabat line.
          */
-        gcSkewTPlot.setFill(Color.rgb(127, 95, 63));
-        gcSkewTPlot.setStroke(Color.rgb(127, 95, 63));
-        gcSkewTPlot.setLineWidth(scaleLineFactor * 1.0);
-        gcSkewTPlot.strokePolyline(xVals, yVals, numPoints);
+        g.setFill(COLOR_BROWN);
+        g.setStroke(COLOR_BROWN);
+        g.setLineWidth(scaleLineFactor * 1.0);
+        g.strokePolyline(xVals, yVals, numPoints);
 
         /*
          * Draw label parallel to line.
          */
-        gcSkewTPlot.setTextAlign(TextAlignment.CENTER);
-        gcSkewTPlot.setTextBaseline(VPos.BASELINE);
-        gcSkewTPlot.setFont(Font.font("sans-serif", FontWeight.BOLD, 5.0 * plotAvgStep));
+        g.setTextAlign(TextAlign.CENTER);
+        g.setTextBaseline(TextBaseline.BASELINE);
+        g.setFont(5.0 * plotAvgStep, true, false);
 
-        gcSkewTPlot.save();
-        Rotate r = new Rotate(-Math.toDegrees(Math.atan((y1 - y2) / (x2 - x1))), labelX,
-                labelY);
-        gcSkewTPlot.setTransform(r.getMxx(), r.getMyx(), r.getMxy(), r.getMyy(),
-                r.getTx(), r.getTy());
-        gcSkewTPlot.fillText(String.format("%.0f C", tempStep - C_TO_K), labelX, labelY);
-        gcSkewTPlot.restore();
+        g.fillTextRotated(String.format("%.0f C", tempStep - C_TO_K), labelX, labelY,
+                -Math.toDegrees(Math.atan((y1 - y2) / (x2 - x1))));
     }
 
     /**
@@ -676,7 +1555,7 @@ public class SkewTPlot {
      *
      * @param osTemp saturated potential temperature in K
      */
-    private static void drawSatAdiabat(double osTemp) {
+    private void drawSatAdiabat(double osTemp) {
         double osaTemp = AtmosThermoMath.calcSatPotTemp(osTemp, PRES_BASE);
 
         double y1 = getYFromPres(28000);
@@ -708,27 +1587,22 @@ public class SkewTPlot {
         /*
          * Draw saturated adiabat line.
          */
-        gcSkewTPlot.setFill(Color.GREEN);
-        gcSkewTPlot.setStroke(Color.GREEN);
-        gcSkewTPlot.setLineDashes(scaleLineFactor * 3.0);
-        gcSkewTPlot.setLineWidth(scaleLineFactor * 0.75);
-        gcSkewTPlot.strokePolyline(xVals, yVals, numPoints);
-        gcSkewTPlot.setLineDashes(null);
+        g.setFill(COLOR_GREEN);
+        g.setStroke(COLOR_GREEN);
+        g.setLineDashes(scaleLineFactor * 3.0);
+        g.setLineWidth(scaleLineFactor * 0.75);
+        g.strokePolyline(xVals, yVals, numPoints);
+        g.setLineDashes(null);
 
         /*
          * Draw label parallel to line.
          */
-        gcSkewTPlot.setTextAlign(TextAlignment.CENTER);
-        gcSkewTPlot.setTextBaseline(VPos.BASELINE);
-        gcSkewTPlot.setFont(Font.font("sans-serif", FontWeight.BOLD, 5.0 * plotAvgStep));
+        g.setTextAlign(TextAlign.CENTER);
+        g.setTextBaseline(TextBaseline.BASELINE);
+        g.setFont(5.0 * plotAvgStep, true, false);
 
-        gcSkewTPlot.save();
-        Rotate r = new Rotate(-Math.toDegrees(Math.atan((y1 - y2) / (x2 - x1))), labelX,
-                labelY);
-        gcSkewTPlot.setTransform(r.getMxx(), r.getMyx(), r.getMxy(), r.getMyy(),
-                r.getTx(), r.getTy());
-        gcSkewTPlot.fillText(String.format("%.0f C", osTemp - C_TO_K), labelX, labelY);
-        gcSkewTPlot.restore();
+        g.fillTextRotated(String.format("%.0f C", osTemp - C_TO_K), labelX, labelY,
+                -Math.toDegrees(Math.atan((y1 - y2) / (x2 - x1))));
     }
 
     /**
@@ -736,7 +1610,7 @@ public class SkewTPlot {
      *
      * @param wLine mixing ratio in g/kg
      */
-    private static void drawMixRatios(double wLine) {
+    private void drawMixRatios(double wLine) {
         // Draw mixing ratio lines at predetermined intervals
         double y1 = getYFromPres(75000);
         double y2 = getYFromPres(73000);
@@ -769,27 +1643,22 @@ public class SkewTPlot {
         /*
          * Draw mixing ratio line.
          */
-        gcSkewTPlot.setFill(Color.TEAL);
-        gcSkewTPlot.setStroke(Color.TEAL);
-        gcSkewTPlot.setLineDashes(scaleLineFactor * 6.0);
-        gcSkewTPlot.setLineWidth(scaleLineFactor * 0.75);
-        gcSkewTPlot.strokePolyline(xVals, yVals, numPoints);
-        gcSkewTPlot.setLineDashes(null);
+        g.setFill(COLOR_TEAL);
+        g.setStroke(COLOR_TEAL);
+        g.setLineDashes(scaleLineFactor * 6.0);
+        g.setLineWidth(scaleLineFactor * 0.75);
+        g.strokePolyline(xVals, yVals, numPoints);
+        g.setLineDashes(null);
 
         /*
          * Draw label parallel to line.
          */
-        gcSkewTPlot.setTextAlign(TextAlignment.CENTER);
-        gcSkewTPlot.setTextBaseline(VPos.BASELINE);
-        gcSkewTPlot.setFont(Font.font("sans-serif", FontWeight.BOLD, 4.0 * plotAvgStep));
+        g.setTextAlign(TextAlign.CENTER);
+        g.setTextBaseline(TextBaseline.BASELINE);
+        g.setFont(4.0 * plotAvgStep, true, false);
 
-        gcSkewTPlot.save();
-        Rotate r = new Rotate(-Math.toDegrees(Math.atan((y1 - y2) / (x2 - x1))), labelX,
-                labelY);
-        gcSkewTPlot.setTransform(r.getMxx(), r.getMyx(), r.getMxy(), r.getMyy(),
-                r.getTx(), r.getTy());
-        gcSkewTPlot.fillText(String.format("%.1f g/kg", wLine), labelX, labelY);
-        gcSkewTPlot.restore();
+        g.fillTextRotated(String.format("%.1f g/kg", wLine), labelX, labelY,
+                -Math.toDegrees(Math.atan((y1 - y2) / (x2 - x1))));
     }
 
     /**
@@ -800,7 +1669,7 @@ public class SkewTPlot {
      *
      * @return XY-coordinate as double[2]; [0] = X, [1] = Y
      */
-    private static double[] getXYFromTempPres(double temp, double pres) {
+    private double[] getXYFromTempPres(double temp, double pres) {
         double y = getYFromPres(pres);
         double x = getXFromTempY(temp, y);
         double[] results = {x, y};
@@ -814,7 +1683,7 @@ public class SkewTPlot {
      *
      * @return Y-coordinate
      */
-    private static double getYFromPres(double pres) {
+    private double getYFromPres(double pres) {
         double presLog = Math.log(pres);
         double presLogPercent = Math.abs((presLog - PRES_MIN_LOG) / PRES_LOG_RANGE);
         double y = plotYMax + (presLogPercent * plotYRange);
@@ -829,7 +1698,7 @@ public class SkewTPlot {
      *
      * @return X-coordinate
      */
-    private static double getXFromTempY(double temp, double y) {
+    private double getXFromTempY(double temp, double y) {
         double tempRange = (TEMP_MAX - TEMP_MIN);
         double yBase = getYFromPres(PRES_BASE);
         double yRangeNew = Math.abs(yBase - plotYMax);
@@ -840,4 +1709,45 @@ public class SkewTPlot {
         double x = (tempPercent * plotXRange) + plotXOffset;
         return x;
     }
+
+    /**
+     * A Skew-T diagram recorded for showing on screen.
+     */
+    public static final class Recording {
+
+        private final Sounding[] soundings;
+        private final EnsembleSounding ensemble;
+        private final double scale;
+        private final DisplayList displayList;
+
+        private Recording(Sounding[] soundings, EnsembleSounding ensemble, double scale,
+                DisplayList displayList) {
+            this.soundings = soundings;
+            this.ensemble = ensemble;
+            this.scale = scale;
+            this.displayList = displayList;
+        }
+
+        /**
+         * Returns sounding that was plotted, or the first of those compared.
+         *
+         * @return sounding
+         */
+        public Sounding getSounding() {
+            return soundings[0];
+        }
+
+        /**
+         * Returns approximate memory used by recording, including the soundings plotted.
+         *
+         * @return size in bytes
+         */
+        public long getSizeInBytes() {
+            long result = displayList.getSizeInBytes();
+            for (Sounding sounding : soundings) {
+                result += sounding.getSizeInBytes();
+            }
+            return result;
+        }
+    }
 }
@@ -0,0 +1,253 @@
+/*
+ * Copyright (c) 2024, Avery Donovan
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.averydonovan.skewtvsp.controllers;
+
+import com.averydonovan.skewtvsp.utils.Metrics;
+import com.averydonovan.skewtvsp.utils.Sounding;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Bounded in-memory cache of finished Skew-T plots. Each entry holds a recording of the
+ * plot, with the sounding that was read from the data file, so that revisiting a point
+ * can be displayed by replaying the recording without reading or plotting anything.
+ * Recordings take a small fraction of the memory of an image of the plot. Entries are
+ * evicted in least-recently-used order once the total size of the cache exceeds its
+ * limit.
+ *
+ * @author Avery Donovan
+ */
+public class SoundingCache {
+
+    private static final Logger LOG =
+            LoggerFactory.getLogger(SoundingCache.class.getName());
+
+    /**
+     * Default size limit of cache, overridable with the skewtvsp.cache.maxMB system
+     * property.
+     */
+    private static final long DEFAULT_MAX_MB = 256;
+
+    private static final Metrics.Counter hitCounter = Metrics.counter("cache.hits");
+    private static final Metrics.Counter missCounter = Metrics.counter("cache.misses");
+    private static final Metrics.Counter evictionCounter =
+            Metrics.counter("cache.evictions");
+
+    private final long maxBytes;
+    private long curBytes = 0;
+
+    private long hits = 0;
+    private long misses = 0;
+    private long evictions = 0;
+
+    private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    /**
+     * Create new cache with size limit taken from the skewtvsp.cache.maxMB system
+     * property, or 256 MB if not set.
+     */
+    public SoundingCache() {
+        this(Long.getLong("skewtvsp.cache.maxMB", DEFAULT_MAX_MB) * 1024 * 1024);
+    }
+
+    /**
+     * Create new cache with a given size limit.
+     *
+     * @param maxBytes maximum total size of cached entries in bytes
+     */
+    public SoundingCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Look up a finished plot.
+     *
+     * @param key identifies data file, grid point, and render settings
+     *
+     * @return cached entry or null if not cached
+     */
+    public synchronized Entry get(Key key) {
+        Entry result = entries.get(key);
+
+        if (result != null) {
+            hits++;
+            hitCounter.increment();
+            LOG.debug("Sounding cache hit for {}; {}", key, getStats());
+        } else {
+            misses++;
+            missCounter.increment();
+            LOG.debug("Sounding cache miss for {}; {}", key, getStats());
+        }
+
+        return result;
+    }
+
+    /**
+     * Add a finished plot, evicting least-recently-used entries as needed to stay under
+     * the size limit. Entries larger than the whole cache are not stored.
+     *
+     * @param key identifies data file, grid point, and render settings
+     * @param recording recording of plot
+     */
+    public synchronized void put(Key key, SkewTPlot.Recording recording) {
+        Entry entry = new Entry(recording);
+
+        if (entry.sizeInBytes > maxBytes) {
+            LOG.debug("Not caching {}, entry larger than cache", key);
+            return;
+        }
+
+        Entry oldEntry = entries.put(key, entry);
+        if (oldEntry != null) {
+            curBytes -= oldEntry.sizeInBytes;
+        }
+        curBytes += entry.sizeInBytes;
+
+        Iterator<Map.Entry<Key, Entry>> iter = entries.entrySet().iterator();
+        while (curBytes > maxBytes && iter.hasNext()) {
+            Map.Entry<Key, Entry> eldest = iter.next();
+            if (eldest.getKey().equals(key)) {
+                continue;
+            }
+            curBytes -= eldest.getValue().sizeInBytes;
+            iter.remove();
+            evictions++;
+            evictionCounter.increment();
+            LOG.debug("Evicted {} from sounding cache", eldest.getKey());
+        }
+    }
+
+    /**
+     * Remove all entries from cache.
+     */
+    public synchronized void clear() {
+        entries.clear();
+        curBytes = 0;
+    }
+
+    /**
+     * Returns summary of cache statistics, suitable for logging.
+     *
+     * @return cache statistics
+     */
+    public synchronized String getStats() {
+        long lookups = hits + misses;
+        double hitRate = (lookups == 0) ? 0 : (100.0 * hits / lookups);
+        return String.format(
+                "hits=%d misses=%d hitRate=%.1f%% evictions=%d entries=%d size=%.1f/%.1f MB",
+                hits, misses, hitRate, evictions, entries.size(),
+                curBytes / 1048576.0, maxBytes / 1048576.0);
+    }
+
+    /**
+     * Identifies a cached plot by data file, XY-coordinates in data grid, and the render
+     * settings used to draw it.
+     */
+    public static final class Key {
+
+        private final String fileIdentity;
+        private final int coordX;
+        private final int coordY;
+        private final String renderSettings;
+
+        /**
+         * Create new key.
+         *
+         * @param fileIdentity identity of data file, see
+         * {@link com.averydonovan.skewtvsp.utils.ModelDataFile#getFileIdentity()}
+         * @param coordX x-coordinate in data grid
+         * @param coordY y-coordinate in data grid
+         * @param renderSettings description of anything affecting rendered output
+         */
+        public Key(String fileIdentity, int coordX, int coordY, String renderSettings) {
+            this.fileIdentity = fileIdentity;
+            this.coordX = coordX;
+            this.coordY = coordY;
+            this.renderSettings = renderSettings;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            return coordX == other.coordX && coordY == other.coordY
+                    && fileIdentity.equals(other.fileIdentity)
+                    && renderSettings.equals(other.renderSettings);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(fileIdentity, coordX, coordY, renderSettings);
+        }
+
+        @Override
+        public String toString() {
+            return "(" + coordX + ", " + coordY + ") " + renderSettings;
+        }
+    }
+
+    /**
+     * A cached recording of a plot and the sounding plotted in it.
+     */
+    public static final class Entry {
+
+        private final SkewTPlot.Recording recording;
+        private final long sizeInBytes;
+
+        private Entry(SkewTPlot.Recording recording) {
+            this.recording = recording;
+            this.sizeInBytes = recording.getSizeInBytes();
+        }
+
+        /**
+         * Returns cached sounding.
+         *
+         * @return sounding
+         */
+        public Sounding getSounding() {
+            return recording.getSounding();
+        }
+
+        /**
+         * Returns recording of plot, to be replayed with
+         * {@link SkewTPlot#drawRecordedSkewT}.
+         *
+         * @return recorded plot
+         */
+        public SkewTPlot.Recording getRecording() {
+            return recording;
+        }
+    }
+}
@@ -0,0 +1,268 @@
+/*
+ * Copyright (c) 2024, Avery Donovan
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.averydonovan.skewtvsp.controllers;
+
+import java.util.Locale;
+
+/**
+ * Builds an SVG document. Does not need a display or the JavaFX toolkit, so it can be
+ * used on any thread, including in headless server mode.
+ *
+ * @author Avery Donovan
+ */
+public class SvgPlotGraphics implements PlotGraphics {
+
+    private final StringBuilder svg = new StringBuilder(1 << 16);
+    private final double width;
+    private final double height;
+
+    private int fill = 0x000000;
+    private int stroke = 0x000000;
+    private double lineWidth = 1;
+    private String lineDashes = null;
+    private double fontSize = 12;
+    private boolean fontBold = false;
+    private boolean fontItalic = false;
+    private TextAlign textAlign = TextAlign.LEFT;
+    private TextBaseline textBaseline = TextBaseline.BASELINE;
+
+    /**
+     * Create new, empty SVG document.
+     *
+     * @param width width of document in pixels
+     * @param height height of document in pixels
+     */
+    public SvgPlotGraphics(double width, double height) {
+        this.width = width;
+        this.height = height;
+    }
+
+    /**
+     * Returns the complete SVG document drawn so far.
+     *
+     * @return SVG document
+     */
+    public String toSvg() {
+        return String.format(Locale.ROOT,
+                "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+                        + "<svg xmlns=\"http://www.w3.org/2000/svg\" width=\"%.0f\""
+                        + " height=\"%.0f\" viewBox=\"0 0 %.0f %.0f\">\n",
+                width, height, width, height) + svg + "</svg>\n";
+    }
+
+    /**
+     * Returns the elements drawn so far, without the surrounding document, so that they
+     * can be reused as the background of other documents.
+     *
+     * @return SVG elements
+     */
+    public String getElements() {
+        return svg.toString();
+    }
+
+    /**
+     * Add elements previously taken from another document with {@link #getElements()}.
+     *
+     * @param elements SVG elements
+     */
+    public void appendElements(String elements) {
+        svg.append(elements);
+    }
+
+    @Override
+    public void setFill(int rgb) {
+        fill = rgb;
+    }
+
+    @Override
+    public void setStroke(int rgb) {
+        stroke = rgb;
+    }
+
+    @Override
+    public void setLineWidth(double width) {
+        lineWidth = width;
+    }
+
+    @Override
+    public void setLineDashes(double... dashes) {
+        if (dashes == null || dashes.length == 0) {
+            lineDashes = null;
+        } else {
+            StringBuilder result = new StringBuilder();
+            for (double dash : dashes) {
+                if (result.length() > 0) {
+                    result.append(',');
+                }
+                result.append(num(dash));
+            }
+            lineDashes = result.toString();
+        }
+    }
+
+    @Override
+    public void setFont(double size, boolean bold, boolean italic) {
+        fontSize = size;
+        fontBold = bold;
+        fontItalic = italic;
+    }
+
+    @Override
+    public void setTextAlign(TextAlign align) {
+        textAlign = align;
+    }
+
+    @Override
+    public void setTextBaseline(TextBaseline baseline) {
+        textBaseline = baseline;
+    }
+
+    @Override
+    public void clearRect(double x, double y, double width, double height) {
+        // Nothing drawn yet can be erased, so cover the area with white instead
+        svg.append("<rect x=\"").append(num(x)).append("\" y=\"").append(num(y))
+                .append("\" width=\"").append(num(width)).append("\" height=\"")
+                .append(num(height)).append("\" fill=\"#ffffff\"/>\n");
+    }
+
+    @Override
+    public void fillRect(double x, double y, double width, double height) {
+        svg.append("<rect x=\"").append(num(x)).append("\" y=\"").append(num(y))
+                .append("\" width=\"").append(num(width)).append("\" height=\"")
+                .append(num(height)).append("\" fill=\"").append(color(fill))
+                .append("\"/>\n");
+    }
+
+    @Override
+    public void strokeLine(double x1, double y1, double x2, double y2) {
+        svg.append("<line x1=\"").append(num(x1)).append("\" y1=\"").append(num(y1))
+                .append("\" x2=\"").append(num(x2)).append("\" y2=\"").append(num(y2))
+                .append('"');
+        appendStroke();
+        svg.append("/>\n");
+    }
+
+    @Override
+    public void strokePolyline(double[] xPoints, double[] yPoints, int numPoints) {
+        svg.append("<polyline points=\"");
+        for (int index = 0; index < numPoints; index++) {
+            if (index > 0) {
+                svg.append(' ');
+            }
+            svg.append(num(xPoints[index])).append(',').append(num(yPoints[index]));
+        }
+        svg.append("\" fill=\"none\"");
+        appendStroke();
+        svg.append("/>\n");
+    }
+
+    @Override
+    public void fillPolygon(double[] xPoints, double[] yPoints, int numPoints) {
+        svg.append("<polygon points=\"");
+        for (int index = 0; index < numPoints; index++) {
+            if (index > 0) {
+                svg.append(' ');
+            }
+            svg.append(num(xPoints[index])).append(',').append(num(yPoints[index]));
+        }
+        svg.append("\" fill=\"").append(color(fill)).append("\"/>\n");
+    }
+
+    @Override
+    public void fillText(String text, double x, double y) {
+        appendText(text, x, y, null);
+    }
+
+    @Override
+    public void fillTextRotated(String text, double x, double y, double degrees) {
+        appendText(text, x, y,
+                "rotate(" + num(degrees) + " " + num(x) + " " + num(y) + ")");
+    }
+
+    private void appendText(String text, double x, double y, String transform) {
+        String anchor;
+        switch (textAlign) {
+            case CENTER:
+                anchor = "middle";
+                break;
+            case RIGHT:
+                anchor = "end";
+                break;
+            default:
+                anchor = "start";
+                break;
+        }
+
+        String baseline;
+        switch (textBaseline) {
+            case TOP:
+                baseline = "text-before-edge";
+                break;
+            case CENTER:
+                baseline = "central";
+                break;
+            default:
+                baseline = "alphabetic";
+                break;
+        }
+
+        svg.append("<text x=\"").append(num(x)).append("\" y=\"").append(num(y))
+                .append("\" font-family=\"sans-serif\" font-size=\"").append(num(fontSize))
+                .append('"');
+        if (fontBold) {
+            svg.append(" font-weight=\"bold\"");
+        }
+        if (fontItalic) {
+            svg.append(" font-style=\"italic\"");
+        }
+        svg.append(" text-anchor=\"").append(anchor).append("\" dominant-baseline=\"")
+                .append(baseline).append("\" fill=\"").append(color(fill)).append('"');
+        if (transform != null) {
+            svg.append(" transform=\"").append(transform).append('"');
+        }
+        svg.append('>').append(escape(text)).append("</text>\n");
+    }
+
+    private void appendStroke() {
+        svg.append(" stroke=\"").append(color(stroke)).append("\" stroke-width=\"")
+                .append(num(lineWidth)).append('"');
+        if (lineDashes != null) {
+            svg.append(" stroke-dasharray=\"").append(lineDashes).append('"');
+        }
+    }
+
+    private static String color(int rgb) {
+        return String.format("#%06x", rgb & 0xFFFFFF);
+    }
+
+    private static String num(double value) {
+        return String.format(Locale.ROOT, "%.2f", value);
+    }
+
+    private static String escape(String text) {
+        return text.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;");
+    }
+}
@@ -0,0 +1,251 @@
+/*
+ * Copyright (c) 2024, Avery Donovan
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.averydonovan.skewtvsp.server;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Limits how much work the server takes on and picks how much effort each plot gets.
+ * At most a fixed number of requests are worked on at once and a fixed number more may
+ * wait their turn; anything beyond that is turned away with a hint of when to retry.
+ * Once a request gets its turn, the time it spent waiting is taken out of its latency
+ * budget, and the best {@link QualityTier} expected to fit in what is left is chosen
+ * using a running average of how long each tier has been taking. Averages fade away
+ * while a tier goes unused, so a tier that was skipped because it was slow is tried
+ * again once things have had time to settle down.
+ *
+ * @author Avery Donovan
+ */
+class AdmissionControl {
+
+    /**
+     * Weight of newest sample in running averages.
+     */
+    private static final double AVG_WEIGHT = 0.2;
+    /**
+     * Default time for a running average to fade to half when a tier isn't used.
+     */
+    private static final long DEFAULT_AVG_HALF_LIFE_NANOS = TimeUnit.SECONDS.toNanos(10);
+
+    private final int maxConcurrent;
+    private final int maxQueued;
+    private final long avgHalfLifeNanos;
+    private final Semaphore running;
+    private final AtomicInteger outstanding = new AtomicInteger();
+
+    /**
+     * Running average of time taken by each tier, in ns, stored as double bits.
+     */
+    private final AtomicLongArray avgTierNanos;
+    /**
+     * When each tier's running average was last updated, from {@link System#nanoTime()}.
+     */
+    private final AtomicLongArray avgTierUpdatedNanos;
+    private final AtomicLongArray statTierCount;
+    private final AtomicLong statRejected = new AtomicLong();
+
+    /**
+     * Create new instance.
+     *
+     * @param maxConcurrent number of requests worked on at once
+     * @param maxQueued number of requests allowed to wait for their turn
+     */
+    AdmissionControl(int maxConcurrent, int maxQueued) {
+        this(maxConcurrent, maxQueued, DEFAULT_AVG_HALF_LIFE_NANOS);
+    }
+
+    /**
+     * Create new instance with running averages fading at a given rate.
+     *
+     * @param maxConcurrent number of requests worked on at once
+     * @param maxQueued number of requests allowed to wait for their turn
+     * @param avgHalfLifeNanos time for a tier's running average to fade to half while
+     * the tier isn't used, in ns
+     */
+    AdmissionControl(int maxConcurrent, int maxQueued, long avgHalfLifeNanos) {
+        this.maxConcurrent = Math.max(1, maxConcurrent);
+        this.maxQueued = Math.max(0, maxQueued);
+        this.avgHalfLifeNanos = Math.max(1, avgHalfLifeNanos);
+        running = new Semaphore(this.maxConcurrent, true);
+
+        int numTiers = QualityTier.values().length;
+        avgTierNanos = new AtomicLongArray(numTiers);
+        avgTierUpdatedNanos = new AtomicLongArray(numTiers);
+        statTierCount = new AtomicLongArray(numTiers);
+        long nowNanos = System.nanoTime();
+        for (int index = 0; index < numTiers; index++) {
+            avgTierNanos.set(index, Double.doubleToLongBits(0));
+            avgTierUpdatedNanos.set(index, nowNanos);
+        }
+    }
+
+    /**
+     * Wait for a turn to work on a request, unless too many are already waiting.
+     *
+     * @return true if admitted, in which case {@link #release()} must be called once
+     * done; false if turned away
+     *
+     * @throws InterruptedException interrupted while waiting
+     */
+    boolean admit() throws InterruptedException {
+        if (outstanding.incrementAndGet() > maxConcurrent + maxQueued) {
+            outstanding.decrementAndGet();
+            statRejected.incrementAndGet();
+            return false;
+        }
+        try {
+            running.acquire();
+        } catch (InterruptedException ex) {
+            outstanding.decrementAndGet();
+            throw ex;
+        }
+        return true;
+    }
+
+    /**
+     * Give up turn taken by {@link #admit()}.
+     */
+    void release() {
+        running.release();
+        outstanding.decrementAndGet();
+    }
+
+    /**
+     * Pick the best tier, no better than the one requested, expected to finish within
+     * what is left of a latency budget. When more requests are waiting than are being
+     * worked on, full-scale plots are skipped regardless.
+     *
+     * @param requested best tier wanted
+     * @param remainingNanos time left in budget, in ns
+     *
+     * @return tier to use
+     */
+    QualityTier chooseTier(QualityTier requested, long remainingNanos) {
+        QualityTier tier = requested;
+        if (tier == QualityTier.FULL && outstanding.get() > 2 * maxConcurrent) {
+            tier = QualityTier.REDUCED;
+        }
+        long nowNanos = System.nanoTime();
+        while (tier != QualityTier.DATA_ONLY
+                && getAverageNanos(tier, nowNanos) > remainingNanos) {
+            tier = tier.cheaper();
+        }
+        statTierCount.incrementAndGet(tier.ordinal());
+        return tier;
+    }
+
+    /**
+     * Record how long rendering with a given tier took. Only the rendering itself should
+     * be timed, not time spent waiting for a turn or for another request's result.
+     *
+     * @param tier tier used
+     * @param elapsedNanos time taken, in ns
+     */
+    void record(QualityTier tier, long elapsedNanos) {
+        int index = tier.ordinal();
+        long nowNanos = System.nanoTime();
+
+        long oldBits;
+        long newBits;
+        do {
+            oldBits = avgTierNanos.get(index);
+            double oldAvg = fade(Double.longBitsToDouble(oldBits), index, nowNanos);
+            double newAvg = oldAvg == 0 ? elapsedNanos
+                    : oldAvg + AVG_WEIGHT * (elapsedNanos - oldAvg);
+            newBits = Double.doubleToLongBits(newAvg);
+        } while (!avgTierNanos.compareAndSet(index, oldBits, newBits));
+        avgTierUpdatedNanos.set(index, nowNanos);
+    }
+
+    /**
+     * Suggest how long a turned-away client should wait before trying again, based on
+     * how long it would take to work through everything outstanding.
+     *
+     * @return seconds to wait, at least 1
+     */
+    long getRetryAfterSeconds() {
+        long nowNanos = System.nanoTime();
+        double avgNanos = 0;
+        for (QualityTier tier : QualityTier.values()) {
+            avgNanos = Math.max(avgNanos, getAverageNanos(tier, nowNanos));
+        }
+        double drainNanos = avgNanos * outstanding.get() / maxConcurrent;
+        return Math.max(1, (long) Math.ceil(drainNanos / TimeUnit.SECONDS.toNanos(1)));
+    }
+
+    /**
+     * Returns number of requests a tier was chosen for.
+     *
+     * @param tier tier
+     *
+     * @return number of requests
+     */
+    long getTierCount(QualityTier tier) {
+        return statTierCount.get(tier.ordinal());
+    }
+
+    /**
+     * Returns number of requests turned away.
+     *
+     * @return number of requests
+     */
+    long getRejectedCount() {
+        return statRejected.get();
+    }
+
+    /**
+     * Returns number of requests being worked on or waiting.
+     *
+     * @return number of requests
+     */
+    int getOutstanding() {
+        return outstanding.get();
+    }
+
+    /**
+     * Get running average of time taken by a tier, faded by how long it has been since
+     * the tier was last used.
+     */
+    private double getAverageNanos(QualityTier tier, long nowNanos) {
+        int index = tier.ordinal();
+        return fade(Double.longBitsToDouble(avgTierNanos.get(index)), index, nowNanos);
+    }
+
+    /**
+     * Fade a tier's running average by how long it has been since it was updated.
+     */
+    private double fade(double avgNanos, int index, long nowNanos) {
+        long idleNanos = nowNanos - avgTierUpdatedNanos.get(index);
+        if (idleNanos <= 0) {
+            return avgNanos;
+        }
+        return avgNanos * Math.pow(0.5, (double) idleNanos / avgHalfLifeNanos);
+    }
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright (c) 2024, Avery Donovan
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.averydonovan.skewtvsp.server;
+
+/**
+ * How much work goes into a plot response, from the most to the least. When the server
+ * is too busy to render a full plot within a request's latency budget, it falls back to
+ * a cheaper tier rather than making the client wait.
+ *
+ * @author Avery Donovan
+ */
+public enum QualityTier {
+    /**
+     * Full plot at the requested scale.
+     */
+    FULL,
+    /**
+     * Full plot at the smallest scale.
+     */
+    REDUCED,
+    /**
+     * Temperature and dew point traces and location drawn over a pre-rendered blank
+     * chart at the smallest scale, without weather indices.
+     */
+    BASIC,
+    /**
+     * Sounding as JSON, with no plot at all.
+     */
+    DATA_ONLY;
+
+    /**
+     * Returns next cheaper tier, or this tier if already the cheapest.
+     *
+     * @return cheaper tier
+     */
+    public QualityTier cheaper() {
+        QualityTier[] tiers = values();
+        return tiers[Math.min(ordinal() + 1, tiers.length - 1)];
+    }
+}
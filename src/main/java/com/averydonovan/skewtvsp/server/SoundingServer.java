@@ -0,0 +1,820 @@
+/*
+ * Copyright (c) 2024, Avery Donovan
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.averydonovan.skewtvsp.server;
+
+import com.averydonovan.skewtvsp.controllers.AwtPlotGraphics;
+import com.averydonovan.skewtvsp.controllers.SkewTPlot;
+import com.averydonovan.skewtvsp.controllers.SvgPlotGraphics;
+import com.averydonovan.skewtvsp.utils.DataReadScheduler;
+import com.averydonovan.skewtvsp.utils.Metrics;
+import com.averydonovan.skewtvsp.utils.ModelDataFile;
+import com.averydonovan.skewtvsp.utils.PointReadBatcher;
+import com.averydonovan.skewtvsp.utils.SingleFlight;
+import com.averydonovan.skewtvsp.utils.Sounding;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import javax.imageio.ImageIO;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Serves soundings and rendered Skew-T plots over HTTP, without the desktop user
+ * interface, so they can be shown on dashboards. Data comes from model data files that
+ * are opened when the server starts. Each request runs on its own virtual thread, and
+ * the number of requests working on any one file at a time is limited so that a burst
+ * of requests for one file cannot tie up every read thread.
+ *
+ * <p>
+ * Endpoints, all using GET:
+ * <ul>
+ * <li>{@code /files} lists the files being served.</li>
+ * <li>{@code /sounding?lon=&lat=} returns a sounding and its weather indices as
+ * JSON.</li>
+ * <li>{@code /plot?lon=&lat=&format=png|svg&scale=&budget=} returns a rendered
+ * plot.</li>
+ * <li>{@code /stats} returns counts of how requests were handled.</li>
+ * <li>{@code /metrics} returns the program's {@link Metrics} as plain text.</li>
+ * </ul>
+ * A file is chosen with the {@code file} parameter, or with the {@code time} parameter
+ * (as in 2024-05-01T12:00) to pick the file with the nearest valid time. Either may be
+ * left out if only one file is served.
+ *
+ * <p>
+ * Identical requests arriving at the same time, as happens when many people look at the
+ * same place during severe weather, share one read and one render rather than each
+ * doing their own.
+ *
+ * <p>
+ * Only so many requests are worked on at once, and only so many more may wait; the rest
+ * are turned away with a Retry-After hint. Each plot request has a latency budget, given
+ * in ms by the {@code budget} parameter, and when the server is too busy to render a
+ * full plot within it a cheaper {@link QualityTier} is used instead. The tier used is
+ * reported in the X-Quality-Tier header.
+ *
+ * @author Avery Donovan
+ */
+public class SoundingServer {
+
+    private static final Logger LOG =
+            LoggerFactory.getLogger(SoundingServer.class.getName());
+
+    private static final int DEFAULT_PORT = 8080;
+    /**
+     * Default number of requests that may work on a single file at once, overridable
+     * with the skewtvsp.server.perFileConcurrency system property.
+     */
+    private static final int DEFAULT_PER_FILE_CONCURRENCY = 4;
+    /**
+     * Default time a request waits for its turn at a file before giving up, overridable
+     * with the skewtvsp.server.acquireTimeoutMillis system property.
+     */
+    private static final long DEFAULT_ACQUIRE_TIMEOUT_MILLIS = 5000;
+    private static final int MAX_PLOT_SCALE = 3;
+    /**
+     * Default latency budget of plot requests, overridable with the
+     * skewtvsp.server.budgetMillis system property.
+     */
+    private static final int DEFAULT_BUDGET_MILLIS = 2000;
+    /**
+     * Default number of requests waiting for their turn before more are turned away,
+     * overridable with the skewtvsp.server.maxQueued system property. The number worked
+     * on at once defaults to twice the number of processors and can be set with the
+     * skewtvsp.server.maxConcurrent system property.
+     */
+    private static final int DEFAULT_MAX_QUEUED = 64;
+
+    private static final Metrics.Histogram pngEncodeTimer = Metrics.timer("plot.encode.png");
+    private static final Metrics.Histogram svgEncodeTimer = Metrics.timer("plot.encode.svg");
+
+    private final Map<String, ServedFile> servedFiles;
+    private final long acquireTimeoutMillis;
+    private final int defaultBudgetMillis;
+    private final AdmissionControl admission;
+    private final HttpServer httpServer;
+    private final ExecutorService executor;
+
+    /**
+     * Reads in progress, keyed by file and grid point.
+     */
+    private final SingleFlight<String, Sounding> soundingReads =
+            new SingleFlight<>("Sounding reads");
+    /**
+     * Responses being built, keyed by file, grid point, and product.
+     */
+    private final SingleFlight<String, Response> responses =
+            new SingleFlight<>("Server responses");
+
+    /*
+     * Blank diagrams to draw BASIC tier plots over, rendered when first needed.
+     */
+    private BufferedImage blankPng = null;
+    private String blankSvg = null;
+
+    /**
+     * Create new server for already-opened data files. Call {@link #start()} to begin
+     * accepting requests.
+     *
+     * @param port port to listen on, or 0 for any free port
+     * @param dataFiles data files to serve, keyed by the name used to request them
+     *
+     * @throws IOException unable to listen on port
+     */
+    public SoundingServer(int port, Map<String, ModelDataFile> dataFiles)
+            throws IOException {
+        int perFileConcurrency = Math.max(1, Integer.getInteger(
+                "skewtvsp.server.perFileConcurrency", DEFAULT_PER_FILE_CONCURRENCY));
+        acquireTimeoutMillis = Long.getLong("skewtvsp.server.acquireTimeoutMillis",
+                DEFAULT_ACQUIRE_TIMEOUT_MILLIS);
+        defaultBudgetMillis =
+                Integer.getInteger("skewtvsp.server.budgetMillis", DEFAULT_BUDGET_MILLIS);
+        admission = new AdmissionControl(
+                Integer.getInteger("skewtvsp.server.maxConcurrent",
+                        2 * Runtime.getRuntime().availableProcessors()),
+                Integer.getInteger("skewtvsp.server.maxQueued", DEFAULT_MAX_QUEUED));
+
+        Map<String, ServedFile> files = new LinkedHashMap<>();
+        dataFiles.forEach((name, dataFile) -> files.put(name,
+                new ServedFile(name, dataFile, perFileConcurrency)));
+        servedFiles = Collections.unmodifiableMap(files);
+
+        executor = Executors.newVirtualThreadPerTaskExecutor();
+
+        httpServer = HttpServer.create(new InetSocketAddress(port), 0);
+        httpServer.setExecutor(executor);
+        httpServer.createContext("/files", exchange -> handle(exchange, this::doFiles));
+        httpServer.createContext("/sounding",
+                exchange -> handle(exchange, this::doSounding));
+        httpServer.createContext("/plot", exchange -> handle(exchange, this::doPlot));
+        httpServer.createContext("/stats", exchange -> handle(exchange, this::doStats));
+        httpServer.createContext("/metrics", exchange -> handle(exchange, this::doMetrics));
+    }
+
+    /**
+     * Start accepting requests.
+     */
+    public void start() {
+        httpServer.start();
+        LOG.info("Serving {} file(s) on port {}", servedFiles.size(),
+                httpServer.getAddress().getPort());
+    }
+
+    /**
+     * Returns port requests are accepted on, which is picked by the system if the server
+     * was created with port 0.
+     *
+     * @return port number
+     */
+    public int getPort() {
+        return httpServer.getAddress().getPort();
+    }
+
+    /**
+     * Stop accepting requests, giving requests in progress a moment to finish.
+     */
+    public void stop() {
+        httpServer.stop(1);
+        executor.shutdown();
+    }
+
+    /**
+     * Run server from the command line. Arguments are an optional {@code --port N}
+     * followed by the data files to serve; a {@code --server} argument is ignored.
+     *
+     * @param args command line arguments
+     */
+    public static void main(String[] args) {
+        // Plots are rendered in memory, so no display is needed
+        System.setProperty("java.awt.headless", "true");
+
+        int port = DEFAULT_PORT;
+        Map<String, ModelDataFile> dataFiles = new LinkedHashMap<>();
+
+        for (int index = 0; index < args.length; index++) {
+            String arg = args[index];
+            if (arg.equals("--server")) {
+                continue;
+            } else if (arg.equals("--port") && index + 1 < args.length) {
+                port = Integer.parseInt(args[++index]);
+            } else {
+                try {
+                    ModelDataFile dataFile = new ModelDataFile(arg);
+                    dataFile.loadMetadata();
+                    dataFiles.put(new File(arg).getName(), dataFile);
+                } catch (IOException ex) {
+                    LOG.error("Can't open file: {}\n{}", arg, ex.getLocalizedMessage());
+                }
+            }
+        }
+
+        if (dataFiles.isEmpty()) {
+            LOG.error("No data files to serve. Usage: --server [--port N] FILE...");
+            System.exit(1);
+        }
+
+        try {
+            SoundingServer server = new SoundingServer(port, dataFiles);
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                server.stop();
+                for (ModelDataFile dataFile : dataFiles.values()) {
+                    try {
+                        dataFile.close();
+                    } catch (IOException ex) {
+                        LOG.error("{}\n{}", ex.getMessage(), ex.getStackTrace());
+                    }
+                }
+            }));
+            server.start();
+        } catch (IOException ex) {
+            LOG.error("Can't start server on port {}\n{}", port, ex.getLocalizedMessage());
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Run a request handler, send its response, and log how long it took.
+     */
+    private void handle(HttpExchange exchange, Handler handler) throws IOException {
+        long startNanos = System.nanoTime();
+        Response response;
+
+        try {
+            if (!exchange.getRequestMethod().equals("GET")) {
+                response = Response.error(405, "Only GET is supported");
+            } else {
+                response = handler.handle(parseQuery(exchange.getRequestURI()
+                        .getRawQuery()));
+            }
+        } catch (BadRequestException ex) {
+            response = Response.error(ex.status, ex.getMessage());
+            response.retryAfterSeconds = ex.retryAfterSeconds;
+        } catch (RuntimeException | IOException ex) {
+            LOG.error("Error handling {}\n{}", exchange.getRequestURI(), ex.toString());
+            response = Response.error(500, "Internal error");
+        }
+
+        try (OutputStream body = exchange.getResponseBody()) {
+            exchange.getResponseHeaders().set("Content-Type", response.contentType);
+            if (response.status == 503) {
+                exchange.getResponseHeaders().set("Retry-After",
+                        String.valueOf(Math.max(1, response.retryAfterSeconds)));
+            }
+            if (response.tier != null) {
+                exchange.getResponseHeaders().set("X-Quality-Tier", response.tier.name());
+            }
+            exchange.sendResponseHeaders(response.status, response.body.length);
+            body.write(response.body);
+        } finally {
+            LOG.info("{} {} -> {} ({} bytes) in {} ms", exchange.getRequestMethod(),
+                    exchange.getRequestURI(), response.status, response.body.length,
+                    (System.nanoTime() - startNanos) / 1000000);
+        }
+    }
+
+    /**
+     * List files being served.
+     */
+    private Response doFiles(Map<String, String> params) {
+        StringBuilder json = new StringBuilder("[");
+        for (ServedFile file : servedFiles.values()) {
+            if (json.length() > 1) {
+                json.append(',');
+            }
+            json.append("{\"file\":").append(jsonString(file.name))
+                    .append(",\"model\":").append(jsonString(file.dataFile.getModelName()))
+                    .append(",\"analysisTime\":")
+                    .append(jsonString(String.valueOf(file.dataFile.getAnalysisTime())))
+                    .append(",\"validTime\":")
+                    .append(jsonString(String.valueOf(file.dataFile.getValidTime())))
+                    .append('}');
+        }
+        json.append(']');
+        return Response.json(json.toString());
+    }
+
+    /**
+     * Return sounding and weather indices as JSON.
+     */
+    private Response doSounding(Map<String, String> params)
+            throws BadRequestException {
+        ServedFile file = getFile(params);
+        int[] coordXY = getCoords(file, params);
+        String key = file.name + "|" + coordXY[0] + "|" + coordXY[1] + "|json";
+
+        admit();
+        try {
+            return responses.run(key, () -> withPermit(file, () -> {
+                Sounding sounding = readSounding(file, coordXY[0], coordXY[1]);
+                return Response.json(toJson(file, sounding));
+            }));
+        } finally {
+            admission.release();
+        }
+    }
+
+    /**
+     * Return rendered plot as PNG or SVG, or the sounding as JSON if there is not enough
+     * time left in the request's latency budget for any plot.
+     */
+    private Response doPlot(Map<String, String> params) throws BadRequestException {
+        long startNanos = System.nanoTime();
+
+        ServedFile file = getFile(params);
+        String format = params.getOrDefault("format", "png").toLowerCase(Locale.ROOT);
+        int scale = getInt(params, "scale", 1);
+        long budgetNanos =
+                TimeUnit.MILLISECONDS.toNanos(getInt(params, "budget", defaultBudgetMillis));
+        if (scale < 1 || scale > MAX_PLOT_SCALE) {
+            throw new BadRequestException(400,
+                    "scale must be between 1 and " + MAX_PLOT_SCALE);
+        }
+        if (!format.equals("png") && !format.equals("svg")) {
+            throw new BadRequestException(400, "format must be png or svg");
+        }
+        int[] coordXY = getCoords(file, params);
+
+        admit();
+        try {
+            long tierStartNanos = System.nanoTime();
+            QualityTier tier = admission.chooseTier(QualityTier.FULL,
+                    budgetNanos - (tierStartNanos - startNanos));
+            String key = file.name + "|" + coordXY[0] + "|" + coordXY[1] + "|" + format
+                    + "@" + scale + "|" + tier;
+
+            // Rendering also counts against the file's limit, as it is the costly part
+            return responses.run(key, () -> withPermit(file,
+                    () -> render(file, coordXY[0], coordXY[1], format, scale, tier)));
+        } finally {
+            admission.release();
+        }
+    }
+
+    /**
+     * Render plot of a sounding with a given tier. How long drawing and encoding took is
+     * recorded for choosing the tier of later requests; waiting for the read is left out.
+     */
+    private Response render(ServedFile file, int coordX, int coordY, String format,
+            int scale, QualityTier tier) throws BadRequestException, IOException {
+        Sounding sounding = readSounding(file, coordX, coordY);
+        long renderStartNanos = System.nanoTime();
+        Response response;
+
+        if (tier == QualityTier.DATA_ONLY) {
+            response = Response.json(toJson(file, sounding));
+        } else {
+            int plotScale = tier == QualityTier.FULL ? scale : 1;
+            int width = SkewTPlot.getPlotWidth(plotScale);
+            int height = SkewTPlot.getPlotHeight(plotScale);
+
+            if (format.equals("svg")) {
+                SvgPlotGraphics svg = new SvgPlotGraphics(width, height);
+                SkewTPlot plot = new SkewTPlot(svg, plotScale);
+                if (tier == QualityTier.BASIC) {
+                    svg.appendElements(getBlankSvg());
+                    plot.plotTraces(sounding);
+                } else {
+                    plot.plot(sounding);
+                }
+                long encodeStartNanos = System.nanoTime();
+                byte[] body = svg.toSvg().getBytes(StandardCharsets.UTF_8);
+                svgEncodeTimer.recordSince(encodeStartNanos);
+                response = new Response(200, "image/svg+xml", body);
+            } else {
+                BufferedImage image =
+                        new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+                AwtPlotGraphics awt = new AwtPlotGraphics(image);
+                SkewTPlot plot = new SkewTPlot(awt, plotScale);
+                if (tier == QualityTier.BASIC) {
+                    image.setData(getBlankPng().getRaster());
+                    plot.plotTraces(sounding);
+                } else {
+                    plot.plot(sounding);
+                }
+                awt.dispose();
+                long encodeStartNanos = System.nanoTime();
+                ByteArrayOutputStream png = new ByteArrayOutputStream(1 << 18);
+                ImageIO.write(image, "png", png);
+                pngEncodeTimer.recordSince(encodeStartNanos);
+                response = new Response(200, "image/png", png.toByteArray());
+            }
+        }
+
+        admission.record(tier, System.nanoTime() - renderStartNanos);
+        response.tier = tier;
+        return response;
+    }
+
+    /**
+     * Return counts of how requests were handled.
+     */
+    private Response doStats(Map<String, String> params) {
+        StringBuilder json = new StringBuilder("{\"outstanding\":")
+                .append(admission.getOutstanding())
+                .append(",\"rejected\":").append(admission.getRejectedCount())
+                .append(",\"tiers\":{");
+        for (QualityTier tier : QualityTier.values()) {
+            if (tier.ordinal() > 0) {
+                json.append(',');
+            }
+            json.append(jsonString(tier.name())).append(':')
+                    .append(admission.getTierCount(tier));
+        }
+        json.append("},\"responsesShared\":").append(responses.getSharedCount())
+                .append(",\"readsShared\":").append(soundingReads.getSharedCount())
+                .append('}');
+        return Response.json(json.toString());
+    }
+
+    /**
+     * Return the program's metrics as plain text.
+     */
+    private Response doMetrics(Map<String, String> params) {
+        return new Response(200, "text/plain; charset=utf-8",
+                Metrics.dump().getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Wait for a turn to work on a request, or turn it away if too many are waiting.
+     */
+    private void admit() throws BadRequestException {
+        try {
+            if (!admission.admit()) {
+                throw new BadRequestException(503, "Server is busy",
+                        admission.getRetryAfterSeconds());
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new BadRequestException(503, "Interrupted");
+        }
+    }
+
+    /**
+     * Returns blank diagram at the smallest scale as an image, rendering it if needed.
+     */
+    private synchronized BufferedImage getBlankPng() {
+        if (blankPng == null) {
+            BufferedImage image = new BufferedImage(SkewTPlot.getPlotWidth(1),
+                    SkewTPlot.getPlotHeight(1), BufferedImage.TYPE_INT_RGB);
+            AwtPlotGraphics awt = new AwtPlotGraphics(image);
+            new SkewTPlot(awt, 1).plotBlank();
+            awt.dispose();
+            blankPng = image;
+        }
+        return blankPng;
+    }
+
+    /**
+     * Returns blank diagram at the smallest scale as SVG elements, rendering it if
+     * needed.
+     */
+    private synchronized String getBlankSvg() {
+        if (blankSvg == null) {
+            SvgPlotGraphics svg = new SvgPlotGraphics(SkewTPlot.getPlotWidth(1),
+                    SkewTPlot.getPlotHeight(1));
+            new SkewTPlot(svg, 1).plotBlank();
+            blankSvg = svg.getElements();
+        }
+        return blankSvg;
+    }
+
+    /**
+     * Run work against a file once one of the file's permits is free.
+     */
+    private <T> T withPermit(ServedFile file, PermitWork<T> work)
+            throws BadRequestException {
+        boolean acquired = false;
+        try {
+            acquired = file.permits.tryAcquire(acquireTimeoutMillis, TimeUnit.MILLISECONDS);
+            if (!acquired) {
+                throw new BadRequestException(503, "Too many requests for " + file.name);
+            }
+            return work.run();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new BadRequestException(503, "Interrupted");
+        } catch (IOException ex) {
+            throw new RuntimeException(ex);
+        } finally {
+            if (acquired) {
+                file.permits.release();
+            }
+        }
+    }
+
+    /**
+     * Get grid point nearest to the requested longitude and latitude.
+     */
+    private static int[] getCoords(ServedFile file, Map<String, String> params)
+            throws BadRequestException {
+        double lon = getDouble(params, "lon");
+        double lat = getDouble(params, "lat");
+        int[] coordXY = file.dataFile.getXYCoordsInGrid(lon, lat);
+        if (coordXY == null) {
+            throw new BadRequestException(404, "Location is outside of data grid");
+        }
+        return coordXY;
+    }
+
+    /**
+     * Read sounding at a grid point, sharing the read with any other request for the
+     * same point already reading it. Requests for other points of the same file that
+     * arrive at about the same time are read together with it. Reads go through the
+     * shared read scheduler, so the virtual thread handling the request only waits on
+     * the result rather than doing the blocking read itself.
+     */
+    private Sounding readSounding(ServedFile file, int coordX, int coordY)
+            throws BadRequestException {
+        return soundingReads.run(file.name + "|" + coordX + "|" + coordY, () -> {
+            try {
+                return file.batcher.submit(coordX, coordY).get();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new BadRequestException(503, "Interrupted");
+            } catch (ExecutionException ex) {
+                if (ex.getCause() instanceof RejectedExecutionException) {
+                    throw new BadRequestException(503, "Read queue is full");
+                }
+                throw new RuntimeException(ex.getCause());
+            }
+        });
+    }
+
+    /**
+     * Pick file named in request, or the one with the valid time nearest to the
+     * requested time.
+     */
+    private ServedFile getFile(Map<String, String> params) throws BadRequestException {
+        if (params.containsKey("file")) {
+            ServedFile file = servedFiles.get(params.get("file"));
+            if (file == null) {
+                throw new BadRequestException(404, "No such file: " + params.get("file"));
+            }
+            return file;
+        }
+
+        if (params.containsKey("time")) {
+            LocalDateTime time;
+            try {
+                time = LocalDateTime.parse(params.get("time"));
+            } catch (RuntimeException ex) {
+                throw new BadRequestException(400, "Can't parse time: " + params.get("time"));
+            }
+            ServedFile nearest = null;
+            long nearestSeconds = Long.MAX_VALUE;
+            for (ServedFile file : servedFiles.values()) {
+                LocalDateTime validTime = file.dataFile.getValidTime();
+                if (validTime == null) {
+                    continue;
+                }
+                long seconds = Math.abs(Duration.between(validTime, time).getSeconds());
+                if (seconds < nearestSeconds) {
+                    nearest = file;
+                    nearestSeconds = seconds;
+                }
+            }
+            if (nearest == null) {
+                throw new BadRequestException(404, "No file has a valid time");
+            }
+            return nearest;
+        }
+
+        if (servedFiles.size() == 1) {
+            return servedFiles.values().iterator().next();
+        }
+        throw new BadRequestException(400, "file or time must be given");
+    }
+
+    private static String toJson(ServedFile file, Sounding sounding) {
+        StringBuilder json = new StringBuilder(4096);
+        json.append("{\"file\":").append(jsonString(file.name))
+                .append(",\"model\":").append(jsonString(sounding.getModelName()))
+                .append(",\"analysisTime\":")
+                .append(jsonString(String.valueOf(sounding.getAnalysisTime())))
+                .append(",\"validTime\":")
+                .append(jsonString(String.valueOf(sounding.getValidTime())))
+                .append(",\"lon\":").append(jsonNumber(sounding.getLon()))
+                .append(",\"lat\":").append(jsonNumber(sounding.getLat()))
+                .append(",\"x\":").append(sounding.getCoordX())
+                .append(",\"y\":").append(sounding.getCoordY())
+                .append(",\"surface\":{\"temp2m\":").append(jsonNumber(sounding.getTemp2m()))
+                .append(",\"dewp2m\":").append(jsonNumber(sounding.getDewp2m()))
+                .append(",\"presSfc\":").append(jsonNumber(sounding.getPresSfc()))
+                .append(",\"msl\":").append(jsonNumber(sounding.getMSL()))
+                .append("},\"indices\":{\"lclPres\":")
+                .append(jsonNumber(sounding.getLCL()[0]))
+                .append(",\"lclTemp\":").append(jsonNumber(sounding.getLCL()[1]))
+                .append(",\"cape\":").append(jsonNumber(sounding.getCAPE()))
+                .append(",\"cin\":").append(jsonNumber(sounding.getCIN()))
+                .append(",\"liftedIndex\":").append(jsonNumber(sounding.getLFTX()))
+                .append(",\"kIndex\":").append(jsonNumber(sounding.getKIndex()))
+                .append(",\"totalTotals\":").append(jsonNumber(sounding.getTotalTotals()))
+                .append(",\"sweat\":").append(jsonNumber(sounding.getSWEAT()))
+                .append("},\"levels\":[");
+
+        double[] pressures = sounding.getPressures();
+        double[] temps = sounding.getTemps();
+        double[] dewps = sounding.getDewps();
+        for (int index = 0; index < sounding.getLevelCount(); index++) {
+            if (index > 0) {
+                json.append(',');
+            }
+            json.append("{\"pres\":").append(jsonNumber(pressures[index]))
+                    .append(",\"temp\":").append(jsonNumber(temps[index]))
+                    .append(",\"dewp\":").append(jsonNumber(dewps[index])).append('}');
+        }
+        json.append("]}");
+        return json.toString();
+    }
+
+    private static String jsonNumber(double value) {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            return "null";
+        }
+        return String.format(Locale.ROOT, "%.3f", value);
+    }
+
+    private static String jsonString(String value) {
+        StringBuilder result = new StringBuilder("\"");
+        for (char c : value.toCharArray()) {
+            if (c == '"' || c == '\\') {
+                result.append('\\').append(c);
+            } else if (c < 0x20) {
+                result.append(String.format("\\u%04x", (int) c));
+            } else {
+                result.append(c);
+            }
+        }
+        return result.append('"').toString();
+    }
+
+    private static Map<String, String> parseQuery(String rawQuery) {
+        Map<String, String> params = new HashMap<>();
+        if (rawQuery == null || rawQuery.isEmpty()) {
+            return params;
+        }
+        for (String pair : rawQuery.split("&")) {
+            int split = pair.indexOf('=');
+            if (split > 0) {
+                params.put(URLDecoder.decode(pair.substring(0, split), StandardCharsets.UTF_8),
+                        URLDecoder.decode(pair.substring(split + 1), StandardCharsets.UTF_8));
+            }
+        }
+        return params;
+    }
+
+    private static double getDouble(Map<String, String> params, String name)
+            throws BadRequestException {
+        String value = params.get(name);
+        if (value == null) {
+            throw new BadRequestException(400, name + " must be given");
+        }
+        try {
+            return Double.parseDouble(value);
+        } catch (NumberFormatException ex) {
+            throw new BadRequestException(400, name + " must be a number");
+        }
+    }
+
+    private static int getInt(Map<String, String> params, String name, int defaultVal)
+            throws BadRequestException {
+        String value = params.get(name);
+        if (value == null) {
+            return defaultVal;
+        }
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException ex) {
+            throw new BadRequestException(400, name + " must be a whole number");
+        }
+    }
+
+    /**
+     * Handles requests to one endpoint.
+     */
+    private interface Handler {
+
+        Response handle(Map<String, String> params)
+                throws BadRequestException, IOException;
+    }
+
+    /**
+     * Work done while holding one of a file's permits.
+     */
+    private interface PermitWork<T> {
+
+        T run() throws BadRequestException, IOException;
+    }
+
+    /**
+     * A data file being served, with the permits limiting how many requests can work
+     * on it at once and the batcher gathering its reads.
+     */
+    private static final class ServedFile {
+
+        private final String name;
+        private final ModelDataFile dataFile;
+        private final Semaphore permits;
+        private final PointReadBatcher batcher;
+
+        private ServedFile(String name, ModelDataFile dataFile, int numPermits) {
+            this.name = name;
+            this.dataFile = dataFile;
+            this.permits = new Semaphore(numPermits, true);
+            this.batcher = new PointReadBatcher(dataFile,
+                    DataReadScheduler.Priority.INTERACTIVE);
+        }
+    }
+
+    /**
+     * Response to send to client.
+     */
+    private static final class Response {
+
+        private final int status;
+        private final String contentType;
+        private final byte[] body;
+        private QualityTier tier = null;
+        private long retryAfterSeconds = 0;
+
+        private Response(int status, String contentType, byte[] body) {
+            this.status = status;
+            this.contentType = contentType;
+            this.body = body;
+        }
+
+        private static Response json(String json) {
+            return new Response(200, "application/json",
+                    json.getBytes(StandardCharsets.UTF_8));
+        }
+
+        private static Response error(int status, String message) {
+            return new Response(status, "application/json",
+                    ("{\"error\":" + jsonString(message) + "}")
+                            .getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    /**
+     * Request that can't be served, with the HTTP status to report.
+     */
+    private static final class BadRequestException extends Exception {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int status;
+        private final long retryAfterSeconds;
+
+        private BadRequestException(int status, String message) {
+            this(status, message, 0);
+        }
+
+        private BadRequestException(int status, String message, long retryAfterSeconds) {
+            super(message);
+            this.status = status;
+            this.retryAfterSeconds = retryAfterSeconds;
+        }
+    }
+}
@@ -0,0 +1,255 @@
+/*
+ * Copyright (c) 2024, Avery Donovan
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.averydonovan.skewtvsp.utils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Writes an animated PNG (APNG) image. Viewers that do not understand APNG show the
+ * first frame as an ordinary PNG.
+ *
+ * <p>
+ * Frames are compressed with {@link #encodeFrame(int[], int[], int, int) encodeFrame},
+ * which can be called from any thread and for several frames at once, and then written
+ * in order with {@link #writeFrame(Frame, int) writeFrame}. Each frame after the first
+ * holds only the rectangle of pixels that changed since the frame before it, which for
+ * Skew-T plots, where only the traces and labels change, is a small part of the image.
+ *
+ * @author Avery Donovan
+ */
+public class AnimatedPngWriter implements Closeable {
+
+    private final OutputStream out;
+    private final int width;
+    private final int height;
+    private final int numFrames;
+    private int framesWritten = 0;
+    private int sequenceNumber = 0;
+    private boolean closed = false;
+
+    /**
+     * Start writing an animated PNG image. The output stream is closed when the writer
+     * is.
+     *
+     * @param out stream to write to
+     * @param width width in pixels
+     * @param height height in pixels
+     * @param numFrames number of frames that will be written
+     * @param numPlays number of times to play animation, or 0 to loop forever
+     *
+     * @throws IOException unable to write
+     */
+    public AnimatedPngWriter(OutputStream out, int width, int height, int numFrames,
+            int numPlays) throws IOException {
+        if (width <= 0 || height <= 0 || numFrames <= 0) {
+            throw new IllegalArgumentException("Invalid animation " + width + "x"
+                    + height + " with " + numFrames + " frames");
+        }
+
+        this.out = out;
+        this.width = width;
+        this.height = height;
+        this.numFrames = numFrames;
+
+        StreamingPngWriter.writeHeader(out, width, height);
+
+        byte[] control = new byte[8];
+        StreamingPngWriter.putInt(control, 0, numFrames);
+        StreamingPngWriter.putInt(control, 4, numPlays);
+        StreamingPngWriter.writeChunk(out, "acTL", control, 0, control.length);
+    }
+
+    /**
+     * Compress a frame, keeping only the rectangle of pixels that differ from the
+     * previous frame. Can be called from any thread.
+     *
+     * @param pixels pixels of frame as 0xAARRGGBB; alpha is ignored
+     * @param previous pixels of previous frame, or null for the first frame
+     * @param width width of frame in pixels
+     * @param height height of frame in pixels
+     *
+     * @return compressed frame
+     */
+    public static Frame encodeFrame(int[] pixels, int[] previous, int width, int height) {
+        int left = 0;
+        int top = 0;
+        int right = width - 1;
+        int bottom = height - 1;
+
+        if (previous != null) {
+            left = width;
+            top = height;
+            right = -1;
+            bottom = -1;
+            for (int row = 0; row < height; row++) {
+                int start = row * width;
+                for (int col = 0; col < width; col++) {
+                    if (((pixels[start + col] ^ previous[start + col]) & 0xFFFFFF) != 0) {
+                        left = Math.min(left, col);
+                        right = Math.max(right, col);
+                        top = Math.min(top, row);
+                        bottom = row;
+                    }
+                }
+            }
+            if (right < 0) {
+                // Nothing changed, but a frame has to have at least one pixel
+                left = 0;
+                top = 0;
+                right = 0;
+                bottom = 0;
+            }
+        }
+
+        int regionWidth = right - left + 1;
+        int regionHeight = bottom - top + 1;
+        byte[] rowBytes = new byte[1 + 3 * regionWidth];
+        ByteArrayOutputStream data = new ByteArrayOutputStream();
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+        try (DeflaterOutputStream compressed = new DeflaterOutputStream(data, deflater,
+                StreamingPngWriter.MAX_CHUNK_SIZE)) {
+            for (int row = top; row <= bottom; row++) {
+                StreamingPngWriter.filterRow(pixels, row * width + left, regionWidth,
+                        rowBytes);
+                compressed.write(rowBytes);
+            }
+        } catch (IOException ex) {
+            // Only writing to memory
+            throw new IllegalStateException(ex);
+        } finally {
+            deflater.end();
+        }
+
+        return new Frame(left, top, regionWidth, regionHeight, data.toByteArray());
+    }
+
+    /**
+     * Write the next frame. Frames must be written in order, and the first frame must
+     * cover the whole image.
+     *
+     * @param frame frame compressed with {@link #encodeFrame(int[], int[], int, int)
+     * encodeFrame}
+     * @param delayMillis time to show frame for in ms
+     *
+     * @throws IOException unable to write, or more frames written than expected
+     */
+    public void writeFrame(Frame frame, int delayMillis) throws IOException {
+        if (framesWritten >= numFrames) {
+            throw new IOException("Animation only has " + numFrames + " frames");
+        }
+        if (framesWritten == 0 && (frame.width != width || frame.height != height)) {
+            throw new IllegalArgumentException("First frame must cover whole image");
+        }
+
+        byte[] control = new byte[26];
+        StreamingPngWriter.putInt(control, 0, sequenceNumber++);
+        StreamingPngWriter.putInt(control, 4, frame.width);
+        StreamingPngWriter.putInt(control, 8, frame.height);
+        StreamingPngWriter.putInt(control, 12, frame.x);
+        StreamingPngWriter.putInt(control, 16, frame.y);
+        int delay = Math.max(0, Math.min(delayMillis, 0xFFFF));
+        control[20] = (byte) (delay >>> 8);
+        control[21] = (byte) delay;
+        control[22] = (byte) (1000 >>> 8);
+        control[23] = (byte) 1000;
+        control[24] = 0; // Leave frame in place for the next to be drawn over
+        control[25] = 0; // Replace pixels under frame rather than blending
+        StreamingPngWriter.writeChunk(out, "fcTL", control, 0, control.length);
+
+        for (int offset = 0; offset < frame.data.length;
+                offset += StreamingPngWriter.MAX_CHUNK_SIZE) {
+            int length = Math.min(StreamingPngWriter.MAX_CHUNK_SIZE,
+                    frame.data.length - offset);
+            if (framesWritten == 0) {
+                StreamingPngWriter.writeChunk(out, "IDAT", frame.data, offset, length);
+            } else {
+                byte[] chunk = new byte[4 + length];
+                StreamingPngWriter.putInt(chunk, 0, sequenceNumber++);
+                System.arraycopy(frame.data, offset, chunk, 4, length);
+                StreamingPngWriter.writeChunk(out, "fdAT", chunk, 0, chunk.length);
+            }
+        }
+        framesWritten++;
+    }
+
+    /**
+     * Finish the image and close the output stream.
+     *
+     * @throws IOException unable to write, or not every frame was written
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+
+        try {
+            StreamingPngWriter.writeChunk(out, "IEND", new byte[0], 0, 0);
+        } finally {
+            out.close();
+        }
+
+        if (framesWritten != numFrames) {
+            throw new IOException("Only " + framesWritten + " of " + numFrames
+                    + " frames written");
+        }
+    }
+
+    /**
+     * A compressed frame, ready to be written.
+     */
+    public static final class Frame {
+
+        private final int x;
+        private final int y;
+        private final int width;
+        private final int height;
+        private final byte[] data;
+
+        private Frame(int x, int y, int width, int height, byte[] data) {
+            this.x = x;
+            this.y = y;
+            this.width = width;
+            this.height = height;
+            this.data = data;
+        }
+
+        /**
+         * Returns size of compressed frame.
+         *
+         * @return size in bytes
+         */
+        public int getSizeInBytes() {
+            return data.length;
+        }
+    }
+}
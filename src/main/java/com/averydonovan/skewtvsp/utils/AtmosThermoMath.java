@@ -41,6 +41,12 @@ public class AtmosThermoMath {
 
     private static final double C_TO_K = 273.15;
 
+    /*
+     * Metrics for calculations done many levels at a time.
+     */
+    private static final Metrics.Counter batchCalls = Metrics.counter("thermo.batch.calls");
+    private static final Metrics.Counter batchLevels = Metrics.counter("thermo.batch.levels");
+
     /**
      * Calculates total totals (TT) index.
      *
@@ -98,6 +104,82 @@ public class AtmosThermoMath {
         return result;
     }
 
+    /**
+     * Calculate dew point of air for many levels at once, writing the results into a
+     * caller-supplied array.
+     *
+     * @param temps temperatures in K
+     * @param pres pressures in Pa
+     * @param rhs relative humidities in %
+     * @param dewps array to store dew points in K in, may be the same as rhs
+     * @param count number of levels to calculate
+     */
+    public static void calcDewp(double[] temps, double[] pres, double[] rhs, double[] dewps,
+            int count) {
+        ThermoBatchEvent event = new ThermoBatchEvent();
+        event.begin();
+        batchCalls.increment();
+        batchLevels.add(count);
+        for (int index = 0; index < count; index++) {
+            dewps[index] = calcDewp(temps[index], pres[index], rhs[index]);
+        }
+        event.end();
+        if (event.shouldCommit()) {
+            event.calculation = "calcDewp";
+            event.levels = count;
+            event.commit();
+        }
+    }
+
+    /**
+     * Calculates equivalent potential temperature (theta-e) of air, using the formula
+     * of Bolton (1980).
+     *
+     * @param temp temperature in K
+     * @param dewp dew point in K
+     * @param pres pressure in Pa
+     *
+     * @return equivalent potential temperature in K
+     */
+    public static double calcThetaE(double temp, double dewp, double pres) {
+        // Mixing ratio in g/kg is the saturated mixing ratio at the dew point
+        double mixRatio = w(dewp, pres);
+        double mixRatioKg = mixRatio / 1000.0;
+        double tempLCL = 1.0 / (1.0 / (dewp - 56.0) + Math.log(temp / dewp) / 800.0)
+                + 56.0;
+        double result = temp * Math.pow(100000.0 / pres, 0.2854 * (1 - 0.28 * mixRatioKg))
+                * Math.exp((3.376 / tempLCL - 0.00254) * mixRatio
+                        * (1 + 0.81 * mixRatioKg));
+        return result;
+    }
+
+    /**
+     * Calculate equivalent potential temperature of air for many points at once,
+     * writing the results into a caller-supplied array.
+     *
+     * @param temps temperatures in K
+     * @param dewps dew points in K
+     * @param pres pressures in Pa
+     * @param thetaEs array to store equivalent potential temperatures in K in
+     * @param count number of points to calculate
+     */
+    public static void calcThetaE(double[] temps, double[] dewps, double[] pres,
+            double[] thetaEs, int count) {
+        ThermoBatchEvent event = new ThermoBatchEvent();
+        event.begin();
+        batchCalls.increment();
+        batchLevels.add(count);
+        for (int index = 0; index < count; index++) {
+            thetaEs[index] = calcThetaE(temps[index], dewps[index], pres[index]);
+        }
+        event.end();
+        if (event.shouldCommit()) {
+            event.calculation = "calcThetaE";
+            event.levels = count;
+            event.commit();
+        }
+    }
+
     /**
      * Calculates lifting condensation level (LCL).
      *
@@ -108,6 +190,21 @@ public class AtmosThermoMath {
      * @return LCL as double[2]; [0] = pressure in Pa, [1] = temperature in K
      */
     public static double[] calcLCL(double temp, double dewp, double pres) {
+        double[] result = new double[2];
+        calcLCL(temp, dewp, pres, result);
+        return result;
+    }
+
+    /**
+     * Calculates lifting condensation level (LCL), writing the result into a
+     * caller-supplied array.
+     *
+     * @param temp 2m surface temperature in K
+     * @param dewp 2m surface dew point in K
+     * @param pres surface pressure in Pa
+     * @param result array to store LCL in; [0] = pressure in Pa, [1] = temperature in K
+     */
+    public static void calcLCL(double temp, double dewp, double pres, double[] result) {
         final double stepSize = 100.0;
         double pt = pot_temp(temp, pres);
         double w_0 = w(dewp, pres);
@@ -120,8 +217,8 @@ public class AtmosThermoMath {
             pt_l = calcTempFromPot(pt, lcl);
             delta = w(pt_l, lcl) - w_0;
         }
-        double[] result = {lcl, pt_l};
-        return result;
+        result[0] = lcl;
+        result[1] = pt_l;
     }
 
     /**
@@ -0,0 +1,559 @@
+/*
+ * Copyright (c) 2024, Avery Donovan
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.averydonovan.skewtvsp.utils;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.concurrent.CompletionException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Vertical cross-section of temperature, dew point depression, and equivalent potential
+ * temperature along the great-circle path between two points. The path is sampled at
+ * evenly spaced points, each of which is interpolated bilinearly from the four grid
+ * points around it.
+ *
+ * <p>
+ * The grid points needed by every sample along the path are worked out first and read
+ * all together with {@link ModelDataFile#getTempDewpColumns}, which reads them a slab
+ * of grid at a time, rather than reading a sounding for each point. Instances are not
+ * modified once created and can be shared between threads.
+ *
+ * <p>
+ * Only the part of the path inside the data grid is kept. If the path runs off the
+ * grid, it is trimmed to the longest stretch of samples inside it, which is noted by
+ * {@link #isTrimmed()}.
+ *
+ * @author Avery Donovan
+ */
+public class CrossSection {
+
+    private static final Logger LOG =
+            LoggerFactory.getLogger(CrossSection.class.getName());
+
+    /**
+     * Number of points sampled along the path by default, overridable with the
+     * skewtvsp.crossSection.samples system property.
+     */
+    public static final int DEFAULT_SAMPLES =
+            Integer.getInteger("skewtvsp.crossSection.samples", 150);
+
+    /**
+     * Mean radius of the Earth in km.
+     */
+    private static final double EARTH_RADIUS = 6371.0;
+    /**
+     * How far past the outermost grid points, in grid spacings, a sample may be and
+     * still count as inside the grid, allowing for rounding.
+     */
+    private static final double GRID_EDGE_TOLERANCE = 1e-6;
+
+    private static final Metrics.Histogram readTimer = Metrics.timer("crosssection.read");
+
+    private final double[] endpoints;
+    private final boolean trimmed;
+    private final double[] distances;
+    private final double[] pressures;
+    private final double[] temps;
+    private final double[] dewpDeps;
+    private final double[] thetaEs;
+    private final double[] presSfcs;
+    private final String modelName;
+    private final LocalDateTime analysisTime;
+    private final LocalDateTime validTime;
+
+    private CrossSection(double[] endpoints, boolean trimmed, double[] distances,
+            double[] pressures, double[] temps, double[] dewpDeps, double[] thetaEs,
+            double[] presSfcs, ModelDataFile file) {
+        this.endpoints = endpoints;
+        this.trimmed = trimmed;
+        this.distances = distances;
+        this.pressures = pressures;
+        this.temps = temps;
+        this.dewpDeps = dewpDeps;
+        this.thetaEs = thetaEs;
+        this.presSfcs = presSfcs;
+        this.modelName = file.getModelName();
+        this.analysisTime = file.getAnalysisTime();
+        this.validTime = file.getValidTime();
+    }
+
+    /**
+     * Read a cross-section along the great-circle path between two points. The read is
+     * made as an interactive read on the shared {@link DataReadScheduler}. If part of
+     * the path is outside the data grid, only the longest stretch inside it is read.
+     *
+     * @param file file to read from
+     * @param lon1 longitude of start of path in degrees (-180 to 180)
+     * @param lat1 latitude of start of path in degrees (-90 to 90)
+     * @param lon2 longitude of end of path in degrees (-180 to 180)
+     * @param lat2 latitude of end of path in degrees (-90 to 90)
+     * @param numSamples number of points to sample along path, at least 2
+     *
+     * @return cross-section along path
+     *
+     * @throws IllegalArgumentException if fewer than 2 samples along path are inside
+     * the data grid
+     * @throws IOException if file could not be read
+     * @throws InterruptedException if interrupted while waiting for read
+     */
+    public static CrossSection read(ModelDataFile file, double lon1, double lat1,
+            double lon2, double lat2, int numSamples)
+            throws IOException, InterruptedException {
+        long startNanos = System.nanoTime();
+
+        double[][] path = getGreatCirclePath(lon1, lat1, lon2, lat2, numSamples);
+        int gridWidth = file.getGridWidth();
+        int gridHeight = file.getGridHeight();
+
+        /*
+         * Work out the fractional grid position of each sample, and keep the longest run
+         * of samples inside the grid.
+         */
+        double[][] sampleCoords = new double[numSamples][];
+        int runStart = 0;
+        int runLength = 0;
+        int start = 0;
+        for (int sample = 0; sample <= numSamples; sample++) {
+            if (sample < numSamples) {
+                sampleCoords[sample] = getFractionalXY(file, path[0][sample],
+                        path[1][sample], gridWidth, gridHeight);
+                if (sampleCoords[sample] != null) {
+                    continue;
+                }
+            }
+            if (sample - start > runLength) {
+                runStart = start;
+                runLength = sample - start;
+            }
+            start = sample + 1;
+        }
+        if (runLength < 2) {
+            throw new IllegalArgumentException(String.format("Path from %.4f, %.4f to "
+                    + "%.4f, %.4f does not cross the data grid", lon1, lat1, lon2, lat2));
+        }
+
+        boolean trimmed = runLength < numSamples;
+        if (trimmed) {
+            LOG.debug("Cross-section trimmed to samples {} to {} of {} inside grid",
+                    runStart, runStart + runLength - 1, numSamples);
+        }
+        numSamples = runLength;
+        double[] lons = Arrays.copyOfRange(path[0], runStart, runStart + runLength);
+        double[] lats = Arrays.copyOfRange(path[1], runStart, runStart + runLength);
+        double[] distances = new double[runLength];
+        for (int sample = 0; sample < runLength; sample++) {
+            distances[sample] = path[2][runStart + sample] - path[2][runStart];
+        }
+
+        /*
+         * Work out the four grid points around each sample. Neighbouring samples mostly
+         * share grid points, so each grid point is only kept once, in the order the path
+         * first reaches it, which keeps points read together close together on the grid.
+         */
+        int[] cornerXs = new int[numSamples * 4];
+        int[] cornerYs = new int[numSamples * 4];
+        int[] sampleCorners = new int[numSamples * 4];
+        double[] fracXs = new double[numSamples];
+        double[] fracYs = new double[numSamples];
+        int numCorners = 0;
+        for (int sample = 0; sample < numSamples; sample++) {
+            double[] coords = sampleCoords[runStart + sample];
+            double coordX = coords[0];
+            double coordY = coords[1];
+            // Samples on the last row or column use the cell before it
+            int x0 = Math.min((int) Math.floor(coordX), Math.max(0, gridWidth - 2));
+            int y0 = Math.min((int) Math.floor(coordY), Math.max(0, gridHeight - 2));
+            fracXs[sample] = coordX - x0;
+            fracYs[sample] = coordY - y0;
+            for (int corner = 0; corner < 4; corner++) {
+                int cornerX = Math.min(gridWidth - 1, x0 + (corner & 1));
+                int cornerY = Math.min(gridHeight - 1, y0 + (corner >> 1));
+                int found = -1;
+                for (int prev = numCorners - 1; prev >= Math.max(0, numCorners - 16);
+                        prev--) {
+                    if (cornerXs[prev] == cornerX && cornerYs[prev] == cornerY) {
+                        found = prev;
+                        break;
+                    }
+                }
+                if (found < 0) {
+                    cornerXs[numCorners] = cornerX;
+                    cornerYs[numCorners] = cornerY;
+                    found = numCorners++;
+                }
+                sampleCorners[sample * 4 + corner] = found;
+            }
+        }
+
+        int[] readXs = Arrays.copyOf(cornerXs, numCorners);
+        int[] readYs = Arrays.copyOf(cornerYs, numCorners);
+        double[][] columns;
+        try {
+            columns = DataReadScheduler.getShared()
+                    .submit(DataReadScheduler.Priority.INTERACTIVE,
+                            () -> file.getTempDewpColumns(readXs, readYs))
+                    .join();
+        } catch (CompletionException ex) {
+            if (ex.getCause() instanceof IOException) {
+                throw (IOException) ex.getCause();
+            }
+            throw ex;
+        }
+        double[] pressures = columns[0];
+        int numLevels = pressures.length;
+
+        /*
+         * Interpolate every level of every sample from its corners, then work out dew
+         * point depressions and theta-e from the interpolated values.
+         */
+        double[] temps = new double[numSamples * numLevels];
+        double[] dewps = new double[numSamples * numLevels];
+        double[] presSfcs = new double[numSamples];
+        double[] weights = new double[4];
+        int[] corners = new int[4];
+        for (int sample = 0; sample < numSamples; sample++) {
+            double fracX = fracXs[sample];
+            double fracY = fracYs[sample];
+            weights[0] = (1 - fracX) * (1 - fracY);
+            weights[1] = fracX * (1 - fracY);
+            weights[2] = (1 - fracX) * fracY;
+            weights[3] = fracX * fracY;
+            System.arraycopy(sampleCorners, sample * 4, corners, 0, 4);
+            for (int level = 0; level < numLevels; level++) {
+                temps[sample * numLevels + level] =
+                        interpolate(columns[1], corners, weights, numLevels, level);
+                dewps[sample * numLevels + level] =
+                        interpolate(columns[2], corners, weights, numLevels, level);
+            }
+            presSfcs[sample] = interpolate(columns[3], corners, weights, 1, 0);
+        }
+
+        double[] samplePressures = new double[numSamples * numLevels];
+        double[] dewpDeps = new double[numSamples * numLevels];
+        for (int index = 0; index < samplePressures.length; index++) {
+            samplePressures[index] = pressures[index % numLevels];
+            dewpDeps[index] = temps[index] - dewps[index];
+        }
+        double[] thetaEs = new double[numSamples * numLevels];
+        AtmosThermoMath.calcThetaE(temps, dewps, samplePressures, thetaEs,
+                thetaEs.length);
+
+        readTimer.recordSince(startNanos);
+        LOG.debug("Read cross-section of {} samples from {} grid points", numSamples,
+                numCorners);
+
+        double[] endpoints =
+                {lons[0], lats[0], lons[numSamples - 1], lats[numSamples - 1]};
+        return new CrossSection(endpoints, trimmed, distances, pressures, temps, dewpDeps,
+                thetaEs, presSfcs, file);
+    }
+
+    /**
+     * Sample the great-circle path between two points at evenly spaced points.
+     *
+     * @param lon1 longitude of start of path in degrees
+     * @param lat1 latitude of start of path in degrees
+     * @param lon2 longitude of end of path in degrees
+     * @param lat2 latitude of end of path in degrees
+     * @param numSamples number of points to sample, at least 2
+     *
+     * @return double[3][numSamples]; [0] = longitudes in degrees (-180 to 180), [1] =
+     *         latitudes in degrees, [2] = distances from start of path in km
+     */
+    static double[][] getGreatCirclePath(double lon1, double lat1, double lon2,
+            double lat2, int numSamples) {
+        if (numSamples < 2) {
+            throw new IllegalArgumentException("Cross-section needs at least 2 samples");
+        }
+
+        double[] start = toUnitVector(lon1, lat1);
+        double[] end = toUnitVector(lon2, lat2);
+        double[] cross = {start[1] * end[2] - start[2] * end[1],
+            start[2] * end[0] - start[0] * end[2], start[0] * end[1] - start[1] * end[0]};
+        double dot = start[0] * end[0] + start[1] * end[1] + start[2] * end[2];
+        double angle = Math.atan2(Math.sqrt(cross[0] * cross[0] + cross[1] * cross[1]
+                + cross[2] * cross[2]), dot);
+
+        double[][] result = new double[3][numSamples];
+        for (int sample = 0; sample < numSamples; sample++) {
+            double frac = (double) sample / (numSamples - 1);
+            double weightStart;
+            double weightEnd;
+            if (angle < 1e-12) {
+                weightStart = 1 - frac;
+                weightEnd = frac;
+            } else {
+                weightStart = Math.sin((1 - frac) * angle) / Math.sin(angle);
+                weightEnd = Math.sin(frac * angle) / Math.sin(angle);
+            }
+            double x = weightStart * start[0] + weightEnd * end[0];
+            double y = weightStart * start[1] + weightEnd * end[1];
+            double z = weightStart * start[2] + weightEnd * end[2];
+            result[0][sample] = Math.toDegrees(Math.atan2(y, x));
+            result[1][sample] = Math.toDegrees(Math.atan2(z, Math.sqrt(x * x + y * y)));
+            result[2][sample] = frac * angle * EARTH_RADIUS;
+        }
+        return result;
+    }
+
+    /**
+     * Convert a longitude-latitude point to a unit vector from the centre of the Earth.
+     *
+     * @param lon longitude in degrees
+     * @param lat latitude in degrees
+     *
+     * @return double[3]; x, y, z
+     */
+    private static double[] toUnitVector(double lon, double lat) {
+        double lonRad = Math.toRadians(lon);
+        double latRad = Math.toRadians(lat);
+        return new double[] {Math.cos(latRad) * Math.cos(lonRad),
+            Math.cos(latRad) * Math.sin(lonRad), Math.sin(latRad)};
+    }
+
+    /**
+     * Get the fractional XY-coordinates in the data grid of a longitude-latitude point.
+     * The nearest grid point is found first, then the offset from it is solved for
+     * using the grid points next to it, treating the grid as flat over that distance.
+     *
+     * @param file file whose grid is used
+     * @param lon longitude in degrees
+     * @param lat latitude in degrees
+     * @param gridWidth number of grid points along x-axis
+     * @param gridHeight number of grid points along y-axis
+     *
+     * @return double[2]; [0] = x-coordinate, [1] = y-coordinate; or null if point is
+     *         outside the grid points, so can't be interpolated
+     */
+    private static double[] getFractionalXY(ModelDataFile file, double lon, double lat,
+            int gridWidth, int gridHeight) {
+        int[] nearest = file.getXYCoordsInGrid(lon, lat);
+        if (nearest == null) {
+            return null;
+        }
+        int coordX = nearest[0];
+        int coordY = nearest[1];
+        int stepX = coordX + 1 < gridWidth ? 1 : -1;
+        int stepY = coordY + 1 < gridHeight ? 1 : -1;
+
+        double[] origin = file.getLonLatFromXYCoords(coordX, coordY);
+        double[] alongX = file.getLonLatFromXYCoords(coordX + stepX, coordY);
+        double[] alongY = file.getLonLatFromXYCoords(coordX, coordY + stepY);
+
+        double cosLat = Math.cos(Math.toRadians(origin[1]));
+        double xEast = wrapLon(alongX[0] - origin[0]) * cosLat * stepX;
+        double xNorth = (alongX[1] - origin[1]) * stepX;
+        double yEast = wrapLon(alongY[0] - origin[0]) * cosLat * stepY;
+        double yNorth = (alongY[1] - origin[1]) * stepY;
+        double east = wrapLon(lon - origin[0]) * cosLat;
+        double north = lat - origin[1];
+
+        double det = xEast * yNorth - yEast * xNorth;
+        if (Math.abs(det) < 1e-12) {
+            return new double[] {coordX, coordY};
+        }
+        double fracX = coordX + (east * yNorth - yEast * north) / det;
+        double fracY = coordY + (xEast * north - east * xNorth) / det;
+
+        // Nearest grid point may be on the edge with the point itself just beyond it
+        if (fracX < -GRID_EDGE_TOLERANCE || fracX > gridWidth - 1 + GRID_EDGE_TOLERANCE
+                || fracY < -GRID_EDGE_TOLERANCE
+                || fracY > gridHeight - 1 + GRID_EDGE_TOLERANCE) {
+            return null;
+        }
+        return new double[] {Math.max(0, Math.min(gridWidth - 1, fracX)),
+            Math.max(0, Math.min(gridHeight - 1, fracY))};
+    }
+
+    /**
+     * Wrap a difference of longitudes into -180 to 180 degrees.
+     *
+     * @param lonDiff difference of longitudes in degrees
+     *
+     * @return difference of longitudes in degrees (-180 to 180)
+     */
+    private static double wrapLon(double lonDiff) {
+        return lonDiff - 360.0 * Math.floor((lonDiff + 180.0) / 360.0);
+    }
+
+    /**
+     * Interpolate one level from the four grid points around a sample. Returns NaN if
+     * any of the grid points is missing a value.
+     *
+     * @param values values of every grid point read, indexed grid point * stride + level
+     * @param corners index of each of the four grid points in values
+     * @param weights weight of each of the four grid points
+     * @param stride number of values per grid point
+     * @param level level to interpolate
+     *
+     * @return interpolated value
+     */
+    private static double interpolate(double[] values, int[] corners, double[] weights,
+            int stride, int level) {
+        double result = 0;
+        for (int corner = 0; corner < 4; corner++) {
+            result += weights[corner] * values[corners[corner] * stride + level];
+        }
+        return result;
+    }
+
+    /**
+     * Returns longitudes and latitudes of ends of path, or of the part of it inside the
+     * data grid if it was trimmed.
+     *
+     * @return double[4]; longitude and latitude of start, then of end, in degrees
+     */
+    public double[] getEndpoints() {
+        return endpoints.clone();
+    }
+
+    /**
+     * Check whether the path asked for ran off the data grid, so was trimmed to the part
+     * inside it. {@link #getEndpoints()} returns the ends of the trimmed path.
+     *
+     * @return true if trimmed
+     */
+    public boolean isTrimmed() {
+        return trimmed;
+    }
+
+    /**
+     * Returns number of points sampled along path.
+     *
+     * @return number of samples
+     */
+    public int getNumSamples() {
+        return distances.length;
+    }
+
+    /**
+     * Returns number of isobaric levels at each sample.
+     *
+     * @return number of levels
+     */
+    public int getNumLevels() {
+        return pressures.length;
+    }
+
+    /**
+     * Returns distance of a sample from start of path.
+     *
+     * @param sample index of sample
+     *
+     * @return distance in km
+     */
+    public double getDistance(int sample) {
+        return distances[sample];
+    }
+
+    /**
+     * Returns pressure of an isobaric level.
+     *
+     * @param level index of level, from lowest to highest pressure
+     *
+     * @return pressure in Pa
+     */
+    public double getPressure(int level) {
+        return pressures[level];
+    }
+
+    /**
+     * Returns temperature at a sample and level.
+     *
+     * @param sample index of sample
+     * @param level index of level
+     *
+     * @return temperature in K, NaN if missing
+     */
+    public double getTemp(int sample, int level) {
+        return temps[sample * pressures.length + level];
+    }
+
+    /**
+     * Returns dew point depression at a sample and level.
+     *
+     * @param sample index of sample
+     * @param level index of level
+     *
+     * @return temperature minus dew point in K, NaN if missing
+     */
+    public double getDewpDep(int sample, int level) {
+        return dewpDeps[sample * pressures.length + level];
+    }
+
+    /**
+     * Returns equivalent potential temperature at a sample and level.
+     *
+     * @param sample index of sample
+     * @param level index of level
+     *
+     * @return theta-e in K, NaN if missing
+     */
+    public double getThetaE(int sample, int level) {
+        return thetaEs[sample * pressures.length + level];
+    }
+
+    /**
+     * Returns surface pressure at a sample.
+     *
+     * @param sample index of sample
+     *
+     * @return surface pressure in Pa, NaN if missing
+     */
+    public double getPresSfc(int sample) {
+        return presSfcs[sample];
+    }
+
+    /**
+     * Returns name of model cross-section was read from.
+     *
+     * @return model name
+     */
+    public String getModelName() {
+        return modelName;
+    }
+
+    /**
+     * Returns analysis time of model run.
+     *
+     * @return analysis time
+     */
+    public LocalDateTime getAnalysisTime() {
+        return analysisTime;
+    }
+
+    /**
+     * Returns valid time of cross-section.
+     *
+     * @return valid time
+     */
+    public LocalDateTime getValidTime() {
+        return validTime;
+    }
+}
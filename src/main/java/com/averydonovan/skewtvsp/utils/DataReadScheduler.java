@@ -0,0 +1,414 @@
+/*
+ * Copyright (c) 2024, Avery Donovan
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.averydonovan.skewtvsp.utils;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Schedules reads from data files according to who is waiting for them. Interactive
+ * reads (a user clicked something) are always started before prefetch reads, which are
+ * started before batch reads (exports and other bulk jobs). Each priority class has its
+ * own bounded queue, and one worker thread is always kept free of non-interactive work
+ * so that a click never has to wait for a long batch job to drain.
+ *
+ * <p>
+ * To keep lower priority work from being starved entirely, a request that has waited
+ * longer than its class's maximum wait is started ahead of higher priority requests.
+ * Time spent waiting in the queue is recorded for each class and can be retrieved with
+ * {@link #getStats() getStats}.
+ *
+ * <p>
+ * Batch jobs should submit their work in small pieces (e.g. one point at a time) rather
+ * than as one large request, as a request that has been started cannot be preempted.
+ *
+ * @author Avery Donovan
+ */
+public class DataReadScheduler {
+
+    private static final Logger LOG =
+            LoggerFactory.getLogger(DataReadScheduler.class.getName());
+
+    /**
+     * Priority classes, from highest to lowest.
+     */
+    public enum Priority {
+        /**
+         * Reads a user is actively waiting on.
+         */
+        INTERACTIVE(64, 0),
+        /**
+         * Speculative reads of data a user may want soon.
+         */
+        PREFETCH(256, 2000),
+        /**
+         * Bulk reads for exports and other long-running jobs.
+         */
+        BATCH(1024, 10000);
+
+        private final int queueCapacity;
+        private final long maxWaitMillis;
+
+        Priority(int queueCapacity, long maxWaitMillis) {
+            this.queueCapacity = queueCapacity;
+            this.maxWaitMillis = maxWaitMillis;
+        }
+    }
+
+    /*
+     * Enough to read the same point from RAP, NAM, HRRR and GFS files at once when
+     * comparing models.
+     */
+    private static final int DEFAULT_THREADS = 4;
+
+    private static DataReadScheduler sharedScheduler = null;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition workAvailable = lock.newCondition();
+    private final Condition spaceAvailable = lock.newCondition();
+
+    private final ArrayDeque<ReadRequest<?>>[] queues;
+    private final int numThreads;
+    private int numBusyNonInteractive = 0;
+    private boolean isShutdown = false;
+
+    /*
+     * Statistics, per priority class.
+     */
+    private final long[] statSubmitted;
+    private final long[] statCompleted;
+    private final long[] statRejected;
+    private final long[] statPromoted;
+    private final long[] statWaitNanosTotal;
+    private final long[] statWaitNanosMax;
+
+    /**
+     * Returns scheduler shared by everything in the application that reads data files.
+     * Number of worker threads can be set with the skewtvsp.io.threads system property.
+     *
+     * @return shared scheduler
+     */
+    public static synchronized DataReadScheduler getShared() {
+        if (sharedScheduler == null) {
+            sharedScheduler = new DataReadScheduler(
+                    Integer.getInteger("skewtvsp.io.threads", DEFAULT_THREADS));
+        }
+        return sharedScheduler;
+    }
+
+    /**
+     * Create new scheduler and start its worker threads.
+     *
+     * @param numThreads number of worker threads; at least 2 so that one can be kept
+     * free for interactive reads
+     */
+    @SuppressWarnings("unchecked")
+    public DataReadScheduler(int numThreads) {
+        this.numThreads = Math.max(2, numThreads);
+
+        int numClasses = Priority.values().length;
+        queues = new ArrayDeque[numClasses];
+        for (int index = 0; index < numClasses; index++) {
+            queues[index] = new ArrayDeque<>();
+        }
+
+        statSubmitted = new long[numClasses];
+        statCompleted = new long[numClasses];
+        statRejected = new long[numClasses];
+        statPromoted = new long[numClasses];
+        statWaitNanosTotal = new long[numClasses];
+        statWaitNanosMax = new long[numClasses];
+
+        for (int index = 0; index < this.numThreads; index++) {
+            Thread worker = new Thread(this::doWork, "skewtvsp-io-" + index);
+            worker.setDaemon(true);
+            worker.start();
+        }
+    }
+
+    /**
+     * Submit a read. Fails immediately if the queue for its priority class is full.
+     *
+     * @param <T> type of result
+     * @param priority priority class of read
+     * @param read read to perform
+     *
+     * @return result of read, once performed
+     *
+     * @throws RejectedExecutionException queue for priority class is full or scheduler
+     * has been shut down
+     */
+    public <T> CompletableFuture<T> submit(Priority priority, Callable<T> read) {
+        ReadRequest<T> request = new ReadRequest<>(priority, read);
+
+        lock.lock();
+        try {
+            if (isShutdown) {
+                throw new RejectedExecutionException("Scheduler has been shut down");
+            }
+            ArrayDeque<ReadRequest<?>> queue = queues[priority.ordinal()];
+            if (queue.size() >= priority.queueCapacity) {
+                statRejected[priority.ordinal()]++;
+                throw new RejectedExecutionException(priority + " read queue is full");
+            }
+            enqueue(request);
+        } finally {
+            lock.unlock();
+        }
+
+        return request.future;
+    }
+
+    /**
+     * Submit a read, waiting for room in the queue for its priority class if it is full.
+     * Intended for batch jobs, which are better off slowing down than failing.
+     *
+     * @param <T> type of result
+     * @param priority priority class of read
+     * @param read read to perform
+     *
+     * @return result of read, once performed
+     *
+     * @throws InterruptedException interrupted while waiting for room in queue
+     */
+    public <T> CompletableFuture<T> submitAndWait(Priority priority, Callable<T> read)
+            throws InterruptedException {
+        ReadRequest<T> request = new ReadRequest<>(priority, read);
+
+        lock.lock();
+        try {
+            ArrayDeque<ReadRequest<?>> queue = queues[priority.ordinal()];
+            while (queue.size() >= priority.queueCapacity && !isShutdown) {
+                spaceAvailable.await();
+            }
+            if (isShutdown) {
+                throw new RejectedExecutionException("Scheduler has been shut down");
+            }
+            enqueue(request);
+        } finally {
+            lock.unlock();
+        }
+
+        return request.future;
+    }
+
+    /**
+     * Stop worker threads once they finish their current reads. Queued reads are
+     * cancelled.
+     */
+    public void shutdown() {
+        lock.lock();
+        try {
+            isShutdown = true;
+            for (ArrayDeque<ReadRequest<?>> queue : queues) {
+                for (ReadRequest<?> request : queue) {
+                    request.future.cancel(false);
+                }
+                queue.clear();
+            }
+            workAvailable.signalAll();
+            spaceAvailable.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns summary of queue statistics for each priority class, suitable for
+     * logging.
+     *
+     * @return queue statistics
+     */
+    public String getStats() {
+        StringBuilder result = new StringBuilder();
+
+        lock.lock();
+        try {
+            for (Priority priority : Priority.values()) {
+                int index = priority.ordinal();
+                double avgWaitMillis = (statCompleted[index] == 0) ? 0
+                        : statWaitNanosTotal[index] / 1e6 / statCompleted[index];
+                result.append(String.format(
+                        "%s: queued=%d submitted=%d completed=%d rejected=%d promoted=%d"
+                                + " avgWait=%.1fms maxWait=%.1fms%n",
+                        priority, queues[index].size(), statSubmitted[index],
+                        statCompleted[index], statRejected[index], statPromoted[index],
+                        avgWaitMillis, statWaitNanosMax[index] / 1e6));
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        return result.toString();
+    }
+
+    /**
+     * Returns total time reads of a priority class have spent waiting in the queue.
+     *
+     * @param priority priority class
+     *
+     * @return total wait in ns
+     */
+    public long getTotalWaitNanos(Priority priority) {
+        lock.lock();
+        try {
+            return statWaitNanosTotal[priority.ordinal()];
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Add request to its queue. Lock must be held.
+     */
+    private void enqueue(ReadRequest<?> request) {
+        queues[request.priority.ordinal()].addLast(request);
+        statSubmitted[request.priority.ordinal()]++;
+        workAvailable.signal();
+    }
+
+    /**
+     * Pick next request to run, or null if nothing can run right now. Lock must be held.
+     */
+    private ReadRequest<?> pollNext() {
+        long now = System.nanoTime();
+        boolean canRunNonInteractive = numBusyNonInteractive < numThreads - 1;
+
+        // Anything that has waited too long goes first, lowest priority first
+        if (canRunNonInteractive) {
+            for (int index = queues.length - 1; index > 0; index--) {
+                ReadRequest<?> head = queues[index].peekFirst();
+                if (head != null && now - head.submitNanos > TimeUnit.MILLISECONDS
+                        .toNanos(head.priority.maxWaitMillis)) {
+                    statPromoted[index]++;
+                    return queues[index].pollFirst();
+                }
+            }
+        }
+
+        for (int index = 0; index < queues.length; index++) {
+            if (index > 0 && !canRunNonInteractive) {
+                break;
+            }
+            ReadRequest<?> head = queues[index].pollFirst();
+            if (head != null) {
+                return head;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Worker thread loop.
+     */
+    private void doWork() {
+        while (true) {
+            ReadRequest<?> request = null;
+
+            lock.lock();
+            try {
+                while (!isShutdown && (request = pollNext()) == null) {
+                    // Wake up periodically so waiting requests can be promoted
+                    workAvailable.await(500, TimeUnit.MILLISECONDS);
+                }
+                if (request == null) {
+                    return;
+                }
+                if (request.priority != Priority.INTERACTIVE) {
+                    numBusyNonInteractive++;
+                }
+                spaceAvailable.signalAll();
+            } catch (InterruptedException ex) {
+                return;
+            } finally {
+                lock.unlock();
+            }
+
+            long waitNanos = System.nanoTime() - request.submitNanos;
+            if (waitNanos > TimeUnit.MILLISECONDS.toNanos(100)) {
+                LOG.debug("{} read waited {} ms in queue", request.priority,
+                        waitNanos / 1000000);
+            }
+
+            try {
+                request.run();
+            } finally {
+                lock.lock();
+                try {
+                    int index = request.priority.ordinal();
+                    if (request.priority != Priority.INTERACTIVE) {
+                        numBusyNonInteractive--;
+                    }
+                    statCompleted[index]++;
+                    statWaitNanosTotal[index] += waitNanos;
+                    statWaitNanosMax[index] =
+                            Math.max(statWaitNanosMax[index], waitNanos);
+                    // A worker may have been holding off on non-interactive work
+                    workAvailable.signal();
+                } finally {
+                    lock.unlock();
+                }
+            }
+        }
+    }
+
+    /**
+     * A queued read and the future its result is delivered through.
+     */
+    private static final class ReadRequest<T> {
+
+        private final Priority priority;
+        private final Callable<T> read;
+        private final CompletableFuture<T> future = new CompletableFuture<>();
+        private final long submitNanos = System.nanoTime();
+
+        private ReadRequest(Priority priority, Callable<T> read) {
+            this.priority = priority;
+            this.read = read;
+        }
+
+        private void run() {
+            if (future.isDone()) {
+                // Cancelled while waiting in queue
+                return;
+            }
+            try {
+                future.complete(read.call());
+            } catch (Throwable ex) {
+                // Errors too, or whoever is waiting on this read would wait forever
+                future.completeExceptionally(ex);
+            }
+        }
+    }
+}
@@ -0,0 +1,428 @@
+/*
+ * Copyright (c) 2024, Avery Donovan
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.averydonovan.skewtvsp.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Spread of the soundings from every member of an ensemble run, such as the 31 members of
+ * a GEFS forecast hour, at a single point. Temperatures and dew points are reduced to
+ * percentiles at each isobaric level, and surface values and weather indices to
+ * percentiles of their own. The median of everything is also kept as a
+ * {@link Sounding}, so it can be plotted and labelled like any other sounding.
+ *
+ * <p>
+ * Members are all read from the same grid point, as the members of an ensemble share
+ * one grid. Each member's file is read as an interactive read on the shared
+ * {@link DataReadScheduler}, so all the members are read at the same time. Instances
+ * are not modified once created and can be shared between threads.
+ *
+ * @author Avery Donovan
+ */
+public class EnsembleSounding {
+
+    private static final Logger LOG =
+            LoggerFactory.getLogger(EnsembleSounding.class.getName());
+
+    /**
+     * Percentiles kept for each level and index, from lowest to highest.
+     */
+    public static final double[] PERCENTILES = {10, 25, 50, 75, 90};
+
+    /**
+     * Position of the median in {@link #PERCENTILES}.
+     */
+    public static final int MEDIAN = 2;
+
+    /**
+     * Matches the member part of GEFS file names, gec00 for the control run and gep01 to
+     * gep30 for the perturbed runs.
+     */
+    private static final Pattern MEMBER_PATTERN = Pattern.compile("ge[cp](\\d{2})");
+
+    private static final Metrics.Histogram readTimer = Metrics.timer("ensemble.read");
+    private static final Metrics.Histogram reduceTimer =
+            Metrics.timer("ensemble.reduce");
+
+    /**
+     * Weather indices and surface values for which percentiles are kept.
+     */
+    public enum Index {
+        TEMP_2M, DEWP_2M, PRES_SFC, MSL, CAPE, CIN, LFTX, K_INDEX, TOTAL_TOTALS, SWEAT
+    }
+
+    private final int numMembers;
+    private final Sounding median;
+    private final double[] pressures;
+    private final double[][] tempPercentiles;
+    private final double[][] dewpPercentiles;
+    private final double[][] indexPercentiles;
+
+    /**
+     * Reduce the soundings of every member to percentiles. The isobaric levels of the
+     * first member are used; a level missing from another member is left out for that
+     * member only. Levels below the median surface pressure are dropped and the surface
+     * is added as the last level.
+     *
+     * @param members sounding from each member, all at the same grid point
+     */
+    public EnsembleSounding(Sounding[] members) {
+        long startNanos = System.nanoTime();
+        numMembers = members.length;
+        double[] scratch = new double[numMembers];
+        int numPercentiles = PERCENTILES.length;
+
+        indexPercentiles = new double[Index.values().length][];
+        for (Index index : Index.values()) {
+            for (int member = 0; member < numMembers; member++) {
+                scratch[member] = getIndexValue(members[member], index);
+            }
+            indexPercentiles[index.ordinal()] = percentiles(scratch, numMembers);
+        }
+        double presSfc = indexPercentiles[Index.PRES_SFC.ordinal()][MEDIAN];
+
+        /*
+         * Isobaric levels of first member above the median surface, without its own
+         * surface level.
+         */
+        Sounding first = members[0];
+        double[] levels = new double[first.getLevelCount() + 1];
+        int numLevels = 0;
+        for (int level = 0; level < first.getLevelCount(); level++) {
+            double pres = first.getPressures()[level];
+            if (pres < presSfc && pres != first.getPresSfc()) {
+                levels[numLevels++] = pres;
+            }
+        }
+        levels[numLevels++] = presSfc;
+        pressures = Arrays.copyOf(levels, numLevels);
+
+        tempPercentiles = new double[numPercentiles][numLevels];
+        dewpPercentiles = new double[numPercentiles][numLevels];
+        for (int level = 0; level < numLevels; level++) {
+            boolean isSurface = level == numLevels - 1;
+            reduceLevel(members, level, isSurface, scratch, true);
+            reduceLevel(members, level, isSurface, scratch, false);
+        }
+
+        median = createMedian(first);
+        reduceTimer.recordSince(startNanos);
+    }
+
+    /**
+     * Find the percentiles of temperature or dew point over all members at one level.
+     */
+    private void reduceLevel(Sounding[] members, int level, boolean isSurface,
+            double[] scratch, boolean temps) {
+        double[][] result = temps ? tempPercentiles : dewpPercentiles;
+        double[] levelPercentiles;
+
+        if (isSurface) {
+            levelPercentiles = indexPercentiles[(temps ? Index.TEMP_2M
+                    : Index.DEWP_2M).ordinal()];
+        } else {
+            int numValues = 0;
+            for (Sounding member : members) {
+                int position = Arrays.binarySearch(member.getPressures(), 0,
+                        member.getLevelCount(), pressures[level]);
+                if (position >= 0) {
+                    scratch[numValues++] = temps ? member.getTemps()[position]
+                            : member.getDewps()[position];
+                }
+            }
+            levelPercentiles = percentiles(scratch, numValues);
+        }
+
+        for (int percentile = 0; percentile < PERCENTILES.length; percentile++) {
+            result[percentile][level] = levelPercentiles[percentile];
+        }
+    }
+
+    /**
+     * Build a sounding out of the median of every level and index.
+     */
+    private Sounding createMedian(Sounding first) {
+        Sounding result = new Sounding(pressures.length);
+        int numLevels = pressures.length;
+        System.arraycopy(pressures, 0, result.pressures, 0, numLevels);
+        System.arraycopy(tempPercentiles[MEDIAN], 0, result.temps, 0, numLevels);
+        System.arraycopy(dewpPercentiles[MEDIAN], 0, result.dewps, 0, numLevels);
+        result.levelCount = numLevels;
+
+        result.coordX = first.coordX;
+        result.coordY = first.coordY;
+        result.lon = first.lon;
+        result.lat = first.lat;
+        result.temp2m = getIndexPercentile(Index.TEMP_2M, MEDIAN);
+        result.dewp2m = getIndexPercentile(Index.DEWP_2M, MEDIAN);
+        result.presSfc = getIndexPercentile(Index.PRES_SFC, MEDIAN);
+        result.msl = getIndexPercentile(Index.MSL, MEDIAN);
+        result.cape = getIndexPercentile(Index.CAPE, MEDIAN);
+        result.cin = getIndexPercentile(Index.CIN, MEDIAN);
+        result.lftx = getIndexPercentile(Index.LFTX, MEDIAN);
+        result.kIndex = getIndexPercentile(Index.K_INDEX, MEDIAN);
+        result.totalTotals = getIndexPercentile(Index.TOTAL_TOTALS, MEDIAN);
+        result.sweat = getIndexPercentile(Index.SWEAT, MEDIAN);
+        AtmosThermoMath.calcLCL(result.temp2m, result.dewp2m, result.presSfc,
+                result.lcl);
+
+        result.analysisTime = first.analysisTime;
+        result.validTime = first.validTime;
+        result.modelName = first.modelName + ", median of " + numMembers + " members";
+        return result.copy();
+    }
+
+    /**
+     * Returns value of a weather index or surface value of a sounding.
+     */
+    private static double getIndexValue(Sounding sounding, Index index) {
+        switch (index) {
+            case TEMP_2M:
+                return sounding.getTemp2m();
+            case DEWP_2M:
+                return sounding.getDewp2m();
+            case PRES_SFC:
+                return sounding.getPresSfc();
+            case MSL:
+                return sounding.getMSL();
+            case CAPE:
+                return sounding.getCAPE();
+            case CIN:
+                return sounding.getCIN();
+            case LFTX:
+                return sounding.getLFTX();
+            case K_INDEX:
+                return sounding.getKIndex();
+            case TOTAL_TOTALS:
+                return sounding.getTotalTotals();
+            default:
+                return sounding.getSWEAT();
+        }
+    }
+
+    /**
+     * Find each of {@link #PERCENTILES} of some values, interpolating linearly between
+     * the values either side. Missing (NaN) values are ignored. The values are sorted in
+     * place.
+     *
+     * @param values values, of which only the first numValues are used
+     * @param numValues number of values
+     *
+     * @return value at each percentile, NaN if there are no values
+     */
+    static double[] percentiles(double[] values, int numValues) {
+        int numValid = 0;
+        for (int index = 0; index < numValues; index++) {
+            if (!Double.isNaN(values[index])) {
+                values[numValid++] = values[index];
+            }
+        }
+        Arrays.sort(values, 0, numValid);
+
+        double[] result = new double[PERCENTILES.length];
+        for (int percentile = 0; percentile < PERCENTILES.length; percentile++) {
+            if (numValid == 0) {
+                result[percentile] = Double.NaN;
+                continue;
+            }
+            double rank = PERCENTILES[percentile] / 100 * (numValid - 1);
+            int below = (int) Math.floor(rank);
+            int above = Math.min(below + 1, numValid - 1);
+            double fraction = rank - below;
+            result[percentile] =
+                    values[below] + fraction * (values[above] - values[below]);
+        }
+        return result;
+    }
+
+    /**
+     * Find the files of the other members of the ensemble run that a GEFS member file
+     * belongs to. These are the files in the same directory whose names differ from it
+     * only in the member number.
+     *
+     * @param memberFileName path and filename of any one member file
+     *
+     * @return path and filename of every member, control run first, or just the given
+     *         file if its name does not look like a GEFS member file
+     */
+    public static List<String> findMemberFiles(String memberFileName) {
+        File memberFile = new File(memberFileName);
+        String name = memberFile.getName();
+        Matcher matcher = MEMBER_PATTERN.matcher(name);
+        if (!matcher.find()) {
+            return List.of(memberFileName);
+        }
+
+        String prefix = name.substring(0, matcher.start());
+        String suffix = name.substring(matcher.end());
+        Pattern siblingPattern = Pattern.compile(Pattern.quote(prefix)
+                + MEMBER_PATTERN.pattern() + Pattern.quote(suffix));
+
+        File directory = memberFile.getAbsoluteFile().getParentFile();
+        String[] siblings = directory.list((dir, sibling) -> siblingPattern
+                .matcher(sibling).matches());
+        if (siblings == null) {
+            return List.of(memberFileName);
+        }
+
+        // Sorts gec00 ahead of gep01 and the rest
+        Arrays.sort(siblings);
+        List<String> result = new ArrayList<>();
+        for (String sibling : siblings) {
+            result.add(new File(directory, sibling).getPath());
+        }
+        LOG.debug("Found {} ensemble members for {}", result.size(), name);
+        return result;
+    }
+
+    /**
+     * Read the sounding nearest a longitude and latitude from every member of an
+     * ensemble at once and reduce them to percentiles. The point is looked up in the
+     * grid of the first member only, as the members share one grid.
+     *
+     * @param members data file of each member
+     * @param lon longitude in degrees (-180 to 180)
+     * @param lat latitude in degrees (-90 to 90)
+     *
+     * @return spread of members at the point, or null if the grid does not cover it
+     *
+     * @throws IOException a read failed
+     * @throws InterruptedException interrupted while waiting for reads
+     */
+    public static EnsembleSounding read(List<ModelDataFile> members, double lon,
+            double lat) throws IOException, InterruptedException {
+        long startNanos = System.nanoTime();
+
+        int[] coords = members.get(0).getXYCoordsInGrid(lon, lat);
+        if (coords == null) {
+            LOG.debug("Point {}, {} is outside ensemble grid", lon, lat);
+            return null;
+        }
+
+        /*
+         * Only the first member's read is interactive, so that a large ensemble does not
+         * take every worker away from the plot a user is waiting on elsewhere. The rest
+         * are prefetches, which still run alongside it on the other workers.
+         */
+        List<CompletableFuture<Sounding>> futures = new ArrayList<>();
+        for (ModelDataFile member : members) {
+            DataReadScheduler.Priority priority = futures.isEmpty()
+                    ? DataReadScheduler.Priority.INTERACTIVE
+                    : DataReadScheduler.Priority.PREFETCH;
+            futures.add(DataReadScheduler.getShared().submitAndWait(priority,
+                    () -> member.getSounding(coords[0], coords[1])));
+        }
+
+        Sounding[] soundings = new Sounding[futures.size()];
+        for (int index = 0; index < soundings.length; index++) {
+            try {
+                soundings[index] = futures.get(index).join();
+            } catch (CompletionException ex) {
+                if (ex.getCause() instanceof IOException) {
+                    throw (IOException) ex.getCause();
+                }
+                throw ex;
+            }
+        }
+        readTimer.recordSince(startNanos);
+
+        return new EnsembleSounding(soundings);
+    }
+
+    /**
+     * Returns number of members reduced.
+     *
+     * @return number of members
+     */
+    public int getNumMembers() {
+        return numMembers;
+    }
+
+    /**
+     * Returns sounding made of the median of every level and index, with the model
+     * name noting how many members it is the median of.
+     *
+     * @return median sounding
+     */
+    public Sounding getMedian() {
+        return median;
+    }
+
+    /**
+     * Returns pressures of levels, from lowest to highest, with the median surface
+     * pressure last.
+     *
+     * @return pressures in Pa
+     */
+    public double[] getPressures() {
+        return pressures;
+    }
+
+    /**
+     * Returns temperature at each level for one of {@link #PERCENTILES}.
+     *
+     * @param percentile position in {@link #PERCENTILES}
+     *
+     * @return temperatures in K, NaN where no member has a value
+     */
+    public double[] getTemps(int percentile) {
+        return tempPercentiles[percentile];
+    }
+
+    /**
+     * Returns dew point at each level for one of {@link #PERCENTILES}.
+     *
+     * @param percentile position in {@link #PERCENTILES}
+     *
+     * @return dew points in K, NaN where no member has a value
+     */
+    public double[] getDewps(int percentile) {
+        return dewpPercentiles[percentile];
+    }
+
+    /**
+     * Returns one of {@link #PERCENTILES} of a weather index or surface value over all
+     * members.
+     *
+     * @param index weather index or surface value
+     * @param percentile position in {@link #PERCENTILES}
+     *
+     * @return value in the same units as the matching {@link Sounding} getter
+     */
+    public double getIndexPercentile(Index index, int percentile) {
+        return indexPercentiles[index.ordinal()][percentile];
+    }
+}
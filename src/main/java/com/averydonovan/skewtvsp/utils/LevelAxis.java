@@ -0,0 +1,220 @@
+/*
+ * Copyright (c) 2024, Avery Donovan
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.averydonovan.skewtvsp.utils;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.SortedMap;
+
+/**
+ * Isobaric levels available in a data file, kept as sorted primitive arrays so that
+ * looking up levels and interpolating between them does not allocate. Pressures are
+ * sorted from lowest to highest, and each has the index of its level in the data grid.
+ * Built once when a data file's levels are first needed and not modified afterwards.
+ *
+ * @author Avery Donovan
+ */
+public class LevelAxis {
+
+    /**
+     * Value a data file read returns when a value is missing.
+     */
+    private static final double MISSING_VALUE = -99999;
+
+    /**
+     * Pressure of each level in Pa, from lowest to highest.
+     */
+    private final double[] pressures;
+    /**
+     * Natural log of each pressure, for interpolation.
+     */
+    private final double[] logPressures;
+    /**
+     * Index in data grid of each level, in the same order as pressures.
+     */
+    private final int[] indices;
+    /**
+     * Pressure of each index in data grid, or -1 if index is not a usable level.
+     */
+    private final double[] levelsByIndex;
+
+    /**
+     * Create new level axis.
+     *
+     * @param levels map of isobaric level in Pa to index of level in data grid, sorted
+     *        from lowest to highest pressure
+     * @param maxLevel number of levels in data grid
+     */
+    LevelAxis(SortedMap<Double, Integer> levels, int maxLevel) {
+        int numLevels = levels.size();
+
+        // Already sorted, so levels can be copied in order
+        pressures = new double[numLevels];
+        indices = new int[numLevels];
+        int count = 0;
+        for (Map.Entry<Double, Integer> entry : levels.entrySet()) {
+            pressures[count] = entry.getKey();
+            indices[count] = entry.getValue();
+            count++;
+        }
+
+        logPressures = new double[numLevels];
+        for (int index = 0; index < numLevels; index++) {
+            logPressures[index] = Math.log(pressures[index]);
+        }
+
+        levelsByIndex = new double[Math.max(maxLevel, 0)];
+        Arrays.fill(levelsByIndex, -1);
+        for (int index = 0; index < numLevels; index++) {
+            if (indices[index] >= 0 && indices[index] < levelsByIndex.length) {
+                levelsByIndex[indices[index]] = pressures[index];
+            }
+        }
+    }
+
+    /**
+     * Returns number of usable levels.
+     *
+     * @return number of levels
+     */
+    public int size() {
+        return pressures.length;
+    }
+
+    /**
+     * Returns pressure of a level.
+     *
+     * @param position position of level on axis, 0 being the lowest pressure
+     *
+     * @return pressure in Pa
+     */
+    public double getPressure(int position) {
+        return pressures[position];
+    }
+
+    /**
+     * Returns index in data grid of a level.
+     *
+     * @param position position of level on axis, 0 being the lowest pressure
+     *
+     * @return index of level in data grid
+     */
+    public int getIndex(int position) {
+        return indices[position];
+    }
+
+    /**
+     * Get isobaric level corresponding to the data grid's index for that level.
+     *
+     * @param coordLvl index of level in data grid
+     *
+     * @return isobaric level in Pa, or -1 if not a usable level
+     */
+    public double getLevelFromIndex(int coordLvl) {
+        if (coordLvl >= 0 && coordLvl < levelsByIndex.length) {
+            return levelsByIndex[coordLvl];
+        } else {
+            return -1;
+        }
+    }
+
+    /**
+     * Get index in data grid of the level nearest to a given pressure.
+     *
+     * @param level desired isobaric level in Pa
+     *
+     * @return index of nearest level in data grid, or -1 if there are no levels
+     */
+    public int getIndexFromLevel(double level) {
+        int numLevels = pressures.length;
+        if (numLevels == 0) {
+            return -1;
+        }
+
+        int position = Arrays.binarySearch(pressures, level);
+        if (position >= 0) {
+            return indices[position];
+        }
+
+        // Not an exact match, so pick the closer of the levels on either side
+        int above = -position - 1;
+        if (above == 0) {
+            return indices[0];
+        } else if (above == numLevels) {
+            return indices[numLevels - 1];
+        } else if (level - pressures[above - 1] <= pressures[above] - level) {
+            return indices[above - 1];
+        } else {
+            return indices[above];
+        }
+    }
+
+    /**
+     * Interpolate a value to any pressure between the lowest and highest levels, linearly
+     * in the natural log of pressure.
+     *
+     * @param column values for every level, indexed by index of level in data grid
+     * @param pres pressure to interpolate to, in Pa
+     *
+     * @return interpolated value, or NaN if pressure is outside of the axis or a level it
+     *         is interpolated from has no value
+     */
+    public double interpolate(double[] column, double pres) {
+        int numLevels = pressures.length;
+        if (numLevels == 0 || pres < pressures[0] || pres > pressures[numLevels - 1]) {
+            return Double.NaN;
+        }
+
+        int position = Arrays.binarySearch(pressures, pres);
+        if (position >= 0) {
+            return getColumnValue(column, indices[position]);
+        }
+
+        int above = -position - 1;
+        int below = above - 1;
+        double valBelow = getColumnValue(column, indices[below]);
+        double valAbove = getColumnValue(column, indices[above]);
+        if (Double.isNaN(valBelow) || Double.isNaN(valAbove)) {
+            return Double.NaN;
+        }
+        double fraction = (Math.log(pres) - logPressures[below])
+                / (logPressures[above] - logPressures[below]);
+        return valBelow + fraction * (valAbove - valBelow);
+    }
+
+    /**
+     * Returns value of a level from a column, or NaN if the level is outside of the
+     * column or its value is missing.
+     */
+    private static double getColumnValue(double[] column, int coordLvl) {
+        if (coordLvl >= 0 && coordLvl < column.length
+                && column[coordLvl] != MISSING_VALUE) {
+            return column[coordLvl];
+        } else {
+            return Double.NaN;
+        }
+    }
+}
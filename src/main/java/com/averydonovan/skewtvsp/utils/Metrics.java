@@ -0,0 +1,419 @@
+/*
+ * Copyright (c) 2024, Avery Donovan
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.averydonovan.skewtvsp.utils;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.JMException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanOperationInfo;
+import javax.management.MBeanParameterInfo;
+import javax.management.ObjectName;
+import javax.management.ReflectionException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Lightweight registry of counters and histograms describing how the program is
+ * behaving: how long files take to open and variables take to read, how much data is
+ * decoded, how often the sounding cache is hit and how long plots take to render and
+ * encode.
+ *
+ * <p>
+ * Metrics are created on first use by name and live for the life of the program.
+ * Recording a value is lock free and allocation free, so they can be left on in
+ * production. All metrics are published through a JMX MBean named
+ * {@value #MBEAN_NAME} so they can be watched with JConsole or VisualVM, and
+ * {@link #dump() dump} gives the same values as plain text. Setting the system
+ * property {@code skewtvsp.metrics.dumpOnExit} to true logs the dump at exit.
+ *
+ * @author Avery Donovan
+ */
+public final class Metrics {
+
+    private static final Logger LOG = LoggerFactory.getLogger(Metrics.class.getName());
+
+    /**
+     * Name the metrics MBean is registered under.
+     */
+    public static final String MBEAN_NAME = "com.averydonovan.skewtvsp:type=Metrics";
+
+    private static final Map<String, Counter> COUNTERS = new ConcurrentSkipListMap<>();
+    private static final Map<String, Histogram> HISTOGRAMS = new ConcurrentSkipListMap<>();
+
+    static {
+        try {
+            ManagementFactory.getPlatformMBeanServer()
+                    .registerMBean(new MetricsMBean(), new ObjectName(MBEAN_NAME));
+        } catch (JMException | RuntimeException ex) {
+            LOG.error("{}\n{}", ex.getLocalizedMessage(), ex.toString());
+            LOG.error("Unable to register metrics MBean");
+        }
+
+        if (Boolean.getBoolean("skewtvsp.metrics.dumpOnExit")) {
+            Runtime.getRuntime().addShutdownHook(new Thread(
+                    () -> LOG.info("Metrics at exit:\n{}", dump()),
+                    "skewtvsp-metrics-dump"));
+        }
+    }
+
+    private Metrics() {
+        // Only static methods
+    }
+
+    /**
+     * Get the counter with the given name, creating it if needed.
+     *
+     * @param name dotted name of counter, such as {@code cache.hits}
+     *
+     * @return counter
+     */
+    public static Counter counter(String name) {
+        return COUNTERS.computeIfAbsent(name, key -> new Counter());
+    }
+
+    /**
+     * Get the histogram with the given name, creating it if needed. Histograms whose
+     * names end in {@code .nanos} are treated as timers and shown in milliseconds.
+     *
+     * @param name dotted name of histogram, such as {@code plot.render.nanos}
+     *
+     * @return histogram
+     */
+    public static Histogram histogram(String name) {
+        return HISTOGRAMS.computeIfAbsent(name, key -> new Histogram());
+    }
+
+    /**
+     * Get the timer with the given name, creating it if needed. A timer is a histogram
+     * of durations in nanoseconds; {@code .nanos} is appended to the name.
+     *
+     * @param name dotted name of timer, such as {@code plot.render}
+     *
+     * @return histogram of durations in nanoseconds
+     */
+    public static Histogram timer(String name) {
+        return histogram(name + ".nanos");
+    }
+
+    /**
+     * Describe all metrics as plain text, one per line, sorted by name.
+     *
+     * @return text describing all metrics
+     */
+    public static String dump() {
+        StringBuilder text = new StringBuilder();
+
+        for (Map.Entry<String, Counter> entry : COUNTERS.entrySet()) {
+            text.append(entry.getKey()).append(" = ").append(entry.getValue().get())
+                    .append('\n');
+        }
+
+        for (Map.Entry<String, Histogram> entry : HISTOGRAMS.entrySet()) {
+            String name = entry.getKey();
+            Histogram histogram = entry.getValue();
+            if (isTimer(name)) {
+                text.append(String.format("%s: count=%d mean=%.3fms p50=%.3fms"
+                        + " p99=%.3fms max=%.3fms%n",
+                        name.substring(0, name.length() - 6), histogram.getCount(),
+                        histogram.getMean() / 1e6, histogram.getPercentile(50) / 1e6,
+                        histogram.getPercentile(99) / 1e6, histogram.getMax() / 1e6));
+            } else {
+                text.append(String.format("%s: count=%d mean=%.1f p50=%d p99=%d"
+                        + " max=%d total=%d%n", name, histogram.getCount(),
+                        histogram.getMean(), histogram.getPercentile(50),
+                        histogram.getPercentile(99), histogram.getMax(),
+                        histogram.getTotal()));
+            }
+        }
+
+        return text.toString();
+    }
+
+    private static boolean isTimer(String name) {
+        return name.endsWith(".nanos");
+    }
+
+    /**
+     * Count of events or amounts, only ever increasing.
+     */
+    public static final class Counter {
+
+        private final LongAdder value = new LongAdder();
+
+        private Counter() {
+        }
+
+        /**
+         * Add one to the counter.
+         */
+        public void increment() {
+            value.increment();
+        }
+
+        /**
+         * Add an amount to the counter.
+         *
+         * @param amount amount to add
+         */
+        public void add(long amount) {
+            value.add(amount);
+        }
+
+        /**
+         * Get the current value of the counter.
+         *
+         * @return current value
+         */
+        public long get() {
+            return value.sum();
+        }
+    }
+
+    /**
+     * Distribution of non-negative values kept in power-of-two buckets, so percentiles
+     * are accurate to within a factor of two while using a fixed, small amount of
+     * memory.
+     */
+    public static final class Histogram {
+
+        private final AtomicLongArray buckets = new AtomicLongArray(64);
+        private final LongAdder count = new LongAdder();
+        private final LongAdder total = new LongAdder();
+        private final AtomicLong max = new AtomicLong();
+
+        private Histogram() {
+        }
+
+        /**
+         * Record a value. Negative values are recorded as zero.
+         *
+         * @param value value to record
+         */
+        public void record(long value) {
+            value = Math.max(value, 0);
+            buckets.incrementAndGet(64 - Long.numberOfLeadingZeros(value));
+            count.increment();
+            total.add(value);
+            max.accumulateAndGet(value, Math::max);
+        }
+
+        /**
+         * Record the time elapsed since a start time, for histograms used as timers.
+         *
+         * @param startNanos start time from {@link System#nanoTime()}
+         *
+         * @return elapsed time in nanoseconds
+         */
+        public long recordSince(long startNanos) {
+            long elapsedNanos = System.nanoTime() - startNanos;
+            record(elapsedNanos);
+            return elapsedNanos;
+        }
+
+        /**
+         * Get the number of values recorded.
+         *
+         * @return number of values
+         */
+        public long getCount() {
+            return count.sum();
+        }
+
+        /**
+         * Get the sum of all values recorded.
+         *
+         * @return sum of values
+         */
+        public long getTotal() {
+            return total.sum();
+        }
+
+        /**
+         * Get the largest value recorded.
+         *
+         * @return largest value, or 0 if none recorded
+         */
+        public long getMax() {
+            return max.get();
+        }
+
+        /**
+         * Get the mean of all values recorded.
+         *
+         * @return mean, or 0 if none recorded
+         */
+        public double getMean() {
+            long numValues = getCount();
+            return numValues == 0 ? 0 : (double) getTotal() / numValues;
+        }
+
+        /**
+         * Estimate a percentile of the values recorded. The result is the upper bound
+         * of the bucket the percentile falls in, capped at the largest value.
+         *
+         * @param percentile percentile from 0 to 100
+         *
+         * @return estimated percentile, or 0 if none recorded
+         */
+        public long getPercentile(double percentile) {
+            long[] snapshot = new long[buckets.length()];
+            long numValues = 0;
+            for (int bucket = 0; bucket < snapshot.length; bucket++) {
+                snapshot[bucket] = buckets.get(bucket);
+                numValues += snapshot[bucket];
+            }
+            if (numValues == 0) {
+                return 0;
+            }
+
+            long rank = (long) Math.ceil(numValues * percentile / 100.0);
+            long seen = 0;
+            for (int bucket = 0; bucket < snapshot.length; bucket++) {
+                seen += snapshot[bucket];
+                if (seen >= Math.max(rank, 1)) {
+                    // Bucket holds values from 2^(bucket - 1) to 2^bucket - 1
+                    return Math.min((1L << bucket) - 1, getMax());
+                }
+            }
+            return getMax();
+        }
+    }
+
+    /**
+     * Publishes every metric as a read-only JMX attribute. Counters appear under their
+     * own names; histograms appear as {@code name.count}, {@code name.mean},
+     * {@code name.p50}, {@code name.p99} and {@code name.max}, with timers converted
+     * to milliseconds. The {@code dump} operation returns the plain text dump.
+     */
+    private static final class MetricsMBean implements DynamicMBean {
+
+        private static final String[] SUFFIXES = {"count", "mean", "p50", "p99", "max"};
+
+        @Override
+        public Object getAttribute(String attribute) throws AttributeNotFoundException {
+            Counter counter = COUNTERS.get(attribute);
+            if (counter != null) {
+                return counter.get();
+            }
+
+            int dot = attribute.lastIndexOf('.');
+            if (dot > 0) {
+                String name = attribute.substring(0, dot);
+                Histogram histogram = HISTOGRAMS.get(name);
+                if (histogram != null) {
+                    double scale = isTimer(name) ? 1e6 : 1;
+                    switch (attribute.substring(dot + 1)) {
+                        case "count":
+                            return histogram.getCount();
+                        case "mean":
+                            return histogram.getMean() / scale;
+                        case "p50":
+                            return histogram.getPercentile(50) / scale;
+                        case "p99":
+                            return histogram.getPercentile(99) / scale;
+                        case "max":
+                            return histogram.getMax() / scale;
+                        default:
+                            break;
+                    }
+                }
+            }
+
+            throw new AttributeNotFoundException(attribute);
+        }
+
+        @Override
+        public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+            throw new AttributeNotFoundException("Metrics are read-only");
+        }
+
+        @Override
+        public AttributeList getAttributes(String[] attributes) {
+            AttributeList list = new AttributeList();
+            for (String attribute : attributes) {
+                try {
+                    list.add(new Attribute(attribute, getAttribute(attribute)));
+                } catch (AttributeNotFoundException ex) {
+                    // Skip attributes that don't exist, as required by DynamicMBean
+                }
+            }
+            return list;
+        }
+
+        @Override
+        public AttributeList setAttributes(AttributeList attributes) {
+            return new AttributeList();
+        }
+
+        @Override
+        public Object invoke(String actionName, Object[] params, String[] signature)
+                throws ReflectionException {
+            if ("dump".equals(actionName)) {
+                return dump();
+            }
+            throw new ReflectionException(new NoSuchMethodException(actionName));
+        }
+
+        @Override
+        public MBeanInfo getMBeanInfo() {
+            List<MBeanAttributeInfo> attributes = new ArrayList<>();
+
+            for (String name : COUNTERS.keySet()) {
+                attributes.add(new MBeanAttributeInfo(name, "long", "Counter",
+                        true, false, false));
+            }
+
+            for (String name : HISTOGRAMS.keySet()) {
+                String unit = isTimer(name) ? " in milliseconds" : "";
+                for (String suffix : SUFFIXES) {
+                    String type = suffix.equals("count") ? "long" : "double";
+                    attributes.add(new MBeanAttributeInfo(name + "." + suffix, type,
+                            "Histogram " + suffix + unit, true, false, false));
+                }
+            }
+
+            MBeanOperationInfo dumpInfo = new MBeanOperationInfo("dump",
+                    "Describe all metrics as plain text", new MBeanParameterInfo[0],
+                    "java.lang.String", MBeanOperationInfo.INFO);
+
+            return new MBeanInfo(Metrics.class.getName(), "Skew-T VSP metrics",
+                    attributes.toArray(new MBeanAttributeInfo[0]), null,
+                    new MBeanOperationInfo[] {dumpInfo}, null);
+        }
+    }
+}
@@ -0,0 +1,183 @@
+/*
+ * Copyright (c) 2024, Avery Donovan
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.averydonovan.skewtvsp.utils;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Reads the same longitude and latitude from several data files at once, such as output
+ * from different models, so their soundings can be compared on one plot. Each file is
+ * opened and read in parallel as interactive reads on the shared
+ * {@link DataReadScheduler}, so the time taken is close to that of the slowest file
+ * rather than the sum of them all. The point is looked up separately in each file's
+ * grid.
+ *
+ * @author Avery Donovan
+ */
+public class ModelComparison {
+
+    private static final Logger LOG =
+            LoggerFactory.getLogger(ModelComparison.class.getName());
+
+    private static final Metrics.Histogram readTimer = Metrics.timer("compare.read");
+
+    private ModelComparison() {
+        // Only static methods
+    }
+
+    /**
+     * Open several data files at once. If any cannot be opened, those that were opened
+     * are closed again.
+     *
+     * @param fileNames path and filename of each data file
+     *
+     * @return opened data files, in the same order
+     *
+     * @throws IOException a data file could not be opened
+     * @throws InterruptedException interrupted while waiting for files to open
+     */
+    public static List<ModelDataFile> openAll(List<String> fileNames)
+            throws IOException, InterruptedException {
+        List<CompletableFuture<ModelDataFile>> futures = new ArrayList<>();
+        for (String fileName : fileNames) {
+            futures.add(DataReadScheduler.getShared().submitAndWait(
+                    nextPriority(futures), () -> {
+                        ModelDataFile dataFile = new ModelDataFile(fileName);
+                        dataFile.loadMetadata();
+                        return dataFile;
+                    }));
+        }
+
+        List<ModelDataFile> result = new ArrayList<>();
+        IOException failure = null;
+        for (CompletableFuture<ModelDataFile> future : futures) {
+            try {
+                result.add(join(future));
+            } catch (IOException ex) {
+                failure = ex;
+            }
+        }
+
+        if (failure != null) {
+            closeAll(result);
+            throw failure;
+        }
+        return result;
+    }
+
+    /**
+     * Read the sounding nearest a longitude and latitude from every data file at once.
+     *
+     * @param dataFiles data files to read from
+     * @param lon longitude in degrees (-180 to 180)
+     * @param lat latitude in degrees (-90 to 90)
+     *
+     * @return sounding from each data file in the same order, or null for any file
+     *         whose grid does not cover the point
+     *
+     * @throws IOException a read failed
+     * @throws InterruptedException interrupted while waiting for reads
+     */
+    public static Sounding[] readSoundings(List<ModelDataFile> dataFiles, double lon,
+            double lat) throws IOException, InterruptedException {
+        long startNanos = System.nanoTime();
+
+        List<CompletableFuture<Sounding>> futures = new ArrayList<>();
+        for (ModelDataFile dataFile : dataFiles) {
+            futures.add(DataReadScheduler.getShared().submitAndWait(
+                    nextPriority(futures), () -> {
+                        int[] coords = dataFile.getXYCoordsInGrid(lon, lat);
+                        if (coords == null) {
+                            LOG.debug("Point {}, {} is outside grid of {}", lon, lat,
+                                    dataFile.getModelName());
+                            return null;
+                        }
+                        return dataFile.getSounding(coords[0], coords[1]);
+                    }));
+        }
+
+        Sounding[] result = new Sounding[futures.size()];
+        for (int index = 0; index < result.length; index++) {
+            result[index] = join(futures.get(index));
+        }
+
+        readTimer.recordSince(startNanos);
+        return result;
+    }
+
+    /**
+     * Returns priority of the next read of a comparison. Only the first read is
+     * interactive, so that comparing many models does not take every worker away from
+     * the plot a user is waiting on elsewhere. The rest are prefetches, which still run
+     * alongside it on the other workers.
+     *
+     * @param submitted reads already submitted for this comparison
+     *
+     * @return priority of next read
+     */
+    private static DataReadScheduler.Priority nextPriority(List<?> submitted) {
+        if (submitted.isEmpty()) {
+            return DataReadScheduler.Priority.INTERACTIVE;
+        } else {
+            return DataReadScheduler.Priority.PREFETCH;
+        }
+    }
+
+    /**
+     * Close data files, logging rather than throwing any failure.
+     *
+     * @param dataFiles data files to close
+     */
+    public static void closeAll(List<ModelDataFile> dataFiles) {
+        for (ModelDataFile dataFile : dataFiles) {
+            try {
+                dataFile.close();
+            } catch (IOException ex) {
+                LOG.error("{}\n{}", ex.getLocalizedMessage(), ex.toString());
+            }
+        }
+    }
+
+    /**
+     * Wait for a read, passing on any IOException it failed with.
+     */
+    private static <T> T join(CompletableFuture<T> future) throws IOException {
+        try {
+            return future.join();
+        } catch (CompletionException ex) {
+            if (ex.getCause() instanceof IOException) {
+                throw (IOException) ex.getCause();
+            }
+            throw ex;
+        }
+    }
+}
@@ -30,10 +30,17 @@ import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
 import java.time.format.ResolverStyle;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.SortedMap;
 import java.util.TreeMap;
+import java.util.stream.IntStream;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import ucar.nc2.NetcdfFile;
@@ -55,8 +62,65 @@ public class ModelDataFile {
     private static final Logger LOG =
             LoggerFactory.getLogger(ModelDataFile.class.getName());
 
+    /**
+     * Largest area, in grid points, that getSoundings will read as one slab per
+     * variable. Overridable with the skewtvsp.io.maxSlabCells system property.
+     */
+    private static final int MAX_SLAB_CELLS =
+            Integer.getInteger("skewtvsp.io.maxSlabCells", 1024);
+
+    /**
+     * Largest area, in grid points, that getTempDewpColumns will read as one slab per
+     * variable. Only temperature and relative humidity columns and surface pressure are
+     * read, so this can be much larger than for soundings. Overridable with the
+     * skewtvsp.io.maxColumnSlabCells system property.
+     */
+    private static final int MAX_COLUMN_SLAB_CELLS =
+            Integer.getInteger("skewtvsp.io.maxColumnSlabCells", 65536);
+
+    /**
+     * Largest area, in grid points, that an area-mean sounding will be taken over, as the
+     * whole area is read as one slab per variable. Overridable with the
+     * skewtvsp.io.maxAreaCells system property.
+     */
+    private static final int MAX_AREA_CELLS =
+            Integer.getInteger("skewtvsp.io.maxAreaCells", 16384);
+
+    /**
+     * Mean radius of the Earth in km.
+     */
+    private static final double EARTH_RADIUS = 6371.0;
+
+    /**
+     * Number of points along each side of a longitude-latitude box checked when finding
+     * the grid area it covers, as sides of the box may be curved on the grid.
+     */
+    private static final int BOX_EDGE_POINTS = 16;
+
+    private static final Metrics.Histogram areaMeanTimer =
+            Metrics.timer("sounding.areaMean");
+
+    /*
+     * Positions of handles of the reads needed for a sounding. Kept within this package
+     * for test stand-ins that supply their own values.
+     */
+    static final int READ_TEMPS = 0;
+    static final int READ_RHS = 1;
+    static final int READ_UGRD500 = 2;
+    static final int READ_UGRD850 = 3;
+    static final int READ_VGRD500 = 4;
+    static final int READ_VGRD850 = 5;
+    static final int READ_TEMP2M = 6;
+    static final int READ_DEWP2M = 7;
+    static final int READ_PRESSFC = 8;
+    static final int READ_MSL = 9;
+    static final int READ_CAPE = 10;
+    static final int READ_CIN = 11;
+    static final int READ_LFTX = 12;
+    static final int NUM_READS = 13;
+
     private NetcdfFile gribFile = null;
-    private GridCoordSystem gribGCS = null;
+    private volatile GridCoordSystem gribGCS = null;
 
     private final String varNameTempIso = "Temperature_isobaric";
     private final String varNameTemp2m = "Temperature_height_above_ground";
@@ -87,10 +151,20 @@ public class ModelDataFile {
     private final String modelNameNAM = "NOAA North American Model";
     private final String modelNameRAP = "NOAA Rapid Refresh";
     private final String modelNameHRRR = "NOAA High-Resolution Rapid Refresh";
+    private final String modelNameGEFS = "NOAA Global Ensemble Forecast System";
 
     private String modelName = "";
+    private String fileLocation = "";
 
-    private Map<Double, Integer> isoLevels = null;
+    /*
+     * Metadata that is only loaded when first needed and then kept, so that opening a
+     * file (especially a remote one) only does the minimum needed to make sure the file
+     * is usable. Access these through their getters.
+     */
+    private volatile LevelAxis levelAxis = null;
+    private volatile Map<String, Integer> variableOrder = null;
+    private volatile LocalDateTime analysisTime = null;
+    private volatile LocalDateTime validTime = null;
 
     private int maxX = 0;
     private int maxY = 0;
@@ -108,6 +182,19 @@ public class ModelDataFile {
 
     private boolean usingTHREDDS = false;
 
+    /**
+     * NetCDF-Java file handles are not safe to read from on more than one thread at a
+     * time, so all reads from gribFile are done while holding this lock.
+     */
+    private final Object readLock = new Object();
+
+    /**
+     * Held while loading metadata the first time it is needed. Once loaded, metadata is
+     * returned without taking this lock or readLock, so looking up a grid point never
+     * waits behind a data read. Never taken while holding readLock.
+     */
+    private final Object metadataLock = new Object();
+
     /**
      * Create new instance. Need to call {@link #open(java.lang.String) open} before
      * attempting to access any methods.
@@ -116,6 +203,20 @@ public class ModelDataFile {
         // Do nothing
     }
 
+    /**
+     * Create new instance with a data grid of the given size but no data file, for test
+     * stand-ins that supply their own grid and values.
+     *
+     * @param gridWidth number of grid points along x-axis
+     * @param gridHeight number of grid points along y-axis
+     * @param numLevels number of isobaric levels
+     */
+    ModelDataFile(int gridWidth, int gridHeight, int numLevels) {
+        maxX = gridWidth;
+        maxY = gridHeight;
+        maxLevel = numLevels;
+    }
+
     /**
      * Create new instance and open data file.
      *
@@ -168,6 +269,7 @@ public class ModelDataFile {
         modelIsNAM = false;
         modelIsRAP = false;
         modelName = "";
+        fileLocation = gribFileName;
 
         /*
          * Make sure the model data file being opened can be read by program and detect
@@ -258,6 +360,13 @@ public class ModelDataFile {
 
             modelIsGFS = true;
             modelName = modelNameGFS;
+        } else if ((gribFileName.contains("gec") || gribFileName.contains("gep"))
+                && gribFileName.contains(".pgrb2a.0p50")) {
+            LOG.debug("Detected GEFS 0.50 GRIB2 member file");
+            modelIsGFS4 = true;
+
+            modelIsGFS = true;
+            modelName = modelNameGEFS;
         } else if (gribFileName.contains(
                 "cdmremote:https://thredds.ucar.edu/thredds/cdmremote/grib/NCEP/RAP/CONUS_13km")) {
             LOG.debug("Detected RAP 130 GRIB2 via THREDDS");
@@ -284,103 +393,108 @@ public class ModelDataFile {
          * variable name that is both shared among the forecasting models' output files
          * and provides complete information about XY-size and the number of isobaric
          * levels.
+         *
+         * Only the dataset itself is opened here, after checking that it has the
+         * isobaric levels and times needed. The grid's coordinate system, the isobaric
+         * levels, and the analysis and valid times are loaded the first time they are
+         * needed.
          */
         String varName = "Temperature_isobaric";
-        // varName = "isobaric";
-
-        GridDataset gribGDS = null;
-
-        try {
-            gribGDS = ucar.nc2.dt.grid.GridDataset.open(gribFileName);
-        } catch (IOException ex) {
-            LOG.error("{}\n{}", ex.getLocalizedMessage(), ex.toString());
-            throw ex;
-        }
+        long startNanos = System.nanoTime();
+        FileOpenEvent openEvent = new FileOpenEvent();
+        openEvent.begin();
 
-        LOG.debug("Opened GridDataset");
-
-        GridDatatype gribVarGDT = gribGDS.findGridByShortName(varName);
-        LOG.debug("Found variable in GDS");
-        gribGCS = gribVarGDT.getCoordinateSystem();
-        LOG.debug("Got coordinate system");
-        // try {
-        // gribGDS.close();
-        // } catch (IOException ex) {
-        // LOG.error("{}\n{}", ex.getLocalizedMessage(), ex.toString());
-        // throw ex;
-        // }
+        gribGCS = null;
+        levelAxis = null;
+        variableOrder = null;
+        analysisTime = null;
+        validTime = null;
 
         try {
             gribFile = NetcdfDatasets.openDataset(gribFileName);
         } catch (IOException ex) {
             LOG.error("{}\n{}", ex.getLocalizedMessage(), ex.toString());
+            commitOpenEvent(openEvent, gribFileName, false);
             throw ex;
         }
         LOG.debug("Opened dataset");
 
-        // varName = "isobaric";
         Variable gribVar = gribFile.findVariable(varName);
-        LOG.debug("Found variable in file");
 
-        // Array gribVarData = null;
-        int[] gribVarShape = null;
-        try {
-            // gribVarData = gribVar.read();
-            gribVarShape = gribVar.getShape();
-            LOG.debug("Read variable from file");
-            // } catch (FileNotFoundException ex) {
-            /*
-             * Error may be caused by an automatically created sidecar file and deleting
-             * it and trying again may allow the GRIB file to be successfully opened.
-             */
-            /*
-             * if ((new File(gribFileName).isFile()) && (new File(gribFileName +
-             * ".gbx9").isFile())) {
-             * LOG.error("Unable to read {} possibly due to sidecar file", gribFileName);
-             * LOG.
-             * warn("Attempting to delete {}.gbx9 and then trying to read GRIB file again"
-             * , gribFileName);
-             * 
-             * try { File gbx9File = new File(gribFileName + ".gbx9"); gbx9File.delete();
-             * 
-             * gribGDS = ucar.nc2.dt.grid.GridDataset.open(gribFileName); gribVarGDT =
-             * gribGDS.findGridByShortName(varName); gribGCS =
-             * gribVarGDT.getCoordinateSystem(); gribFile =
-             * NetcdfDatasets.openDataset(gribFileName); gribVar =
-             * gribFile.findVariable(varName); //gribVarData = gribVar.read();
-             * gribVarShape = gribVar.getShape(); } catch (IOException ex2) {
-             * LOG.error("{}\n{}", ex2.getLocalizedMessage(), ex2.toString()); throw ex2;
-             * } } else { LOG.error("{}\n{}", ex.getLocalizedMessage(), ex.toString());
-             * throw ex; } } catch (IOException ex) { LOG.error("{}\n{}",
-             * ex.getLocalizedMessage(), ex.toString()); throw ex;
-             */
-        } catch (Exception ex) {
-            LOG.error("{}\n{}", ex.getLocalizedMessage(), ex.toString());
-            throw ex;
-        }
-
-        if (gribVarShape == null) {
+        if (gribVar == null || gribFile.findVariable(getVarNameIso()) == null
+                || gribFile.findVariable("reftime") == null
+                || gribFile.findVariable("time") == null) {
             IOException ex = new IOException("Unusable file");
             LOG.error("{}\n{}", ex.getLocalizedMessage(), ex.toString());
+            doCloseAfterFailedOpen();
+            commitOpenEvent(openEvent, gribFileName, false);
             throw ex;
         }
+        LOG.debug("Found variable in file");
 
-        // int[] varShape = gribVarData.getShape();
-        int[] varShape = gribFile.findVariable("Temperature_isobaric").getShape();
+        int[] varShape = gribVar.getShape();
         LOG.debug("varShape = {}", varShape);
         maxX = varShape[varShape.length - 1];
         maxY = varShape[varShape.length - 2];
         maxLevel = varShape[varShape.length - 3];
         LOG.debug("Got shape");
 
-        boolean didGetLevels = doGetLevels();
+        long elapsedNanos = Metrics.timer("file.open").recordSince(startNanos);
+        commitOpenEvent(openEvent, gribFileName, true);
+        LOG.debug("Successfully opened GRIB file in {} ms: {}", elapsedNanos / 1000000,
+                gribFileName);
+        return true;
+    }
+
+    /**
+     * Finish flight recorder event for opening a file and commit it if it is being
+     * recorded.
+     *
+     * @param event event begun when opening started
+     * @param gribFileName path and filename of GRIB file being opened
+     * @param success true if file was opened
+     */
+    private void commitOpenEvent(FileOpenEvent event, String gribFileName,
+            boolean success) {
+        event.end();
+        if (event.shouldCommit()) {
+            event.file = gribFileName;
+            event.model = modelName;
+            event.success = success;
+            event.commit();
+        }
+    }
 
-        if (didGetLevels == true) {
-            LOG.debug("Successfully opened GRIB file: {}", gribFileName);
-            return true;
-        } else {
-            LOG.debug("Unable to open GRIB file: {}", gribFileName);
-            return false;
+    /**
+     * Close the dataset after it turned out to be unusable while opening, so that a
+     * failed open does not leave the file open.
+     */
+    private void doCloseAfterFailedOpen() {
+        try {
+            gribFile.close();
+        } catch (IOException ex) {
+            LOG.error("{}\n{}", ex.getLocalizedMessage(), ex.toString());
+        }
+        gribFile = null;
+    }
+
+    /**
+     * Load metadata that is otherwise loaded when first needed, such as the grid's
+     * coordinate system and isobaric levels. Useful for doing this work in the background
+     * after a file has been opened, before a user asks for any data.
+     *
+     * @throws IOException file has no usable grid, levels, or times
+     */
+    public void loadMetadata() throws IOException {
+        if (getGridCoordSystem() == null) {
+            throw new IOException("Unusable file, no grid coordinate system");
+        }
+        if (getLevelAxis().size() == 0) {
+            throw new IOException("Unusable file, no usable isobaric levels");
+        }
+        getVariableOrder();
+        if (getAnalysisTime() == null || getValidTime() == null) {
+            throw new IOException("Unusable file, unreadable analysis or valid time");
         }
     }
 
@@ -414,6 +528,41 @@ public class ModelDataFile {
         return modelName;
     }
 
+    /**
+     * Returns a string identifying the data file currently open. For local files this
+     * includes the file's size and modification time so that a file replaced on disk
+     * under the same name is not mistaken for the original.
+     *
+     * @return identity of data file
+     */
+    public String getFileIdentity() {
+        File localFile = new File(fileLocation);
+        if (localFile.isFile()) {
+            return localFile.getAbsolutePath() + "|" + localFile.length() + "|"
+                    + localFile.lastModified();
+        } else {
+            return fileLocation;
+        }
+    }
+
+    /**
+     * Returns number of columns in data grid.
+     *
+     * @return number of x-coordinates
+     */
+    public int getGridWidth() {
+        return maxX;
+    }
+
+    /**
+     * Returns number of rows in data grid.
+     *
+     * @return number of y-coordinates
+     */
+    public int getGridHeight() {
+        return maxY;
+    }
+
     /**
      * Returns longitude and latitude corresponding to XY-coordinates on data grid.
      *
@@ -423,14 +572,16 @@ public class ModelDataFile {
      * @return double[2]; [0] = longitude in degrees, [1] = latitude in degrees
      */
     public double[] getLonLatFromXYCoords(int coordX, int coordY) {
-        LatLonPoint ptLatLon = gribGCS.getLatLon(coordX, coordY);
+        LatLonPoint ptLatLon = getGridCoordSystem().getLatLon(coordX, coordY);
         double[] result = {ptLatLon.getLongitude(), ptLatLon.getLatitude()};
         return result;
     }
 
     /**
-     * Get nearest XY-coordinates in data grid for a longitude-latitude point. Returns -1
-     * if outside bounds of grid.
+     * Get nearest XY-coordinates in data grid for a longitude-latitude point. Points
+     * outside the grid get the nearest point on its edge; use
+     * {@link #getXYCoordsInGrid(double, double) getXYCoordsInGrid} to find out whether a
+     * point is covered at all.
      *
      * @param lon longitude in degrees (-180 to 180)
      * @param lat latitude in degrees (-90 to 90)
@@ -438,7 +589,24 @@ public class ModelDataFile {
      * @return int[2]; [0] = x-coordinate, [1] = y-coordinate
      */
     public int[] getXYCoordsFromLonLat(double lon, double lat) {
-        int[] result = gribGCS.findXYindexFromLatLonBounded(lat, lon, null);
+        int[] result = getGridCoordSystem().findXYindexFromLatLonBounded(lat, lon, null);
+        return result;
+    }
+
+    /**
+     * Get nearest XY-coordinates in data grid for a longitude-latitude point, but only if
+     * the point is inside the grid, such as when a regional model may not cover it.
+     *
+     * @param lon longitude in degrees (-180 to 180)
+     * @param lat latitude in degrees (-90 to 90)
+     *
+     * @return int[2]; [0] = x-coordinate, [1] = y-coordinate; or null if outside grid
+     */
+    public int[] getXYCoordsInGrid(double lon, double lat) {
+        int[] result = getGridCoordSystem().findXYindexFromLatLon(lat, lon, null);
+        if (result == null || result[0] < 0 || result[1] < 0) {
+            return null;
+        }
         return result;
     }
 
@@ -450,18 +618,7 @@ public class ModelDataFile {
      * @return isobaric level in Pa
      */
     public double getLevelFromIndex(int coordLvl) {
-        if (coordLvl < maxLevel) {
-            double result = -1;
-            for (Map.Entry<Double, Integer> entry : isoLevels.entrySet()) {
-                if (entry.getValue() == coordLvl) {
-                    result = entry.getKey();
-                    break;
-                }
-            }
-            return result;
-        } else {
-            return -1;
-        }
+        return getLevelAxis().getLevelFromIndex(coordLvl);
     }
 
     /**
@@ -472,123 +629,800 @@ public class ModelDataFile {
      * @return index for nearest isobaric level in data grid
      */
     public int getIndexFromLevel(double level) {
-        int result = -1;
-        int closest = 5000;
-        double howClose = 10000;
-        for (Map.Entry<Double, Integer> entry : isoLevels.entrySet()) {
-            howClose = Math.abs(entry.getKey() - level);
-            if (howClose < closest) {
-                result = entry.getValue();
-            }
-        }
-        return result;
+        return getLevelAxis().getIndexFromLevel(level);
     }
 
     /**
-     * Get all temperatures at a given XY-coordinate.
+     * Get temperature at a given XY-coordinate and isobaric level index.
      *
      * @param coordX x-coordinate in data grid
      * @param coordY y-coordinate in data grid
+     * @param coordLvl index of isobaric level in data grid
      *
      * @return temperature in K
      */
-    public double[] getTempsAll(int coordX, int coordY) {
-        double[] result = {-1};
-
-        int[] arrayOrigin = {0, 0, coordY, coordX};
-        int[] arraySize = {1, maxLevel, 1, 1};
-
-        try {
-            // Successful only if an exception doesn't occur here
-            Array results = gribFile.findVariable(varNameTempIso)
-                    .read(arrayOrigin, arraySize).reduce();
-            result = (double[]) results.get1DJavaArray(DataType.DOUBLE);
-            LOG.debug("Temps: {}", result);
-        } catch (IOException | InvalidRangeException | NullPointerException ex) {
-            LOG.error("{}", ex.getLocalizedMessage());
-        }
-
+    public double getTempIso(int coordX, int coordY, int coordLvl) {
+        double result = getValFromVar(varNameTempIso, coordX, coordY, coordLvl, 4);
         return result;
     }
 
     /**
-     * Get temperature at a given XY-coordinate and isobaric level index.
+     * Get temperature at 2m above ground level at a given XY-coordinate.
      *
      * @param coordX x-coordinate in data grid
      * @param coordY y-coordinate in data grid
-     * @param coordLvl index of isobaric level in data grid
      *
      * @return temperature in K
      */
-    public double getTempIso(int coordX, int coordY, int coordLvl) {
-        double result = getValFromVar(varNameTempIso, coordX, coordY, coordLvl, 4);
+    public double getTemp2m(int coordX, int coordY) {
+        double result = getValFromVar(varNameTemp2m, coordX, coordY, 4);
         return result;
     }
 
     /**
-     * Get temperature at 2m above ground level at a given XY-coordinate.
+     * Get temperatures and dew points at every usable isobaric level, along with surface
+     * pressure, for many XY-coordinates at once, such as the grid points along a
+     * cross-section. Consecutive points are grouped into runs whose surrounding rectangle
+     * is no larger than MAX_COLUMN_SLAB_CELLS, and each run is read as one slab per
+     * variable, all in a single pass over the file. Points following a path across the
+     * grid therefore take a few reads per level rather than a read per point.
+     *
+     * @param coordXs x-coordinate in data grid of each point
+     * @param coordYs y-coordinate in data grid of each point
+     *
+     * @return pressure levels (Pa) from lowest to highest; temperatures (K) and dew
+     *         points (K) of each point, indexed point * number of levels + level; and
+     *         surface pressure (Pa) of each point. Values that could not be read are NaN.
+     */
+    public double[][] getTempDewpColumns(int[] coordXs, int[] coordYs) {
+        LevelAxis axis = getLevelAxis();
+        int numPoints = coordXs.length;
+        int numLevels = axis.size();
+        RecordReadBatch batch = new RecordReadBatch(gribFile, readLock, getVariableOrder());
+
+        /*
+         * Each run holds its first point, the point after its last, its rectangle, and
+         * the handles of its reads.
+         */
+        List<int[]> runs = new ArrayList<>();
+        int first = 0;
+        while (first < numPoints) {
+            int minX = coordXs[first];
+            int minY = coordYs[first];
+            int lastX = minX;
+            int lastY = minY;
+            int end = first + 1;
+            while (end < numPoints) {
+                int nextMinX = Math.min(minX, coordXs[end]);
+                int nextMinY = Math.min(minY, coordYs[end]);
+                int nextLastX = Math.max(lastX, coordXs[end]);
+                int nextLastY = Math.max(lastY, coordYs[end]);
+                long cells =
+                        (long) (nextLastX - nextMinX + 1) * (nextLastY - nextMinY + 1);
+                if (cells > MAX_COLUMN_SLAB_CELLS) {
+                    break;
+                }
+                minX = nextMinX;
+                minY = nextMinY;
+                lastX = nextLastX;
+                lastY = nextLastY;
+                end++;
+            }
+            int width = lastX - minX + 1;
+            int height = lastY - minY + 1;
+            runs.add(new int[] {first, end, minX, minY, width, height,
+                batch.addColumnArea(varNameTempIso, minX, minY, width, height, maxLevel),
+                batch.addColumnArea(varNameRHIso, minX, minY, width, height, maxLevel),
+                batch.addArea(varNamePresSfc, minX, minY, width, height, 0, 3)});
+            first = end;
+        }
+        batch.execute();
+
+        double[] pressures = new double[numLevels];
+        for (int position = 0; position < numLevels; position++) {
+            pressures[position] = axis.getPressure(position);
+        }
+        double[] temps = new double[numPoints * numLevels];
+        double[] dewps = new double[numPoints * numLevels];
+        double[] presSfcs = new double[numPoints];
+        double[] colTemps = new double[numLevels];
+        double[] colRHs = new double[numLevels];
+
+        for (int[] run : runs) {
+            int numCells = run[4] * run[5];
+            for (int point = run[0]; point < run[1]; point++) {
+                int cell = (coordYs[point] - run[3]) * run[4] + (coordXs[point] - run[2]);
+                for (int position = 0; position < numLevels; position++) {
+                    int valueIndex = axis.getIndex(position) * numCells + cell;
+                    colTemps[position] = batch.getValue(run[6], valueIndex, Double.NaN);
+                    colRHs[position] = batch.getValue(run[7], valueIndex, Double.NaN);
+                }
+                // Relative humidities are converted to dew points in place
+                AtmosThermoMath.calcDewp(colTemps, pressures, colRHs, colRHs, numLevels);
+                System.arraycopy(colTemps, 0, temps, point * numLevels, numLevels);
+                System.arraycopy(colRHs, 0, dewps, point * numLevels, numLevels);
+                presSfcs[point] = batch.getValue(run[8], cell, Double.NaN);
+            }
+        }
+
+        LOG.debug("Read {} columns with {} slabs per variable", numPoints, runs.size());
+        return new double[][] {pressures, temps, dewps, presSfcs};
+    }
+
+    /**
+     * Get everything needed to plot a Skew-T at a given XY-coordinate: pressure levels,
+     * temperatures, and dew points with the surface (really, 2m) values inserted at the
+     * surface pressure, along with surface values and weather indices.
      *
      * @param coordX x-coordinate in data grid
      * @param coordY y-coordinate in data grid
      *
-     * @return temperature in K
+     * @return sounding at XY-coordinate
      */
-    public double getTemp2m(int coordX, int coordY) {
-        double result = getValFromVar(varNameTemp2m, coordX, coordY, 4);
+    public Sounding getSounding(int coordX, int coordY) {
+        Sounding result = new Sounding(maxLevel);
+        readSounding(coordX, coordY, result);
+        result.releaseScratch();
         return result;
     }
 
     /**
-     * Get all pressure levels, temperatures, and dewpoints at a given XY-coordinate.
+     * Read everything needed to plot a Skew-T at a given XY-coordinate into an existing
+     * sounding, reusing its arrays and scratch space. Meant for reading many soundings in
+     * a row without creating garbage for each one. Kept within this package, since each
+     * read overwrites the arrays of the sounding read before; see {@link Sounding}.
      *
      * @param coordX x-coordinate in data grid
      * @param coordY y-coordinate in data grid
+     * @param result sounding to read into, created with {@link Sounding#Sounding(int)}
+     */
+    void readSounding(int coordX, int coordY, Sounding result) {
+        SoundingReadEvent event = new SoundingReadEvent();
+        event.begin();
+        result.ensureCapacity(maxLevel);
+
+        RecordReadBatch batch = result.readBatch;
+        if (batch == null) {
+            batch = new RecordReadBatch(gribFile, readLock, getVariableOrder());
+            result.readBatch = batch;
+        } else {
+            batch.reset(gribFile, readLock, getVariableOrder());
+        }
+
+        addSoundingReads(batch, coordX, coordY, 1, 1, result.readHandles);
+        batch.execute();
+        takeSoundingValues(batch, result.readHandles, 0, 1, result);
+        finishSounding(coordX, coordY, result);
+        commitSoundingEvent(event, 1, false);
+    }
+
+    /**
+     * Get soundings for many XY-coordinates at once. Points that lie close together are
+     * read with one read per variable covering the rectangle around all of them, rather
+     * than a read per variable for every point. Points spread too far apart for that
+     * are still read in a single pass over the file.
      *
-     * @return pressure levels (Pa), temperatures (K), and dewpoints (K)
+     * @param coordXs x-coordinate in data grid of each point
+     * @param coordYs y-coordinate in data grid of each point
+     *
+     * @return sounding for each point, in the same order
+     */
+    public Sounding[] getSoundings(int[] coordXs, int[] coordYs) {
+        int numPoints = coordXs.length;
+        Sounding[] results = new Sounding[numPoints];
+        if (numPoints == 0) {
+            return results;
+        }
+        SoundingReadEvent event = new SoundingReadEvent();
+        event.begin();
+
+        int minX = Integer.MAX_VALUE;
+        int minY = Integer.MAX_VALUE;
+        int lastX = Integer.MIN_VALUE;
+        int lastY = Integer.MIN_VALUE;
+        for (int index = 0; index < numPoints; index++) {
+            minX = Math.min(minX, coordXs[index]);
+            minY = Math.min(minY, coordYs[index]);
+            lastX = Math.max(lastX, coordXs[index]);
+            lastY = Math.max(lastY, coordYs[index]);
+        }
+        int width = lastX - minX + 1;
+        int height = lastY - minY + 1;
+        int numCells = width * height;
+
+        RecordReadBatch batch = new RecordReadBatch(gribFile, readLock, getVariableOrder());
+
+        if (numCells <= MAX_SLAB_CELLS) {
+            int[] handles = new int[NUM_READS];
+            addSoundingReads(batch, minX, minY, width, height, handles);
+            batch.execute();
+            for (int index = 0; index < numPoints; index++) {
+                results[index] = new Sounding(maxLevel);
+                int cell = (coordYs[index] - minY) * width + (coordXs[index] - minX);
+                takeSoundingValues(batch, handles, cell, numCells, results[index]);
+                finishSounding(coordXs[index], coordYs[index], results[index]);
+                results[index].releaseScratch();
+            }
+            commitSoundingEvent(event, numPoints, true);
+            LOG.debug("Read {} soundings with one {}x{} slab per variable", numPoints,
+                    width, height);
+        } else {
+            int[][] handles = new int[numPoints][NUM_READS];
+            for (int index = 0; index < numPoints; index++) {
+                addSoundingReads(batch, coordXs[index], coordYs[index], 1, 1,
+                        handles[index]);
+            }
+            batch.execute();
+            for (int index = 0; index < numPoints; index++) {
+                results[index] = new Sounding(maxLevel);
+                takeSoundingValues(batch, handles[index], 0, 1, results[index]);
+                finishSounding(coordXs[index], coordYs[index], results[index]);
+                results[index].releaseScratch();
+            }
+            commitSoundingEvent(event, numPoints, false);
+            LOG.debug("Read {} soundings point by point, {}x{} area too large for slab",
+                    numPoints, width, height);
+        }
+
+        return results;
+    }
+
+    /**
+     * Get a sounding of the mean of every grid point within a distance of a
+     * longitude-latitude point. Meant for fine grids such as HRRR, where a single grid
+     * point can be noisy.
+     *
+     * @param lon longitude of centre in degrees (-180 to 180)
+     * @param lat latitude of centre in degrees (-90 to 90)
+     * @param radius distance from centre in km
+     *
+     * @return mean sounding, plotted at grid point nearest centre
+     *
+     * @throws IllegalArgumentException centre is outside the data grid, or the area is
+     * too large to average
      */
-    public double[][] getTempDewpAll(int coordX, int coordY) {
-        double[][] result = {{-1}, {-1}, {-1}};
+    public Sounding getAreaMeanSounding(double lon, double lat, double radius) {
+        int[] centre = getXYCoordsInGrid(lon, lat);
+        if (centre == null) {
+            throw new IllegalArgumentException(String.format(
+                    "Point %.4f, %.4f is outside the data grid", lon, lat));
+        }
+        double[] centreLonLat = getLonLatFromXYCoords(centre[0], centre[1]);
 
-        int[] arrayOrigin = {0, 0, coordY, coordX};
-        int[] arraySize = {1, maxLevel, 1, 1};
+        /*
+         * Grid spacing around the centre sets how many grid points the radius reaches,
+         * with a point to spare for grids whose spacing changes over the area.
+         */
+        int stepX = centre[0] + 1 < maxX ? 1 : -1;
+        int stepY = centre[1] + 1 < maxY ? 1 : -1;
+        double[] alongX = getLonLatFromXYCoords(centre[0] + stepX, centre[1]);
+        double[] alongY = getLonLatFromXYCoords(centre[0], centre[1] + stepY);
+        double spacingX = getGreatCircleDistance(centreLonLat[0], centreLonLat[1],
+                alongX[0], alongX[1]);
+        double spacingY = getGreatCircleDistance(centreLonLat[0], centreLonLat[1],
+                alongY[0], alongY[1]);
+        int reachX = (int) Math.ceil(radius / Math.max(spacingX, 1e-6)) + 1;
+        int reachY = (int) Math.ceil(radius / Math.max(spacingY, 1e-6)) + 1;
+
+        int minX = Math.max(0, centre[0] - reachX);
+        int minY = Math.max(0, centre[1] - reachY);
+        int width = Math.min(maxX - 1, centre[0] + reachX) - minX + 1;
+        int height = Math.min(maxY - 1, centre[1] + reachY) - minY + 1;
+        checkAreaSize(width, height);
+
+        boolean[] mask = new boolean[width * height];
+        for (int row = 0; row < height; row++) {
+            for (int col = 0; col < width; col++) {
+                double[] lonLat = getLonLatFromXYCoords(minX + col, minY + row);
+                mask[row * width + col] = getGreatCircleDistance(lon, lat, lonLat[0],
+                        lonLat[1]) <= radius;
+            }
+        }
+        // A radius smaller than the grid spacing still gives the nearest grid point
+        mask[(centre[1] - minY) * width + (centre[0] - minX)] = true;
 
-        double[] allRHs = null;
-        double[] allTemps = null;
-        // double[] allDewps = null;
+        return getAreaMeanSounding(centre[0], centre[1],
+                List.of(new MeanArea(minX, minY, width, height, mask)),
+                String.format("within %.0f km", radius));
+    }
 
-        try {
-            // Successful only if an exception doesn't occur here
-            allRHs = (double[]) gribFile.findVariable(varNameRHIso)
-                    .read(arrayOrigin, arraySize).reduce()
-                    .get1DJavaArray(DataType.DOUBLE);
-            allTemps = (double[]) gribFile.findVariable(varNameTempIso)
-                    .read(arrayOrigin, arraySize).reduce()
-                    .get1DJavaArray(DataType.DOUBLE);
-        } catch (IOException | InvalidRangeException | NullPointerException ex) {
-            LOG.error("{}", ex.getLocalizedMessage());
-            return result;
+    /**
+     * Get a sounding of the mean of every grid point within a longitude-latitude box,
+     * such as one around a county. Only the part of the box inside the data grid is
+     * averaged. A box whose western edge is east of its eastern edge crosses the
+     * dateline.
+     *
+     * @param lonMin western edge of box in degrees (-180 to 180)
+     * @param latMin southern edge of box in degrees (-90 to 90)
+     * @param lonMax eastern edge of box in degrees (-180 to 180)
+     * @param latMax northern edge of box in degrees (-90 to 90)
+     *
+     * @return mean sounding, plotted at grid point nearest centre of box
+     *
+     * @throws IllegalArgumentException box does not overlap the data grid, or the area
+     * is too large to average
+     */
+    public Sounding getAreaMeanSounding(double lonMin, double latMin, double lonMax,
+            double latMax) {
+        double lonCentre;
+        List<MeanArea> areas = new ArrayList<>();
+        if (lonMin <= lonMax) {
+            lonCentre = (lonMin + lonMax) / 2;
+            addBoxArea(lonMin, latMin, lonMax, latMax, areas);
+        } else {
+            // Split where the box crosses the dateline
+            lonCentre = (lonMin + lonMax + 360) / 2;
+            if (lonCentre > 180) {
+                lonCentre -= 360;
+            }
+            addBoxArea(lonMin, latMin, 180, latMax, areas);
+            addBoxArea(-180, latMin, lonMax, latMax, areas);
+        }
+        if (areas.isEmpty()) {
+            throw new IllegalArgumentException(String.format("Box from %.4f, %.4f to "
+                    + "%.4f, %.4f does not overlap the data grid", lonMin, latMin, lonMax,
+                    latMax));
+        }
+
+        int[] centre = getXYCoordsInGrid(lonCentre, (latMin + latMax) / 2);
+        if (centre == null) {
+            // Centre of box is outside the grid, so plot at middle of area inside it
+            MeanArea area = areas.get(0);
+            centre = new int[] {area.minX + area.width / 2, area.minY + area.height / 2};
+        }
+
+        return getAreaMeanSounding(centre[0], centre[1], areas, "in box");
+    }
+
+    /**
+     * Work out the grid area covered by the part of a longitude-latitude box inside the
+     * data grid, and add it to the areas to average if there is any. The box is sampled
+     * all over, as its sides may be curved on the grid. Samples outside the grid are
+     * brought to its edge, so the samples bound the part of the box inside the grid
+     * even when none of them fall inside it; whether any grid point is in the box is
+     * then decided point by point.
+     *
+     * @param lonMin western edge of box in degrees, no greater than lonMax
+     * @param latMin southern edge of box in degrees
+     * @param lonMax eastern edge of box in degrees
+     * @param latMax northern edge of box in degrees
+     * @param areas list to add area to
+     */
+    private void addBoxArea(double lonMin, double latMin, double lonMax, double latMax,
+            List<MeanArea> areas) {
+        int minX = Integer.MAX_VALUE;
+        int minY = Integer.MAX_VALUE;
+        int lastX = Integer.MIN_VALUE;
+        int lastY = Integer.MIN_VALUE;
+        for (int row = 0; row <= BOX_EDGE_POINTS; row++) {
+            double lat = latMin + (latMax - latMin) * row / BOX_EDGE_POINTS;
+            for (int col = 0; col <= BOX_EDGE_POINTS; col++) {
+                double lon = lonMin + (lonMax - lonMin) * col / BOX_EDGE_POINTS;
+                int[] coords = getXYCoordsFromLonLat(lon, lat);
+                minX = Math.min(minX, coords[0]);
+                minY = Math.min(minY, coords[1]);
+                lastX = Math.max(lastX, coords[0]);
+                lastY = Math.max(lastY, coords[1]);
+            }
         }
 
-        double[] allDewps = new double[allRHs.length];
-        double[] allPres = new double[allRHs.length];
+        /*
+         * Sides of the box may bulge out between samples, so allow one sample spacing
+         * more on each side. Grid points outside the box are left out by the mask.
+         */
+        int marginX = (lastX - minX) / BOX_EDGE_POINTS + 1;
+        int marginY = (lastY - minY) / BOX_EDGE_POINTS + 1;
+        minX = Math.max(0, minX - marginX);
+        minY = Math.max(0, minY - marginY);
+        int width = Math.min(maxX - 1, lastX + marginX) - minX + 1;
+        int height = Math.min(maxY - 1, lastY + marginY) - minY + 1;
+
+        boolean[] mask = new boolean[width * height];
+        int firstCol = width;
+        int firstRow = height;
+        int lastCol = -1;
+        int lastRow = -1;
+        for (int row = 0; row < height; row++) {
+            for (int col = 0; col < width; col++) {
+                double[] lonLat = getLonLatFromXYCoords(minX + col, minY + row);
+                // Longitudes of some grids run from 0 to 360
+                double lon = lonLat[0] > 180 ? lonLat[0] - 360 : lonLat[0];
+                if (lon >= lonMin && lon <= lonMax && lonLat[1] >= latMin
+                        && lonLat[1] <= latMax) {
+                    mask[row * width + col] = true;
+                    firstCol = Math.min(firstCol, col);
+                    firstRow = Math.min(firstRow, row);
+                    lastCol = Math.max(lastCol, col);
+                    lastRow = row;
+                }
+            }
+        }
+        if (lastCol < 0) {
+            // A box smaller than the grid spacing still gives the nearest grid point
+            int[] nearest = getXYCoordsInGrid((lonMin + lonMax) / 2,
+                    (latMin + latMax) / 2);
+            if (nearest == null) {
+                return;
+            }
+            areas.add(new MeanArea(nearest[0], nearest[1], 1, 1, new boolean[] {true}));
+            return;
+        }
+
+        // Read only the rows and columns holding grid points in the box
+        int areaWidth = lastCol - firstCol + 1;
+        int areaHeight = lastRow - firstRow + 1;
+        checkAreaSize(areaWidth, areaHeight);
+        boolean[] areaMask = new boolean[areaWidth * areaHeight];
+        for (int row = 0; row < areaHeight; row++) {
+            System.arraycopy(mask, (firstRow + row) * width + firstCol, areaMask,
+                    row * areaWidth, areaWidth);
+        }
+        areas.add(new MeanArea(minX + firstCol, minY + firstRow, areaWidth, areaHeight,
+                areaMask));
+    }
 
-        for (int index = 0; index < allRHs.length; index++) {
-            allPres[index] = getLevelFromIndex(index);
-            allDewps[index] = AtmosThermoMath.calcDewp(allTemps[index], allPres[index],
-                    allRHs[index]);
+    /**
+     * Read everything needed for soundings over one or more rectangular areas as one slab
+     * per variable for each, then reduce the grid points picked out by their masks to a
+     * mean sounding. Each level of each variable is summed separately, in parallel, with
+     * compensated (Kahan) summation so that the many small values of a large area are not
+     * lost to rounding. Relative humidities are averaged and then converted to dew point,
+     * as averaging dew points would not give the dew point of the mean air.
+     *
+     * @param centreX x-coordinate in data grid sounding is plotted at
+     * @param centreY y-coordinate in data grid sounding is plotted at
+     * @param areas areas to average over
+     * @param areaName description of area added to the model name
+     *
+     * @return mean sounding
+     */
+    private Sounding getAreaMeanSounding(int centreX, int centreY, List<MeanArea> areas,
+            String areaName) {
+        long startNanos = System.nanoTime();
+        SoundingReadEvent event = new SoundingReadEvent();
+        event.begin();
+
+        int numPoints = 0;
+        for (MeanArea area : areas) {
+            numPoints += area.cells.length;
         }
 
-        result[0] = allPres;
-        result[1] = allTemps;
-        result[2] = allDewps;
+        AreaValues values = readAreas(areas);
 
         /*
-         * LOG.debug("Pres: {}", result[0]); LOG.debug("Temps: {}", result[1]);
-         * LOG.debug("Dewps: {}", result[2]);
+         * Temperature and relative humidity columns take one item per level, and every
+         * other read one item of its own.
          */
+        int numItems = 2 * maxLevel + NUM_READS - 2;
+        double[] means = new double[numItems];
+        IntStream.range(0, numItems).parallel().forEach(item -> {
+            int read;
+            int level;
+            if (item < 2 * maxLevel) {
+                read = item < maxLevel ? READ_TEMPS : READ_RHS;
+                level = item % maxLevel;
+            } else {
+                read = item - 2 * maxLevel + 2;
+                level = 0;
+            }
+            means[item] = getMaskedMean(values, areas, read, level);
+        });
+
+        Sounding result = new Sounding(maxLevel);
+        System.arraycopy(means, 0, result.columnTemps, 0, maxLevel);
+        System.arraycopy(means, maxLevel, result.columnDewps, 0, maxLevel);
+        int surface = 2 * maxLevel - 2;
+        result.winds[0] = means[surface + READ_UGRD500];
+        result.winds[1] = means[surface + READ_VGRD500];
+        result.winds[2] = means[surface + READ_UGRD850];
+        result.winds[3] = means[surface + READ_VGRD850];
+        result.temp2m = means[surface + READ_TEMP2M];
+        result.presSfc = means[surface + READ_PRESSFC];
+        if (usingTHREDDS) {
+            result.dewp2m = AtmosThermoMath.calcDewp(result.temp2m, result.presSfc,
+                    means[surface + READ_DEWP2M]);
+        } else {
+            result.dewp2m = means[surface + READ_DEWP2M];
+        }
+        result.msl = means[surface + READ_MSL];
+        result.cape = means[surface + READ_CAPE];
+        result.cin = means[surface + READ_CIN];
+        result.lftx = means[surface + READ_LFTX];
+
+        finishSounding(centreX, centreY, result);
+        result.releaseScratch();
+        result.modelName = getModelName() + ", mean of " + numPoints + " grid points "
+                + areaName;
+
+        commitSoundingEvent(event, numPoints, true);
+        long elapsedNanos = areaMeanTimer.recordSince(startNanos);
+        LOG.debug("Read mean of {} soundings from {} slabs per variable in {} ms",
+                numPoints, areas.size(), elapsedNanos / 1000000);
         return result;
     }
 
+    /**
+     * Read everything needed for soundings over each area as one slab per variable, all
+     * in a single batch. Test stand-ins for a data file supply their own values.
+     *
+     * @param areas areas to read
+     *
+     * @return values read
+     */
+    AreaValues readAreas(List<MeanArea> areas) {
+        RecordReadBatch batch = new RecordReadBatch(gribFile, readLock, getVariableOrder());
+        int[][] handles = new int[areas.size()][NUM_READS];
+        for (int area = 0; area < areas.size(); area++) {
+            MeanArea meanArea = areas.get(area);
+            addSoundingReads(batch, meanArea.minX, meanArea.minY, meanArea.width,
+                    meanArea.height, handles[area]);
+        }
+        batch.execute();
+        return (area, read, index) -> batch.getValue(handles[area][read], index,
+                Double.NaN);
+    }
+
+    /**
+     * Returns the mean of the values of one read at the grid points picked out by the
+     * masks of every area, using compensated (Kahan) summation. Missing values are left
+     * out.
+     *
+     * @param values values read
+     * @param areas areas read
+     * @param read which read to average, one of the READ_ positions
+     * @param level index of level to average, 0 for reads with only one level
+     *
+     * @return mean, or -99999 if every value is missing
+     */
+    private static double getMaskedMean(AreaValues values, List<MeanArea> areas, int read,
+            int level) {
+        double sum = 0;
+        double compensation = 0;
+        int count = 0;
+        for (int area = 0; area < areas.size(); area++) {
+            MeanArea meanArea = areas.get(area);
+            int offset = level * meanArea.width * meanArea.height;
+            for (int cell : meanArea.cells) {
+                double value = values.getValue(area, read, offset + cell);
+                if (!Double.isFinite(value)) {
+                    continue;
+                }
+                double adjusted = value - compensation;
+                double next = sum + adjusted;
+                compensation = (next - sum) - adjusted;
+                sum = next;
+                count++;
+            }
+        }
+        return count == 0 ? -99999 : sum / count;
+    }
+
+    /**
+     * Throws an exception if an area is too large to be read as one slab per variable.
+     *
+     * @param width number of columns in area
+     * @param height number of rows in area
+     */
+    private static void checkAreaSize(int width, int height) {
+        if ((long) width * height > MAX_AREA_CELLS) {
+            throw new IllegalArgumentException("Area of " + width + "x" + height
+                    + " grid points is too large to average, limit is " + MAX_AREA_CELLS);
+        }
+    }
+
+    /**
+     * Returns distance between two longitude-latitude points along a great circle.
+     *
+     * @param lon1 longitude of first point in degrees
+     * @param lat1 latitude of first point in degrees
+     * @param lon2 longitude of second point in degrees
+     * @param lat2 latitude of second point in degrees
+     *
+     * @return distance in km
+     */
+    private static double getGreatCircleDistance(double lon1, double lat1, double lon2,
+            double lat2) {
+        double sinHalfLat = Math.sin(Math.toRadians(lat2 - lat1) / 2);
+        double sinHalfLon = Math.sin(Math.toRadians(lon2 - lon1) / 2);
+        double a = sinHalfLat * sinHalfLat + Math.cos(Math.toRadians(lat1))
+                * Math.cos(Math.toRadians(lat2)) * sinHalfLon * sinHalfLon;
+        return 2 * EARTH_RADIUS * Math.asin(Math.min(1, Math.sqrt(a)));
+    }
+
+    /**
+     * Finish flight recorder event for reading soundings and commit it if it is being
+     * recorded.
+     *
+     * @param event event begun when reading started
+     * @param numPoints number of soundings read
+     * @param slab true if read as one section per variable
+     */
+    private void commitSoundingEvent(SoundingReadEvent event, int numPoints,
+            boolean slab) {
+        event.end();
+        if (event.shouldCommit()) {
+            event.points = numPoints;
+            event.levels = maxLevel;
+            event.slab = slab;
+            event.commit();
+        }
+    }
+
+    /**
+     * Add everything needed for soundings over a rectangular area of the data grid to a
+     * batch. Temperatures and dew points at particular levels, as needed for weather
+     * indices, are taken from the full columns rather than being read separately.
+     *
+     * @param batch batch to add reads to
+     * @param coordX x-coordinate of first column in data grid
+     * @param coordY y-coordinate of first row in data grid
+     * @param width number of columns
+     * @param height number of rows
+     * @param handles array of length NUM_READS to store handles of reads in
+     */
+    private void addSoundingReads(RecordReadBatch batch, int coordX, int coordY,
+            int width, int height, int[] handles) {
+        int idx500 = getIndexFromLevel(50000);
+        int idx850 = getIndexFromLevel(85000);
+
+        String varNameDewp2mRead;
+        if (usingTHREDDS) {
+            varNameDewp2mRead = varNameTHREDDSRH2m;
+        } else if (modelIsGRB) {
+            varNameDewp2mRead = varNameDewp2mNAM;
+        } else {
+            varNameDewp2mRead = varNameDewp2m;
+        }
+
+        handles[READ_TEMPS] = batch.addColumnArea(varNameTempIso, coordX, coordY, width,
+                height, maxLevel);
+        handles[READ_RHS] = batch.addColumnArea(varNameRHIso, coordX, coordY, width,
+                height, maxLevel);
+        handles[READ_UGRD500] =
+                batch.addArea(varNameUGrd, coordX, coordY, width, height, idx500, 4);
+        handles[READ_UGRD850] =
+                batch.addArea(varNameUGrd, coordX, coordY, width, height, idx850, 4);
+        handles[READ_VGRD500] =
+                batch.addArea(varNameVGrd, coordX, coordY, width, height, idx500, 4);
+        handles[READ_VGRD850] =
+                batch.addArea(varNameVGrd, coordX, coordY, width, height, idx850, 4);
+        handles[READ_TEMP2M] =
+                batch.addArea(varNameTemp2m, coordX, coordY, width, height, 0, 4);
+        handles[READ_DEWP2M] =
+                batch.addArea(varNameDewp2mRead, coordX, coordY, width, height, 0, 4);
+        handles[READ_PRESSFC] =
+                batch.addArea(varNamePresSfc, coordX, coordY, width, height, 0, 3);
+        handles[READ_MSL] =
+                batch.addArea(getVarNameMSL(), coordX, coordY, width, height, 0, 3);
+        handles[READ_CAPE] =
+                batch.addArea(getVarNameCAPE(), coordX, coordY, width, height, 0, 3);
+        handles[READ_CIN] = batch.addArea(varNameCin, coordX, coordY, width, height, 0, 3);
+        handles[READ_LFTX] = batch.addArea(getVarNameLFTX(), coordX, coordY, width,
+                height, 0, getVarDimLFTX());
+    }
+
+    /**
+     * Copy values for one point out of an executed batch into a sounding. Relative
+     * humidities are copied into the dew point column, to be converted later, and winds
+     * into the sounding's wind scratch space.
+     *
+     * @param batch executed batch
+     * @param handles handles of reads, as filled in by addSoundingReads
+     * @param cell index of point within the area read
+     * @param numCells number of points in the area read
+     * @param result sounding to copy values into
+     */
+    private void takeSoundingValues(RecordReadBatch batch, int[] handles, int cell,
+            int numCells, Sounding result) {
+        final double errorVal = -99999;
+
+        for (int index = 0; index < maxLevel; index++) {
+            result.columnTemps[index] =
+                    batch.getValue(handles[READ_TEMPS], index * numCells + cell, errorVal);
+            result.columnDewps[index] =
+                    batch.getValue(handles[READ_RHS], index * numCells + cell, errorVal);
+        }
+
+        result.winds[0] = batch.getValue(handles[READ_UGRD500], cell, errorVal);
+        result.winds[1] = batch.getValue(handles[READ_VGRD500], cell, errorVal);
+        result.winds[2] = batch.getValue(handles[READ_UGRD850], cell, errorVal);
+        result.winds[3] = batch.getValue(handles[READ_VGRD850], cell, errorVal);
+
+        result.temp2m = batch.getValue(handles[READ_TEMP2M], cell, errorVal);
+        result.presSfc = batch.getValue(handles[READ_PRESSFC], cell, errorVal);
+        if (usingTHREDDS) {
+            result.dewp2m = AtmosThermoMath.calcDewp(result.temp2m, result.presSfc,
+                    batch.getValue(handles[READ_DEWP2M], cell, errorVal));
+        } else {
+            result.dewp2m = batch.getValue(handles[READ_DEWP2M], cell, errorVal);
+        }
+        result.msl = batch.getValue(handles[READ_MSL], cell, errorVal);
+        result.cape = batch.getValue(handles[READ_CAPE], cell, errorVal);
+        result.cin = batch.getValue(handles[READ_CIN], cell, errorVal);
+        result.lftx = batch.getValue(handles[READ_LFTX], cell, errorVal);
+    }
+
+    /**
+     * Work out everything in a sounding that is calculated rather than read: dew points,
+     * levels with the surface inserted, and weather indices.
+     *
+     * @param coordX x-coordinate in data grid
+     * @param coordY y-coordinate in data grid
+     * @param result sounding with values filled in by takeSoundingValues
+     */
+    private void finishSounding(int coordX, int coordY, Sounding result) {
+        LevelAxis axis = getLevelAxis();
+
+        result.coordX = coordX;
+        result.coordY = coordY;
+        double[] lonLat = getLonLatFromXYCoords(coordX, coordY);
+        result.lon = lonLat[0];
+        result.lat = lonLat[1];
+
+        /*
+         * Columns are indexed by level index in data grid. Relative humidities were read
+         * into the dew point column and are converted in place.
+         */
+        double[] colTemps = result.columnTemps;
+        double[] colDewps = result.columnDewps;
+        double[] colPres = result.columnPres;
+        for (int index = 0; index < maxLevel; index++) {
+            colPres[index] = axis.getLevelFromIndex(index);
+        }
+        AtmosThermoMath.calcDewp(colTemps, colPres, colDewps, colDewps, maxLevel);
+
+        /*
+         * Lay out usable levels from lowest to highest pressure, then insert the surface
+         * temperature and dew point at the surface pressure's place among them.
+         */
+        int numLevels = axis.size();
+        for (int position = 0; position < numLevels; position++) {
+            int coordLvl = axis.getIndex(position);
+            result.pressures[position] = axis.getPressure(position);
+            result.temps[position] = colTemps[coordLvl];
+            result.dewps[position] = colDewps[coordLvl];
+        }
+
+        int presSfcIndex = Arrays.binarySearch(result.pressures, 0, numLevels,
+                result.presSfc);
+        if (presSfcIndex < 0) {
+            presSfcIndex = -presSfcIndex - 1;
+        }
+        int numAfter = numLevels - presSfcIndex;
+        System.arraycopy(result.pressures, presSfcIndex, result.pressures,
+                presSfcIndex + 1, numAfter);
+        System.arraycopy(result.temps, presSfcIndex, result.temps, presSfcIndex + 1,
+                numAfter);
+        System.arraycopy(result.dewps, presSfcIndex, result.dewps, presSfcIndex + 1,
+                numAfter);
+        result.pressures[presSfcIndex] = result.presSfc;
+        result.temps[presSfcIndex] = result.temp2m;
+        result.dewps[presSfcIndex] = result.dewp2m;
+        result.levelCount = numLevels + 1;
+
+        /*
+         * Weather indices from values at mandatory levels.
+         */
+        double temp500 = axis.interpolate(colTemps, 50000);
+        double temp700 = axis.interpolate(colTemps, 70000);
+        double temp850 = axis.interpolate(colTemps, 85000);
+        double dewp500 = axis.interpolate(colDewps, 50000);
+        double dewp700 = axis.interpolate(colDewps, 70000);
+        double dewp850 = axis.interpolate(colDewps, 85000);
+
+        AtmosThermoMath.calcLCL(result.temp2m, result.dewp2m, result.presSfc, result.lcl);
+        result.totalTotals =
+                AtmosThermoMath.calcTotalTotals(temp500, temp850, dewp500, dewp850);
+        result.kIndex =
+                AtmosThermoMath.calcKIndex(temp500, temp700, temp850, dewp700, dewp850);
+        result.sweat = AtmosThermoMath.calcSWEAT(result.totalTotals, dewp850,
+                result.winds[0], result.winds[1], result.winds[2], result.winds[3]);
+
+        result.analysisTime = getAnalysisTime();
+        result.validTime = getValidTime();
+        result.modelName = getModelName();
+    }
+
     /**
      * Get dew point at a given XY-coordinate and isobaric level index. Note that the GRIB
      * files from NOAA forecasting models output relative humidity, not dew point, for the
@@ -657,14 +1491,7 @@ public class ModelDataFile {
      * @return CAPE in J/kg
      */
     public double getCAPE(int coordX, int coordY) {
-        double result = -1;
-
-        if (modelIsGRB) {
-            result = getValFromVar(varNameCapeGRB, coordX, coordY, 3);
-        } else {
-            result = getValFromVar(varNameCape, coordX, coordY, 3);
-        }
-
+        double result = getValFromVar(getVarNameCAPE(), coordX, coordY, 3);
         return result;
     }
 
@@ -690,20 +1517,7 @@ public class ModelDataFile {
      * @return lifted index in K
      */
     public double getLFTX(int coordX, int coordY) {
-        double result = -1;
-
-        if (modelIsGFS3) {
-            result = getValFromVar(varNameLftxGFS3, coordX, coordY, 3);
-        } else if (modelIsGRB) {
-            result = getValFromVar(varNameLftxGRB, coordX, coordY, 4);
-        } else if (modelIsGFS4) {
-            result = getValFromVar(varNameLftxGFS4, coordX, coordY, 3);
-        } else if (modelIsHRRR) {
-            result = getValFromVar(varNameLftxHRRR, coordX, coordY, 4);
-        } else {
-            result = getValFromVar(varNameLftx, coordX, coordY, 4);
-        }
-
+        double result = getValFromVar(getVarNameLFTX(), coordX, coordY, getVarDimLFTX());
         return result;
     }
 
@@ -719,16 +1533,7 @@ public class ModelDataFile {
      * @return mean sea level pressure in Pa
      */
     public double getMSL(int coordX, int coordY) {
-        double result = -1;
-
-        if (modelIsGRB) {
-            result = getValFromVar(varNameMslGRB, coordX, coordY, 3);
-        } else if (modelIsGFS4 || modelIsNAMGRB2) {
-            result = getValFromVar(varNameMslGFS4, coordX, coordY, 3);
-        } else {
-            result = getValFromVar(varNameMsl, coordX, coordY, 3);
-        }
-
+        double result = getValFromVar(getVarNameMSL(), coordX, coordY, 3);
         return result;
     }
 
@@ -827,41 +1632,222 @@ public class ModelDataFile {
     /**
      * Get analysis time of data file.
      *
-     * @return analysis time
+     * @return analysis time, or null if it can't be read from the data file
      */
     public LocalDateTime getAnalysisTime() {
-        String gribTimeUnits = gribFile.findVariable("reftime").getUnitsString();
-        DateTimeFormatter dtFormat = DateTimeFormatter
-                .ofPattern("'Hour since 'uuuu-MM-dd'T'HH:mm:ssX", Locale.US);
-        dtFormat.withResolverStyle(ResolverStyle.STRICT);
-        LocalDateTime gribAnalTime = LocalDateTime.parse(gribTimeUnits, dtFormat);
-        return gribAnalTime;
+        if (analysisTime == null) {
+            doLoadTimes();
+        }
+        return analysisTime;
     }
 
     /**
      * Get valid time of data file. This typically corresponds to the forecast time in the
      * data file.
      *
-     * @return forecast time
+     * @return forecast time, or null if it can't be read from the data file
      */
     public LocalDateTime getValidTime() {
-        String gribTimeUnits = gribFile.findVariable("time").getUnitsString();
-        DateTimeFormatter dtFormat = DateTimeFormatter
-                .ofPattern("'Hour since 'uuuu-MM-dd'T'HH:mm:ssX", Locale.US);
-        dtFormat.withResolverStyle(ResolverStyle.STRICT);
-        LocalDateTime gribAnalTime = LocalDateTime.parse(gribTimeUnits, dtFormat);
+        if (validTime == null) {
+            doLoadTimes();
+        }
+        return validTime;
+    }
 
-        int gribTimeOffset = 0;
-        try {
-            gribTimeOffset = gribFile.findVariable("time").read().reduce().getInt(0);
-        } catch (IOException ex) {
-            LOG.error("Can't read valid time from file, returning analysis time");
-            return gribAnalTime;
+    /**
+     * Read analysis and valid times from the data file, unless already read.
+     */
+    private void doLoadTimes() {
+        synchronized (metadataLock) {
+            if (analysisTime != null) {
+                return;
+            }
+
+            DateTimeFormatter dtFormat = DateTimeFormatter
+                    .ofPattern("'Hour since 'uuuu-MM-dd'T'HH:mm:ssX", Locale.US);
+            dtFormat.withResolverStyle(ResolverStyle.STRICT);
+            Variable timeVar = gribFile.findVariable("time");
+            LocalDateTime gribAnalTime;
+            LocalDateTime gribRefTime;
+            try {
+                gribRefTime = LocalDateTime.parse(
+                        gribFile.findVariable("reftime").getUnitsString(), dtFormat);
+                gribAnalTime = LocalDateTime.parse(timeVar.getUnitsString(), dtFormat);
+            } catch (DateTimeParseException ex) {
+                LOG.error("Can't read analysis or valid time from file\n{}",
+                        ex.getLocalizedMessage());
+                return;
+            }
+
+            int gribTimeOffset = 0;
+            try {
+                synchronized (readLock) {
+                    gribTimeOffset = timeVar.read().reduce().getInt(0);
+                }
+            } catch (IOException ex) {
+                LOG.error("Can't read valid time from file, using analysis time");
+            }
+
+            // Valid time first, so that a loaded analysis time means both are loaded
+            validTime = gribAnalTime.plusHours(gribTimeOffset);
+            analysisTime = gribRefTime;
         }
+    }
 
-        LocalDateTime gribValidTime = gribAnalTime.plusHours(gribTimeOffset);
+    /**
+     * Returns the coordinate system of the data grid, creating it from the open dataset
+     * the first time it is needed.
+     *
+     * @return grid coordinate system, or null if the data file has none
+     */
+    private GridCoordSystem getGridCoordSystem() {
+        GridCoordSystem gcs = gribGCS;
+        if (gcs == null) {
+            synchronized (metadataLock) {
+                if (gribGCS == null) {
+                    try {
+                        GridDatatype gribVarGDT;
+                        synchronized (readLock) {
+                            GridDataset gribGDS = new ucar.nc2.dt.grid.GridDataset(
+                                    (NetcdfDataset) gribFile);
+                            gribVarGDT = gribGDS.findGridByShortName(varNameTempIso);
+                        }
+                        if (gribVarGDT != null) {
+                            gribGCS = gribVarGDT.getCoordinateSystem();
+                            LOG.debug("Got coordinate system");
+                        }
+                    } catch (IOException ex) {
+                        LOG.error("{}\n{}", ex.getLocalizedMessage(), ex.toString());
+                    }
+                }
+                gcs = gribGCS;
+            }
+        }
+        return gcs;
+    }
 
-        return gribValidTime;
+    /**
+     * Returns isobaric levels available in the data file, reading them the first time
+     * they are needed. Useful for interpolating columns of values to pressures that are
+     * not one of the data file's levels.
+     *
+     * @return isobaric levels
+     */
+    public LevelAxis getLevelAxis() {
+        LevelAxis axis = levelAxis;
+        if (axis == null) {
+            synchronized (metadataLock) {
+                if (levelAxis == null) {
+                    boolean didGetLevels = doGetLevels();
+                    if (didGetLevels == false) {
+                        LOG.error("Unable to read isobaric levels from data file");
+                        levelAxis = new LevelAxis(new TreeMap<>(), maxLevel);
+                    }
+                }
+                axis = levelAxis;
+            }
+        }
+        return axis;
+    }
+
+    /**
+     * Returns position of each variable in the data file, used to order batched reads.
+     *
+     * @return map of variable name to position in file
+     */
+    private Map<String, Integer> getVariableOrder() {
+        Map<String, Integer> order = variableOrder;
+        if (order == null) {
+            synchronized (metadataLock) {
+                if (variableOrder == null) {
+                    Map<String, Integer> newOrder = new HashMap<>();
+                    for (Variable variable : gribFile.getVariables()) {
+                        newOrder.put(variable.getShortName(), newOrder.size());
+                    }
+                    variableOrder = newOrder;
+                }
+                order = variableOrder;
+            }
+        }
+        return order;
+    }
+
+    /**
+     * Returns name of isobaric level variable for type of data file open.
+     *
+     * @return variable name
+     */
+    private String getVarNameIso() {
+        if (modelIsGFS3 || modelIsRAP || modelIsNAMGRB2) {
+            return "isobaric1";
+        } else {
+            return "isobaric";
+        }
+    }
+
+    /**
+     * Returns name of CAPE variable for type of data file open.
+     *
+     * @return variable name
+     */
+    private String getVarNameCAPE() {
+        if (modelIsGRB) {
+            return varNameCapeGRB;
+        } else {
+            return varNameCape;
+        }
+    }
+
+    /**
+     * Returns name of surface lifted index variable for type of data file open.
+     *
+     * @return variable name
+     */
+    private String getVarNameLFTX() {
+        if (modelIsGFS3) {
+            return varNameLftxGFS3;
+        } else if (modelIsGRB) {
+            return varNameLftxGRB;
+        } else if (modelIsGFS4) {
+            return varNameLftxGFS4;
+        } else if (modelIsHRRR) {
+            return varNameLftxHRRR;
+        } else {
+            return varNameLftx;
+        }
+    }
+
+    /**
+     * Returns expected dimensions of surface lifted index variable for type of data file
+     * open.
+     *
+     * @return dimensions of variable
+     */
+    private int getVarDimLFTX() {
+        if (modelIsGFS3) {
+            return 3;
+        } else if (modelIsGRB) {
+            return 4;
+        } else if (modelIsGFS4) {
+            return 3;
+        } else {
+            return 4;
+        }
+    }
+
+    /**
+     * Returns name of mean sea level pressure variable for type of data file open.
+     *
+     * @return variable name
+     */
+    private String getVarNameMSL() {
+        if (modelIsGRB) {
+            return varNameMslGRB;
+        } else if (modelIsGFS4 || modelIsNAMGRB2) {
+            return varNameMslGFS4;
+        } else {
+            return varNameMsl;
+        }
     }
 
     /**
@@ -872,24 +1858,25 @@ public class ModelDataFile {
      * @return true if successful
      */
     private boolean doGetLevels() {
-        String varNameIso = "isobaric";
+        String varNameIso = getVarNameIso();
         int initCoordLvl = 0;
 
-        if (modelIsGFS3) {
-            varNameIso = "isobaric1";
-        } else if (modelIsRAP) {
-            varNameIso = "isobaric1";
-        } else if (modelIsNAMGRB2) {
-            varNameIso = "isobaric1";
+        if (modelIsNAMGRB2) {
             // Need to skip first 2 isobaric levels
             initCoordLvl = 2;
         }
 
-        isoLevels = new TreeMap<>();
+        SortedMap<Double, Integer> isoLevels = new TreeMap<>();
 
         Array gribVarDataIso = null;
+        Variable gribVarIso = gribFile.findVariable(varNameIso);
+        if (gribVarIso == null) {
+            return false;
+        }
         try {
-            gribVarDataIso = gribFile.findVariable(varNameIso).read().reduce();
+            synchronized (readLock) {
+                gribVarDataIso = gribVarIso.read().reduce();
+            }
         } catch (java.io.IOException ex) {
             LOG.error("{}\n{}", ex.getLocalizedMessage(), ex.toString());
         }
@@ -909,6 +1896,7 @@ public class ModelDataFile {
                     isoLevels.put((double) (curLevel * 100), coordLvl);
                 }
             }
+            levelAxis = new LevelAxis(isoLevels, maxLevel);
             return true;
         } else {
             return false;
@@ -969,8 +1957,14 @@ public class ModelDataFile {
 
         try {
             // Successful only if an exception doesn't occur here
-            result = gribFile.findVariable(varName).read(arrayOrigin, arraySize).reduce()
-                    .getDouble(0);
+            synchronized (readLock) {
+                VariableReadEvent readEvent = new VariableReadEvent();
+                readEvent.begin();
+                long readStartNanos = System.nanoTime();
+                Array data = gribFile.findVariable(varName).read(arrayOrigin, arraySize);
+                RecordReadBatch.recordRead(varName, readStartNanos, data, readEvent);
+                result = data.reduce().getDouble(0);
+            }
         } catch (IOException | InvalidRangeException | NullPointerException ex) {
             /*
              * These exceptions almost invariably point to programmer error. Make sure the
@@ -983,4 +1977,62 @@ public class ModelDataFile {
         }
         return result;
     }
+
+    /**
+     * Rectangular area of the data grid that an area-mean sounding is taken over, and the
+     * grid points in it that are included.
+     */
+    static final class MeanArea {
+
+        final int minX;
+        final int minY;
+        final int width;
+        final int height;
+        /**
+         * Index of each included grid point within the area, ordered by y, then x.
+         */
+        final int[] cells;
+
+        /**
+         * Create new area.
+         *
+         * @param minX x-coordinate of first column of area in data grid
+         * @param minY y-coordinate of first row of area in data grid
+         * @param width number of columns in area
+         * @param height number of rows in area
+         * @param mask true for each grid point of area to include, ordered by y, then x
+         */
+        MeanArea(int minX, int minY, int width, int height, boolean[] mask) {
+            this.minX = minX;
+            this.minY = minY;
+            this.width = width;
+            this.height = height;
+
+            int[] included = new int[mask.length];
+            int numIncluded = 0;
+            for (int cell = 0; cell < mask.length; cell++) {
+                if (mask[cell]) {
+                    included[numIncluded++] = cell;
+                }
+            }
+            this.cells = Arrays.copyOf(included, numIncluded);
+        }
+    }
+
+    /**
+     * Values read over the areas of an area-mean sounding.
+     */
+    interface AreaValues {
+
+        /**
+         * Returns one value read.
+         *
+         * @param area index of area in the list read
+         * @param read which read, one of the READ_ positions
+         * @param index index of value within the read of that area, in row-major order
+         *
+         * @return value, or NaN if missing
+         */
+        double getValue(int area, int read, int index);
+    }
 }
@@ -0,0 +1,588 @@
+/*
+ * Copyright (c) 2024, Avery Donovan
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.averydonovan.skewtvsp.utils;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A single forecast run made up of one data file per forecast hour, treated as one
+ * dataset with a time axis. Models publish a run as many separate files (for example
+ * hrrr.t00z.wrfprsf00.grib2 through hrrr.t00z.wrfprsf18.grib2); this indexes them by
+ * forecast hour from their file names, so nothing is opened until data is asked for.
+ *
+ * <p>
+ * Member files are opened as they are needed and kept open for reuse, but no more than
+ * the skewtvsp.run.maxOpenFiles system property allows (default 4). When another file
+ * needs to be opened the least recently used file not being read from is closed.
+ *
+ * <p>
+ * {@link #getSoundings(int, int) getSoundings} reads the sounding at a point for every
+ * time in the run, reading from different files in parallel through the shared
+ * {@link DataReadScheduler}.
+ *
+ * @author Avery Donovan
+ */
+public class ModelRunDataset implements Closeable {
+
+    private static final Logger LOG =
+            LoggerFactory.getLogger(ModelRunDataset.class.getName());
+
+    private static final int MAX_OPEN_FILES =
+            Math.max(1, Integer.getInteger("skewtvsp.run.maxOpenFiles", 4));
+
+    /*
+     * Forecast hour in each naming scheme ModelDataFile understands. Group 1 is the
+     * forecast hour; everything outside it identifies the run.
+     */
+    private static final Pattern[] FORECAST_HOUR_PATTERNS = {
+        // hrrr.t00z.wrfprsf18.grib2
+        Pattern.compile("wrfprsf(\\d{2,3})\\.grib2$"),
+        // rap.t00z.awp130pgrbf05.grib2
+        Pattern.compile("pgrbf(\\d{2,3})\\.grib2$"),
+        // nam.t00z.awphys12.tm00.grib2
+        Pattern.compile("awphys(\\d{2,3})\\.tm00\\.grib2$"),
+        // gfs.t00z.pgrb2.0p25.f006 and GEFS members such as gec00.t00z.pgrb2a.0p50.f006
+        Pattern.compile("\\.pgrb2a?\\.[01]p\\d{2}\\.f(\\d{3})$"),
+        // gfs_4_20240101_0000_006.grb2 and the like from NCEI
+        Pattern.compile("_\\d{8}_\\d{4}_(\\d{3})\\.grb2?$")
+    };
+
+    private final List<Member> members;
+    private final String runName;
+
+    /*
+     * Open members, least recently used first, and number of files being opened. Both
+     * guarded by this.
+     */
+    private final LinkedHashSet<Member> openMembers = new LinkedHashSet<>();
+    private int numOpening = 0;
+    private boolean isClosed = false;
+
+    /**
+     * Create new dataset from the data files making up a forecast run. Files are not
+     * opened.
+     *
+     * @param fileNames path and filename of each data file in run
+     *
+     * @throws IOException forecast hour could not be told from a file's name, or two
+     * files are for the same forecast hour
+     */
+    public ModelRunDataset(List<String> fileNames) throws IOException {
+        if (fileNames.isEmpty()) {
+            throw new IOException("No data files in forecast run");
+        }
+
+        List<Member> indexed = new ArrayList<>(fileNames.size());
+        for (String fileName : fileNames) {
+            int forecastHour = getForecastHour(fileName);
+            if (forecastHour < 0) {
+                throw new IOException("Unable to tell forecast hour of " + fileName);
+            }
+            indexed.add(new Member(fileName, forecastHour));
+        }
+        indexed.sort(Comparator.comparingInt(member -> member.forecastHour));
+
+        for (int index = 1; index < indexed.size(); index++) {
+            if (indexed.get(index).forecastHour == indexed.get(index - 1).forecastHour) {
+                throw new IOException("More than one data file for forecast hour "
+                        + indexed.get(index).forecastHour);
+            }
+        }
+
+        members = Collections.unmodifiableList(indexed);
+        runName = getRunKey(new File(members.get(0).fileName).getName());
+        LOG.debug("Indexed forecast run {}: {} files, hours {} to {}", runName,
+                members.size(), members.get(0).forecastHour,
+                members.get(members.size() - 1).forecastHour);
+    }
+
+    /**
+     * Create dataset for the forecast run a data file belongs to, made up of every file
+     * in the same directory from the same run.
+     *
+     * @param fileName path and filename of any data file in run
+     *
+     * @return forecast run
+     *
+     * @throws IOException forecast hour could not be told from file's name
+     */
+    public static ModelRunDataset forMemberFile(String fileName) throws IOException {
+        File file = new File(fileName).getAbsoluteFile();
+        String runKey = getRunKey(file.getName());
+        if (runKey == null) {
+            throw new IOException("Unable to tell forecast hour of " + fileName);
+        }
+
+        List<String> fileNames = new ArrayList<>();
+        File[] siblings = file.getParentFile().listFiles(File::isFile);
+        if (siblings != null) {
+            for (File sibling : siblings) {
+                if (runKey.equals(getRunKey(sibling.getName()))) {
+                    fileNames.add(sibling.getPath());
+                }
+            }
+        }
+        return new ModelRunDataset(fileNames);
+    }
+
+    /**
+     * Create a dataset for each forecast run found in a directory. Files whose forecast
+     * hour cannot be told from their names are ignored.
+     *
+     * @param directory directory to look in
+     *
+     * @return forecast runs, ordered by name
+     *
+     * @throws IOException directory could not be read
+     */
+    public static List<ModelRunDataset> scanDirectory(File directory) throws IOException {
+        File[] files = directory.listFiles(File::isFile);
+        if (files == null) {
+            throw new IOException("Unable to read directory " + directory);
+        }
+
+        Map<String, List<String>> runs = new LinkedHashMap<>();
+        List<File> sorted = new ArrayList<>(List.of(files));
+        sorted.sort(Comparator.comparing(File::getName));
+        for (File file : sorted) {
+            String runKey = getRunKey(file.getName());
+            if (runKey != null) {
+                runs.computeIfAbsent(runKey, key -> new ArrayList<>())
+                        .add(file.getPath());
+            }
+        }
+
+        List<ModelRunDataset> result = new ArrayList<>(runs.size());
+        for (List<String> fileNames : runs.values()) {
+            result.add(new ModelRunDataset(fileNames));
+        }
+        return result;
+    }
+
+    /**
+     * Returns forecast hour of a data file, told from its name.
+     *
+     * @param fileName path and filename of data file
+     *
+     * @return forecast hour, or -1 if file is not named in a way that is understood
+     */
+    public static int getForecastHour(String fileName) {
+        String name = new File(fileName).getName();
+        for (Pattern pattern : FORECAST_HOUR_PATTERNS) {
+            Matcher matcher = pattern.matcher(name);
+            if (matcher.find()) {
+                return Integer.parseInt(matcher.group(1));
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the name of a data file with its forecast hour taken out, which is the
+     * same for every file in a run.
+     *
+     * @return run key, or null if file is not named in a way that is understood
+     */
+    private static String getRunKey(String name) {
+        for (Pattern pattern : FORECAST_HOUR_PATTERNS) {
+            Matcher matcher = pattern.matcher(name);
+            if (matcher.find()) {
+                return name.substring(0, matcher.start(1)) + "*"
+                        + name.substring(matcher.end(1));
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns name of run, which is the name of its data files with the forecast hour
+     * replaced by an asterisk.
+     *
+     * @return run name
+     */
+    public String getRunName() {
+        return runName;
+    }
+
+    /**
+     * Returns number of times in run.
+     *
+     * @return number of data files
+     */
+    public int getNumTimes() {
+        return members.size();
+    }
+
+    /**
+     * Returns forecast hour of a time in run.
+     *
+     * @param timeIndex index of time, 0 being earliest
+     *
+     * @return forecast hour
+     */
+    public int getForecastHourAt(int timeIndex) {
+        return members.get(timeIndex).forecastHour;
+    }
+
+    /**
+     * Returns forecast hour of every time in run, earliest first.
+     *
+     * @return forecast hours
+     */
+    public int[] getForecastHours() {
+        int[] result = new int[members.size()];
+        for (int index = 0; index < result.length; index++) {
+            result[index] = members.get(index).forecastHour;
+        }
+        return result;
+    }
+
+    /**
+     * Returns index of the time with a given forecast hour.
+     *
+     * @param forecastHour forecast hour
+     *
+     * @return index of time, or -1 if run has no file for that hour
+     */
+    public int getTimeIndex(int forecastHour) {
+        for (int index = 0; index < members.size(); index++) {
+            if (members.get(index).forecastHour == forecastHour) {
+                return index;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns path and filename of data file for a time in run.
+     *
+     * @param timeIndex index of time
+     *
+     * @return path and filename
+     */
+    public String getFileName(int timeIndex) {
+        return members.get(timeIndex).fileName;
+    }
+
+    /**
+     * Returns analysis time of run, opening a data file if none are open.
+     *
+     * @return analysis time
+     *
+     * @throws IOException data file could not be opened
+     */
+    public LocalDateTime getAnalysisTime() throws IOException {
+        return withDataFile(findOpenMember(), ModelDataFile::getAnalysisTime);
+    }
+
+    /**
+     * Returns valid time of a time in run. Valid times are worked out from the analysis
+     * time and forecast hour, so only one file has to be opened.
+     *
+     * @param timeIndex index of time
+     *
+     * @return valid time
+     *
+     * @throws IOException data file could not be opened
+     */
+    public LocalDateTime getValidTime(int timeIndex) throws IOException {
+        return getAnalysisTime().plusHours(members.get(timeIndex).forecastHour);
+    }
+
+    /**
+     * Get nearest XY-coordinates in data grid for a longitude-latitude point. Every file
+     * in a run shares the same grid.
+     *
+     * @param lon longitude in degrees (-180 to 180)
+     * @param lat latitude in degrees (-90 to 90)
+     *
+     * @return int[2]; [0] = x-coordinate, [1] = y-coordinate
+     *
+     * @throws IOException data file could not be opened
+     */
+    public int[] getXYCoordsFromLonLat(double lon, double lat) throws IOException {
+        return withDataFile(findOpenMember(),
+                dataFile -> dataFile.getXYCoordsFromLonLat(lon, lat));
+    }
+
+    /**
+     * Get sounding at an XY-coordinate for one time in run.
+     *
+     * @param timeIndex index of time
+     * @param coordX x-coordinate in data grid
+     * @param coordY y-coordinate in data grid
+     *
+     * @return sounding
+     *
+     * @throws IOException data file could not be opened
+     */
+    public Sounding getSounding(int timeIndex, int coordX, int coordY)
+            throws IOException {
+        return withDataFile(members.get(timeIndex),
+                dataFile -> dataFile.getSounding(coordX, coordY));
+    }
+
+    /**
+     * Get soundings at an XY-coordinate for every time in run. Files are read in
+     * parallel as batch reads on the shared {@link DataReadScheduler}, with no more of
+     * them open at once than allowed.
+     *
+     * @param coordX x-coordinate in data grid
+     * @param coordY y-coordinate in data grid
+     *
+     * @return sounding for each time, earliest first
+     *
+     * @throws IOException a data file could not be opened
+     * @throws InterruptedException interrupted while waiting for reads
+     */
+    public Sounding[] getSoundings(int coordX, int coordY)
+            throws IOException, InterruptedException {
+        long startNanos = System.nanoTime();
+        List<CompletableFuture<Sounding>> futures = new ArrayList<>(members.size());
+
+        for (Member member : members) {
+            futures.add(DataReadScheduler.getShared().submitAndWait(
+                    DataReadScheduler.Priority.BATCH,
+                    () -> withDataFile(member,
+                            dataFile -> dataFile.getSounding(coordX, coordY))));
+        }
+
+        Sounding[] result = new Sounding[members.size()];
+        try {
+            for (int index = 0; index < result.length; index++) {
+                result[index] = futures.get(index).join();
+            }
+        } catch (CompletionException ex) {
+            futures.forEach(future -> future.cancel(false));
+            if (ex.getCause() instanceof IOException) {
+                throw (IOException) ex.getCause();
+            }
+            throw ex;
+        }
+
+        Metrics.timer("run.readColumn").recordSince(startNanos);
+        return result;
+    }
+
+    /**
+     * Closes every open data file. Reads in progress are allowed to finish first.
+     *
+     * @throws IOException a data file could not be closed
+     */
+    @Override
+    public void close() throws IOException {
+        List<ModelDataFile> toClose;
+        synchronized (this) {
+            isClosed = true;
+            while (numOpening > 0
+                    || openMembers.stream().anyMatch(member -> member.numUsers > 0)) {
+                try {
+                    wait();
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+            toClose = new ArrayList<>();
+            for (Member member : openMembers) {
+                toClose.add(member.dataFile);
+                member.dataFile = null;
+            }
+            openMembers.clear();
+        }
+
+        IOException failure = null;
+        for (ModelDataFile dataFile : toClose) {
+            try {
+                dataFile.close();
+            } catch (IOException ex) {
+                failure = ex;
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * Work done with an open data file.
+     *
+     * @param <T> type of result
+     */
+    private interface DataFileWork<T> {
+
+        T call(ModelDataFile dataFile);
+    }
+
+    /**
+     * Opens a member's data file if it is not open, does work with it, and lets it be
+     * closed again once done.
+     */
+    private <T> T withDataFile(Member member, DataFileWork<T> work) throws IOException {
+        ModelDataFile dataFile = acquire(member);
+        try {
+            return work.call(dataFile);
+        } finally {
+            release(member);
+        }
+    }
+
+    /**
+     * Returns most recently used open member, or the first member if none are open.
+     */
+    private synchronized Member findOpenMember() {
+        Member result = members.get(0);
+        for (Member member : openMembers) {
+            result = member;
+        }
+        return result;
+    }
+
+    /**
+     * Mark a member as being read from, opening its data file first if needed. Waits
+     * when as many files are open as allowed and all of them are being read from.
+     */
+    private ModelDataFile acquire(Member member) throws IOException {
+        ModelDataFile toClose = null;
+
+        synchronized (this) {
+            while (true) {
+                if (isClosed) {
+                    throw new IOException("Forecast run has been closed");
+                }
+                if (member.dataFile != null) {
+                    member.numUsers++;
+                    openMembers.remove(member);
+                    openMembers.add(member);
+                    return member.dataFile;
+                }
+                if (!member.isOpening) {
+                    if (openMembers.size() + numOpening < MAX_OPEN_FILES) {
+                        break;
+                    }
+                    Member toEvict = findIdleMember();
+                    if (toEvict != null) {
+                        LOG.debug("Closing {} to make room", toEvict.fileName);
+                        openMembers.remove(toEvict);
+                        toClose = toEvict.dataFile;
+                        toEvict.dataFile = null;
+                        break;
+                    }
+                }
+                try {
+                    wait();
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted waiting to open data file", ex);
+                }
+            }
+            member.isOpening = true;
+            numOpening++;
+        }
+
+        if (toClose != null) {
+            Metrics.counter("run.evictions").increment();
+            try {
+                toClose.close();
+            } catch (IOException ex) {
+                LOG.error("{}\n{}", ex.getLocalizedMessage(), ex.toString());
+            }
+        }
+
+        ModelDataFile opened = null;
+        try {
+            opened = new ModelDataFile(member.fileName);
+            Metrics.counter("run.opens").increment();
+            return opened;
+        } finally {
+            synchronized (this) {
+                member.isOpening = false;
+                numOpening--;
+                if (opened != null) {
+                    member.dataFile = opened;
+                    member.numUsers++;
+                    openMembers.add(member);
+                }
+                notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Mark a member as no longer being read from by one reader.
+     */
+    private synchronized void release(Member member) {
+        member.numUsers--;
+        notifyAll();
+    }
+
+    /**
+     * Returns least recently used open member not being read from, or null if all are
+     * in use. Must hold lock on this.
+     */
+    private Member findIdleMember() {
+        for (Member member : openMembers) {
+            if (member.numUsers == 0) {
+                return member;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Data file for one forecast hour. Fields other than the final ones are guarded by
+     * the dataset.
+     */
+    private static final class Member {
+
+        private final String fileName;
+        private final int forecastHour;
+        private ModelDataFile dataFile = null;
+        private int numUsers = 0;
+        private boolean isOpening = false;
+
+        private Member(String fileName, int forecastHour) {
+            this.fileName = fileName;
+            this.forecastHour = forecastHour;
+        }
+    }
+}
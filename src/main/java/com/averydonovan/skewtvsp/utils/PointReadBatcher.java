@@ -0,0 +1,217 @@
+/*
+ * Copyright (c) 2024, Avery Donovan
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.averydonovan.skewtvsp.utils;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Gathers requests for soundings at different points of the same data file that arrive
+ * within a few milliseconds of each other and reads them together with
+ * {@link ModelDataFile#getSoundings(int[], int[]) getSoundings}, which reads nearby
+ * points as one slab per variable. The first request of a batch waits at most the
+ * batching window for others to join it; a full batch is read straight away.
+ *
+ * <p>
+ * Batched reads are run through the shared {@link DataReadScheduler}.
+ *
+ * @author Avery Donovan
+ */
+public class PointReadBatcher {
+
+    private static final Logger LOG =
+            LoggerFactory.getLogger(PointReadBatcher.class.getName());
+
+    /**
+     * Default batching window, overridable with the skewtvsp.io.batchWindowMillis system
+     * property. A window of 0 turns batching off.
+     */
+    private static final long DEFAULT_WINDOW_MILLIS = 5;
+    /**
+     * Default largest batch, overridable with the skewtvsp.io.maxBatchPoints system
+     * property.
+     */
+    private static final int DEFAULT_MAX_BATCH_POINTS = 64;
+
+    /**
+     * Timer shared by all batchers, which only hands batches over to the read scheduler.
+     */
+    private static final ScheduledExecutorService timer =
+            Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "skewtvsp-batch-timer");
+                thread.setDaemon(true);
+                return thread;
+            });
+
+    private final ModelDataFile dataFile;
+    private final DataReadScheduler.Priority priority;
+    private final long windowMillis;
+    private final int maxBatchPoints;
+
+    private final Object lock = new Object();
+    /**
+     * Requests waiting for the current batch, keyed by grid point so that requests for
+     * the same point are read once.
+     */
+    private Map<Long, CompletableFuture<Sounding>> pending = new LinkedHashMap<>();
+    private ScheduledFuture<?> flushTask = null;
+
+    /**
+     * Create new batcher for a data file, using the default window and batch size.
+     *
+     * @param dataFile data file to read from
+     * @param priority priority to read batches with
+     */
+    public PointReadBatcher(ModelDataFile dataFile, DataReadScheduler.Priority priority) {
+        this(dataFile, priority,
+                Long.getLong("skewtvsp.io.batchWindowMillis", DEFAULT_WINDOW_MILLIS),
+                Integer.getInteger("skewtvsp.io.maxBatchPoints", DEFAULT_MAX_BATCH_POINTS));
+    }
+
+    /**
+     * Create new batcher for a data file.
+     *
+     * @param dataFile data file to read from
+     * @param priority priority to read batches with
+     * @param windowMillis longest time to wait for more requests, in ms
+     * @param maxBatchPoints largest number of points to read in one batch
+     */
+    public PointReadBatcher(ModelDataFile dataFile, DataReadScheduler.Priority priority,
+            long windowMillis, int maxBatchPoints) {
+        this.dataFile = dataFile;
+        this.priority = priority;
+        this.windowMillis = Math.max(0, windowMillis);
+        this.maxBatchPoints = Math.max(1, maxBatchPoints);
+    }
+
+    /**
+     * Request a sounding, to be read along with any other requests arriving within the
+     * batching window.
+     *
+     * @param coordX x-coordinate in data grid
+     * @param coordY y-coordinate in data grid
+     *
+     * @return sounding, once read
+     */
+    public CompletableFuture<Sounding> submit(int coordX, int coordY) {
+        Long key = ((long) coordX << 32) | (coordY & 0xFFFFFFFFL);
+        Map<Long, CompletableFuture<Sounding>> toFlush = null;
+        CompletableFuture<Sounding> result;
+
+        synchronized (lock) {
+            result = pending.computeIfAbsent(key, k -> new CompletableFuture<>());
+
+            if (pending.size() >= maxBatchPoints || windowMillis == 0) {
+                toFlush = takePending();
+            } else if (flushTask == null) {
+                flushTask = timer.schedule(this::flush, windowMillis, TimeUnit.MILLISECONDS);
+            }
+        }
+
+        if (toFlush != null) {
+            doRead(toFlush);
+        }
+        return result;
+    }
+
+    /**
+     * Read whatever is waiting once the batching window has passed.
+     */
+    private void flush() {
+        Map<Long, CompletableFuture<Sounding>> toFlush;
+        synchronized (lock) {
+            toFlush = takePending();
+        }
+        if (!toFlush.isEmpty()) {
+            doRead(toFlush);
+        }
+    }
+
+    /**
+     * Take requests waiting for current batch and start a new one. Must hold lock.
+     */
+    private Map<Long, CompletableFuture<Sounding>> takePending() {
+        Map<Long, CompletableFuture<Sounding>> taken = pending;
+        pending = new LinkedHashMap<>();
+        if (flushTask != null) {
+            flushTask.cancel(false);
+            flushTask = null;
+        }
+        return taken;
+    }
+
+    /**
+     * Hand a batch to the read scheduler and pass the soundings read back to each
+     * request.
+     */
+    private void doRead(Map<Long, CompletableFuture<Sounding>> batch) {
+        int numPoints = batch.size();
+        int[] coordXs = new int[numPoints];
+        int[] coordYs = new int[numPoints];
+        List<CompletableFuture<Sounding>> futures = new ArrayList<>(numPoints);
+
+        int index = 0;
+        for (Map.Entry<Long, CompletableFuture<Sounding>> entry : batch.entrySet()) {
+            coordXs[index] = (int) (entry.getKey() >> 32);
+            coordYs[index] = (int) (long) entry.getKey();
+            futures.add(entry.getValue());
+            index++;
+        }
+
+        CompletableFuture<Sounding[]> read;
+        try {
+            read = DataReadScheduler.getShared().submit(priority,
+                    () -> dataFile.getSoundings(coordXs, coordYs));
+        } catch (RejectedExecutionException ex) {
+            futures.forEach(future -> future.completeExceptionally(ex));
+            return;
+        }
+
+        read.whenComplete((soundings, ex) -> {
+            for (int point = 0; point < numPoints; point++) {
+                if (ex != null) {
+                    futures.get(point).completeExceptionally(ex);
+                } else {
+                    futures.get(point).complete(soundings[point]);
+                }
+            }
+        });
+
+        if (numPoints > 1) {
+            LOG.debug("Batched {} point requests into one read", numPoints);
+        }
+    }
+}
@@ -0,0 +1,571 @@
+/*
+ * Copyright (c) 2024, Avery Donovan
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.averydonovan.skewtvsp.utils;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import ucar.ma2.Array;
+import ucar.ma2.InvalidRangeException;
+import ucar.nc2.NetcdfFile;
+import ucar.nc2.Variable;
+
+/**
+ * Collects reads of many variables and levels that are needed together, such as
+ * everything needed for a sounding, and performs them in a single pass over the data
+ * file. Pending reads are sorted by their position in the file (the order of their
+ * variables in the file, then by level and grid position), reads of the same variable
+ * whose ranges overlap or are adjacent are merged into one, and the merged reads are
+ * then issued in order. This avoids seeking back and forth across large files on slow
+ * or network storage.
+ *
+ * <p>
+ * NetCDF-Java does not expose byte offsets of individual GRIB records, so the order of
+ * variables in the file is used as a stand-in for the order of their records, which
+ * matches how GRIB files written by NOAA models are laid out.
+ *
+ * <p>
+ * A batch can be {@link #reset(NetcdfFile, Object, Map) reset} and used again. Requests
+ * and their value buffers are kept between uses, so a batch that is reused for the same
+ * kind of reads does not allocate anything of its own.
+ *
+ * @author Avery Donovan
+ */
+class RecordReadBatch {
+
+    private static final Logger LOG =
+            LoggerFactory.getLogger(RecordReadBatch.class.getName());
+
+    /**
+     * Largest gap, in elements, between two reads of the same variable that will still
+     * be merged. Overridable with the skewtvsp.io.mergeGap system property.
+     *
+     * <p>
+     * GRIB data is stored as one compressed record per variable and level, and reading
+     * any part of a record decodes all of it. Merging reads therefore saves the cost of
+     * each separate read call, not bytes read. A gap across levels makes the merged read
+     * decode whole records that nobody asked for, and a gap within a level only adds
+     * values to copy out of a record that is decoded anyway, so neither can save any
+     * decoding. Only reads that overlap or touch are merged by default. Compare the
+     * read.batch.requested and read.batch.issued counters, and the per-variable read
+     * timers, to judge a different gap on other storage.
+     */
+    private static final int MERGE_GAP = Integer.getInteger("skewtvsp.io.mergeGap", 0);
+
+    /**
+     * Highest number of dimensions of any variable read.
+     */
+    private static final int MAX_RANK = 4;
+
+    private static final Comparator<Request> FILE_ORDER =
+            Comparator.comparingInt((Request r) -> r.varOrder)
+                    .thenComparing(r -> r.varName).thenComparing(Request::compareOrigin);
+
+    /*
+     * Totals across all batches. Reads requested less reads issued is the number of
+     * separate reads saved by merging.
+     */
+    private static final Metrics.Counter totalRequested =
+            Metrics.counter("read.batch.requested");
+    private static final Metrics.Counter totalIssued = Metrics.counter("read.batch.issued");
+    private static final AtomicLong totalValues = new AtomicLong();
+    private static final AtomicLong totalNanos = new AtomicLong();
+
+    /*
+     * Per-variable read metrics, looked up once per variable name.
+     */
+    private static final Map<String, Metrics.Histogram> readTimers =
+            new ConcurrentHashMap<>();
+    private static final Map<String, Metrics.Counter> readBytes = new ConcurrentHashMap<>();
+
+    private NetcdfFile gribFile;
+    private Object readLock;
+    private Map<String, Integer> variableOrder;
+
+    /**
+     * Requests, with only the first numRequests in use. The rest are kept for reuse.
+     */
+    private final List<Request> requests = new ArrayList<>();
+    private int numRequests = 0;
+    private final List<Request> sorted = new ArrayList<>();
+
+    /*
+     * Scratch space for merging runs of requests.
+     */
+    private final int[] runOrigin = new int[MAX_RANK];
+    private final int[] runShape = new int[MAX_RANK];
+    private final int[] runStrides = new int[MAX_RANK];
+    private final int[] counter = new int[MAX_RANK];
+
+    /**
+     * Create new, empty batch.
+     *
+     * @param gribFile file to read from
+     * @param readLock lock to hold while reading from file
+     * @param variableOrder position of each variable in the file
+     */
+    RecordReadBatch(NetcdfFile gribFile, Object readLock,
+            Map<String, Integer> variableOrder) {
+        reset(gribFile, readLock, variableOrder);
+    }
+
+    /**
+     * Remove all requests from the batch so that it can be used again, possibly for a
+     * different file.
+     *
+     * @param gribFile file to read from
+     * @param readLock lock to hold while reading from file
+     * @param variableOrder position of each variable in the file
+     */
+    void reset(NetcdfFile gribFile, Object readLock, Map<String, Integer> variableOrder) {
+        this.gribFile = gribFile;
+        this.readLock = readLock;
+        this.variableOrder = variableOrder;
+        numRequests = 0;
+    }
+
+    /**
+     * Add a read of a section of a variable to the batch.
+     *
+     * @param varName name of variable to read
+     * @param origin first index of section in each dimension
+     * @param shape length of section in each dimension
+     *
+     * @return handle to retrieve values with after batch is executed
+     */
+    int add(String varName, int[] origin, int[] shape) {
+        Request request = nextRequest(varName, origin.length);
+        System.arraycopy(origin, 0, request.origin, 0, origin.length);
+        System.arraycopy(shape, 0, request.shape, 0, shape.length);
+        return request.handle;
+    }
+
+    /**
+     * Add a read of all isobaric levels of a four-dimensional (time, level, y, x)
+     * variable at an XY-coordinate.
+     *
+     * @param varName name of variable to read
+     * @param coordX x-coordinate in data grid
+     * @param coordY y-coordinate in data grid
+     * @param numLevels number of levels to read
+     *
+     * @return handle to retrieve values with after batch is executed
+     */
+    int addColumn(String varName, int coordX, int coordY, int numLevels) {
+        return addColumnArea(varName, coordX, coordY, 1, 1, numLevels);
+    }
+
+    /**
+     * Add a read of all isobaric levels of a four-dimensional (time, level, y, x)
+     * variable over a rectangular area of the data grid. Values are ordered by level,
+     * then y, then x.
+     *
+     * @param varName name of variable to read
+     * @param coordX x-coordinate of first column in data grid
+     * @param coordY y-coordinate of first row in data grid
+     * @param width number of columns to read
+     * @param height number of rows to read
+     * @param numLevels number of levels to read
+     *
+     * @return handle to retrieve values with after batch is executed
+     */
+    int addColumnArea(String varName, int coordX, int coordY, int width, int height,
+            int numLevels) {
+        Request request = nextRequest(varName, 4);
+        request.set(0, 0, 1);
+        request.set(1, 0, numLevels);
+        request.set(2, coordY, height);
+        request.set(3, coordX, width);
+        return request.handle;
+    }
+
+    /**
+     * Add a read of a single value of a variable at an XY-coordinate and level index.
+     *
+     * @param varName name of variable to read
+     * @param coordX x-coordinate in data grid
+     * @param coordY y-coordinate in data grid
+     * @param coordLvl index of level in data grid, ignored for 2-dimensional variables
+     * @param varDim number of dimensions of variable
+     *
+     * @return handle to retrieve value with after batch is executed
+     */
+    int addPoint(String varName, int coordX, int coordY, int coordLvl, int varDim) {
+        return addArea(varName, coordX, coordY, 1, 1, coordLvl, varDim);
+    }
+
+    /**
+     * Add a read of a variable at one level index over a rectangular area of the data
+     * grid. Values are ordered by y, then x.
+     *
+     * @param varName name of variable to read
+     * @param coordX x-coordinate of first column in data grid
+     * @param coordY y-coordinate of first row in data grid
+     * @param width number of columns to read
+     * @param height number of rows to read
+     * @param coordLvl index of level in data grid, ignored for 2-dimensional variables
+     * @param varDim number of dimensions of variable
+     *
+     * @return handle to retrieve values with after batch is executed
+     */
+    int addArea(String varName, int coordX, int coordY, int width, int height,
+            int coordLvl, int varDim) {
+        Request request;
+        switch (varDim) {
+            case 2:
+                request = nextRequest(varName, 2);
+                break;
+            case 3:
+                request = nextRequest(varName, 3);
+                request.set(0, coordLvl, 1);
+                break;
+            default:
+                request = nextRequest(varName, 4);
+                request.set(0, 0, 1);
+                request.set(1, coordLvl, 1);
+                break;
+        }
+        request.set(request.rank - 2, coordY, height);
+        request.set(request.rank - 1, coordX, width);
+        return request.handle;
+    }
+
+    /**
+     * Perform all reads in the batch.
+     */
+    void execute() {
+        long startNanos = System.nanoTime();
+
+        sorted.clear();
+        for (int index = 0; index < numRequests; index++) {
+            sorted.add(requests.get(index));
+        }
+        sorted.sort(FILE_ORDER);
+
+        int numIssued = 0;
+        long numValues = 0;
+
+        int runStart = 0;
+        while (runStart < numRequests) {
+            Request first = sorted.get(runStart);
+            int rank = first.rank;
+            System.arraycopy(first.origin, 0, runOrigin, 0, rank);
+            System.arraycopy(first.shape, 0, runShape, 0, rank);
+            int mergeDim = -1;
+
+            int runEnd = runStart + 1;
+            while (runEnd < numRequests) {
+                Request next = sorted.get(runEnd);
+                int dim = getMergeDim(mergeDim, first, next);
+                if (dim == -2) {
+                    break;
+                }
+                if (dim >= 0) {
+                    int end = Math.max(runOrigin[dim] + runShape[dim],
+                            next.origin[dim] + next.shape[dim]);
+                    runShape[dim] = end - runOrigin[dim];
+                    mergeDim = dim;
+                }
+                runEnd++;
+            }
+
+            numValues += doReadRun(runStart, runEnd, rank);
+            numIssued++;
+            runStart = runEnd;
+        }
+
+        long elapsedNanos = System.nanoTime() - startNanos;
+
+        totalRequested.add(numRequests);
+        totalIssued.add(numIssued);
+        totalValues.addAndGet(numValues);
+        totalNanos.addAndGet(elapsedNanos);
+
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Read batch: {} requested, {} issued, {} seeks saved, {} values in"
+                    + " {} ms; totals: {} requested, {} issued, {} seeks saved, {} values/s",
+                    numRequests, numIssued, numRequests - numIssued, numValues,
+                    elapsedNanos / 1000000, totalRequested.get(), totalIssued.get(),
+                    totalRequested.get() - totalIssued.get(),
+                    (long) (totalValues.get() / Math.max(totalNanos.get() / 1e9, 1e-9)));
+        }
+    }
+
+    /**
+     * Retrieve values of a read after the batch has been executed.
+     *
+     * @param handle handle returned when read was added
+     *
+     * @return copy of values read, in row-major order, or null if read failed
+     */
+    double[] get(int handle) {
+        Request request = requests.get(handle);
+        if (request.numValues < 0) {
+            return null;
+        }
+        return Arrays.copyOf(request.values, request.numValues);
+    }
+
+    /**
+     * Retrieve a single value of a read after the batch has been executed.
+     *
+     * @param handle handle returned when read was added
+     * @param errorVal value to return if read failed
+     *
+     * @return first value read
+     */
+    double getValue(int handle, double errorVal) {
+        Request request = requests.get(handle);
+        if (request.numValues <= 0) {
+            return errorVal;
+        }
+        return request.values[0];
+    }
+
+    /**
+     * Retrieve one of the values of a read after the batch has been executed.
+     *
+     * @param handle handle returned when read was added
+     * @param index index of value, in row-major order
+     * @param errorVal value to return if read failed
+     *
+     * @return value read
+     */
+    double getValue(int handle, int index, double errorVal) {
+        Request request = requests.get(handle);
+        if (index < 0 || index >= request.numValues) {
+            return errorVal;
+        }
+        return request.values[index];
+    }
+
+    /**
+     * Returns approximate size of this batch in memory, including requests and value
+     * buffers kept for reuse.
+     *
+     * @return approximate size in bytes
+     */
+    long getSizeInBytes() {
+        long result = 64L;
+        for (Request request : requests) {
+            result += 112L + 8L * request.values.length;
+        }
+        return result;
+    }
+
+    /**
+     * Returns next unused request, reusing one from an earlier use of the batch if
+     * available.
+     */
+    private Request nextRequest(String varName, int rank) {
+        Request request;
+        if (numRequests < requests.size()) {
+            request = requests.get(numRequests);
+        } else {
+            request = new Request(numRequests);
+            requests.add(request);
+        }
+        numRequests++;
+
+        request.varName = varName;
+        request.varOrder = variableOrder.getOrDefault(varName, Integer.MAX_VALUE);
+        request.rank = rank;
+        request.numValues = -1;
+        return request;
+    }
+
+    /**
+     * Work out whether a request can be merged into the current run.
+     *
+     * @return dimension along which the run grows, -1 if the request lies entirely within
+     * the run, or -2 if it cannot be merged
+     */
+    private int getMergeDim(int mergeDim, Request first, Request next) {
+        if (!next.varName.equals(first.varName) || next.rank != first.rank) {
+            return -2;
+        }
+
+        int growDim = -1;
+        for (int dim = 0; dim < next.rank; dim++) {
+            int runFirst = runOrigin[dim];
+            int runLast = runOrigin[dim] + runShape[dim];
+            int nextFirst = next.origin[dim];
+            int nextLast = next.origin[dim] + next.shape[dim];
+
+            if (nextFirst >= runFirst && nextLast <= runLast) {
+                continue;
+            }
+            if (growDim != -1 || (mergeDim != -1 && mergeDim != dim)) {
+                return -2;
+            }
+            if (nextFirst < runFirst || nextFirst > runLast + MERGE_GAP) {
+                return -2;
+            }
+            growDim = dim;
+        }
+
+        // Growing along one dimension is only valid if the others match exactly
+        if (growDim != -1) {
+            for (int dim = 0; dim < next.rank; dim++) {
+                if (dim != growDim && (next.origin[dim] != runOrigin[dim]
+                        || next.shape[dim] != runShape[dim])) {
+                    return -2;
+                }
+            }
+        }
+
+        return growDim;
+    }
+
+    /**
+     * Issue one merged read and hand out its values to the requests it covers.
+     *
+     * @return number of values read
+     */
+    private long doReadRun(int runStart, int runEnd, int rank) {
+        String varName = sorted.get(runStart).varName;
+        Array runData = null;
+
+        try {
+            synchronized (readLock) {
+                VariableReadEvent readEvent = new VariableReadEvent();
+                readEvent.begin();
+                long readStartNanos = System.nanoTime();
+                Variable variable = gribFile.findVariable(varName);
+                runData = variable.read(Arrays.copyOf(runOrigin, rank),
+                        Arrays.copyOf(runShape, rank));
+                recordRead(varName, readStartNanos, runData, readEvent);
+            }
+        } catch (IOException | InvalidRangeException | NullPointerException ex) {
+            LOG.error("Can't read variable: {}\n{}", varName, ex.getLocalizedMessage());
+            return 0;
+        }
+
+        // Freshly read arrays are in row-major order
+        runStrides[rank - 1] = 1;
+        for (int dim = rank - 2; dim >= 0; dim--) {
+            runStrides[dim] = runStrides[dim + 1] * runShape[dim + 1];
+        }
+
+        for (int index = runStart; index < runEnd; index++) {
+            Request request = sorted.get(index);
+
+            int numValues = 1;
+            for (int dim = 0; dim < rank; dim++) {
+                numValues *= request.shape[dim];
+                counter[dim] = 0;
+            }
+            if (request.values.length < numValues) {
+                request.values = new double[numValues];
+            }
+
+            for (int elem = 0; elem < numValues; elem++) {
+                int runIndex = 0;
+                for (int dim = 0; dim < rank; dim++) {
+                    runIndex += (request.origin[dim] - runOrigin[dim] + counter[dim])
+                            * runStrides[dim];
+                }
+                request.values[elem] = runData.getDouble(runIndex);
+
+                // Advance to next element, last dimension fastest
+                for (int dim = rank - 1; dim >= 0; dim--) {
+                    counter[dim]++;
+                    if (counter[dim] < request.shape[dim]) {
+                        break;
+                    }
+                    counter[dim] = 0;
+                }
+            }
+            request.numValues = numValues;
+        }
+
+        return runData.getSize();
+    }
+
+    /**
+     * Record the latency of a read of a variable and the number of bytes it decoded in
+     * the {@code read.<variable>} timer and {@code read.<variable>.bytes} counter, and
+     * commit its flight recorder event if it is being recorded.
+     *
+     * @param varName name of variable read
+     * @param startNanos time read started, from {@link System#nanoTime()}
+     * @param data data read, before being reduced
+     * @param event event begun when read started
+     */
+    static void recordRead(String varName, long startNanos, Array data,
+            VariableReadEvent event) {
+        event.end();
+        readTimers.computeIfAbsent(varName, name -> Metrics.timer("read." + name))
+                .recordSince(startNanos);
+        readBytes.computeIfAbsent(varName,
+                name -> Metrics.counter("read." + name + ".bytes")).add(data.getSizeBytes());
+
+        if (event.shouldCommit()) {
+            int[] shape = data.getShape();
+            event.variable = varName;
+            // Variables with levels are (time, level, y, x)
+            event.levels = shape.length == 4 ? shape[1] : 1;
+            event.values = data.getSize();
+            event.bytes = data.getSizeBytes();
+            event.commit();
+        }
+    }
+
+    /**
+     * A single pending read.
+     */
+    private static final class Request {
+
+        private final int handle;
+        private String varName = "";
+        private int varOrder = 0;
+        private int rank = 0;
+        private final int[] origin = new int[MAX_RANK];
+        private final int[] shape = new int[MAX_RANK];
+        private double[] values = new double[1];
+        private int numValues = -1;
+
+        private Request(int handle) {
+            this.handle = handle;
+        }
+
+        private void set(int dim, int first, int length) {
+            origin[dim] = first;
+            shape[dim] = length;
+        }
+
+        private int compareOrigin(Request other) {
+            return Arrays.compare(origin, 0, rank, other.origin, 0, other.rank);
+        }
+    }
+}
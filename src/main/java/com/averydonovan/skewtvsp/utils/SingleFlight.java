@@ -0,0 +1,167 @@
+/*
+ * Copyright (c) 2024, Avery Donovan
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.averydonovan.skewtvsp.utils;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Shares the work of identical requests that are in progress at the same time. The
+ * first caller for a key does the work; anyone asking for the same key before it
+ * finishes waits for that result instead of doing the work again. Once the work
+ * finishes the key is forgotten, so later callers start afresh. Nothing is cached.
+ *
+ * <p>
+ * If the work fails, every caller waiting on it gets the same exception.
+ *
+ * @param <K> type of key identifying identical requests
+ * @param <V> type of result
+ *
+ * @author Avery Donovan
+ */
+public class SingleFlight<K, V> {
+
+    private static final Logger LOG = LoggerFactory.getLogger(SingleFlight.class.getName());
+
+    private final String name;
+    private final ConcurrentHashMap<K, Flight<V>> inFlight = new ConcurrentHashMap<>();
+
+    /*
+     * Statistics.
+     */
+    private final AtomicLong statExecuted = new AtomicLong();
+    private final AtomicLong statShared = new AtomicLong();
+
+    /**
+     * Work whose result can be shared.
+     *
+     * @param <V> type of result
+     * @param <E> type of exception work may throw
+     */
+    public interface Work<V, E extends Exception> {
+
+        /**
+         * Do the work.
+         *
+         * @return result
+         *
+         * @throws E work failed
+         */
+        V call() throws E;
+    }
+
+    /**
+     * Create new instance.
+     *
+     * @param name name used when logging
+     */
+    public SingleFlight(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Do work for a key, or wait for the result of identical work already in progress.
+     *
+     * @param <E> type of exception work may throw
+     * @param key key identifying identical requests
+     * @param work work to do if none is in progress for key
+     *
+     * @return result of work
+     *
+     * @throws E work failed, either in this thread or in the one sharing its result
+     */
+    @SuppressWarnings("unchecked")
+    public <E extends Exception> V run(K key, Work<V, E> work) throws E {
+        Flight<V> flight = new Flight<>();
+        Flight<V> existing = inFlight.putIfAbsent(key, flight);
+
+        if (existing != null) {
+            existing.numWaiting.incrementAndGet();
+            statShared.incrementAndGet();
+            try {
+                return existing.future.join();
+            } catch (CompletionException ex) {
+                Throwable cause = ex.getCause();
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                } else if (cause instanceof Error) {
+                    throw (Error) cause;
+                }
+                // Work only throws E or unchecked exceptions
+                throw (E) cause;
+            }
+        }
+
+        statExecuted.incrementAndGet();
+        try {
+            V result = work.call();
+            flight.future.complete(result);
+            return result;
+        } catch (Exception | Error ex) {
+            flight.future.completeExceptionally(ex);
+            throw ex;
+        } finally {
+            inFlight.remove(key, flight);
+            if (flight.numWaiting.get() > 0) {
+                LOG.debug("{}: shared result for {} with {} waiting request(s)", name, key,
+                        flight.numWaiting.get());
+            }
+        }
+    }
+
+    /**
+     * Returns number of times work was actually done.
+     *
+     * @return number of executions
+     */
+    public long getExecutedCount() {
+        return statExecuted.get();
+    }
+
+    /**
+     * Returns number of requests that were given the result of work already in
+     * progress instead of doing it themselves.
+     *
+     * @return number of shared results
+     */
+    public long getSharedCount() {
+        return statShared.get();
+    }
+
+    /**
+     * Work in progress for one key.
+     */
+    private static final class Flight<V> {
+
+        private final CompletableFuture<V> future = new CompletableFuture<>();
+        private final AtomicInteger numWaiting = new AtomicInteger();
+    }
+}
@@ -0,0 +1,408 @@
+/*
+ * Copyright (c) 2024, Avery Donovan
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.averydonovan.skewtvsp.utils;
+
+import java.time.LocalDateTime;
+import java.util.Arrays;
+
+/**
+ * Holds the data needed to plot a single Skew-T diagram: pressure, temperature, and dew
+ * point for each level (including the surface), along with the surface values and
+ * weather indices shown below the plot. Instances returned by
+ * {@link ModelDataFile#getSounding(int, int) getSounding} are not modified afterwards,
+ * so they can be safely shared between threads, and do not hold on to the scratch space
+ * used while reading them.
+ *
+ * <p>
+ * For reading many soundings, code in this package can create an instance with
+ * {@link #Sounding(int)} and pass it to
+ * {@link ModelDataFile#readSounding(int, int, Sounding) readSounding} over and over. Its
+ * arrays and scratch space are reused, so reading into it allocates next to nothing. The
+ * level arrays may then be longer than the number of levels, so only the first
+ * {@link #getLevelCount()} entries are valid. The arrays returned by the getters are the
+ * sounding's own, so each read overwrites any array taken from it before. Such an
+ * instance must not be kept, shared between threads, or handed out of this package; use
+ * {@link #copy()} instead.
+ *
+ * @author Avery Donovan
+ */
+public class Sounding {
+
+    private static final double[] NO_SCRATCH = new double[0];
+
+    /*
+     * Level data, ordered from lowest to highest pressure.
+     */
+    double[] pressures;
+    double[] temps;
+    double[] dewps;
+    int levelCount = 0;
+
+    /*
+     * Location of data point in data grid.
+     */
+    int coordX = 0;
+    int coordY = 0;
+    double lon = 0;
+    double lat = 0;
+
+    /*
+     * Surface values and weather indices.
+     */
+    double temp2m = 0;
+    double dewp2m = 0;
+    double presSfc = 0;
+    double[] lcl = {0, 0};
+    double msl = 0;
+    double cape = 0;
+    double cin = 0;
+    double lftx = 0;
+    double kIndex = 0;
+    double totalTotals = 0;
+    double sweat = 0;
+
+    LocalDateTime analysisTime = null;
+    LocalDateTime validTime = null;
+    String modelName = "";
+
+    /*
+     * Scratch space used by ModelDataFile while reading, kept so it can be reused.
+     */
+    double[] columnTemps;
+    double[] columnDewps;
+    double[] columnPres;
+    RecordReadBatch readBatch = null;
+    int[] readHandles = new int[ModelDataFile.NUM_READS];
+    /**
+     * U and V wind components at 500hPa, then at 850hPa.
+     */
+    double[] winds = new double[4];
+
+    /**
+     * Create new, empty instance. Only {@link ModelDataFile} fills in the values.
+     */
+    Sounding() {
+        this(0);
+    }
+
+    /**
+     * Create new, empty instance with room for a given number of levels, to be filled in
+     * by {@link ModelDataFile#readSounding(int, int, Sounding) readSounding}. Room is
+     * added as needed if a data file has more levels.
+     *
+     * @param capacity number of isobaric levels to make room for, not including the
+     * surface
+     */
+    Sounding(int capacity) {
+        pressures = new double[capacity + 1];
+        temps = new double[capacity + 1];
+        dewps = new double[capacity + 1];
+        columnTemps = new double[capacity];
+        columnDewps = new double[capacity];
+        columnPres = new double[capacity];
+    }
+
+    /**
+     * Make sure there is room for a given number of isobaric levels.
+     *
+     * @param capacity number of isobaric levels, not including the surface
+     */
+    void ensureCapacity(int capacity) {
+        if (columnTemps.length < capacity) {
+            pressures = new double[capacity + 1];
+            temps = new double[capacity + 1];
+            dewps = new double[capacity + 1];
+            columnTemps = new double[capacity];
+            columnDewps = new double[capacity];
+            columnPres = new double[capacity];
+        }
+    }
+
+    /**
+     * Let go of the scratch space used while reading, including the read batch and its
+     * value buffers, so that a sounding handed out by {@link ModelDataFile} keeps only
+     * its own values. Scratch space is made again if the sounding is read into later.
+     */
+    void releaseScratch() {
+        columnTemps = NO_SCRATCH;
+        columnDewps = NO_SCRATCH;
+        columnPres = NO_SCRATCH;
+        readBatch = null;
+    }
+
+    /**
+     * Create a copy of this sounding, with arrays trimmed to the number of levels and
+     * without scratch space, that can be shared between threads.
+     *
+     * @return new instance
+     */
+    public Sounding copy() {
+        Sounding result = new Sounding();
+        result.pressures = Arrays.copyOf(pressures, levelCount);
+        result.temps = Arrays.copyOf(temps, levelCount);
+        result.dewps = Arrays.copyOf(dewps, levelCount);
+        result.levelCount = levelCount;
+        result.coordX = coordX;
+        result.coordY = coordY;
+        result.lon = lon;
+        result.lat = lat;
+        result.temp2m = temp2m;
+        result.dewp2m = dewp2m;
+        result.presSfc = presSfc;
+        result.lcl = lcl.clone();
+        result.msl = msl;
+        result.cape = cape;
+        result.cin = cin;
+        result.lftx = lftx;
+        result.kIndex = kIndex;
+        result.totalTotals = totalTotals;
+        result.sweat = sweat;
+        result.analysisTime = analysisTime;
+        result.validTime = validTime;
+        result.modelName = modelName;
+        return result;
+    }
+
+    /**
+     * Returns number of levels, including the surface.
+     *
+     * @return number of levels
+     */
+    public int getLevelCount() {
+        return levelCount;
+    }
+
+    /**
+     * Returns pressure of each level. Only the first {@link #getLevelCount()} entries
+     * are valid. The array is the sounding's own and must not be modified.
+     *
+     * @return pressures in Pa
+     */
+    public double[] getPressures() {
+        return pressures;
+    }
+
+    /**
+     * Returns temperature at each level. Only the first {@link #getLevelCount()} entries
+     * are valid. The array is the sounding's own and must not be modified.
+     *
+     * @return temperatures in K
+     */
+    public double[] getTemps() {
+        return temps;
+    }
+
+    /**
+     * Returns dew point at each level. Only the first {@link #getLevelCount()} entries
+     * are valid. The array is the sounding's own and must not be modified.
+     *
+     * @return dew points in K
+     */
+    public double[] getDewps() {
+        return dewps;
+    }
+
+    /**
+     * Returns x-coordinate of data point in data grid.
+     *
+     * @return x-coordinate
+     */
+    public int getCoordX() {
+        return coordX;
+    }
+
+    /**
+     * Returns y-coordinate of data point in data grid.
+     *
+     * @return y-coordinate
+     */
+    public int getCoordY() {
+        return coordY;
+    }
+
+    /**
+     * Returns longitude of data point.
+     *
+     * @return longitude in degrees
+     */
+    public double getLon() {
+        return lon;
+    }
+
+    /**
+     * Returns latitude of data point.
+     *
+     * @return latitude in degrees
+     */
+    public double getLat() {
+        return lat;
+    }
+
+    /**
+     * Returns temperature at 2m above ground level.
+     *
+     * @return temperature in K
+     */
+    public double getTemp2m() {
+        return temp2m;
+    }
+
+    /**
+     * Returns dew point at 2m above ground level.
+     *
+     * @return dew point in K
+     */
+    public double getDewp2m() {
+        return dewp2m;
+    }
+
+    /**
+     * Returns surface pressure.
+     *
+     * @return pressure in Pa
+     */
+    public double getPresSfc() {
+        return presSfc;
+    }
+
+    /**
+     * Returns lifted condensation level (LCL). The array is the sounding's own and must
+     * not be modified.
+     *
+     * @return LCL as double[2]; [0] = pressure in Pa, [1] = temperature in K
+     */
+    public double[] getLCL() {
+        return lcl;
+    }
+
+    /**
+     * Returns mean sea level pressure.
+     *
+     * @return pressure in Pa
+     */
+    public double getMSL() {
+        return msl;
+    }
+
+    /**
+     * Returns convective available potential energy (CAPE).
+     *
+     * @return CAPE in J/kg
+     */
+    public double getCAPE() {
+        return cape;
+    }
+
+    /**
+     * Returns convective inhibition (CIN).
+     *
+     * @return CIN in J/kg
+     */
+    public double getCIN() {
+        return cin;
+    }
+
+    /**
+     * Returns surface lifted index.
+     *
+     * @return lifted index in K
+     */
+    public double getLFTX() {
+        return lftx;
+    }
+
+    /**
+     * Returns K-index (KI).
+     *
+     * @return K-index in K
+     */
+    public double getKIndex() {
+        return kIndex;
+    }
+
+    /**
+     * Returns total totals (TT) index.
+     *
+     * @return total totals in K
+     */
+    public double getTotalTotals() {
+        return totalTotals;
+    }
+
+    /**
+     * Returns SWEAT index.
+     *
+     * @return SWEAT index
+     */
+    public double getSWEAT() {
+        return sweat;
+    }
+
+    /**
+     * Returns analysis time of data file the sounding was read from.
+     *
+     * @return analysis time
+     */
+    public LocalDateTime getAnalysisTime() {
+        return analysisTime;
+    }
+
+    /**
+     * Returns valid time of data file the sounding was read from.
+     *
+     * @return valid time
+     */
+    public LocalDateTime getValidTime() {
+        return validTime;
+    }
+
+    /**
+     * Returns name of model used to generate data file the sounding was read from.
+     *
+     * @return model name
+     */
+    public String getModelName() {
+        return modelName;
+    }
+
+    /**
+     * Returns approximate size of this sounding in memory, including any scratch space
+     * and read batch it holds on to. Used by caches to bound how much memory they hold
+     * on to.
+     *
+     * @return approximate size in bytes
+     */
+    public long getSizeInBytes() {
+        long result = 256L + 2L * modelName.length() + 4L * readHandles.length
+                + 8L * (pressures.length + temps.length + dewps.length + lcl.length
+                        + winds.length + columnTemps.length + columnDewps.length
+                        + columnPres.length);
+        if (readBatch != null) {
+            result += readBatch.getSizeInBytes();
+        }
+        return result;
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright (c) 2024, Avery Donovan
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.averydonovan.skewtvsp.utils;
+
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+
+/**
+ * Measures how much memory is allocated on the Java heap for each sounding read from a
+ * data file, comparing {@link ModelDataFile#getSounding(int, int)}, which creates a new
+ * sounding every time, against {@link ModelDataFile#readSounding(int, int, Sounding)}
+ * reading over and over into the same sounding.
+ *
+ * <p>
+ * Usage: SoundingAllocationBenchmark DATA_FILE [ITERATIONS]
+ *
+ * <p>
+ * Points are picked at random from the middle of the grid with a fixed seed, so runs
+ * are comparable. Each way of reading is warmed up first so that class loading and
+ * compilation aren't counted. Allocation is counted for the calling thread only, so
+ * reads are made on it rather than through the scheduler.
+ *
+ * @author Avery Donovan
+ */
+public class SoundingAllocationBenchmark {
+
+    private static final int DEFAULT_ITERATIONS = 2000;
+
+    private static final int WARM_UP_ITERATIONS = 500;
+
+    private static final long SEED = 42;
+
+    private static volatile double sink = 0;
+
+    private SoundingAllocationBenchmark() {
+        // Only static methods
+    }
+
+    /**
+     * Run the benchmark and print bytes allocated per sounding for each way of reading.
+     *
+     * @param args data file and, optionally, number of soundings to read each way
+     *
+     * @throws Exception if the data file can't be read
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.err.println("Usage: SoundingAllocationBenchmark DATA_FILE [ITERATIONS]");
+            System.exit(1);
+        }
+        int iterations = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_ITERATIONS;
+
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        if (!threads.isThreadAllocatedMemorySupported()) {
+            System.err.println("Thread allocation counting isn't supported by this JVM");
+            System.exit(1);
+        }
+        threads.setThreadAllocatedMemoryEnabled(true);
+
+        ModelDataFile dataFile = new ModelDataFile(args[0]);
+        try {
+            int[][] points = getPoints(dataFile, iterations);
+            Sounding reused = new Sounding(dataFile.getLevelAxis().size());
+
+            runFresh(dataFile, points, WARM_UP_ITERATIONS);
+            runReused(dataFile, points, reused, WARM_UP_ITERATIONS);
+
+            long threadId = Thread.currentThread().threadId();
+            long start = threads.getThreadAllocatedBytes(threadId);
+            runFresh(dataFile, points, iterations);
+            long fresh = threads.getThreadAllocatedBytes(threadId) - start;
+
+            start = threads.getThreadAllocatedBytes(threadId);
+            runReused(dataFile, points, reused, iterations);
+            long reuse = threads.getThreadAllocatedBytes(threadId) - start;
+
+            System.out.printf("Soundings read each way: %d%n", iterations);
+            System.out.printf("getSounding:              %,d bytes/sounding%n",
+                    fresh / iterations);
+            System.out.printf("readSounding (reused):    %,d bytes/sounding%n",
+                    reuse / iterations);
+        } finally {
+            dataFile.close();
+        }
+    }
+
+    private static int[][] getPoints(ModelDataFile dataFile, int count) {
+        int width = dataFile.getGridWidth();
+        int height = dataFile.getGridHeight();
+        Random random = new Random(SEED);
+        int[][] points = new int[count][2];
+        for (int i = 0; i < count; i++) {
+            points[i][0] = width / 4 + random.nextInt(Math.max(1, width / 2));
+            points[i][1] = height / 4 + random.nextInt(Math.max(1, height / 2));
+        }
+        return points;
+    }
+
+    private static void runFresh(ModelDataFile dataFile, int[][] points, int count) {
+        for (int i = 0; i < count; i++) {
+            int[] point = points[i % points.length];
+            sink += dataFile.getSounding(point[0], point[1]).getCAPE();
+        }
+    }
+
+    private static void runReused(ModelDataFile dataFile, int[][] points, Sounding reused,
+            int count) {
+        for (int i = 0; i < count; i++) {
+            int[] point = points[i % points.length];
+            dataFile.readSounding(point[0], point[1], reused);
+            sink += reused.getCAPE();
+        }
+    }
+}
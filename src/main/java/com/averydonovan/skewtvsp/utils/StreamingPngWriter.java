@@ -0,0 +1,261 @@
+/*
+ * Copyright (c) 2024, Avery Donovan
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.averydonovan.skewtvsp.utils;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Writes a PNG image a few rows at a time, so that images far larger than would fit in
+ * memory can be written as they are rendered. Rows are written as 8-bit RGB with the
+ * Sub filter, which suits plots made of thin lines on a plain background, and
+ * compressed data is written out in IDAT chunks as it is produced.
+ *
+ * @author Avery Donovan
+ */
+public class StreamingPngWriter implements Closeable {
+
+    static final byte[] SIGNATURE = {
+        (byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'
+    };
+
+    /**
+     * Largest IDAT chunk written.
+     */
+    static final int MAX_CHUNK_SIZE = 1 << 16;
+
+    private static final double METERS_PER_INCH = 0.0254;
+
+    private final OutputStream out;
+    private final int width;
+    private final int height;
+    private final Deflater deflater;
+    private final DeflaterOutputStream compressed;
+    private final byte[] rowBytes;
+    private int rowsWritten = 0;
+    private boolean closed = false;
+
+    /**
+     * Start writing a PNG image. The output stream is closed when the writer is.
+     *
+     * @param out stream to write to
+     * @param width width in pixels
+     * @param height height in pixels
+     * @param dpi resolution to record in the image, or 0 to leave it out
+     *
+     * @throws IOException unable to write
+     */
+    public StreamingPngWriter(OutputStream out, int width, int height, int dpi)
+            throws IOException {
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException(
+                    "Invalid image size " + width + "x" + height);
+        }
+
+        this.out = out;
+        this.width = width;
+        this.height = height;
+
+        writeHeader(out, width, height);
+
+        if (dpi > 0) {
+            int pixelsPerMeter = (int) Math.round(dpi / METERS_PER_INCH);
+            byte[] physical = new byte[9];
+            putInt(physical, 0, pixelsPerMeter);
+            putInt(physical, 4, pixelsPerMeter);
+            physical[8] = 1; // Meters
+            writeChunk(out, "pHYs", physical, 0, physical.length);
+        }
+
+        deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+        compressed = new DeflaterOutputStream(new ChunkOutputStream(), deflater,
+                MAX_CHUNK_SIZE);
+        rowBytes = new byte[1 + 3 * width];
+    }
+
+    /**
+     * Write the next rows of the image.
+     *
+     * @param pixels pixels as 0xAARRGGBB; alpha is ignored
+     * @param offset index in pixels of first pixel of first row
+     * @param scanline distance in pixels between the start of one row and the next
+     * @param numRows number of rows to write
+     *
+     * @throws IOException unable to write, or more rows written than the image has
+     */
+    public void writeRows(int[] pixels, int offset, int scanline, int numRows)
+            throws IOException {
+        if (rowsWritten + numRows > height) {
+            throw new IOException("Image only has " + height + " rows");
+        }
+
+        for (int row = 0; row < numRows; row++) {
+            filterRow(pixels, offset + row * scanline, width, rowBytes);
+            compressed.write(rowBytes);
+        }
+        rowsWritten += numRows;
+    }
+
+    /**
+     * Finish the image and close the output stream.
+     *
+     * @throws IOException unable to write, or not every row was written
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+
+        try {
+            compressed.finish();
+            deflater.end();
+            writeChunk(out, "IEND", new byte[0], 0, 0);
+        } finally {
+            out.close();
+        }
+
+        if (rowsWritten != height) {
+            throw new IOException("Only " + rowsWritten + " of " + height
+                    + " rows written");
+        }
+    }
+
+    /**
+     * Write PNG signature and header for an 8-bit RGB image.
+     *
+     * @param out stream to write to
+     * @param width width in pixels
+     * @param height height in pixels
+     *
+     * @throws IOException unable to write
+     */
+    static void writeHeader(OutputStream out, int width, int height) throws IOException {
+        out.write(SIGNATURE);
+
+        byte[] header = new byte[13];
+        putInt(header, 0, width);
+        putInt(header, 4, height);
+        header[8] = 8;  // Bits per sample
+        header[9] = 2;  // Truecolor
+        header[10] = 0; // Deflate
+        header[11] = 0; // Adaptive filtering
+        header[12] = 0; // Not interlaced
+        writeChunk(out, "IHDR", header, 0, header.length);
+    }
+
+    /**
+     * Convert a row of pixels to 8-bit RGB bytes with the Sub filter, ready to be
+     * compressed.
+     *
+     * @param pixels pixels as 0xAARRGGBB; alpha is ignored
+     * @param start index in pixels of first pixel of row
+     * @param numPixels number of pixels in row
+     * @param rowBytes filled with filter type and filtered bytes; 1 + 3 * numPixels
+     */
+    static void filterRow(int[] pixels, int start, int numPixels, byte[] rowBytes) {
+        rowBytes[0] = 1; // Sub filter
+        int prevR = 0;
+        int prevG = 0;
+        int prevB = 0;
+        for (int col = 0; col < numPixels; col++) {
+            int pixel = pixels[start + col];
+            int r = (pixel >> 16) & 0xFF;
+            int g = (pixel >> 8) & 0xFF;
+            int b = pixel & 0xFF;
+            int index = 1 + 3 * col;
+            rowBytes[index] = (byte) (r - prevR);
+            rowBytes[index + 1] = (byte) (g - prevG);
+            rowBytes[index + 2] = (byte) (b - prevB);
+            prevR = r;
+            prevG = g;
+            prevB = b;
+        }
+    }
+
+    /**
+     * Write a chunk, adding its length and CRC.
+     *
+     * @param out stream to write to
+     * @param type chunk type
+     * @param data chunk data
+     * @param offset index in data of first byte
+     * @param length number of bytes of data
+     *
+     * @throws IOException unable to write
+     */
+    static void writeChunk(OutputStream out, String type, byte[] data, int offset,
+            int length) throws IOException {
+        byte[] typeBytes = type.getBytes(StandardCharsets.US_ASCII);
+        byte[] lengthBytes = new byte[4];
+        putInt(lengthBytes, 0, length);
+
+        CRC32 crc = new CRC32();
+        crc.update(typeBytes);
+        crc.update(data, offset, length);
+        byte[] crcBytes = new byte[4];
+        putInt(crcBytes, 0, (int) crc.getValue());
+
+        out.write(lengthBytes);
+        out.write(typeBytes);
+        out.write(data, offset, length);
+        out.write(crcBytes);
+    }
+
+    static void putInt(byte[] bytes, int offset, int value) {
+        bytes[offset] = (byte) (value >>> 24);
+        bytes[offset + 1] = (byte) (value >>> 16);
+        bytes[offset + 2] = (byte) (value >>> 8);
+        bytes[offset + 3] = (byte) value;
+    }
+
+    /**
+     * Writes compressed image data out as IDAT chunks.
+     */
+    private class ChunkOutputStream extends OutputStream {
+
+        @Override
+        public void write(int value) throws IOException {
+            write(new byte[] {(byte) value}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] data, int offset, int length) throws IOException {
+            while (length > 0) {
+                int chunkLength = Math.min(length, MAX_CHUNK_SIZE);
+                writeChunk(out, "IDAT", data, offset, chunkLength);
+                offset += chunkLength;
+                length -= chunkLength;
+            }
+        }
+    }
+}
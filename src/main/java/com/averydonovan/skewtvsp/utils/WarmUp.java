@@ -0,0 +1,154 @@
+/*
+ * Copyright (c) 2024, Avery Donovan
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.averydonovan.skewtvsp.utils;
+
+import java.lang.management.ManagementFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Warms up code paths that are slow the first time they run, on a background thread
+ * at launch, so that the first data file opened and the first plot drawn don't pay for
+ * class loading and interpretation. Loads NetCDF-Java's GRIB readers and exercises the
+ * thermodynamics calculations until they are compiled.
+ *
+ * <p>
+ * Warm-up can be turned off by setting the skewtvsp.warmup system property to false.
+ *
+ * @author Avery Donovan
+ */
+public class WarmUp {
+
+    private static final Logger LOG = LoggerFactory.getLogger(WarmUp.class.getName());
+
+    /**
+     * Classes loaded and initialized the first time a GRIB file is opened.
+     */
+    private static final String[] NETCDF_CLASSES = {
+        "ucar.nc2.dataset.NetcdfDatasets",
+        "ucar.nc2.NetcdfFiles",
+        "ucar.nc2.grib.collection.Grib1Iosp",
+        "ucar.nc2.grib.collection.Grib2Iosp",
+        "ucar.nc2.grib.grib1.Grib1RecordScanner",
+        "ucar.nc2.grib.grib2.Grib2RecordScanner",
+        "ucar.nc2.grib.grib2.table.Grib2Tables",
+        "ucar.nc2.dt.grid.GridDataset",
+        "ucar.unidata.geoloc.LatLonPointImpl"
+    };
+
+    /**
+     * Number of times thermodynamics calculations are run, enough for the JIT compiler
+     * to compile them.
+     */
+    private static final int THERMO_ITERATIONS = 20000;
+
+    private static volatile double sink = 0;
+
+    private WarmUp() {
+        // Only static methods
+    }
+
+    /**
+     * Start warming up on a low-priority daemon thread, unless turned off.
+     */
+    public static void start() {
+        if (!Boolean.parseBoolean(System.getProperty("skewtvsp.warmup", "true"))) {
+            LOG.debug("Warm-up turned off");
+            return;
+        }
+
+        Thread thread = new Thread(WarmUp::run, "skewtvsp-warmup");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        thread.start();
+    }
+
+    /**
+     * Get milliseconds since the JVM was launched, for logging how long startup took.
+     *
+     * @return milliseconds since launch
+     */
+    public static long getMillisSinceLaunch() {
+        return ManagementFactory.getRuntimeMXBean().getUptime();
+    }
+
+    private static void run() {
+        long startNanos = System.nanoTime();
+
+        int numLoaded = 0;
+        for (String className : NETCDF_CLASSES) {
+            try {
+                Class.forName(className, true, WarmUp.class.getClassLoader());
+                numLoaded++;
+            } catch (ClassNotFoundException | LinkageError ex) {
+                LOG.debug("Unable to load {} for warm-up: {}", className, ex.toString());
+            }
+        }
+        long netcdfNanos = System.nanoTime() - startNanos;
+
+        warmUpThermo();
+        long thermoNanos = System.nanoTime() - startNanos - netcdfNanos;
+
+        LOG.info("Warm-up done {} ms after launch: {} NetCDF classes in {} ms,"
+                + " thermodynamics in {} ms", getMillisSinceLaunch(), numLoaded,
+                netcdfNanos / 1000000, thermoNanos / 1000000);
+    }
+
+    /**
+     * Run the calculations used for soundings and plots on a typical column.
+     */
+    private static void warmUpThermo() {
+        int numLevels = 40;
+        double[] temps = new double[numLevels];
+        double[] pres = new double[numLevels];
+        double[] rhs = new double[numLevels];
+        double[] dewps = new double[numLevels];
+        double[] lcl = new double[2];
+        double total = 0;
+
+        for (int level = 0; level < numLevels; level++) {
+            pres[level] = 100000 - level * 2250;
+            temps[level] = 300 - level * 2;
+            rhs[level] = 90 - level * 2;
+        }
+
+        for (int iteration = 0; iteration < THERMO_ITERATIONS; iteration++) {
+            // Scalar form, so warm-up doesn't show up in batch metrics
+            for (int level = 0; level < numLevels; level++) {
+                dewps[level] = AtmosThermoMath.calcDewp(temps[level], pres[level],
+                        rhs[level]);
+            }
+            AtmosThermoMath.calcLCL(temps[0], dewps[0], pres[0], lcl);
+            double os = AtmosThermoMath.calcSatPotTemp(lcl[1], lcl[0]);
+            total += AtmosThermoMath.calcTempSatAdiabat(os, pres[numLevels / 2]);
+            total += AtmosThermoMath.calcTempAtMixingRatio(8, pres[iteration % numLevels]);
+            total += AtmosThermoMath.calcTempFromPot(os, pres[numLevels - 1]);
+        }
+
+        // Keep results so the calculations aren't optimized away
+        sink = total;
+    }
+}
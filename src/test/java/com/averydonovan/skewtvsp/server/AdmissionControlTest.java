@@ -0,0 +1,97 @@
+/*
+ * Copyright (c) 2024, Avery Donovan
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.averydonovan.skewtvsp.server;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests for {@link AdmissionControl}.
+ *
+ * @author Avery Donovan
+ */
+public class AdmissionControlTest {
+
+    private static final long BUDGET_NANOS = TimeUnit.SECONDS.toNanos(2);
+    private static final long SLOW_NANOS = TimeUnit.SECONDS.toNanos(20);
+
+    /**
+     * A tier that is too slow for the budget should be skipped, and cheaper ones used.
+     */
+    @Test
+    public void slowTierIsSkipped() {
+        AdmissionControl admission = new AdmissionControl(4, 4);
+        assertEquals(QualityTier.FULL,
+                admission.chooseTier(QualityTier.FULL, BUDGET_NANOS));
+
+        admission.record(QualityTier.FULL, SLOW_NANOS);
+        assertEquals(QualityTier.REDUCED,
+                admission.chooseTier(QualityTier.FULL, BUDGET_NANOS));
+    }
+
+    /**
+     * A tier skipped after one slow render should be tried again once its average has
+     * faded, even though skipping it means nothing new is recorded for it.
+     */
+    @Test
+    public void skippedTierIsTriedAgainOnceAverageFades() throws InterruptedException {
+        long halfLifeNanos = TimeUnit.MILLISECONDS.toNanos(20);
+        AdmissionControl admission = new AdmissionControl(4, 4, halfLifeNanos);
+
+        admission.record(QualityTier.FULL, SLOW_NANOS);
+        assertEquals(QualityTier.REDUCED,
+                admission.chooseTier(QualityTier.FULL, BUDGET_NANOS));
+        admission.record(QualityTier.REDUCED, TimeUnit.MILLISECONDS.toNanos(100));
+
+        // 20s fades below the 2s budget after a bit over three half-lives
+        TimeUnit.NANOSECONDS.sleep(10 * halfLifeNanos);
+        assertEquals(QualityTier.FULL,
+                admission.chooseTier(QualityTier.FULL, BUDGET_NANOS));
+    }
+
+    /**
+     * The retry hint should come down as averages fade rather than staying at the
+     * slowest time ever seen.
+     */
+    @Test
+    public void retryAfterFallsAsAverageFades() throws InterruptedException {
+        long halfLifeNanos = TimeUnit.MILLISECONDS.toNanos(20);
+        AdmissionControl admission = new AdmissionControl(1, 4, halfLifeNanos);
+        assertTrue(admission.admit());
+        try {
+            admission.record(QualityTier.FULL, SLOW_NANOS);
+            assertTrue(admission.getRetryAfterSeconds() >= 10);
+
+            TimeUnit.NANOSECONDS.sleep(10 * halfLifeNanos);
+            assertEquals(1, admission.getRetryAfterSeconds());
+        } finally {
+            admission.release();
+        }
+    }
+}
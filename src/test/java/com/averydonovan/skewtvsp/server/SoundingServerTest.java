@@ -0,0 +1,144 @@
+/*
+ * Copyright (c) 2024, Avery Donovan
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.averydonovan.skewtvsp.server;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.averydonovan.skewtvsp.utils.ModelDataFile;
+import com.averydonovan.skewtvsp.utils.StubModelDataFile;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests for {@link SoundingServer}, serving a stand-in data file.
+ *
+ * @author Avery Donovan
+ */
+public class SoundingServerTest {
+
+    private static final int NUM_REQUESTS = 8;
+    private static final long TIMEOUT_SECONDS = 30;
+    private static final Pattern RESPONSES_SHARED =
+            Pattern.compile("\"responsesShared\":(\\d+)");
+
+    private StubModelDataFile dataFile;
+    private SoundingServer server;
+    private HttpClient client;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        // Let every request in at once, however few processors there are
+        System.setProperty("skewtvsp.server.maxConcurrent", String.valueOf(NUM_REQUESTS));
+
+        dataFile = new StubModelDataFile(true);
+        server = new SoundingServer(0, Map.<String, ModelDataFile>of("test", dataFile));
+        server.start();
+        client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(TIMEOUT_SECONDS))
+                .build();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        dataFile.release();
+        server.stop();
+        System.clearProperty("skewtvsp.server.maxConcurrent");
+    }
+
+    /**
+     * Identical plot requests arriving together should read and render once, with
+     * every request getting the same image.
+     */
+    @Test
+    public void identicalPlotRequestsShareOneRender() throws Exception {
+        URI plotUri = getUri("/plot?format=png&lon=-100&lat=40");
+
+        List<CompletableFuture<HttpResponse<byte[]>>> futures = new ArrayList<>();
+        for (int request = 0; request < NUM_REQUESTS; request++) {
+            futures.add(client.sendAsync(HttpRequest.newBuilder(plotUri).build(),
+                    HttpResponse.BodyHandlers.ofByteArray()));
+        }
+
+        // Hold the read until every other request is waiting on the one doing the work
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(TIMEOUT_SECONDS);
+        while (getResponsesShared() < NUM_REQUESTS - 1) {
+            assertTrue(System.nanoTime() < deadline,
+                    "Only " + getResponsesShared() + " request(s) shared a response");
+            Thread.sleep(10);
+        }
+        dataFile.release();
+
+        byte[] firstBody = null;
+        for (CompletableFuture<HttpResponse<byte[]>> future : futures) {
+            HttpResponse<byte[]> response = future.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            assertEquals(200, response.statusCode());
+            assertEquals("image/png",
+                    response.headers().firstValue("Content-Type").orElse(""));
+            assertEquals("FULL",
+                    response.headers().firstValue("X-Quality-Tier").orElse(""));
+            if (firstBody == null) {
+                firstBody = response.body();
+            } else {
+                assertArrayEquals(firstBody, response.body());
+            }
+        }
+
+        assertEquals(1, dataFile.getReadCount());
+        assertEquals(NUM_REQUESTS - 1, getResponsesShared());
+    }
+
+    private URI getUri(String pathAndQuery) {
+        return URI.create("http://localhost:" + server.getPort() + pathAndQuery);
+    }
+
+    /**
+     * Get number of requests given a response already being built, from /stats.
+     */
+    private long getResponsesShared() throws Exception {
+        HttpResponse<String> response = client.send(
+                HttpRequest.newBuilder(getUri("/stats")).build(),
+                HttpResponse.BodyHandlers.ofString());
+        Matcher matcher = RESPONSES_SHARED.matcher(response.body());
+        assertTrue(matcher.find(), "No responsesShared in " + response.body());
+        return Long.parseLong(matcher.group(1));
+    }
+}
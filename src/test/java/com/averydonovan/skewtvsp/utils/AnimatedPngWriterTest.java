@@ -0,0 +1,225 @@
+/*
+ * Copyright (c) 2024, Avery Donovan
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.averydonovan.skewtvsp.utils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.Inflater;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests for {@link AnimatedPngWriter}, checking the chunks it writes against the APNG
+ * layout.
+ *
+ * @author Avery Donovan
+ */
+public class AnimatedPngWriterTest {
+
+    private static final int WIDTH = 20;
+    private static final int HEIGHT = 10;
+    private static final int DELAY_MILLIS = 250;
+
+    private static final byte[] PNG_SIGNATURE =
+        {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'};
+
+    /**
+     * One chunk read back from the image.
+     */
+    private static class Chunk {
+
+        final String type;
+        final ByteBuffer data;
+
+        Chunk(String type, byte[] data) {
+            this.type = type;
+            this.data = ByteBuffer.wrap(data);
+        }
+    }
+
+    /**
+     * Frames should be numbered in one sequence with the data chunks that follow them,
+     * and each frame after the first should hold only the pixels that changed.
+     */
+    @Test
+    public void framesHoldOnlyChangedPixels() throws Exception {
+        int[] first = new int[WIDTH * HEIGHT];
+        Arrays.fill(first, 0xFFFFFFFF);
+        int[] second = first.clone();
+        second[2 * WIDTH + 3] = 0xFFFF0000;
+        second[4 * WIDTH + 7] = 0xFF0000FF;
+        // Only alpha differs, which the image doesn't keep
+        int[] third = second.clone();
+        third[5 * WIDTH + 5] = 0x00FFFFFF;
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (AnimatedPngWriter writer = new AnimatedPngWriter(out, WIDTH, HEIGHT, 3, 0)) {
+            writer.writeFrame(AnimatedPngWriter.encodeFrame(first, null, WIDTH, HEIGHT),
+                    DELAY_MILLIS);
+            writer.writeFrame(AnimatedPngWriter.encodeFrame(second, first, WIDTH, HEIGHT),
+                    DELAY_MILLIS);
+            writer.writeFrame(AnimatedPngWriter.encodeFrame(third, second, WIDTH, HEIGHT),
+                    DELAY_MILLIS);
+        }
+        List<Chunk> chunks = readChunks(out.toByteArray());
+
+        List<String> types = new ArrayList<>();
+        for (Chunk chunk : chunks) {
+            types.add(chunk.type);
+        }
+        assertEquals(List.of("IHDR", "acTL", "fcTL", "IDAT", "fcTL", "fdAT", "fcTL",
+                "fdAT", "IEND"), types);
+
+        ByteBuffer header = chunks.get(0).data;
+        assertEquals(WIDTH, header.getInt(0));
+        assertEquals(HEIGHT, header.getInt(4));
+        ByteBuffer control = chunks.get(1).data;
+        assertEquals(3, control.getInt(0));
+        assertEquals(0, control.getInt(4));
+
+        assertFrameControl(chunks.get(2).data, 0, 0, 0, WIDTH, HEIGHT);
+        assertFrameControl(chunks.get(4).data, 1, 3, 2, 5, 3);
+        assertEquals(2, chunks.get(5).data.getInt(0));
+        // Nothing visible changed, so the frame is a single pixel
+        assertFrameControl(chunks.get(6).data, 3, 0, 0, 1, 1);
+        assertEquals(4, chunks.get(7).data.getInt(0));
+
+        int[] region = decodeRegion(chunks.get(5).data, 4, 5, 3);
+        for (int row = 0; row < 3; row++) {
+            for (int col = 0; col < 5; col++) {
+                assertEquals(second[(2 + row) * WIDTH + 3 + col] & 0xFFFFFF,
+                        region[row * 5 + col]);
+            }
+        }
+    }
+
+    /**
+     * Writing too many or too few frames, or a first frame that doesn't cover the whole
+     * image, should fail rather than leave a broken image.
+     */
+    @Test
+    public void wrongFramesAreRefused() throws Exception {
+        int[] pixels = new int[WIDTH * HEIGHT];
+        int[] changed = pixels.clone();
+        changed[0] = 0xFFFFFFFF;
+        AnimatedPngWriter.Frame full =
+                AnimatedPngWriter.encodeFrame(pixels, null, WIDTH, HEIGHT);
+        AnimatedPngWriter.Frame partial =
+                AnimatedPngWriter.encodeFrame(changed, pixels, WIDTH, HEIGHT);
+
+        AnimatedPngWriter partialFirst =
+                new AnimatedPngWriter(new ByteArrayOutputStream(), WIDTH, HEIGHT, 1, 0);
+        assertThrows(IllegalArgumentException.class,
+                () -> partialFirst.writeFrame(partial, DELAY_MILLIS));
+
+        AnimatedPngWriter tooMany =
+                new AnimatedPngWriter(new ByteArrayOutputStream(), WIDTH, HEIGHT, 1, 0);
+        tooMany.writeFrame(full, DELAY_MILLIS);
+        assertThrows(IOException.class, () -> tooMany.writeFrame(partial, DELAY_MILLIS));
+        tooMany.close();
+
+        AnimatedPngWriter tooFew =
+                new AnimatedPngWriter(new ByteArrayOutputStream(), WIDTH, HEIGHT, 2, 0);
+        tooFew.writeFrame(full, DELAY_MILLIS);
+        assertThrows(IOException.class, tooFew::close);
+    }
+
+    /**
+     * Split an image into its chunks, checking the signature and every CRC.
+     */
+    private static List<Chunk> readChunks(byte[] image) {
+        assertTrue(Arrays.equals(PNG_SIGNATURE, Arrays.copyOf(image, 8)),
+                "Missing PNG signature");
+        ByteBuffer buffer = ByteBuffer.wrap(image, 8, image.length - 8);
+        List<Chunk> chunks = new ArrayList<>();
+        while (buffer.hasRemaining()) {
+            int length = buffer.getInt();
+            byte[] typeAndData = new byte[4 + length];
+            buffer.get(typeAndData);
+            CRC32 crc = new CRC32();
+            crc.update(typeAndData);
+            assertEquals(crc.getValue(), buffer.getInt() & 0xFFFFFFFFL);
+            chunks.add(new Chunk(new String(typeAndData, 0, 4, StandardCharsets.US_ASCII),
+                    Arrays.copyOfRange(typeAndData, 4, typeAndData.length)));
+        }
+        return chunks;
+    }
+
+    /**
+     * Check the sequence number, region and delay of a frame.
+     */
+    private static void assertFrameControl(ByteBuffer control, int sequenceNumber, int x,
+            int y, int width, int height) {
+        assertEquals(sequenceNumber, control.getInt(0));
+        assertEquals(width, control.getInt(4));
+        assertEquals(height, control.getInt(8));
+        assertEquals(x, control.getInt(12));
+        assertEquals(y, control.getInt(16));
+        assertEquals(DELAY_MILLIS, control.getShort(20));
+        assertEquals(1000, control.getShort(22));
+    }
+
+    /**
+     * Inflate a frame's pixels and undo the Sub filter of each row.
+     *
+     * @return pixels as 0xRRGGBB
+     */
+    private static int[] decodeRegion(ByteBuffer data, int offset, int width, int height)
+            throws Exception {
+        Inflater inflater = new Inflater();
+        inflater.setInput(data.array(), offset, data.capacity() - offset);
+        byte[] rows = new byte[height * (1 + 3 * width)];
+        assertEquals(rows.length, inflater.inflate(rows));
+        assertTrue(inflater.finished());
+        inflater.end();
+
+        int[] pixels = new int[width * height];
+        for (int row = 0; row < height; row++) {
+            int start = row * (1 + 3 * width);
+            assertEquals(1, rows[start]);
+            int[] previous = new int[3];
+            for (int col = 0; col < width; col++) {
+                int pixel = 0;
+                for (int channel = 0; channel < 3; channel++) {
+                    int index = start + 1 + 3 * col + channel;
+                    previous[channel] = (previous[channel] + rows[index]) & 0xFF;
+                    pixel = (pixel << 8) | previous[channel];
+                }
+                pixels[row * width + col] = pixel;
+            }
+        }
+        return pixels;
+    }
+}
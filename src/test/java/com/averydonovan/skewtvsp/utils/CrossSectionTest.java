@@ -0,0 +1,123 @@
+/*
+ * Copyright (c) 2024, Avery Donovan
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.averydonovan.skewtvsp.utils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests for {@link CrossSection}, read from a {@link StubModelDataFile} whose grid
+ * covers 110W to 80.1W and 30N to 49.9N.
+ *
+ * @author Avery Donovan
+ */
+public class CrossSectionTest {
+
+    private static final int NUM_SAMPLES = 41;
+
+    /**
+     * A path wholly inside the grid should be read end to end, with values interpolated
+     * between grid points.
+     */
+    @Test
+    public void pathInsideGridIsNotTrimmed() throws Exception {
+        StubModelDataFile dataFile = new StubModelDataFile(false);
+        CrossSection section = CrossSection.read(dataFile, -105, 35, -95, 45,
+                NUM_SAMPLES);
+
+        assertFalse(section.isTrimmed());
+        assertEquals(NUM_SAMPLES, section.getNumSamples());
+        double[] endpoints = section.getEndpoints();
+        assertEquals(-105, endpoints[0], 1e-9);
+        assertEquals(35, endpoints[1], 1e-9);
+        assertEquals(-95, endpoints[2], 1e-9);
+        assertEquals(45, endpoints[3], 1e-9);
+        assertEquals(0, section.getDistance(0), 0);
+        assertExpectedTemps(section, endpoints);
+    }
+
+    /**
+     * A path running off both sides of the grid should be trimmed to the part inside
+     * it, with distances measured from the start of that part.
+     */
+    @Test
+    public void pathLeavingGridIsTrimmedToPartInside() throws Exception {
+        StubModelDataFile dataFile = new StubModelDataFile(false);
+        CrossSection section = CrossSection.read(dataFile, -115, 40, -75, 40,
+                NUM_SAMPLES);
+
+        assertTrue(section.isTrimmed());
+        assertTrue(section.getNumSamples() < NUM_SAMPLES);
+        double[] endpoints = section.getEndpoints();
+        double lastLon = StubModelDataFile.LON_FIRST
+                + (StubModelDataFile.GRID_WIDTH - 1) * StubModelDataFile.SPACING;
+        assertTrue(endpoints[0] >= StubModelDataFile.LON_FIRST, "Starts outside grid");
+        assertTrue(endpoints[0] < StubModelDataFile.LON_FIRST + 1.5,
+                "Trimmed more than needed at start");
+        assertTrue(endpoints[2] <= lastLon, "Ends outside grid");
+        assertTrue(endpoints[2] > lastLon - 1.5, "Trimmed more than needed at end");
+        assertEquals(0, section.getDistance(0), 0);
+        assertExpectedTemps(section, endpoints);
+    }
+
+    /**
+     * A path that never crosses the grid should be refused rather than read from the
+     * grid's edge.
+     */
+    @Test
+    public void pathOutsideGridIsRefused() {
+        StubModelDataFile dataFile = new StubModelDataFile(false);
+
+        assertThrows(IllegalArgumentException.class,
+                () -> CrossSection.read(dataFile, -130, 40, -120, 40, NUM_SAMPLES));
+        assertEquals(0, dataFile.getReadCount());
+    }
+
+    /**
+     * Temperatures at the ends of the section should be those of the stand-in's columns
+     * at the fractional grid position of each end.
+     */
+    private static void assertExpectedTemps(CrossSection section, double[] endpoints) {
+        int lastSample = section.getNumSamples() - 1;
+        double startX = (endpoints[0] - StubModelDataFile.LON_FIRST)
+                / StubModelDataFile.SPACING;
+        double endX = (endpoints[2] - StubModelDataFile.LON_FIRST)
+                / StubModelDataFile.SPACING;
+        LevelAxis axis = new StubModelDataFile(false).getLevelAxis();
+        for (int level = 0; level < section.getNumLevels(); level++) {
+            int coordLvl = axis.getIndex(level);
+            assertEquals(StubModelDataFile.getColumnTemp(startX, coordLvl),
+                    section.getTemp(0, level), 1e-6);
+            assertEquals(StubModelDataFile.getColumnTemp(endX, coordLvl),
+                    section.getTemp(lastSample, level), 1e-6);
+            assertEquals(5, section.getDewpDep(lastSample, level), 1e-6);
+        }
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright (c) 2024, Avery Donovan
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.averydonovan.skewtvsp.utils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.TreeMap;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests for {@link LevelAxis}.
+ *
+ * @author Avery Donovan
+ */
+public class LevelAxisTest {
+
+    /**
+     * Levels stored in the data grid from highest to lowest pressure, as most data files
+     * do, with 1000 hPa at index 0 and 500 hPa at index 4.
+     */
+    private static LevelAxis makeAxis() {
+        TreeMap<Double, Integer> levels = new TreeMap<>();
+        for (int index = 0; index < 5; index++) {
+            levels.put(100000.0 - index * 12500, index);
+        }
+        return new LevelAxis(levels, 5);
+    }
+
+    /**
+     * Levels should be ordered from lowest to highest pressure, keeping their index in
+     * the data grid.
+     */
+    @Test
+    public void levelsAreOrderedByPressure() {
+        LevelAxis axis = makeAxis();
+
+        assertEquals(5, axis.size());
+        assertEquals(50000, axis.getPressure(0), 0);
+        assertEquals(4, axis.getIndex(0));
+        assertEquals(100000, axis.getPressure(4), 0);
+        assertEquals(0, axis.getIndex(4));
+        assertEquals(87500, axis.getLevelFromIndex(1), 0);
+        assertEquals(1, axis.getIndexFromLevel(86000));
+    }
+
+    /**
+     * Interpolating next to a missing value should give NaN rather than a value pulled
+     * towards -99999.
+     */
+    @Test
+    public void interpolatingAcrossMissingValueGivesNaN() {
+        LevelAxis axis = makeAxis();
+        double[] column = {290, 285, -99999, 275, 260};
+
+        assertEquals(287.5, axis.interpolate(column, Math.sqrt(100000.0 * 87500)), 1e-9);
+        assertTrue(Double.isNaN(axis.interpolate(column, 80000)));
+        assertTrue(Double.isNaN(axis.interpolate(column, 70000)));
+        assertTrue(Double.isNaN(axis.interpolate(column, 75000)));
+        assertEquals(275, axis.interpolate(column, 62500), 0);
+        assertTrue(Double.isNaN(axis.interpolate(column, 40000)));
+    }
+}
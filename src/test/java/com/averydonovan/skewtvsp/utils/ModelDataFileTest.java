@@ -0,0 +1,181 @@
+/*
+ * Copyright (c) 2024, Avery Donovan
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.averydonovan.skewtvsp.utils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests for area-mean soundings from {@link ModelDataFile}, averaged over a
+ * {@link StubModelDataFile} whose grid covers 110W to 80.1W and 30N to 49.9N.
+ *
+ * @author Avery Donovan
+ */
+public class ModelDataFileTest {
+
+    /**
+     * Box of 30 by 30 grid points, from 100.2W to 97.3W and 40.3N to 43.2N.
+     */
+    private static final double[] BOX = {-100.25, 40.25, -97.25, 43.25};
+
+    /**
+     * Stand-in that reads the same made-up values over any area. Temperatures cool by
+     * 10K per level up from 280K at 1000 hPa. Relative humidity is 20% in columns of even
+     * x-coordinate and 100% in odd ones. CAPE is 1e16 at the first grid point averaged
+     * and 1 at every other, which plain summation would lose to rounding. Mean sea level
+     * pressure is missing everywhere.
+     */
+    private static class AreaStubModelDataFile extends StubModelDataFile {
+
+        AreaStubModelDataFile() {
+            super(false);
+        }
+
+        @Override
+        AreaValues readAreas(List<MeanArea> areas) {
+            int firstCell = areas.get(0).cells[0];
+            return (area, read, index) -> {
+                MeanArea meanArea = areas.get(area);
+                int numCells = meanArea.width * meanArea.height;
+                int level = index / numCells;
+                int cell = index % numCells;
+                int coordX = meanArea.minX + cell % meanArea.width;
+                switch (read) {
+                    case READ_TEMPS:
+                        return 280.0 - 10 * level;
+                    case READ_RHS:
+                        return coordX % 2 == 0 ? 20.0 : 100.0;
+                    case READ_TEMP2M:
+                        return 290.0;
+                    case READ_DEWP2M:
+                        return 280.0;
+                    case READ_PRESSFC:
+                        return 101000.0;
+                    case READ_MSL:
+                        return Double.NaN;
+                    case READ_CAPE:
+                        return area == 0 && cell == firstCell ? 1e16 : 1.0;
+                    default:
+                        return 0.0;
+                }
+            };
+        }
+    }
+
+    /**
+     * Grid points in the box, and only those, should be averaged.
+     */
+    @Test
+    public void boxMeanCoversGridPointsInBox() {
+        Sounding sounding = new AreaStubModelDataFile().getAreaMeanSounding(BOX[0],
+                BOX[1], BOX[2], BOX[3]);
+
+        assertTrue(sounding.getModelName().endsWith("mean of 900 grid points in box"),
+                sounding.getModelName());
+        assertTrue(sounding.getLon() > BOX[0] && sounding.getLon() < BOX[2]);
+        assertTrue(sounding.getLat() > BOX[1] && sounding.getLat() < BOX[3]);
+        assertEquals(290, sounding.getTemp2m(), 1e-9);
+        assertEquals(101000, sounding.getPresSfc(), 1e-9);
+    }
+
+    /**
+     * Summing a large value and many small ones should not lose the small ones.
+     */
+    @Test
+    public void meanUsesCompensatedSummation() {
+        Sounding sounding = new AreaStubModelDataFile().getAreaMeanSounding(BOX[0],
+                BOX[1], BOX[2], BOX[3]);
+
+        assertEquals(1e16 / 900 + 899.0 / 900, sounding.getCAPE(), 0.01);
+    }
+
+    /**
+     * A field missing at every grid point should give the usual missing value rather
+     * than NaN or 0.
+     */
+    @Test
+    public void fieldMissingEverywhereGivesMissingValue() {
+        Sounding sounding = new AreaStubModelDataFile().getAreaMeanSounding(BOX[0],
+                BOX[1], BOX[2], BOX[3]);
+
+        assertEquals(-99999, sounding.getMSL(), 0);
+    }
+
+    /**
+     * Relative humidities should be averaged before converting to dew point, giving the
+     * dew point of air at the mean humidity rather than the mean of the dew points.
+     */
+    @Test
+    public void humidityIsAveragedBeforeDewPoint() {
+        Sounding sounding = new AreaStubModelDataFile().getAreaMeanSounding(BOX[0],
+                BOX[1], BOX[2], BOX[3]);
+
+        // Lowest pressure first, which is 500 hPa at level index 4
+        double temp = 280 - 10 * 4;
+        double expected = AtmosThermoMath.calcDewp(temp, 50000, 60);
+        double meanOfDewps = (AtmosThermoMath.calcDewp(temp, 50000, 20)
+                + AtmosThermoMath.calcDewp(temp, 50000, 100)) / 2;
+        assertEquals(50000, sounding.getPressures()[0], 0);
+        assertEquals(temp, sounding.getTemps()[0], 1e-9);
+        assertEquals(expected, sounding.getDewps()[0], 1e-6);
+        assertTrue(Math.abs(expected - meanOfDewps) > 0.5,
+                "Test humidities too close to tell the two apart");
+    }
+
+    /**
+     * Only the part of a box inside the grid should be averaged, and a box missing the
+     * grid altogether should be refused rather than read from the grid's edge.
+     */
+    @Test
+    public void boxIsLimitedToGrid() {
+        AreaStubModelDataFile dataFile = new AreaStubModelDataFile();
+
+        Sounding sounding = dataFile.getAreaMeanSounding(-115, 40.25, -109.75, 40.55);
+        assertTrue(sounding.getModelName().endsWith("mean of 9 grid points in box"),
+                sounding.getModelName());
+        assertThrows(IllegalArgumentException.class,
+                () -> dataFile.getAreaMeanSounding(-130, 40, -120, 45));
+        assertThrows(IllegalArgumentException.class,
+                () -> dataFile.getAreaMeanSounding(-130, 40, 10));
+    }
+
+    /**
+     * A box whose western edge is east of its eastern edge crosses the dateline, and
+     * should cover the grid points east of its western edge or west of its eastern edge.
+     */
+    @Test
+    public void boxCrossingDatelineIsSplit() {
+        Sounding sounding = new AreaStubModelDataFile().getAreaMeanSounding(170, 40.25,
+                -100.05, 40.35);
+
+        assertTrue(sounding.getModelName().endsWith("mean of 100 grid points in box"),
+                sounding.getModelName());
+    }
+}
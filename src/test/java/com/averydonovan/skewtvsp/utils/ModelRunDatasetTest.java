@@ -0,0 +1,61 @@
+/*
+ * Copyright (c) 2024, Avery Donovan
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.averydonovan.skewtvsp.utils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests for {@link ModelRunDataset}.
+ *
+ * @author Avery Donovan
+ */
+public class ModelRunDatasetTest {
+
+    /**
+     * Forecast hour should be found in the file names of every model understood.
+     */
+    @Test
+    public void forecastHourIsFoundForEveryNamingScheme() {
+        assertEquals(18, ModelRunDataset.getForecastHour("hrrr.t00z.wrfprsf18.grib2"));
+        assertEquals(5, ModelRunDataset.getForecastHour("rap.t00z.awp130pgrbf05.grib2"));
+        assertEquals(12, ModelRunDataset.getForecastHour("nam.t00z.awphys12.tm00.grib2"));
+        assertEquals(6, ModelRunDataset.getForecastHour("gfs.t00z.pgrb2.0p25.f006"));
+        assertEquals(6, ModelRunDataset.getForecastHour("gfs_4_20240101_0000_006.grb2"));
+        assertEquals(-1, ModelRunDataset.getForecastHour("sounding.grib2"));
+    }
+
+    /**
+     * GEFS control and perturbation members should be understood.
+     */
+    @Test
+    public void forecastHourIsFoundForEnsembleMembers() {
+        assertEquals(6, ModelRunDataset.getForecastHour("gec00.t00z.pgrb2a.0p50.f006"));
+        assertEquals(240,
+                ModelRunDataset.getForecastHour("/data/gefs/gep17.t12z.pgrb2a.0p50.f240"));
+    }
+}
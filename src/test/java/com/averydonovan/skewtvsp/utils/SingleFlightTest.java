@@ -0,0 +1,168 @@
+/*
+ * Copyright (c) 2024, Avery Donovan
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.averydonovan.skewtvsp.utils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests for {@link SingleFlight}.
+ *
+ * @author Avery Donovan
+ */
+public class SingleFlightTest {
+
+    private static final int NUM_THREADS = 16;
+    private static final long TIMEOUT_SECONDS = 10;
+
+    private ExecutorService executor;
+
+    @BeforeEach
+    public void setUp() {
+        executor = Executors.newFixedThreadPool(NUM_THREADS);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Identical requests started together should do the work once and all get its
+     * result.
+     */
+    @Test
+    public void concurrentRequestsShareOneExecution() throws Exception {
+        SingleFlight<String, Object> flight = new SingleFlight<>("Test");
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch finish = new CountDownLatch(1);
+        AtomicInteger calls = new AtomicInteger();
+        Object result = new Object();
+
+        List<Future<Object>> futures = new ArrayList<>();
+        for (int thread = 0; thread < NUM_THREADS; thread++) {
+            futures.add(executor.submit(() -> {
+                start.await();
+                return flight.run("key", () -> {
+                    calls.incrementAndGet();
+                    finish.await();
+                    return result;
+                });
+            }));
+        }
+
+        start.countDown();
+        waitForShared(flight, NUM_THREADS - 1);
+        finish.countDown();
+
+        for (Future<Object> future : futures) {
+            assertSame(result, future.get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        }
+        assertEquals(1, calls.get());
+        assertEquals(1, flight.getExecutedCount());
+        assertEquals(NUM_THREADS - 1, flight.getSharedCount());
+    }
+
+    /**
+     * Every request sharing work that fails should get the same exception.
+     */
+    @Test
+    public void failureIsSharedWithWaitingRequests() throws Exception {
+        SingleFlight<String, Object> flight = new SingleFlight<>("Test");
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch finish = new CountDownLatch(1);
+        IOException failure = new IOException("Read failed");
+
+        List<Future<Object>> futures = new ArrayList<>();
+        for (int thread = 0; thread < NUM_THREADS; thread++) {
+            futures.add(executor.submit(() -> {
+                start.await();
+                return flight.run("key", () -> {
+                    finish.await();
+                    throw failure;
+                });
+            }));
+        }
+
+        start.countDown();
+        waitForShared(flight, NUM_THREADS - 1);
+        finish.countDown();
+
+        for (Future<Object> future : futures) {
+            try {
+                future.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            } catch (ExecutionException ex) {
+                assertSame(failure, ex.getCause());
+                continue;
+            }
+            throw new AssertionError("Expected request to fail");
+        }
+        assertEquals(1, flight.getExecutedCount());
+    }
+
+    /**
+     * Once work finishes its key should be forgotten, so the next request does the work
+     * again rather than getting an old result.
+     */
+    @Test
+    public void finishedWorkIsNotCached() throws Exception {
+        SingleFlight<String, Integer> flight = new SingleFlight<>("Test");
+        AtomicInteger calls = new AtomicInteger();
+
+        assertEquals(1, flight.run("key", calls::incrementAndGet));
+        assertEquals(2, flight.run("key", calls::incrementAndGet));
+        assertEquals(2, flight.getExecutedCount());
+        assertEquals(0, flight.getSharedCount());
+    }
+
+    /**
+     * Wait until a number of requests are waiting on work already in progress.
+     */
+    private static void waitForShared(SingleFlight<?, ?> flight, long count)
+            throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(TIMEOUT_SECONDS);
+        while (flight.getSharedCount() < count) {
+            assertTrue(System.nanoTime() < deadline,
+                    "Only " + flight.getSharedCount() + " request(s) shared work");
+            Thread.sleep(1);
+        }
+    }
+}
@@ -0,0 +1,217 @@
+/*
+ * Copyright (c) 2024, Avery Donovan
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.averydonovan.skewtvsp.utils;
+
+import java.time.LocalDateTime;
+import java.util.TreeMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Stand-in for a data file, for testing code that reads soundings without needing a
+ * GRIB file. The data grid is a regular longitude-latitude grid of 0.1 degree spacing
+ * from 110W, 30N, with five isobaric levels from 1000 to 500 hPa. Every grid point has
+ * the same made-up sounding, while columns of temperatures warm towards the east so
+ * interpolation between grid points can be checked. Reads can be held back until
+ * {@link #release()} is called, so tests can line up requests behind a read in
+ * progress.
+ *
+ * @author Avery Donovan
+ */
+public class StubModelDataFile extends ModelDataFile {
+
+    private static final LocalDateTime ANALYSIS_TIME = LocalDateTime.of(2024, 5, 1, 0, 0);
+    private static final LocalDateTime VALID_TIME = ANALYSIS_TIME.plusHours(6);
+
+    static final int GRID_WIDTH = 300;
+    static final int GRID_HEIGHT = 200;
+    static final double LON_FIRST = -110;
+    static final double LAT_FIRST = 30;
+    static final double SPACING = 0.1;
+    static final int NUM_LEVELS = 5;
+
+    private final CountDownLatch released;
+    private final AtomicInteger readCount = new AtomicInteger();
+
+    /**
+     * Create new instance whose reads finish straight away or wait for
+     * {@link #release()}.
+     *
+     * @param holdReads true to make reads wait until released
+     */
+    public StubModelDataFile(boolean holdReads) {
+        super(GRID_WIDTH, GRID_HEIGHT, NUM_LEVELS);
+        released = new CountDownLatch(holdReads ? 1 : 0);
+    }
+
+    /**
+     * Let reads waiting now, and any made later, finish.
+     */
+    public void release() {
+        released.countDown();
+    }
+
+    /**
+     * Returns number of times soundings were read.
+     *
+     * @return number of reads
+     */
+    public int getReadCount() {
+        return readCount.get();
+    }
+
+    @Override
+    public String getModelName() {
+        return "Test model";
+    }
+
+    @Override
+    public LocalDateTime getAnalysisTime() {
+        return ANALYSIS_TIME;
+    }
+
+    @Override
+    public LocalDateTime getValidTime() {
+        return VALID_TIME;
+    }
+
+    @Override
+    public int[] getXYCoordsFromLonLat(double lon, double lat) {
+        int coordX = (int) Math.round((lon - LON_FIRST) / SPACING);
+        int coordY = (int) Math.round((lat - LAT_FIRST) / SPACING);
+        return new int[] {Math.max(0, Math.min(GRID_WIDTH - 1, coordX)),
+            Math.max(0, Math.min(GRID_HEIGHT - 1, coordY))};
+    }
+
+    @Override
+    public int[] getXYCoordsInGrid(double lon, double lat) {
+        int coordX = (int) Math.round((lon - LON_FIRST) / SPACING);
+        int coordY = (int) Math.round((lat - LAT_FIRST) / SPACING);
+        if (coordX < 0 || coordX >= GRID_WIDTH || coordY < 0 || coordY >= GRID_HEIGHT) {
+            return null;
+        }
+        return new int[] {coordX, coordY};
+    }
+
+    @Override
+    public double[] getLonLatFromXYCoords(int coordX, int coordY) {
+        return new double[] {LON_FIRST + coordX * SPACING, LAT_FIRST + coordY * SPACING};
+    }
+
+    @Override
+    public LevelAxis getLevelAxis() {
+        TreeMap<Double, Integer> levels = new TreeMap<>();
+        for (int index = 0; index < NUM_LEVELS; index++) {
+            levels.put(100000.0 - index * 12500, index);
+        }
+        return new LevelAxis(levels, NUM_LEVELS);
+    }
+
+    /**
+     * Returns columns in which temperature warms by 0.1K per grid point towards the east
+     * and cools by 10K per level upwards, with dew points 5K below and surface pressure
+     * of 1000 hPa.
+     */
+    @Override
+    public double[][] getTempDewpColumns(int[] coordXs, int[] coordYs) {
+        readCount.incrementAndGet();
+        LevelAxis axis = getLevelAxis();
+        double[] pressures = new double[NUM_LEVELS];
+        double[] temps = new double[coordXs.length * NUM_LEVELS];
+        double[] dewps = new double[coordXs.length * NUM_LEVELS];
+        double[] presSfcs = new double[coordXs.length];
+        for (int position = 0; position < NUM_LEVELS; position++) {
+            pressures[position] = axis.getPressure(position);
+        }
+        for (int point = 0; point < coordXs.length; point++) {
+            for (int position = 0; position < NUM_LEVELS; position++) {
+                int index = point * NUM_LEVELS + position;
+                temps[index] = getColumnTemp(coordXs[point], axis.getIndex(position));
+                dewps[index] = temps[index] - 5;
+            }
+            presSfcs[point] = 100000;
+        }
+        return new double[][] {pressures, temps, dewps, presSfcs};
+    }
+
+    /**
+     * Returns temperature that {@link #getTempDewpColumns(int[], int[])} gives at a
+     * fractional x-coordinate and level index.
+     *
+     * @param coordX x-coordinate in data grid, which may be between grid points
+     * @param coordLvl index of isobaric level in data grid
+     *
+     * @return temperature in K
+     */
+    static double getColumnTemp(double coordX, int coordLvl) {
+        return 280 + 0.1 * coordX - 10 * coordLvl;
+    }
+
+    @Override
+    public Sounding[] getSoundings(int[] coordXs, int[] coordYs) {
+        readCount.incrementAndGet();
+        try {
+            released.await();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted waiting to be released", ex);
+        }
+
+        Sounding[] results = new Sounding[coordXs.length];
+        for (int point = 0; point < coordXs.length; point++) {
+            results[point] = makeSounding(coordXs[point], coordYs[point]);
+        }
+        return results;
+    }
+
+    /**
+     * Make a sounding cooling 6.5K per km from 25C at 1000hPa up to 100hPa, with dew
+     * points 5K below.
+     */
+    private static Sounding makeSounding(int coordX, int coordY) {
+        int numLevels = 19;
+        Sounding sounding = new Sounding(numLevels);
+        for (int level = 0; level < numLevels; level++) {
+            double pressure = 10000 + 5000 * level;
+            double height = 44330 * (1 - Math.pow(pressure / 100000, 0.19));
+            sounding.pressures[level] = pressure;
+            sounding.temps[level] = Math.max(298.15 - 0.0065 * height, 216.65);
+            sounding.dewps[level] = sounding.temps[level] - 5;
+        }
+        sounding.levelCount = numLevels;
+        sounding.coordX = coordX;
+        sounding.coordY = coordY;
+        sounding.temp2m = 298.15;
+        sounding.dewp2m = 293.15;
+        sounding.presSfc = 100000;
+        sounding.lcl = new double[] {93500, 292.0};
+        sounding.msl = 101325;
+        sounding.analysisTime = ANALYSIS_TIME;
+        sounding.validTime = VALID_TIME;
+        sounding.modelName = "Test model";
+        return sounding;
+    }
+}